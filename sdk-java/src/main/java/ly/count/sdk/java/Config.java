@@ -215,6 +215,116 @@ public class Config {
      */
     protected File sdkStorageRootDirectory = null;
 
+    /**
+     * Whether persisted requests and events should be compressed
+     */
+    protected boolean storageCompressionEnabled = false;
+
+    /**
+     * Maximum number of requests kept in persistent request queue, 0 for no limit
+     */
+    protected int requestStorageMaxCount = 0;
+
+    /**
+     * Maximum size of persistent request queue in bytes, 0 for no limit
+     */
+    protected long requestStorageMaxBytes = 0;
+
+    /**
+     * What to evict from persistent request queue when it exceeds its limits
+     */
+    protected RequestEvictionPolicy requestEvictionPolicy = RequestEvictionPolicy.DROP_OLDEST;
+
+    /**
+     * Weights of request send priority lanes: crashes, session requests, other requests and event batches
+     */
+    protected int[] requestLaneWeights = { 8, 4, 2, 1 };
+
+    /**
+     * When persisted requests and events are forced to disk
+     */
+    protected DurabilityMode storageDurability = DurabilityMode.NONE;
+
+    /**
+     * Maximum number of records written between forces in {@link DurabilityMode#BATCHED} mode
+     */
+    protected int storageCommitMaxRecords = 32;
+
+    /**
+     * Maximum time in milliseconds between a write and its force in {@link DurabilityMode#BATCHED} mode
+     */
+    protected long storageCommitIntervalMs = 200;
+
+    /**
+     * Maximum number of requests from the request queue which are sent concurrently
+     */
+    protected int networkMaxRequestsInFlight = 1;
+
+    /**
+     * Maximum number of queued requests sent in a single bulk call, 1 to send every request separately
+     */
+    protected int networkBulkMaxRequests = 1;
+
+    /**
+     * Maximum size of params of requests sent in a single bulk call, 0 for no limit
+     */
+    protected int networkBulkMaxBytes = 0;
+
+    /**
+     * Whether POST request bodies sent to server are compressed with gzip
+     */
+    protected boolean networkCompressionEnabled = false;
+
+    /**
+     * Minimum size of POST request body in bytes to compress it
+     */
+    protected int networkCompressionMinBytes = 1024;
+
+    /**
+     * Base delay in milliseconds of exponential backoff after a failed request, 0 to retry only when requests are checked next time
+     */
+    protected int networkRetryBaseDelay = 0;
+
+    /**
+     * Maximum delay in milliseconds of exponential backoff after failed requests
+     */
+    protected int networkRetryMaxDelay = 60000;
+
+    /**
+     * Number of consecutive server errors or connection failures which open circuit breaker of an endpoint, 0 to disable circuit breaker
+     */
+    protected int networkCircuitBreakerThreshold = 0;
+
+    /**
+     * How long circuit breaker stays open in milliseconds before a probe request is sent
+     */
+    protected int networkCircuitBreakerOpenTime = 60000;
+
+    /**
+     * Number of threads sending immediate requests, like remote config or feedback widget requests
+     */
+    protected int immediateRequestThreads = 2;
+
+    /**
+     * Maximum number of immediate requests waiting for a free thread, requests above it fail right away
+     */
+    protected int immediateRequestQueueSize = 32;
+
+    /**
+     * How long in milliseconds to wait for an immediate request before its callback receives no response, 0 for no limit
+     */
+    protected int immediateRequestTimeout = 60000;
+
+    /**
+     * Capacity of the buffer recorded events are handed off through to the recorder thread, 0 to record events on caller threads
+     */
+    protected int eventRecordingBufferCapacity = 0;
+
+    /**
+     * What to do with recorded events when the recording buffer is full
+     */
+    protected EventOverflowPolicy eventOverflowPolicy = EventOverflowPolicy.BLOCK;
+
     /**
      * If sdk used across multiple platforms
      */
@@ -520,6 +630,270 @@ public class Config {
         return this;
     }
 
+    /**
+     * Compress requests and events persisted in SDK storage directory.
+     * Queued data takes several times less disk space at the cost of some CPU time on each write and read.
+     * Data stored before this option was enabled stays readable.
+     *
+     * @return {@code this} instance for method chaining
+     */
+    public Config enableStorageCompression() {
+        this.storageCompressionEnabled = true;
+        return this;
+    }
+
+    /**
+     * Limit disk space taken by persistent request queue, for example when server is unreachable for a long time.
+     * Once a new request doesn't fit into the limits, older requests are evicted according to
+     * {@link #setRequestEvictionPolicy(RequestEvictionPolicy)}.
+     * Doesn't apply to backend mode, see {@link #setRequestQueueMaxSize(int)}.
+     *
+     * @param maxCount maximum number of stored requests, 0 for no limit
+     * @param maxBytes maximum size of stored requests in bytes, 0 for no limit
+     * @return {@code this} instance for method chaining
+     */
+    public Config setRequestStorageLimits(int maxCount, long maxBytes) {
+        if (maxCount < 0 || maxBytes < 0) {
+            if (configLog != null) {
+                configLog.e("[Config] setRequestStorageLimits, Limits cannot be negative");
+            }
+        } else {
+            this.requestStorageMaxCount = maxCount;
+            this.requestStorageMaxBytes = maxBytes;
+        }
+        return this;
+    }
+
+    /**
+     * Set what to evict from persistent request queue when it exceeds limits set with {@link #setRequestStorageLimits(int, long)}.
+     * {@link RequestEvictionPolicy#DROP_OLDEST} by default.
+     *
+     * @param policy eviction policy
+     * @return {@code this} instance for method chaining
+     */
+    public Config setRequestEvictionPolicy(RequestEvictionPolicy policy) {
+        if (policy == null) {
+            if (configLog != null) {
+                configLog.e("[Config] setRequestEvictionPolicy, Policy cannot be null");
+            }
+        } else {
+            this.requestEvictionPolicy = policy;
+        }
+        return this;
+    }
+
+    /**
+     * Set weights of request send priority lanes. Queued requests are split into lanes: crashes, session requests,
+     * other requests and event batches. When several lanes have requests to send, a lane with weight {@code w}
+     * gets {@code w} turns for each turn of a lane with weight 1, so crashes aren't delayed by a backlog of events
+     * while events still get sent. Requests of a device are never reordered around its session begin / end
+     * and device id change requests. Defaults to 8, 4, 2 and 1.
+     *
+     * @param crashes weight of crash requests
+     * @param sessions weight of session and consent requests
+     * @param other weight of other requests, like user details or location
+     * @param events weight of event batches
+     * @return {@code this} instance for method chaining
+     */
+    public Config setRequestLaneWeights(int crashes, int sessions, int other, int events) {
+        int[] weights = { crashes, sessions, other, events };
+        for (int weight : weights) {
+            if (weight < 1 || weight > 100) {
+                if (configLog != null) {
+                    configLog.e("[Config] setRequestLaneWeights, Weights must be between 1 and 100");
+                }
+                return this;
+            }
+        }
+        this.requestLaneWeights = weights;
+        return this;
+    }
+
+    /**
+     * Set when persisted requests and events are forced from OS page cache to disk.
+     * {@link DurabilityMode#NONE} by default.
+     *
+     * @param mode durability mode
+     * @return {@code this} instance for method chaining
+     */
+    public Config setStorageDurability(DurabilityMode mode) {
+        if (mode == null) {
+            if (configLog != null) {
+                configLog.e("[Config] setStorageDurability, Mode cannot be null");
+            }
+        } else {
+            this.storageDurability = mode;
+        }
+        return this;
+    }
+
+    /**
+     * Set group commit limits of {@link DurabilityMode#BATCHED} mode: written records are forced to disk
+     * once there are {@code maxRecords} of them or {@code intervalMs} milliseconds after the first one, whichever comes first.
+     * 32 records and 200 milliseconds by default.
+     *
+     * @param maxRecords maximum number of records written between forces, must be positive
+     * @param intervalMs maximum time in milliseconds between a write and its force, must be positive
+     * @return {@code this} instance for method chaining
+     */
+    public Config setStorageGroupCommit(int maxRecords, long intervalMs) {
+        if (maxRecords < 1 || intervalMs < 1) {
+            if (configLog != null) {
+                configLog.e("[Config] setStorageGroupCommit, Limits must be positive");
+            }
+        } else {
+            this.storageCommitMaxRecords = maxRecords;
+            this.storageCommitIntervalMs = intervalMs;
+        }
+        return this;
+    }
+
+    /**
+     * Set how many requests from the request queue can be sent at the same time. Defaults to 1.
+     * Requests are picked in queue order, session begin / end and device id change requests
+     * are sent alone, only after all requests before them are sent.
+     *
+     * @param maxRequests maximum number of requests in flight, must be positive
+     * @return {@code this} instance for method chaining
+     */
+    public Config setNetworkMaxRequestsInFlight(int maxRequests) {
+        if (maxRequests < 1) {
+            if (configLog != null) {
+                configLog.e("[Config] setNetworkMaxRequestsInFlight, Number of requests must be positive");
+            }
+        } else {
+            this.networkMaxRequestsInFlight = maxRequests;
+        }
+        return this;
+    }
+
+    /**
+     * Send queued requests to server in bulk: up to {@code maxRequests} requests with params of up to {@code maxBytes} total
+     * are sent in a single call to {@code /i/bulk} endpoint. If server rejects the call, requests are split and sent again in smaller calls.
+     * Session begin / end, device id change and user picture requests are always sent separately.
+     * Disabled by default.
+     *
+     * @param maxRequests maximum number of requests in a single call, 1 to disable bulk sending
+     * @param maxBytes maximum total size of request params in a single call, 0 for no limit
+     * @return {@code this} instance for method chaining
+     */
+    public Config setNetworkBulkRequests(int maxRequests, int maxBytes) {
+        if (maxRequests < 1 || maxBytes < 0) {
+            if (configLog != null) {
+                configLog.e("[Config] setNetworkBulkRequests, Number of requests must be positive and size can't be negative");
+            }
+        } else {
+            this.networkBulkMaxRequests = maxRequests;
+            this.networkBulkMaxBytes = maxBytes;
+        }
+        return this;
+    }
+
+    /**
+     * Compress bodies of POST requests sent to server with gzip ({@code Content-Encoding: gzip}),
+     * event batches and bulk requests usually take several times less bandwidth.
+     * Bodies smaller than {@code minBytes} are sent as is. Checksum of parameter tampering protection is calculated over uncompressed params.
+     * Requests with user picture are never compressed.
+     *
+     * @param minBytes minimum size of request body in bytes to compress it, 1024 by default
+     * @return {@code this} instance for method chaining
+     */
+    public Config enableNetworkCompression(int minBytes) {
+        if (minBytes < 0) {
+            if (configLog != null) {
+                configLog.e("[Config] enableNetworkCompression, Minimum size can't be negative");
+            }
+        } else {
+            this.networkCompressionEnabled = true;
+            this.networkCompressionMinBytes = minBytes;
+        }
+        return this;
+    }
+
+    /**
+     * Set exponential backoff of failed requests. After n-th consecutive failure of an endpoint, requests to it are retried
+     * after a random delay between 0 and {@code min(maxDelay, baseDelay * 2^(n-1))} milliseconds ("full jitter"),
+     * or later if server asked for it with {@code Retry-After} header. Requests aren't sent before that even if new ones are recorded.
+     * Disabled by default: failed requests are retried the next time requests are checked and {@code Retry-After} is ignored.
+     *
+     * @param baseDelay delay in milliseconds after the first failure, 0 to disable backoff and retry only when requests are checked next time
+     * @param maxDelay maximum delay in milliseconds, can't be less than {@code baseDelay}
+     * @return {@code this} instance for method chaining
+     */
+    public Config setNetworkRetryBackoff(int baseDelay, int maxDelay) {
+        if (baseDelay < 0 || maxDelay < baseDelay) {
+            if (configLog != null) {
+                configLog.e("[Config] setNetworkRetryBackoff, Base delay can't be negative and maximum delay can't be less than base delay");
+            }
+        } else {
+            this.networkRetryBaseDelay = baseDelay;
+            this.networkRetryMaxDelay = maxDelay;
+        }
+        return this;
+    }
+
+    /**
+     * Set circuit breaker of server endpoints. After {@code failureThreshold} consecutive server errors (5xx)
+     * or connection failures, no requests are sent to the endpoint for {@code openTime} milliseconds,
+     * then a single probe request is sent: circuit closes if server responds, and opens again if it fails.
+     * State of circuit breakers can be checked with {@link Countly#getNetworkCircuitStates()}.
+     * Disabled by default.
+     *
+     * @param failureThreshold number of consecutive failures to open circuit, 0 to disable circuit breaker
+     * @param openTime how long circuit stays open in milliseconds, must be positive
+     * @return {@code this} instance for method chaining
+     */
+    public Config setNetworkCircuitBreaker(int failureThreshold, int openTime) {
+        if (failureThreshold < 0 || openTime < 1) {
+            if (configLog != null) {
+                configLog.e("[Config] setNetworkCircuitBreaker, Failure threshold can't be negative and open time must be positive");
+            }
+        } else {
+            this.networkCircuitBreakerThreshold = failureThreshold;
+            this.networkCircuitBreakerOpenTime = openTime;
+        }
+        return this;
+    }
+
+    /**
+     * Set how immediate requests are executed. Immediate requests are sent right away, bypassing the request queue,
+     * for example when downloading remote config values or feedback widgets. Identical requests made while one
+     * is in flight share its response. Defaults to 2 threads and a queue of 32 requests.
+     *
+     * @param threads number of threads sending immediate requests, must be positive
+     * @param queueSize maximum number of requests waiting for a thread, requests above it fail right away
+     * @return {@code this} instance for method chaining
+     */
+    public Config setImmediateRequestExecutor(int threads, int queueSize) {
+        if (threads < 1 || queueSize < 1) {
+            if (configLog != null) {
+                configLog.e("[Config] setImmediateRequestExecutor, Number of threads and queue size must be positive");
+            }
+        } else {
+            this.immediateRequestThreads = threads;
+            this.immediateRequestQueueSize = queueSize;
+        }
+        return this;
+    }
+
+    /**
+     * Set how long to wait for an immediate request, including time it waits for a thread.
+     * Callback of a request which doesn't complete in time receives no response. Defaults to 60000 milliseconds.
+     *
+     * @param milliseconds timeout in milliseconds, 0 for no limit other than network timeouts
+     * @return {@code this} instance for method chaining
+     */
+    public Config setImmediateRequestTimeout(int milliseconds) {
+        if (milliseconds < 0) {
+            if (configLog != null) {
+                configLog.e("[Config] setImmediateRequestTimeout, Timeout can't be negative");
+            }
+        } else {
+            this.immediateRequestTimeout = milliseconds;
+        }
+        return this;
+    }
+
     /**
      * Enable parameter tampering protection
      *
@@ -659,6 +1033,27 @@ public class Config {
         return this;
     }
 
+    /**
+     * Record events on a dedicated thread. Recording calls validate an event and hand it off through a bounded
+     * lock-free buffer, the recorder thread assigns event ids, persists events and sends them in batches.
+     * Events are recorded on the caller thread by default.
+     *
+     * @param capacity number of events the buffer holds, rounded up to a power of two, 0 to record events on caller threads
+     * @param policy what to do with events recorded while the buffer is full
+     * @return {@code this} instance for method chaining
+     */
+    public Config setEventRecordingBuffer(int capacity, EventOverflowPolicy policy) {
+        if (capacity < 0 || capacity > 1 << 20 || policy == null) {
+            if (configLog != null) {
+                configLog.e("[Config] setEventRecordingBuffer, Capacity must be between 0 and 1048576 and policy cannot be null");
+            }
+        } else {
+            this.eventRecordingBufferCapacity = capacity;
+            this.eventOverflowPolicy = policy;
+        }
+        return this;
+    }
+
     /**
      * Disable update requests completely. Only begin & end requests will be sent + some special
      * cases if applicable like User Profile change or Push token updated.
@@ -1377,6 +1772,81 @@ public class Config {
         }
     }
 
+    /**
+     * Eviction policy of persistent request queue, see {@link #setRequestEvictionPolicy(RequestEvictionPolicy)}
+     */
+    public enum RequestEvictionPolicy {
+        /**
+         * Drop oldest requests first
+         */
+        DROP_OLDEST,
+        /**
+         * Drop oldest requests of the least important kind first: event requests, then other requests,
+         * then sessions, crashes, consent and device id changes
+         */
+        DROP_LOWEST_PRIORITY,
+        /**
+         * Merge event requests into fewer ones, drop oldest requests if there is nothing to merge
+         */
+        COALESCE_EVENTS
+    }
+
+    /**
+     * Durability of persisted requests and events, see {@link #setStorageDurability(DurabilityMode)}
+     */
+    public enum DurabilityMode {
+        /**
+         * Leave writes in OS page cache, they survive SDK crash but can be lost on power failure
+         */
+        NONE,
+        /**
+         * Force writes to disk in groups, see {@link #setStorageGroupCommit(int, long)}
+         */
+        BATCHED,
+        /**
+         * Force every write to disk before reporting it as stored
+         */
+        SYNC
+    }
+
+    /**
+     * What happens to events recorded while event recording buffer is full,
+     * see {@link #setEventRecordingBuffer(int, EventOverflowPolicy)}
+     */
+    public enum EventOverflowPolicy {
+        /**
+         * Recording call waits until the recorder thread frees a slot
+         */
+        BLOCK,
+        /**
+         * Event is dropped, see {@link ly.count.sdk.java.Countly#getDroppedEventCount()}
+         */
+        DROP,
+        /**
+         * Event is queued in an unbounded queue which the recorder thread takes events from once the buffer is empty.
+         * No events are lost, but events recorded around the overflow may be recorded out of order.
+         */
+        SPILL
+    }
+
+    /**
+     * State of circuit breaker of a server endpoint, see {@link #setNetworkCircuitBreaker(int, int)}
+     */
+    public enum CircuitState {
+        /**
+         * Requests are sent, failed ones are retried with backoff
+         */
+        CLOSED,
+        /**
+         * Too many consecutive failures, no requests are sent until open time passes
+         */
+        OPEN,
+        /**
+         * Open time has passed, a single probe request is sent to check whether server has recovered
+         */
+        HALF_OPEN
+    }
+
     public enum DeviceIdStrategy {
         UUID(0),
         CUSTOM_ID(10);
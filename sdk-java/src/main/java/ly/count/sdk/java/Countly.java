@@ -1,6 +1,7 @@
 package ly.count.sdk.java;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.Map;
 import ly.count.sdk.java.internal.Device;
 import ly.count.sdk.java.internal.DeviceIdType;
@@ -532,6 +533,86 @@ public class Countly implements Usage {
         return sdk.location();
     }
 
+    /**
+     * Number of requests dropped from the persistent request queue to stay within
+     * limits set with {@link Config#setRequestStorageLimits(int, long)}.
+     *
+     * @return number of evicted requests since SDK initialization, 0 if SDK is not initialized
+     */
+    public long getEvictedRequestCount() {
+        if (!isInitialized()) {
+            if (L != null) {
+                L.e("[Countly] getEvictedRequestCount, SDK is not initialized yet.");
+            }
+            return 0;
+        }
+        return sdk.getEvictedRequestCount();
+    }
+
+    /**
+     * Number of event requests merged into other requests to stay within limits set with
+     * {@link Config#setRequestStorageLimits(int, long)}, see {@link Config.RequestEvictionPolicy#COALESCE_EVENTS}.
+     *
+     * @return number of coalesced requests since SDK initialization, 0 if SDK is not initialized
+     */
+    public long getCoalescedRequestCount() {
+        if (!isInitialized()) {
+            if (L != null) {
+                L.e("[Countly] getCoalescedRequestCount, SDK is not initialized yet.");
+            }
+            return 0;
+        }
+        return sdk.getCoalescedRequestCount();
+    }
+
+    /**
+     * Number of events dropped because event recording buffer was full,
+     * see {@link Config#setEventRecordingBuffer(int, Config.EventOverflowPolicy)} and {@link Config.EventOverflowPolicy#DROP}.
+     *
+     * @return number of dropped events since SDK initialization, 0 if SDK is not initialized
+     */
+    public long getDroppedEventCount() {
+        if (!isInitialized()) {
+            if (L != null) {
+                L.e("[Countly] getDroppedEventCount, SDK is not initialized yet.");
+            }
+            return 0;
+        }
+        return sdk.getDroppedEventCount();
+    }
+
+    /**
+     * State of circuit breakers of server endpoints, see {@link Config#setNetworkCircuitBreaker(int, int)}.
+     * Only endpoints with failed requests since the last successful one are listed, others are {@link Config.CircuitState#CLOSED}.
+     *
+     * @return map of endpoint paths to circuit states, empty if SDK is not initialized
+     */
+    public Map<String, Config.CircuitState> getNetworkCircuitStates() {
+        if (!isInitialized()) {
+            if (L != null) {
+                L.e("[Countly] getNetworkCircuitStates, SDK is not initialized yet.");
+            }
+            return new HashMap<>();
+        }
+        return sdk.getNetworkCircuitStates();
+    }
+
+    /**
+     * Number of requests to server which failed and were scheduled for a retry,
+     * see {@link Config#setNetworkRetryBackoff(int, int)}.
+     *
+     * @return number of failed requests since SDK initialization, 0 if SDK is not initialized
+     */
+    public long getNetworkFailureCount() {
+        if (!isInitialized()) {
+            if (L != null) {
+                L.e("[Countly] getNetworkFailureCount, SDK is not initialized yet.");
+            }
+            return 0;
+        }
+        return sdk.getNetworkFailureCount();
+    }
+
     /**
      * Get current User Profile object.
      *
@@ -1,13 +1,67 @@
 package ly.count.sdk.java.internal;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import ly.count.sdk.java.PredefinedUserPropertyKeys;
+
+/**
+ * Sends requests from the request queue with up to {@link InternalConfig#getNetworkMaxRequestsInFlight()} requests in flight.
+ * Requests are picked in queue order on the "network" thread and reserved until they are sent, so the same request
+ * is never sent twice. Session begin / end and device id change requests are ordering barriers: they are sent only
+ * when nothing else is in flight and nothing is picked until they complete.
+ * With {@link InternalConfig#getNetworkBulkMaxRequests()} above 1, consecutive requests are sent in a single
+ * {@link Transport#sendBulk(List)} call, requests of rejected calls are sent in bulks of half the size next time
+ * until single requests are left, each of those calls waits for cooldown and backoff like any other call.
+ * Cooldowns between requests are enforced by {@link RequestPacer}, a bulk call is charged for each of its requests:
+ * when next request has to wait, picking is scheduled for the moment its cooldown passes instead of holding a sending thread.
+ * Failed requests are retried once backoff or open circuit of their endpoint allows it, see {@link NetworkRetry},
+ * {@link #check(InternalConfig)} calls don't send anything to an endpoint before that.
+ */
 public class DefaultNetworking implements Networking {
+    private static final Long ID_FILL = 1L;
+
     private Log L = null;
 
     private Transport transport;
     private Tasks tasks;
-    private boolean shutdown;
+    private ExecutorService senders;
+    private ScheduledExecutorService scheduler;
+    private RequestPacer pacer;
+    private volatile boolean shutdown;
     IStorageForRequestQueue storageForRequestQueue;
 
+    private int maxInFlight;
+    private int bulkMaxRequests;
+    private int bulkMaxBytes;
+    /**
+     * Requests being sent, mapped to whether they are barriers
+     */
+    private final Map<Long, Boolean> inFlight = new HashMap<>();
+    /**
+     * Maximum bulk size of requests which were part of a rejected bulk call
+     */
+    private final Map<Long, Integer> bulkLimits = new HashMap<>();
+    /**
+     * Number of calls in flight, each one sends one or more requests
+     */
+    private int calls;
+    private boolean failed;
+    /**
+     * Picking scheduled for the moment cooldown or backoff of next request passes
+     */
+    private ScheduledFuture<?> scheduled;
+
     @Override
     public void init(InternalConfig config, IStorageForRequestQueue storageForRequestQueue) {
         L = config.getLogger();
@@ -15,63 +69,349 @@ public class DefaultNetworking implements Networking {
         transport = new Transport();
         transport.init(config);
         tasks = new Tasks("network", L);
+        maxInFlight = config.getNetworkMaxRequestsInFlight();
+        bulkMaxRequests = config.getNetworkBulkMaxRequests();
+        bulkMaxBytes = config.getNetworkBulkMaxBytes();
+        final AtomicInteger threads = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(maxInFlight, runnable -> new Thread(runnable, "network-send-" + threads.incrementAndGet()));
+        pacer = new RequestPacer(config);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "network-pacer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduled = null;
         this.storageForRequestQueue = storageForRequestQueue;
     }
 
     @Override
     public boolean isSending() {
-        return tasks.isRunning();
+        synchronized (inFlight) {
+            return tasks.isRunning() || calls > 0;
+        }
     }
 
     @Override
     public boolean check(InternalConfig config) {
-        L.d("[Networking] [check] state: shutdown [" + shutdown + "], tasks running [" + tasks.isRunning() + "], net running [" + tasks.isRunning() + "], device id [" + config.getDeviceId() + "]");
-        if (!shutdown && !tasks.isRunning() && config.getDeviceId() != null) {
+        L.d("[Networking] [check] state: shutdown [" + shutdown + "], tasks running [" + tasks.isRunning() + "], calls in flight [" + callsInFlight() + "], device id [" + config.getDeviceId() + "]");
+        resume(config);
+        return isSending();
+    }
+
+    /**
+     * Resumes sending after a failed request and fills the window
+     */
+    private void resume(InternalConfig config) {
+        synchronized (inFlight) {
+            failed = false;
+        }
+        dispatch(config);
+    }
+
+    /**
+     * Schedules picking of requests to fill the window, repeated calls are merged while picking hasn't started yet
+     */
+    private void dispatch(InternalConfig config) {
+        if (!shutdown && config.getDeviceId() != null && canSend()) {
             tasks.run(submit(config));
         }
-        return tasks.isRunning();
     }
 
     protected Tasks.Task<Boolean> submit(final InternalConfig config) {
-        return new Tasks.Task<Boolean>(Tasks.ID_STRICT) {
+        return new Tasks.Task<Boolean>(ID_FILL) {
             @Override
             public Boolean call() throws Exception {
-                final Request request = storageForRequestQueue.getNextRequest();
-                if (request == null) {
-                    return false;
-                } else {
-                    L.d("[Networking] Preparing request: " + request);
-                    final Boolean check = SDKCore.instance.isRequestReady(request);
-                    if (check == null) {
-                        L.d("[Networking] Request is not ready yet: " + request);
-                        return false;
-                    } else if (check.equals(Boolean.FALSE)) {
-                        L.d("[Networking] Request won't be ready, removing: " + request);
-                        Storage.remove(config, request);
-                        return true;
-                    } else {
-                        if (request.params.has("rr")) {
-                            request.params.remove("rr");
+                boolean submitted = false;
+                while (!shutdown && canSend()) {
+                    final Set<Long> reserved = reserved();
+                    final Request request = pick(config, reserved);
+                    if (request == null) {
+                        break;
+                    }
+                    final boolean barrier = isBarrier(request);
+                    final List<Request> batch = new ArrayList<>();
+                    batch.add(request);
+                    if (bulkLimit(request) > 1 && isBulkable(request)) {
+                        collect(config, batch, reserved);
+                    }
+
+                    final String endpoint = batch.size() > 1 ? Transport.ENDPOINT_BULK : NetworkRetry.endpointOf(request);
+                    final int requestClass = RequestPacer.classOf(request);
+                    final int slot;
+                    int others;
+                    synchronized (inFlight) {
+                        if (barrier && calls > 0) {
+                            L.d("[Networking] Request " + request.storageId() + " waits for [" + calls + "] calls in flight");
+                            release(batch);
+                            break;
+                        }
+                        long backoff = transport.getRetry().delay(endpoint);
+                        if (backoff != 0) {
+                            schedule(config, backoff, "Request " + request.storageId() + " waits for backoff of endpoint " + endpoint);
+                            release(batch);
+                            break;
+                        }
+                        slot = pacer.acquire(requestClass);
+                        if (slot < 0) {
+                            schedule(config, pacer.delay(requestClass), "Request " + request.storageId() + " waits for cooldown");
+                            release(batch);
+                            break;
                         }
-                        request.params.add("rr", storageForRequestQueue.remaningRequests());
-                        tasks.run(transport.send(request), result -> {
-                            L.d("[Networking] Request " + request.storageId() + " sent?: " + result);
-                            if (result) {
-                                storageForRequestQueue.removeRequest(request);
-                                check(config);
-                            }
-                        });
-                        return true;
+                        transport.getRetry().started(endpoint);
+                        others = inFlight.size();
+                        for (Request r : batch) {
+                            inFlight.put(r.storageId(), barrier);
+                        }
+                        calls++;
+                    }
+                    int remaining = Math.max(0, storageForRequestQueue.remaningRequests() - others);
+                    for (Request r : batch) {
+                        if (r.params.has("rr")) {
+                            r.params.remove("rr");
+                        }
+                        r.params.add("rr", remaining);
                     }
+                    senders.submit(() -> send(config, batch, endpoint, requestClass, slot));
+                    submitted = true;
                 }
+                return submitted;
             }
         };
     }
 
+    /**
+     * Schedules {@link #resume(InternalConfig)} once cooldown or backoff of next request passes, earlier one of pending calls is kept.
+     * Should be called while holding {@link #inFlight}.
+     *
+     * @param delay milliseconds to wait, negative if request waits for a call in flight to complete
+     */
+    private void schedule(final InternalConfig config, long delay, String reason) {
+        if (delay < 0 || shutdown) {
+            return;
+        }
+        if (scheduled != null) {
+            // a due call may have already dispatched picking which ended up here, only a call still waiting can be kept
+            long pending = scheduled.getDelay(TimeUnit.MILLISECONDS);
+            if (!scheduled.isDone() && pending > 0 && pending <= delay) {
+                return;
+            }
+            scheduled.cancel(false);
+        }
+        L.v("[Networking] " + reason + ", resuming in [" + delay + "] ms");
+        scheduled = scheduler.schedule(() -> resume(config), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Picks next request which is ready to be sent, removing requests which won't be ready
+     *
+     * @return request or null if there are no requests or next one isn't ready yet
+     */
+    private Request pick(InternalConfig config, Set<Long> skip) {
+        while (true) {
+            final Request request = storageForRequestQueue.getNextRequest(skip);
+            if (request == null) {
+                return null;
+            }
+            L.d("[Networking] Preparing request: " + request);
+            final Boolean check = SDKCore.instance.isRequestReady(request);
+            if (check == null) {
+                L.d("[Networking] Request is not ready yet: " + request);
+                storageForRequestQueue.releaseRequest(request);
+                return null;
+            } else if (check.equals(Boolean.FALSE)) {
+                L.d("[Networking] Request won't be ready, removing: " + request);
+                final String pictureFile = request.params.get(ModuleUserProfile.PICTURE_FILE);
+                if (Boolean.TRUE.equals(Storage.remove(config, request))) {
+                    deletePicture(pictureFile);
+                } else {
+                    storageForRequestQueue.releaseRequest(request);
+                }
+            } else {
+                return request;
+            }
+        }
+    }
+
+    /**
+     * Adds requests following the first one in the batch while they can be sent in bulk and fit into the limits
+     */
+    private void collect(InternalConfig config, List<Request> batch, Set<Long> reserved) {
+        final Set<Long> skip = new HashSet<>(reserved);
+        skip.add(batch.get(0).storageId());
+        final int requestClass = RequestPacer.classOf(batch.get(0));
+        int bytes = batch.get(0).params.length();
+        int limit = bulkLimit(batch.get(0));
+        while (batch.size() < limit) {
+            final Request next = pick(config, skip);
+            if (next == null) {
+                break;
+            }
+            final int nextLimit = bulkLimit(next);
+            if (!isBulkable(next) || RequestPacer.classOf(next) != requestClass || nextLimit <= batch.size()
+                || (bulkMaxBytes > 0 && bytes + next.params.length() > bulkMaxBytes)) {
+                storageForRequestQueue.releaseRequest(next);
+                break;
+            }
+            limit = Math.min(limit, nextLimit);
+            batch.add(next);
+            skip.add(next.storageId());
+            bytes += next.params.length();
+        }
+    }
+
+    private void send(InternalConfig config, List<Request> batch, String endpoint, int requestClass, int slot) {
+        Boolean result = false;
+        try {
+            result = send(batch);
+        } catch (Exception e) {
+            L.e("[Networking] Unexpected error while sending [" + batch.size() + "] requests " + e);
+        } finally {
+            release(batch);
+            synchronized (inFlight) {
+                for (Request request : batch) {
+                    inFlight.remove(request.storageId());
+                }
+                calls--;
+                pacer.release(requestClass, slot, batch.size());
+                if (result == null) {
+                    // split requests go through cooldown and backoff of the next calls
+                    int limit = Math.max(1, batch.size() / 2);
+                    for (Request request : batch) {
+                        bulkLimits.put(request.storageId(), limit);
+                    }
+                } else if (result) {
+                    for (Request request : batch) {
+                        bulkLimits.remove(request.storageId());
+                    }
+                } else {
+                    failed = true;
+                    long backoff = transport.getRetry().delay(endpoint);
+                    if (backoff > 0) {
+                        schedule(config, backoff, "Request " + batch.get(0).storageId() + " failed");
+                    }
+                }
+            }
+        }
+        if (!Boolean.FALSE.equals(result)) {
+            dispatch(config);
+        }
+    }
+
+    /**
+     * Sends requests and removes sent ones from the queue
+     *
+     * @return true if all requests were sent, false if sending failed,
+     * null if server rejected a bulk call, then its requests are sent in smaller bulks next time
+     */
+    private Boolean send(List<Request> batch) throws Exception {
+        if (batch.size() == 1) {
+            final Request request = batch.get(0);
+            final String pictureFile = request.params.get(ModuleUserProfile.PICTURE_FILE);
+            boolean result = transport.send(request).call();
+            L.d("[Networking] Request " + request.storageId() + " sent?: " + result);
+            if (result && Boolean.TRUE.equals(storageForRequestQueue.removeRequest(request))) {
+                deletePicture(pictureFile);
+            }
+            return result;
+        }
+
+        final Boolean result = transport.sendBulk(batch);
+        L.d("[Networking] Bulk of [" + batch.size() + "] requests sent?: " + result);
+        if (Boolean.TRUE.equals(result)) {
+            for (Request request : batch) {
+                storageForRequestQueue.removeRequest(request);
+            }
+            return true;
+        } else if (result == null) {
+            return false;
+        }
+
+        L.w("[Networking] Bulk of [" + batch.size() + "] requests was rejected, splitting it");
+        return null;
+    }
+
+    /**
+     * Releases picked requests, so that they can be evicted or rewritten again, see {@link IStorageForRequestQueue#releaseRequest(Request)}
+     */
+    private void release(List<Request> batch) {
+        for (Request request : batch) {
+            storageForRequestQueue.releaseRequest(request);
+        }
+    }
+
+    /**
+     * Deletes picture side file of a request which is removed from the queue
+     */
+    private void deletePicture(String pictureFile) {
+        if (pictureFile != null && !new File(pictureFile).delete()) {
+            L.w("[Networking] Couldn't delete picture file " + pictureFile);
+        }
+    }
+
+    /**
+     * @return true if another request can be picked: window isn't full, no barrier and no failed request is in flight
+     */
+    private boolean canSend() {
+        synchronized (inFlight) {
+            return !failed && calls < maxInFlight && !inFlight.containsValue(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return maximum number of requests to send in a bulk call starting with the request
+     */
+    private int bulkLimit(Request request) {
+        synchronized (inFlight) {
+            Integer limit = bulkLimits.get(request.storageId());
+            return limit == null ? bulkMaxRequests : limit;
+        }
+    }
+
+    private Set<Long> reserved() {
+        synchronized (inFlight) {
+            return new HashSet<>(inFlight.keySet());
+        }
+    }
+
+    private int callsInFlight() {
+        synchronized (inFlight) {
+            return calls;
+        }
+    }
+
+    /**
+     * @return true if request must be sent after all requests before it and before all requests after it
+     */
+    static boolean isBarrier(Request request) {
+        return RequestLanes.isBarrier(request.params);
+    }
+
+    /**
+     * @return true if request can be sent to the default endpoint as part of a bulk call
+     */
+    static boolean isBulkable(Request request) {
+        return !isBarrier(request)
+            && (!request.params.has(Request.ENDPOINT) || "/i?".equals(request.params.get(Request.ENDPOINT)))
+            && !request.params.has(PredefinedUserPropertyKeys.PICTURE_PATH)
+            && !request.params.has(ModuleUserProfile.PICTURE_FILE)
+            && !request.params.has(ModuleUserProfile.PICTURE_BYTES);
+    }
+
     @Override
     public void stop(InternalConfig config) {
         shutdown = true;
         tasks.shutdown();
+        transport.stop();
+        scheduler.shutdownNow();
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(5, TimeUnit.SECONDS)) {
+                senders.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            L.e("[Networking] Interrupted while waiting for requests in flight " + e);
+            senders.shutdownNow();
+        }
     }
 
     @Override
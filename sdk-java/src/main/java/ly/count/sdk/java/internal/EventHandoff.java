@@ -0,0 +1,209 @@
+package ly.count.sdk.java.internal;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import ly.count.sdk.java.Config;
+
+/**
+ * Hands recorded events off from caller threads to a single recorder thread through an {@link EventRing},
+ * see {@link Config#setEventRecordingBuffer(int, Config.EventOverflowPolicy)}.
+ *
+ * Recorder thread passes events to the handler one by one in the order they were handed off, so the handler
+ * owns event id chaining, persistence and batching without locks. When the ring is full, {@link Config.EventOverflowPolicy}
+ * decides whether the caller waits for a free slot, the event is dropped or it is spilled to an unbounded queue
+ * which the recorder thread takes events from once the ring is empty.
+ */
+class EventHandoff {
+    /**
+     * How long recorder thread sleeps without being woken up, bounds the delay if a wake up is missed
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final EventRing<EventImpl> ring;
+    private final ConcurrentLinkedQueue<EventImpl> spill = new ConcurrentLinkedQueue<>();
+    private final Config.EventOverflowPolicy policy;
+    private final Consumer<EventImpl> handler;
+    private final Log L;
+    private final Thread thread;
+
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Number of events passed to the handler, only changed by the thread taking events
+     */
+    private volatile long handled = 0;
+    private volatile boolean sleeping = false;
+    private volatile boolean closed = false;
+    /**
+     * Set once recorder thread has finished, events handed off after that are taken by the thread handing them off
+     */
+    private volatile boolean terminated = false;
+
+    /**
+     * @param capacity ring capacity
+     * @param policy what to do with events when the ring is full
+     * @param handler receives events on the recorder thread
+     * @param L logger
+     */
+    EventHandoff(int capacity, @Nonnull Config.EventOverflowPolicy policy, @Nonnull Consumer<EventImpl> handler, @Nonnull Log L) {
+        this.ring = new EventRing<>(capacity);
+        this.policy = policy;
+        this.handler = handler;
+        this.L = L;
+        this.thread = new Thread(this::run, "event-recorder");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Hands event off to the recorder thread
+     *
+     * @param event event to record
+     * @return false if handoff is closed and the event should be recorded by the caller
+     */
+    boolean offer(@Nonnull EventImpl event) {
+        if (closed) {
+            return false;
+        }
+        boolean added = spill.isEmpty() && ring.offer(event);
+        if (!added && !overflow(event)) {
+            return false;
+        }
+        if (terminated) {
+            // closed while the event was being added, nobody else will take it
+            drain();
+        } else if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all events handed off before the call are passed to the handler.
+     * Returns right away when called by the handler itself.
+     */
+    void flush() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        long target = ring.added() + spilled.get();
+        // once recorder thread has finished, events are taken by the threads handing them off
+        while (handled < target && !terminated) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Stops recorder thread after it passes all events handed off so far to the handler,
+     * events handed off after this are recorded by their callers
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() == thread) {
+            // recorder thread finishes on its own once the handler returns
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            L.w("[EventHandoff] close, Interrupted while waiting for recorder thread");
+            Thread.currentThread().interrupt();
+        }
+        terminated = true;
+        drain();
+    }
+
+    /**
+     * @return number of events dropped because the ring was full, see {@link Config.EventOverflowPolicy#DROP}
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of events which went to the spill queue because the ring was full, see {@link Config.EventOverflowPolicy#SPILL}
+     */
+    long getSpilledCount() {
+        return spilled.get();
+    }
+
+    private boolean overflow(EventImpl event) {
+        switch (policy) {
+            case DROP:
+                long count = dropped.incrementAndGet();
+                if (Long.bitCount(count) == 1) {
+                    L.w("[EventHandoff] overflow, Event buffer is full, dropped [" + count + "] events so far");
+                }
+                return true;
+            case SPILL:
+                spilled.incrementAndGet();
+                spill.add(event);
+                return true;
+            default:
+                while (!ring.offer(event)) {
+                    if (closed) {
+                        return false;
+                    }
+                    LockSupport.unpark(thread);
+                    LockSupport.parkNanos(WAIT_NANOS);
+                }
+                return true;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            if (take()) {
+                continue;
+            }
+            if (closed) {
+                break;
+            }
+            sleeping = true;
+            if (ring.isEmpty() && spill.isEmpty() && !closed) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+            sleeping = false;
+        }
+        terminated = true;
+        drain();
+    }
+
+    /**
+     * Passes the next event to the handler, ring first, then spilled events
+     *
+     * @return false if there was no event to take
+     */
+    private boolean take() {
+        EventImpl event = ring.poll();
+        if (event == null) {
+            event = spill.poll();
+        }
+        if (event == null) {
+            return false;
+        }
+        try {
+            handler.accept(event);
+        } catch (RuntimeException e) {
+            L.e("[EventHandoff] take, Cannot record event [" + event.key + "], " + e);
+        }
+        handled++;
+        return true;
+    }
+
+    /**
+     * Takes remaining events after recorder thread has finished
+     */
+    private synchronized void drain() {
+        while (take()) {
+            // keep taking
+        }
+    }
+}
@@ -46,6 +46,17 @@ class EventImpl implements Event, JSONable {
     protected static final String CV_ID_KEY = "cvid";
     protected static final String PE_ID_KEY = "peid";
 
+    /**
+     * Fields in the order {@link #toJSON(Log)} puts them into a {@link JSONObject}
+     */
+    private static final String[] FIELDS = { KEY_KEY, COUNT_KEY, TIMESTAMP_KEY, HOUR, DAY_OF_WEEK, SEGMENTATION_KEY, SUM_KEY, DUR_KEY, ID_KEY, PV_ID_KEY, CV_ID_KEY, PE_ID_KEY };
+
+    /**
+     * Fields in the order {@link JSONObject#toString()} writes them, which is the iteration order of its {@link HashMap}.
+     * Any subset of fields keeps this relative order since the map never grows past its default capacity.
+     */
+    private static final String[] FIELD_ORDER = hashOrder(FIELDS);
+
     public interface EventRecorder {
         void recordEvent(Event event);
     }
@@ -76,6 +87,17 @@ class EventImpl implements Event, JSONable {
     }
 
     EventImpl(@Nonnull EventRecorder recorder, @Nonnull String key, @Nonnull Log givenL) {
+        this(recorder, key, TimeUtils.getCurrentInstant(), givenL);
+    }
+
+    private EventImpl(EventRecorder recorder, String key, TimeUtils.Instant instant, Log givenL) {
+        this(recorder, key, instant.timestamp, instant.hour, instant.dow, givenL);
+    }
+
+    /**
+     * Creates event recorded at the given time, used to restore serialized events
+     */
+    EventImpl(@Nonnull EventRecorder recorder, @Nonnull String key, long timestamp, int hour, int dow, @Nonnull Log givenL) {
         L = givenL;
         if (recorder == null) {
             invalid = true;
@@ -89,10 +111,9 @@ class EventImpl implements Event, JSONable {
         this.recorder = recorder;
         this.key = key;
         this.count = 1;
-        TimeUtils.Instant instant = TimeUtils.getCurrentInstant();
-        this.timestamp = instant.timestamp;
-        this.hour = instant.hour;
-        this.dow = instant.dow;
+        this.timestamp = timestamp;
+        this.hour = hour;
+        this.dow = dow;
     }
 
     @Override
@@ -259,6 +280,142 @@ class EventImpl implements Event, JSONable {
      * @return JSON string
      */
     public String toJSON(@Nonnull Log log) {
+        if (isStreamable()) {
+            StringBuilder out = new StringBuilder(128);
+            toJSON(new JsonWriter(out, false));
+            return out.toString();
+        }
+        return toJSONObject(log);
+    }
+
+    /**
+     * Serialize with a streaming writer, output is the same as of {@link #toJSON(Log)}.
+     * Must only be called for events which are {@link #isStreamable()}
+     *
+     * @param writer to write to
+     */
+    void toJSON(@Nonnull JsonWriter writer) {
+        writer.beginObject();
+        for (String field : FIELD_ORDER) {
+            switch (field) {
+                case KEY_KEY:
+                    if (key != null) {
+                        writer.name(KEY_KEY).value(key);
+                    }
+                    break;
+                case COUNT_KEY:
+                    writer.name(COUNT_KEY).value(count);
+                    break;
+                case TIMESTAMP_KEY:
+                    writer.name(TIMESTAMP_KEY).value(timestamp);
+                    break;
+                case HOUR:
+                    writer.name(HOUR).value(hour);
+                    break;
+                case DAY_OF_WEEK:
+                    writer.name(DAY_OF_WEEK).value(dow);
+                    break;
+                case SEGMENTATION_KEY:
+                    if (segmentation != null) {
+                        writeSegmentation(writer.name(SEGMENTATION_KEY));
+                    }
+                    break;
+                case SUM_KEY:
+                    if (sum != null) {
+                        writer.name(SUM_KEY).value(sum);
+                    }
+                    break;
+                case DUR_KEY:
+                    if (duration != null) {
+                        writer.name(DUR_KEY).value(duration);
+                    }
+                    break;
+                case ID_KEY:
+                    if (id != null) {
+                        writer.name(ID_KEY).value(id);
+                    }
+                    break;
+                case PV_ID_KEY:
+                    if (pvid != null) {
+                        writer.name(PV_ID_KEY).value(pvid);
+                    }
+                    break;
+                case CV_ID_KEY:
+                    if (cvid != null) {
+                        writer.name(CV_ID_KEY).value(cvid);
+                    }
+                    break;
+                case PE_ID_KEY:
+                    if (peid != null) {
+                        writer.name(PE_ID_KEY).value(peid);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Segmentation is copied into a map the way {@link JSONObject#JSONObject(Map)} does it, so members keep its order
+     */
+    private void writeSegmentation(JsonWriter writer) {
+        Map<String, Object> ordered = new HashMap<>(segmentation.size());
+        for (Map.Entry<String, Object> entry : segmentation.entrySet()) {
+            if (entry.getValue() != null) {
+                ordered.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+        writer.beginObject();
+        for (Map.Entry<String, Object> entry : ordered.entrySet()) {
+            writer.name(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                writer.value((String) value);
+            } else if (value instanceof Boolean) {
+                writer.value((boolean) (Boolean) value);
+            } else {
+                writer.value((Number) value);
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Whether the event can be written with {@link #toJSON(JsonWriter)}: all values are of types it supports
+     * and all numbers are finite, otherwise {@link JSONObject} is used to keep its behavior for such values
+     */
+    boolean isStreamable() {
+        if (!isFinite(sum) || !isFinite(duration)) {
+            return false;
+        }
+        if (segmentation != null) {
+            for (Object value : segmentation.values()) {
+                if (value != null && !(value instanceof String || value instanceof Boolean || value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Float)) {
+                    return false;
+                }
+                if (value instanceof Number && !isFinite(((Number) value).doubleValue())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String[] hashOrder(String[] fields) {
+        Map<String, Object> map = new HashMap<>();
+        for (String field : fields) {
+            map.put(field, field);
+        }
+        return map.keySet().toArray(new String[0]);
+    }
+
+    private static boolean isFinite(Double value) {
+        return value == null || !(value.isNaN() || value.isInfinite());
+    }
+
+    private String toJSONObject(@Nonnull Log log) {
         final JSONObject json = new JSONObject();
 
         try {
@@ -309,6 +466,16 @@ class EventImpl implements Event, JSONable {
      * @return JSON string
      */
     static EventImpl fromJSON(@Nonnull String jsonString, EventRecorder recorder, @Nonnull final Log L) {
+        if (recorder == null) {
+            recorder = event -> L.e("[EventImpl] Shouldn't record serialized events");
+        }
+
+        EventReader reader = EventReader.parse(jsonString);
+        if (reader != null) {
+            return reader.create(recorder, L);
+        }
+
+        // other shapes of JSON, like events with unknown fields or malformed ones, are left to org.json
         try {
             JSONObject json = new JSONObject(jsonString);
 
@@ -316,12 +483,7 @@ class EventImpl implements Event, JSONable {
                 L.e("[EventImpl][fromJSON] Bad JSON for deserialization of event: " + jsonString);
                 return null;
             }
-            EventImpl event = new EventImpl(recorder == null ? new EventRecorder() {
-                @Override
-                public void recordEvent(Event event) {
-                    L.e("[EventImpl] Shouldn't record serialized events");
-                }
-            } : recorder, json.getString(KEY_KEY), L);
+            EventImpl event = new EventImpl(recorder, json.getString(KEY_KEY), L);
 
             event.count = json.optInt(COUNT_KEY, 1);
             if (json.has(SUM_KEY) && !json.isNull(SUM_KEY)) {
@@ -0,0 +1,341 @@
+package ly.count.sdk.java.internal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+
+/**
+ * Append-only journal which backs {@link EventQueue}.
+ * Every recorded event is appended to {@code [CLY]_event_journal} as a single length-prefixed record,
+ * so recording an event costs the same regardless of how many events are already queued.
+ * The journal is truncated when the queue is drained into a request and replayed when the queue is restored,
+ * replay streams records one by one with {@link Replay}, so appending can continue while it's in progress.
+ * Event queue files written by previous SDK versions ({@code [CLY]_event_queue}) are imported on replay.
+ * When compression is enabled, payloads are compressed with {@link StorageCompression}, both kinds of records can be replayed.
+ *
+ * Record layout: payload length (4 bytes), CRC32 of payload (4 bytes), payload (UTF-8 event JSON, optionally compressed).
+ */
+class EventJournal {
+    static final String JOURNAL_FILE_NAME = "event_journal";
+
+    private static final int HEADER_SIZE = 4 + 4;
+
+    private final File file;
+    private final File legacyFile;
+    private final boolean compress;
+    private final Log L;
+
+    private FileChannel channel = null;
+
+    EventJournal(@Nonnull File directory, boolean compress, @Nonnull Log L) {
+        this.file = new File(directory, SDKStorage.FILE_NAME_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + JOURNAL_FILE_NAME);
+        this.legacyFile = new File(directory, SDKStorage.FILE_NAME_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + SDKStorage.EVENT_QUEUE_FILE_NAME);
+        this.compress = compress;
+        this.L = L;
+    }
+
+    /**
+     * Appends a single event to the journal
+     *
+     * @param eventJson serialized event
+     * @return true if event is written, false otherwise
+     */
+    synchronized boolean append(@Nonnull String eventJson) {
+        try {
+            ensureChannel();
+            writeRecord(channel, encode(eventJson));
+            return true;
+        } catch (IOException e) {
+            L.e("[EventJournal] append, Cannot write event, " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Prepares the journal for replay and opens a reader of events appended so far.
+     * Incomplete record at the end of the journal, left by an interrupted write, is truncated.
+     * Events appended after this call are not returned by the reader.
+     *
+     * @return reader of serialized events, must be closed
+     */
+    synchronized @Nonnull Replay openReplay() {
+        closeChannel();
+        importLegacyFile();
+
+        long valid = scan(file, L);
+        if (valid >= 0 && valid < file.length()) {
+            L.w("[EventJournal] openReplay, Journal has [" + (file.length() - valid) + "] bytes of incomplete data, truncating");
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                ch.truncate(valid);
+            } catch (IOException e) {
+                L.e("[EventJournal] openReplay, Cannot truncate journal, " + e);
+            }
+        }
+        return new Replay(file, Math.max(valid, 0), L);
+    }
+
+    /**
+     * Reads all events from the journal in the order they were appended, see {@link #openReplay()}
+     *
+     * @return list of serialized events
+     */
+    @Nonnull List<String> replay() {
+        List<String> events = new ArrayList<>();
+        try (Replay replay = openReplay()) {
+            String event;
+            while ((event = replay.next()) != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Removes all events from the journal
+     */
+    synchronized void truncate() {
+        try {
+            if (channel != null) {
+                channel.truncate(0);
+            } else if (file.exists()) {
+                try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    ch.truncate(0);
+                }
+            }
+        } catch (IOException e) {
+            L.e("[EventJournal] truncate, Cannot truncate journal, " + e);
+        }
+    }
+
+    /**
+     * Removes the journal file
+     */
+    synchronized void clear() {
+        closeChannel();
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            L.w("[EventJournal] clear, Couldn't delete journal, " + e);
+        }
+    }
+
+    /**
+     * Forces appended events to disk
+     *
+     * @return true if forced or there is nothing to force, false otherwise
+     */
+    synchronized boolean sync() {
+        if (channel == null) {
+            return true;
+        }
+        try {
+            channel.force(false);
+            return true;
+        } catch (IOException e) {
+            L.e("[EventJournal] sync, Cannot force journal, " + e);
+            return false;
+        }
+    }
+
+    synchronized void close() {
+        closeChannel();
+    }
+
+    /**
+     * Reads events of a journal without modifying it
+     *
+     * @param directory storage directory
+     * @param L logger
+     * @return list of serialized events
+     */
+    static @Nonnull List<String> snapshot(@Nonnull File directory, @Nonnull Log L) {
+        File file = new File(directory, SDKStorage.FILE_NAME_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + JOURNAL_FILE_NAME);
+        List<String> events = new ArrayList<>();
+        try (Replay replay = new Replay(file, Math.max(scan(file, L), 0), L)) {
+            String event;
+            while ((event = replay.next()) != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private void importLegacyFile() {
+        if (!legacyFile.exists()) {
+            return;
+        }
+
+        try {
+            String content = Utils.readFileContent(legacyFile, L);
+            if (!content.isEmpty()) {
+                ensureChannel();
+                for (String event : content.split(EventQueue.DELIMITER)) {
+                    writeRecord(channel, encode(event));
+                }
+                closeChannel();
+            }
+            Files.deleteIfExists(legacyFile.toPath());
+            L.d("[EventJournal] importLegacyFile, Imported legacy event queue");
+        } catch (IOException e) {
+            L.e("[EventJournal] importLegacyFile, Cannot import legacy event queue, " + e);
+            closeChannel();
+        }
+    }
+
+    private byte[] encode(String eventJson) {
+        byte[] data = eventJson.getBytes(StandardCharsets.UTF_8);
+        return compress ? StorageCompression.pack(data) : data;
+    }
+
+    private void ensureChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                L.w("[EventJournal] closeChannel, Couldn't close journal channel " + e);
+            }
+            channel = null;
+        }
+    }
+
+    private static void writeRecord(FileChannel channel, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        buffer.putInt(data.length).putInt((int) crc.getValue()).put(data);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Walks record headers of a journal file without reading payloads
+     *
+     * @return length of structurally complete records, -1 if file cannot be read
+     */
+    private static long scan(File file, Log L) {
+        if (!file.exists()) {
+            return -1;
+        }
+
+        long size = file.length();
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (size - position >= HEADER_SIZE) {
+                int length = in.readInt();
+                in.readInt();
+                if (length < 0 || length > size - position - HEADER_SIZE) {
+                    break;
+                }
+                skipFully(in, length);
+                position += HEADER_SIZE + length;
+            }
+        } catch (IOException e) {
+            L.e("[EventJournal] scan, Cannot read journal, " + e);
+            return -1;
+        }
+        return position;
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * Sequential reader of records written before it was opened with {@link #openReplay()}.
+     * Records with checksum mismatch are skipped.
+     */
+    static final class Replay implements Closeable {
+        private final DataInputStream in;
+        private final Log L;
+        private long remaining;
+
+        private Replay(File file, long limit, Log L) {
+            this.L = L;
+            DataInputStream stream = null;
+            if (limit > 0) {
+                try {
+                    stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                } catch (IOException e) {
+                    L.e("[EventJournal] Replay, Cannot open journal, " + e);
+                }
+            }
+            this.in = stream;
+            this.remaining = stream == null ? 0 : limit;
+        }
+
+        /**
+         * @return next serialized event or null if there are no more events
+         */
+        String next() {
+            try {
+                while (remaining >= HEADER_SIZE) {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    remaining -= HEADER_SIZE;
+                    if (length < 0 || length > remaining) {
+                        remaining = 0;
+                        return null;
+                    }
+
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    remaining -= length;
+
+                    CRC32 crc = new CRC32();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        L.w("[EventJournal] Replay, Skipping record with checksum mismatch");
+                        continue;
+                    }
+                    payload = StorageCompression.unpack(payload, L);
+                    if (payload != null) {
+                        return new String(payload, StandardCharsets.UTF_8);
+                    }
+                }
+            } catch (IOException e) {
+                L.e("[EventJournal] Replay, Cannot read journal, " + e);
+                remaining = 0;
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    L.w("[EventJournal] Replay, Couldn't close journal " + e);
+                }
+            }
+        }
+    }
+}
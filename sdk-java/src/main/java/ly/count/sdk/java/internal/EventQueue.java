@@ -1,9 +1,11 @@
 package ly.count.sdk.java.internal;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import javax.annotation.Nonnull;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 public class EventQueue {
 
@@ -11,7 +13,23 @@ public class EventQueue {
     Log L;
     List<EventImpl> eventQueueMemoryCache;
 
+    /**
+     * Events restored from disk, kept serialized until they are drained into a request.
+     * They are always older than events in {@link #eventQueueMemoryCache}.
+     */
+    List<String> restoredEvents;
+    private volatile CountDownLatch restoring = null;
+
+    /**
+     * Serialized events which are queued but not yet appended to the journal, guarded by {@link #lockEQ}
+     */
+    private List<String> unjournaled = new ArrayList<>();
+
     protected final Object lockEQ = new Object();
+    /**
+     * Orders journal writes, always taken before {@link #lockEQ} so that disk I/O doesn't happen under it
+     */
+    private final Object lockJournal = new Object();
 
     protected EventQueue() {
     }
@@ -19,6 +37,7 @@ public class EventQueue {
     protected EventQueue(@Nonnull Log logger, int eventThreshold) {
         L = logger;
         eventQueueMemoryCache = new ArrayList<>(eventThreshold);
+        restoredEvents = new ArrayList<>();
     }
 
     /**
@@ -26,86 +45,241 @@ public class EventQueue {
      */
     protected int eqSize() {
         synchronized (lockEQ) {
-            return eventQueueMemoryCache.size();
+            return restoredEvents.size() + eventQueueMemoryCache.size();
         }
     }
 
     protected List<EventImpl> getEQ() {
+        awaitRestore();
         synchronized (lockEQ) {
-            return new ArrayList<>(eventQueueMemoryCache);
+            List<EventImpl> events = new ArrayList<>(restoredEvents.size() + eventQueueMemoryCache.size());
+            for (String json : restoredEvents) {
+                EventImpl event = EventImpl.fromJSON(json, null, L);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+            events.addAll(eventQueueMemoryCache);
+            return events;
         }
     }
 
     void addEvent(@Nonnull final EventImpl event) {
+        enqueue(event);
+        appendToJournal();
+    }
+
+    /**
+     * Adds event to the queue without writing it to the journal,
+     * {@link #appendToJournal()} must be called afterwards, outside of any lock held by the caller
+     */
+    void enqueue(@Nonnull final EventImpl event) {
         if (event == null) {
             L.w("[EventQueue] Event is null, skipping");
             return;
         }
         L.d("[EventQueue] Adding event: " + event.key);
+        final String eventJson = event.toJSON(L);
         synchronized (lockEQ) {
             eventQueueMemoryCache.add(event);
-            writeEventQueueToStorage();
+            unjournaled.add(eventJson);
         }
     }
 
     /**
-     * set the new value in event data storage
+     * Appends queued events to the journal in the order they were queued.
+     * Threads recording events only wait for each other here, adding to the queue doesn't wait for the disk.
      */
-    void writeEventQueueToStorage() {
-        if (eventQueueMemoryCache.isEmpty()) {
-            L.d("[EventQueue] No events to write to disk");
-            return;
+    void appendToJournal() {
+        synchronized (lockJournal) {
+            final List<String> events;
+            synchronized (lockEQ) {
+                if (unjournaled.isEmpty()) {
+                    return;
+                }
+                events = unjournaled;
+                unjournaled = new ArrayList<>();
+            }
+            SDKStorage storage = SDKCore.instance.sdkStorage;
+            for (String json : events) {
+                storage.appendEventQueue(json);
+            }
         }
+    }
 
-        final String eventQueue = joinEvents(eventQueueMemoryCache);
-
-        L.d("[EventQueue] Setting event data: " + eventQueue);
-        SDKCore.instance.sdkStorage.storeEventQueue(eventQueue);
+    /**
+     * Rewrites event journal with the events currently in the queue
+     */
+    void writeEventQueueToStorage() {
+        awaitRestore();
+        synchronized (lockJournal) {
+            synchronized (lockEQ) {
+                if (restoredEvents.isEmpty() && eventQueueMemoryCache.isEmpty()) {
+                    L.d("[EventQueue] No events to write to disk");
+                    return;
+                }
+                rewrite(SDKCore.instance.sdkStorage);
+            }
+        }
     }
 
     /**
-     * Restores events from disk
+     * Restores events from disk, blocks until all of them are read
      */
     void restoreFromDisk() {
-        synchronized (lockEQ) {
-            L.d("[EventQueue] Restoring events from disk");
-            eventQueueMemoryCache.clear();
+        L.d("[EventQueue] Restoring events from disk");
+        SDKStorage storage = SDKCore.instance.sdkStorage;
+        restore(storage, storage.openEventReplay());
+    }
 
-            final String[] array = getEvents();
-            for (String s : array) {
+    /**
+     * Restores events from disk on a background thread.
+     * Journal is opened right away, so events added while restoring are queued after the restored ones.
+     * Operations which need the whole queue wait for the restore to finish.
+     */
+    void restoreFromDiskAsync() {
+        L.d("[EventQueue] restoreFromDiskAsync, Restoring events from disk in background");
+        final SDKStorage storage = SDKCore.instance.sdkStorage;
+        final EventJournal.Replay replay = storage.openEventReplay();
+        final CountDownLatch latch = new CountDownLatch(1);
+        restoring = latch;
 
-                final EventImpl event = EventImpl.fromJSON(s, (ev) -> {
-                }, L);
-                if (event != null) {
-                    eventQueueMemoryCache.add(event);
+        Thread thread = new Thread(() -> {
+            try {
+                restore(storage, replay);
+            } catch (RuntimeException e) {
+                L.e("[EventQueue] restoreFromDiskAsync, Cannot restore events, " + e);
+            } finally {
+                latch.countDown();
+            }
+        }, "event-restore");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads serialized events from the journal, validating them without deserialization into {@link EventImpl}.
+     * Journal keeps events in the order they were recorded, so no sorting is needed.
+     */
+    private void restore(SDKStorage storage, EventJournal.Replay replay) {
+        final List<String> events = new ArrayList<>();
+        int dropped = 0;
+        try {
+            String json;
+            while ((json = replay.next()) != null) {
+                if (isValid(json)) {
+                    events.add(json);
+                } else {
+                    dropped++;
+                }
+            }
+        } finally {
+            replay.close();
+        }
+
+        synchronized (lockJournal) {
+            synchronized (lockEQ) {
+                restoredEvents = events;
+                if (dropped > 0) {
+                    L.w("[EventQueue] restore, Dropped [" + dropped + "] corrupted events");
+                    rewrite(storage);
                 }
             }
-            // order the events from least to most recent
-            eventQueueMemoryCache.sort((e1, e2) -> (int) (e1.timestamp - e2.timestamp));
         }
+        L.d("[EventQueue] restore, Restored [" + events.size() + "] events");
     }
 
-    @Nonnull String joinEvents(@Nonnull final Collection<EventImpl> collection) {
-        final List<String> strings = new ArrayList<>();
-        for (EventImpl e : collection) {
-            strings.add(e.toJSON(L));
+    private boolean isValid(String json) {
+        if (EventReader.parse(json) != null) {
+            return true;
         }
-        return Utils.join(strings, EventQueue.DELIMITER);
+        try {
+            JSONObject object = new JSONObject(json);
+            if (object.has(EventImpl.KEY_KEY) && !object.isNull(EventImpl.KEY_KEY)) {
+                return true;
+            }
+        } catch (JSONException ignored) {
+        }
+        L.e("[EventQueue] isValid, Bad JSON for deserialization of event: " + json);
+        return false;
     }
 
     /**
-     * Returns an unsorted array of the current stored event JSON strings.
+     * Rewrites journal with the queue contents, must be called under {@link #lockJournal} and {@link #lockEQ}
      */
-    private synchronized @Nonnull String[] getEvents() {
-        L.d("[EventQueue] Getting events from disk");
-        final String joinedEventsStr = SDKCore.instance.sdkStorage.readEventQueue();
-        return joinedEventsStr.isEmpty() ? new String[0] : joinedEventsStr.split(DELIMITER);
+    private void rewrite(SDKStorage storage) {
+        unjournaled.clear();
+        storage.clearEventQueue();
+        for (String json : restoredEvents) {
+            storage.appendEventQueue(json);
+        }
+        for (EventImpl event : eventQueueMemoryCache) {
+            storage.appendEventQueue(event.toJSON(L));
+        }
+    }
+
+    /**
+     * Waits for background restore started with {@link #restoreFromDiskAsync()} to finish
+     */
+    private void awaitRestore() {
+        CountDownLatch latch = restoring;
+        if (latch == null) {
+            return;
+        }
+        try {
+            latch.await();
+            restoring = null;
+        } catch (InterruptedException e) {
+            L.w("[EventQueue] awaitRestore, Interrupted while waiting for events to be restored");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes all events from the queue and returns them, restored events first
+     *
+     * @return serialized events which were in the queue
+     */
+    @Nonnull List<String> drain() {
+        final List<String> events = new ArrayList<>();
+        for (Object event : drainEvents()) {
+            events.add(event instanceof EventImpl ? ((EventImpl) event).toJSON(L) : (String) event);
+        }
+        return events;
+    }
+
+    /**
+     * Removes all events from the queue and returns them, restored events first.
+     * Restored events are returned serialized, others as {@link EventImpl} so they can be written straight into a request
+     *
+     * @return events which were in the queue, as accepted by {@link Params.Arr#put(java.util.Collection)}
+     */
+    @Nonnull List<Object> drainEvents() {
+        awaitRestore();
+        synchronized (lockJournal) {
+            final List<Object> events;
+            synchronized (lockEQ) {
+                events = new ArrayList<>(restoredEvents.size() + eventQueueMemoryCache.size());
+                events.addAll(restoredEvents);
+                events.addAll(eventQueueMemoryCache);
+                restoredEvents.clear();
+                eventQueueMemoryCache.clear();
+                unjournaled.clear();
+            }
+            SDKCore.instance.sdkStorage.clearEventQueue();
+            return events;
+        }
     }
 
     public void clear() {
-        SDKCore.instance.sdkStorage.storeEventQueue("");
-        synchronized (lockEQ) {
-            eventQueueMemoryCache.clear();
+        awaitRestore();
+        synchronized (lockJournal) {
+            synchronized (lockEQ) {
+                restoredEvents.clear();
+                eventQueueMemoryCache.clear();
+                unjournaled.clear();
+            }
+            SDKCore.instance.sdkStorage.clearEventQueue();
         }
     }
 }
@@ -0,0 +1,439 @@
+package ly.count.sdk.java.internal;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * Reads events serialized with {@link EventImpl#toJSON(Log)} straight into event fields, without building
+ * a {@link org.json.JSONObject} and checking segmentation value types afterwards.
+ *
+ * Only strict JSON in the shape events are written in is accepted: known fields with values of their types,
+ * segmentation with string, boolean and number values. Anything else, like unknown fields, nested segmentation values,
+ * duplicate keys or lenient syntax makes {@link #parse(String)} return null, so callers fall back to {@code org.json}
+ * which decides how to handle it. Values are the same as {@code org.json} would produce: decimal numbers
+ * in segmentation are {@link BigDecimal}, integers are {@link Integer} or {@link Long}.
+ */
+final class EventReader {
+    /**
+     * Integer tokens up to this length always fit into a long
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * Fields in the order {@link #value(int)} reads them
+     */
+    private static final String[] FIELDS = { EventImpl.KEY_KEY, EventImpl.COUNT_KEY, EventImpl.TIMESTAMP_KEY, EventImpl.HOUR, EventImpl.DAY_OF_WEEK, EventImpl.SEGMENTATION_KEY,
+        EventImpl.SUM_KEY, EventImpl.DUR_KEY, EventImpl.ID_KEY, EventImpl.PV_ID_KEY, EventImpl.CV_ID_KEY, EventImpl.PE_ID_KEY };
+
+    private final String json;
+    private int position = 0;
+
+    /**
+     * Start of the last number token, which ends at {@link #position}
+     */
+    private int start;
+    private boolean decimal;
+    private long integer;
+
+    private String key;
+    private int count = 1;
+    private Double sum;
+    private Double duration;
+    private long timestamp;
+    private int hour;
+    private int dow;
+    private String id;
+    private String pvid;
+    private String cvid;
+    private String peid;
+    private Map<String, Object> segmentation;
+
+    private EventReader(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Parses serialized event
+     *
+     * @param json event JSON
+     * @return reader with event fields, null if JSON is not in the shape events are written in
+     */
+    static EventReader parse(@Nonnull String json) {
+        EventReader reader = new EventReader(json);
+        return reader.event() ? reader : null;
+    }
+
+    /**
+     * Creates event with parsed fields, same as {@link EventImpl#fromJSON(String, EventImpl.EventRecorder, Log)} does
+     */
+    EventImpl create(@Nonnull EventImpl.EventRecorder recorder, @Nonnull Log L) {
+        EventImpl event = new EventImpl(recorder, key, timestamp, hour, dow, L);
+        event.count = count;
+        event.sum = sum;
+        event.duration = duration;
+        event.id = id;
+        event.pvid = pvid;
+        event.cvid = cvid;
+        event.peid = peid;
+        event.segmentation = segmentation;
+        return event;
+    }
+
+    private boolean event() {
+        if (next() != '{') {
+            return false;
+        }
+        int seen = 0;
+        int c = next();
+        if (c != '}') {
+            position--;
+            do {
+                String name = string();
+                if (name == null || next() != ':') {
+                    return false;
+                }
+                int field = field(name);
+                if (field < 0 || (seen & (1 << field)) != 0 || !value(field)) {
+                    return false;
+                }
+                seen |= 1 << field;
+            } while ((c = next()) == ',');
+        }
+        return c == '}' && next() == -1 && key != null;
+    }
+
+    private static int field(String name) {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads value of a field from {@link #FIELDS}
+     *
+     * @return false if value type is not the one the field is written with
+     */
+    private boolean value(int field) {
+        switch (field) {
+            case 0:
+                return (key = string()) != null;
+            case 1:
+                if (!integer(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                    return false;
+                }
+                count = (int) integer;
+                return true;
+            case 2:
+                if (!integer(Long.MIN_VALUE, Long.MAX_VALUE)) {
+                    return false;
+                }
+                timestamp = integer;
+                return true;
+            case 3:
+                if (!integer(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                    return false;
+                }
+                hour = (int) integer;
+                return true;
+            case 4:
+                if (!integer(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                    return false;
+                }
+                dow = (int) integer;
+                return true;
+            case 5:
+                return literal("null") || segmentation();
+            case 6:
+                if (literal("null")) {
+                    return true;
+                }
+                if (!number()) {
+                    return false;
+                }
+                sum = doubleValue();
+                return true;
+            case 7:
+                if (literal("null")) {
+                    return true;
+                }
+                if (!number()) {
+                    return false;
+                }
+                duration = doubleValue();
+                return true;
+            case 8:
+                return literal("null") || (id = string()) != null;
+            case 9:
+                return literal("null") || (pvid = string()) != null;
+            case 10:
+                return literal("null") || (cvid = string()) != null;
+            default:
+                return literal("null") || (peid = string()) != null;
+        }
+    }
+
+    /**
+     * Reads segmentation object, null values are not written by events and are left to {@code org.json}
+     */
+    private boolean segmentation() {
+        if (next() != '{') {
+            return false;
+        }
+        segmentation = new HashMap<>();
+        int c = next();
+        if (c == '}') {
+            return true;
+        }
+        position--;
+        do {
+            String name = string();
+            if (name == null || next() != ':') {
+                return false;
+            }
+            Object value;
+            c = next();
+            position--;
+            if (c == '"') {
+                value = string();
+            } else if (literal("true")) {
+                value = Boolean.TRUE;
+            } else if (literal("false")) {
+                value = Boolean.FALSE;
+            } else if (number()) {
+                value = numberValue();
+            } else {
+                return false;
+            }
+            if (value == null || segmentation.put(name, value) != null) {
+                return false;
+            }
+        } while ((c = next()) == ',');
+        return c == '}';
+    }
+
+    /**
+     * Reads number token, sets {@link #start} and {@link #decimal}, position is left after the token
+     *
+     * @return false if there is no strict JSON number at position
+     */
+    private boolean number() {
+        next();
+        start = --position;
+        decimal = false;
+        if (peek() == '-') {
+            position++;
+        }
+        if (peek() == '0') {
+            position++;
+        } else if (!digits()) {
+            return false;
+        }
+        if (peek() == '.') {
+            position++;
+            decimal = true;
+            if (!digits()) {
+                return false;
+            }
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            position++;
+            decimal = true;
+            if (peek() == '+' || peek() == '-') {
+                position++;
+            }
+            if (!digits()) {
+                return false;
+            }
+        }
+        // "-0" is a decimal for org.json, it keeps the sign
+        decimal |= position - start == 2 && json.charAt(start) == '-' && json.charAt(start + 1) == '0';
+        return true;
+    }
+
+    /**
+     * Reads integer in range into {@link #integer}
+     */
+    private boolean integer(long min, long max) {
+        return number() && !decimal && longValue() && integer >= min && integer <= max;
+    }
+
+    /**
+     * Parses integer token into {@link #integer}
+     *
+     * @return false if it doesn't fit into a long
+     */
+    private boolean longValue() {
+        if (position - start > MAX_DIGITS) {
+            try {
+                integer = Long.parseLong(json.substring(start, position));
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        boolean negative = json.charAt(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < position; i++) {
+            value = value * 10 + (json.charAt(i) - '0');
+        }
+        integer = negative ? -value : value;
+        return true;
+    }
+
+    private double doubleValue() {
+        if (decimal) {
+            return Double.parseDouble(json.substring(start, position));
+        }
+        // long to double conversion rounds the same way
+        return longValue() ? (double) integer : Double.parseDouble(json.substring(start, position));
+    }
+
+    /**
+     * Same types as {@code JSONObject.stringToNumber}
+     *
+     * @return number, null if it doesn't fit into a long
+     */
+    private Number numberValue() {
+        if (decimal) {
+            BigDecimal value = new BigDecimal(json.substring(start, position));
+            if (json.charAt(start) == '-' && value.signum() == 0) {
+                return -0.0;
+            }
+            return value;
+        }
+        if (!longValue()) {
+            return null;
+        }
+        if (integer == (int) integer) {
+            return (int) integer;
+        }
+        return integer;
+    }
+
+    /**
+     * Reads quoted string
+     *
+     * @return string, null if there is no string at position or it has escapes {@code org.json} doesn't accept
+     */
+    private String string() {
+        if (next() != '"') {
+            return null;
+        }
+        int begin = position;
+        StringBuilder builder = null;
+        while (position < json.length()) {
+            char c = json.charAt(position++);
+            if (c == '"') {
+                if (builder == null) {
+                    return json.substring(begin, position - 1);
+                }
+                return builder.append(json, begin, position - 1).toString();
+            }
+            if (c == '\n' || c == '\r' || c == 0) {
+                return null;
+            }
+            if (c == '\\') {
+                if (builder == null) {
+                    builder = new StringBuilder(position - begin + 16);
+                }
+                builder.append(json, begin, position - 1);
+                int escaped = escape();
+                if (escaped < 0) {
+                    return null;
+                }
+                builder.append((char) escaped);
+                begin = position;
+            }
+        }
+        return null;
+    }
+
+    private int escape() {
+        if (position >= json.length()) {
+            return -1;
+        }
+        char c = json.charAt(position++);
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            case 'u':
+                if (position + 4 > json.length()) {
+                    return -1;
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(json.charAt(position++), 16);
+                    if (digit < 0) {
+                        return -1;
+                    }
+                    value = value << 4 | digit;
+                }
+                return value;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Reads literal like {@code true} or {@code null} if it is at position
+     */
+    private boolean literal(String literal) {
+        next();
+        position--;
+        if (!json.startsWith(literal, position)) {
+            return false;
+        }
+        int end = position + literal.length();
+        if (end < json.length() && Character.isLetterOrDigit(json.charAt(end))) {
+            return false;
+        }
+        position = end;
+        return true;
+    }
+
+    private boolean digits() {
+        int begin = position;
+        while (position < json.length() && json.charAt(position) >= '0' && json.charAt(position) <= '9') {
+            position++;
+        }
+        return position > begin;
+    }
+
+    private int peek() {
+        return position < json.length() ? json.charAt(position) : -1;
+    }
+
+    /**
+     * Skips whitespace the way {@code JSONTokener.nextClean} does
+     *
+     * @return next char, -1 at the end
+     */
+    private int next() {
+        while (position < json.length()) {
+            char c = json.charAt(position++);
+            if (c > ' ' || c == 0) {
+                return c;
+            }
+        }
+        position++;
+        return -1;
+    }
+}
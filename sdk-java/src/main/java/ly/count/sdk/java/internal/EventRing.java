@@ -0,0 +1,111 @@
+package ly.count.sdk.java.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nonnull;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ *
+ * Each slot has a sequence number telling whose turn it is: a producer claims the next slot with a single CAS
+ * on {@link #tail} once the slot is free, writes the item and publishes it by advancing the slot sequence.
+ * The consumer takes items in claim order and frees slots for the next lap, so it needs no atomic read-modify-write.
+ * {@link #poll()} must only be called by one thread at a time.
+ *
+ * @param <E> item type
+ */
+final class EventRing<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next position to take, only accessed by the consumer
+     */
+    private long head = 0;
+
+    /**
+     * @param capacity minimum number of items the ring holds, rounded up to a power of two
+     */
+    EventRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        items = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds item if there is a free slot
+     *
+     * @param item item to add
+     * @return false if the ring is full
+     */
+    boolean offer(@Nonnull E item) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.lazySet(index, item);
+                    // ordered store is enough, claiming CAS already made the item visible as pending to the consumer
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // slot still holds an item from the previous lap
+                return false;
+            }
+            // otherwise another producer has claimed this position, retry with the new tail
+        }
+    }
+
+    /**
+     * Takes the oldest published item, consumer only
+     *
+     * @return item, null if the ring is empty or the oldest claimed item is not published yet
+     */
+    E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E item = items.get(index);
+        items.lazySet(index, null);
+        sequences.lazySet(index, position + mask + 1);
+        head = position + 1;
+        return item;
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return true if no items are claimed and not taken yet
+     */
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * @return number of items added since the ring was created
+     */
+    long added() {
+        return tail.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,102 @@
+package ly.count.sdk.java.internal;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import ly.count.sdk.java.Config;
+
+/**
+ * Decides when records written to {@link RequestLog} and {@link EventJournal} are forced to disk,
+ * according to {@link Config.DurabilityMode} set with {@link Config#setStorageDurability(Config.DurabilityMode)}.
+ * Writers report how many records they have written with {@link #written(int)},
+ * in {@link Config.DurabilityMode#BATCHED} mode a single force covers all records written since the previous one.
+ */
+class GroupCommit {
+    private final Config.DurabilityMode mode;
+    private final int maxRecords;
+    private final long intervalMs;
+    private final Runnable force;
+    private final Log L;
+
+    private ScheduledExecutorService scheduler = null;
+    private ScheduledFuture<?> scheduled = null;
+    private int pending = 0;
+    private long forces = 0;
+
+    GroupCommit(@Nonnull InternalConfig config, @Nonnull Runnable force, @Nonnull Log L) {
+        this.mode = config.getStorageDurability();
+        this.maxRecords = config.getStorageCommitMaxRecords();
+        this.intervalMs = config.getStorageCommitIntervalMs();
+        this.force = force;
+        this.L = L;
+    }
+
+    /**
+     * Reports records written to page cache, forces them right away or schedules a force depending on the mode
+     *
+     * @param records number of records written
+     */
+    synchronized void written(int records) {
+        if (records <= 0 || mode == Config.DurabilityMode.NONE) {
+            return;
+        }
+        pending += records;
+        if (mode == Config.DurabilityMode.SYNC || pending >= maxRecords) {
+            commit();
+        } else if (scheduled == null) {
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "storage-commit");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            scheduled = scheduler.schedule(this::commit, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forces all pending records to disk
+     */
+    synchronized void commit() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        if (pending == 0) {
+            return;
+        }
+        L.v("[GroupCommit] commit, Forcing [" + pending + "] records");
+        pending = 0;
+        forces++;
+        try {
+            force.run();
+        } catch (RuntimeException e) {
+            L.e("[GroupCommit] commit, Cannot force records, " + e);
+        }
+    }
+
+    /**
+     * Forces pending records and stops scheduling
+     */
+    synchronized void stop() {
+        commit();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return number of forces since creation
+     */
+    synchronized long forceCount() {
+        return forces;
+    }
+
+    boolean isForcing() {
+        return mode != Config.DurabilityMode.NONE;
+    }
+}
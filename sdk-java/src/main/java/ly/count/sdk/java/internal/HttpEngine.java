@@ -0,0 +1,125 @@
+package ly.count.sdk.java.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+
+/**
+ * HTTP client {@link Transport} makes its calls with.
+ * Engines keep connections alive between calls: a {@link Response} has to be closed once its body is read,
+ * which drains what's left of the body and returns the connection for reuse.
+ * {@link #create(InternalConfig, SSLContext, Log)} picks {@code java.net.http.HttpClient} based engine on Java 11+
+ * and {@link UrlConnectionEngine} otherwise.
+ */
+interface HttpEngine {
+    int STREAMING_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Sends a call and waits for response headers
+     *
+     * @param call call to send
+     * @return response which must be closed
+     * @throws IOException if call cannot be sent or no response is received
+     */
+    Response execute(@Nonnull Call call) throws IOException;
+
+    /**
+     * Writes request body
+     */
+    interface Body {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    /**
+     * HTTP call: GET without a body or POST with a body
+     */
+    final class Call {
+        final String url;
+        final Body body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+        /**
+         * Whether body is streamed as it's written instead of being buffered, for large bodies like user pictures
+         */
+        boolean streaming = false;
+        int connectTimeout;
+        int readTimeout;
+
+        /**
+         * @param url full url including query for GET calls
+         * @param body body of POST call, null for GET call
+         */
+        Call(@Nonnull String url, @Nullable Body body) {
+            this.url = url;
+            this.body = body;
+        }
+
+        boolean isPost() {
+            return body != null;
+        }
+
+        Call header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    /**
+     * Response of a call, its connection is reused once it's closed
+     */
+    interface Response extends Closeable {
+        int code();
+
+        /**
+         * @return value of the header, null if there is no such header
+         */
+        String header(String name);
+
+        /**
+         * @return response body, empty stream if there is no body
+         */
+        InputStream body() throws IOException;
+    }
+
+    /**
+     * Reads what's left of a response body so that its connection can be reused, then closes it
+     */
+    static void drain(InputStream body) throws IOException {
+        if (body == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            while (body.read(buffer) != -1) {
+                // discard
+            }
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Picks engine for the running Java version
+     *
+     * @param sslContext context with certificate pinning, null for default one
+     */
+    static HttpEngine create(@Nonnull InternalConfig config, @Nullable SSLContext sslContext, @Nonnull Log L) {
+        try {
+            Class.forName("java.net.http.HttpClient");
+            Class<?> engine = Class.forName(HttpEngine.class.getPackage().getName() + ".HttpClientEngine");
+            HttpEngine instance = (HttpEngine) engine.getDeclaredConstructor(InternalConfig.class, SSLContext.class).newInstance(config, sslContext);
+            L.d("[HttpEngine] create, Using HttpClient engine");
+            return instance;
+        } catch (ClassNotFoundException | LinkageError e) {
+            L.v("[HttpEngine] create, HttpClient is not available, using HttpURLConnection engine");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            L.w("[HttpEngine] create, Cannot create HttpClient engine, using HttpURLConnection engine " + e);
+        }
+        return new UrlConnectionEngine(sslContext);
+    }
+}
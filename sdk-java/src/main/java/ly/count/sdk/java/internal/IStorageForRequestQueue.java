@@ -1,7 +1,20 @@
 package ly.count.sdk.java.internal;
 
+import java.util.Set;
+
 public interface IStorageForRequestQueue {
-    Request getNextRequest();
+    /**
+     * Returns next request to send, it stays reserved until it's removed or released with {@link #releaseRequest(Request)}
+     *
+     * @param reserved ids of requests which are being sent and must be skipped
+     * @return oldest request which is not reserved, null if there is none
+     */
+    Request getNextRequest(Set<Long> reserved);
+
+    /**
+     * Releases request returned by {@link #getNextRequest(Set)} which wasn't removed
+     */
+    void releaseRequest(Request request);
 
     Boolean removeRequest(Request request);
 
@@ -1,22 +1,35 @@
 package ly.count.sdk.java.internal;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.util.concurrent.CompletableFuture;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
- * Async task for making immediate server requests
+ * Async task for making immediate server requests, executed by {@link ImmediateRequests} of the transport
  */
 class ImmediateRequestMaker implements ImmediateRequestI {
+    /**
+     * How long to delay a request made right after something else has to be done, like a device id change
+     */
+    static final long REQUEST_DELAY = 500;
 
-    private InternalImmediateRequestCallback callback;
     private Log L;
 
     @Override
     public void doWork(String requestData, String customEndpoint, Transport cp, boolean requestShouldBeDelayed, boolean networkingIsEnabled, InternalImmediateRequestCallback callback, Log log) {
-        CompletableFuture.supplyAsync(() -> doInBackground(requestData, customEndpoint, cp, requestShouldBeDelayed, networkingIsEnabled, callback, log))
-            .thenAcceptAsync(this::onFinished);
+        L = log;
+        if (!networkingIsEnabled) {
+            L.w("[ImmediateRequestMaker] ImmediateRequestMaker, Networking config is disabled, request cancelled. Endpoint[" + customEndpoint + "] request[" + requestData + "]");
+            onFinished(null, callback);
+            return;
+        }
+
+        L.d("[ImmediateRequestMaker] delayed[" + requestShouldBeDelayed + "] hasCallback[" + (callback != null) + "] endpoint[" + customEndpoint + "] request[" + requestData + "]");
+        //delay is used in cases after something has to be done after a device id change
+        cp.getImmediateRequests().submit(ImmediateRequests.key(customEndpoint, requestData), requestShouldBeDelayed ? REQUEST_DELAY : 0, () -> doInBackground(requestData, customEndpoint, cp))
+            .thenAccept(result -> onFinished(result, callback));
     }
 
     /**
@@ -27,86 +40,44 @@ class ImmediateRequestMaker implements ImmediateRequestI {
     }
 
     /**
-     * params fields:
-     * 0 - requestData
-     * 1 - custom endpoint
-     * 2 - connection processor
-     * 3 - requestShouldBeDelayed
-     * 4 - networkingIsEnabled
-     * 5 - callback
-     * 6 - log module
+     * Makes the request, runs on a thread of {@link ImmediateRequests}
+     *
+     * @return response, null if request failed
      */
-    private JSONObject doInBackground(String requestData, String customEndpoint, Transport cp, boolean requestShouldBeDelayed, boolean networkingIsEnabled, InternalImmediateRequestCallback callback, Log log) {
-        this.callback = callback;
-        L = log;
-        if (!networkingIsEnabled) {
-            L.w("[ImmediateRequestMaker] ImmediateRequestMaker, Networking config is disabled, request cancelled. Endpoint[" + customEndpoint + "] request[" + requestData + "]");
-
-            return null;
-        }
-
+    private JSONObject doInBackground(String requestData, String customEndpoint, Transport cp) {
         L.v("[ImmediateRequestMaker] Starting request");
 
-        HttpURLConnection connection = null;
-
         try {
-            L.d("[ImmediateRequestMaker] delayed[" + requestShouldBeDelayed + "] hasCallback[" + (callback != null) + "] endpoint[" + customEndpoint + "] request[" + requestData + "]");
-
-            if (requestShouldBeDelayed) {
-                //used in cases after something has to be done after a device id change
-                L.v("[ImmediateRequestMaker] request should be delayed, waiting for 0.5 seconds");
-
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    L.w("[ImmediateRequestMaker] While waiting for 0.5 seconds in ImmediateRequestMaker, sleep was interrupted");
-                }
-            }
             Request request = new Request();
             request.params.add(requestData);
             request.endpoint(customEndpoint);
-            //getting connection ready
-            try {
-                connection = cp.connection(request);
-            } catch (IOException e) {
-                L.e("[ImmediateRequestMaker] IOException while preparing remote config update request :[" + e + "]");
-                return null;
-            }
-            //connecting
-            connection.connect();
 
-            int code = connection.getResponseCode();
-            String receivedBuffer = cp.response(connection);
-
-            if (receivedBuffer == null) {
-                L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, received result was null");
-                return null;
-            }
-
-            if (code >= 200 && code < 300) {
-                L.d("[ImmediateRequestMaker] Received the following response, :[" + receivedBuffer + "]");
+            try (HttpEngine.Response connection = cp.execute(request)) {
+                int code = connection.code();
+                if (code < 200 || code >= 300) {
+                    L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, code [" + code + "] :[" + cp.response(connection) + "]");
+                    return null;
+                }
 
-                // we check if the result was a json array or json object and convert the array into an object if necessary
-                if (receivedBuffer.trim().charAt(0) == '[') {
-                    return new JSONObject("{\"jsonArray\":" + receivedBuffer + "}");
+                // parsing straight from the body, json arrays are wrapped into an object
+                Object value = new JSONTokener(new InputStreamReader(connection.body(), StandardCharsets.UTF_8)).nextValue();
+                L.d("[ImmediateRequestMaker] Received response with code [" + code + "]");
+                if (value instanceof JSONArray) {
+                    return new JSONObject().put("jsonArray", value);
+                } else if (value instanceof JSONObject) {
+                    return (JSONObject) value;
                 }
-                return new JSONObject(receivedBuffer);
-            } else {
-                L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, :[" + receivedBuffer + "]");
+                L.e("[ImmediateRequestMaker] Encountered problem while making a immediate server request, response is neither a JSON object nor an array");
                 return null;
             }
         } catch (Exception e) {
             L.e("[ImmediateRequestMaker] Received exception while making a immediate server request " + e.getMessage());
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
         L.v("[ImmediateRequestMaker] Finished request");
         return null;
     }
 
-    private void onFinished(JSONObject result) {
+    private void onFinished(JSONObject result, InternalImmediateRequestCallback callback) {
         L.v("[ImmediateRequestMaker] onPostExecute");
         if (callback != null) {
             callback.callback(result);
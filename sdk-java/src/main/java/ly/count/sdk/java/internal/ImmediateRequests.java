@@ -0,0 +1,168 @@
+package ly.count.sdk.java.internal;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.Nonnull;
+import ly.count.sdk.java.Config;
+import org.json.JSONObject;
+
+/**
+ * Executes immediate requests made by {@link ImmediateRequestMaker} on a bounded pool of threads,
+ * set with {@link Config#setImmediateRequestExecutor(int, int)}, instead of the common fork join pool.
+ * Identical requests made while one of them is in flight share its future, and every request completes
+ * with {@code null} once {@link Config#setImmediateRequestTimeout(int)} passes.
+ * Delays are scheduled, so a delayed request doesn't hold a thread while waiting.
+ */
+class ImmediateRequests {
+    /**
+     * Params which change with every request and don't make requests different
+     */
+    private static final String[] VOLATILE_PARAMS = { "timestamp", "tz", "hour", "dow" };
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final long timeout;
+    private final Log L;
+
+    private final Map<String, CompletableFuture<JSONObject>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    ImmediateRequests(@Nonnull InternalConfig config, @Nonnull Log L) {
+        this.timeout = config.getImmediateRequestTimeout();
+        this.L = L;
+
+        final AtomicInteger threads = new AtomicInteger();
+        int size = config.getImmediateRequestThreads();
+        executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(config.getImmediateRequestQueueSize()), runnable -> {
+            Thread thread = new Thread(runnable, "immediate-request-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "immediate-request-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Key identifying requests with the same endpoint and params, time params are ignored
+     *
+     * @param endpoint endpoint of the request
+     * @param requestData params of the request
+     * @return key of the request
+     */
+    static String key(String endpoint, @Nonnull String requestData) {
+        Params params = new Params(requestData);
+        for (String param : VOLATILE_PARAMS) {
+            params.remove(param);
+        }
+        return endpoint + params;
+    }
+
+    /**
+     * Executes a request unless an identical one is in flight
+     *
+     * @param key key of the request from {@link #key(String, String)}
+     * @param delay how long to wait before executing the request, in milliseconds
+     * @param call request itself, returns response or null
+     * @return future completed with response, or with null if request failed, timed out or couldn't be executed
+     */
+    CompletableFuture<JSONObject> submit(@Nonnull String key, long delay, @Nonnull Supplier<JSONObject> call) {
+        CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        CompletableFuture<JSONObject> existing;
+        while ((existing = inFlight.putIfAbsent(key, future)) != null) {
+            if (!existing.isDone()) {
+                coalesced.incrementAndGet();
+                L.d("[ImmediateRequests] submit, Identical request is in flight, sharing its response");
+                return existing;
+            }
+            // completed, but not removed yet
+            inFlight.remove(key, existing);
+        }
+        future.whenComplete((response, error) -> inFlight.remove(key, future));
+
+        try {
+            if (delay > 0) {
+                timer.schedule(() -> start(future, call), delay, TimeUnit.MILLISECONDS);
+            } else {
+                start(future, call);
+            }
+        } catch (RejectedExecutionException e) {
+            L.w("[ImmediateRequests] submit, Immediate requests are stopped, request cancelled");
+            future.complete(null);
+        }
+        return future;
+    }
+
+    private void start(CompletableFuture<JSONObject> future, Supplier<JSONObject> call) {
+        final Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    future.complete(call.get());
+                } catch (RuntimeException e) {
+                    L.e("[ImmediateRequests] start, Request failed " + e);
+                    future.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            L.w("[ImmediateRequests] start, Too many immediate requests waiting, request cancelled");
+            future.complete(null);
+            return;
+        }
+
+        if (timeout > 0) {
+            try {
+                ScheduledFuture<?> expiry = timer.schedule(() -> {
+                    if (future.complete(null)) {
+                        L.w("[ImmediateRequests] start, Request didn't complete in [" + timeout + "] ms, cancelling it");
+                        task.cancel(true);
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+                future.whenComplete((response, error) -> expiry.cancel(false));
+            } catch (RejectedExecutionException ignored) {
+                // stopped, request completes on its own
+            }
+        }
+    }
+
+    /**
+     * @return number of requests which shared a response of an identical request in flight
+     */
+    long coalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return number of distinct requests in flight, including delayed ones
+     */
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Stops executing requests, requests in flight complete with null
+     */
+    void stop() {
+        timer.shutdownNow();
+        for (CompletableFuture<JSONObject> future : inFlight.values()) {
+            future.complete(null);
+        }
+        executor.shutdownNow();
+    }
+}
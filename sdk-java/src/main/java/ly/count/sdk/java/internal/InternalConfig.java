@@ -216,4 +216,92 @@ public class InternalConfig extends Config {
     boolean isAutoSendUserProperties() {
         return autoSendUserProperties;
     }
+
+    boolean isStorageCompressionEnabled() {
+        return storageCompressionEnabled;
+    }
+
+    int getRequestStorageMaxCount() {
+        return requestStorageMaxCount;
+    }
+
+    long getRequestStorageMaxBytes() {
+        return requestStorageMaxBytes;
+    }
+
+    RequestEvictionPolicy getRequestEvictionPolicy() {
+        return requestEvictionPolicy;
+    }
+
+    DurabilityMode getStorageDurability() {
+        return storageDurability;
+    }
+
+    int getStorageCommitMaxRecords() {
+        return storageCommitMaxRecords;
+    }
+
+    long getStorageCommitIntervalMs() {
+        return storageCommitIntervalMs;
+    }
+
+    int getNetworkMaxRequestsInFlight() {
+        return networkMaxRequestsInFlight;
+    }
+
+    int getNetworkBulkMaxRequests() {
+        return networkBulkMaxRequests;
+    }
+
+    int getNetworkBulkMaxBytes() {
+        return networkBulkMaxBytes;
+    }
+
+    boolean isNetworkCompressionEnabled() {
+        return networkCompressionEnabled;
+    }
+
+    int getNetworkCompressionMinBytes() {
+        return networkCompressionMinBytes;
+    }
+
+    int getNetworkRetryBaseDelay() {
+        return networkRetryBaseDelay;
+    }
+
+    int getNetworkRetryMaxDelay() {
+        return networkRetryMaxDelay;
+    }
+
+    int getNetworkCircuitBreakerThreshold() {
+        return networkCircuitBreakerThreshold;
+    }
+
+    int getNetworkCircuitBreakerOpenTime() {
+        return networkCircuitBreakerOpenTime;
+    }
+
+    int getImmediateRequestThreads() {
+        return immediateRequestThreads;
+    }
+
+    int getImmediateRequestQueueSize() {
+        return immediateRequestQueueSize;
+    }
+
+    int getImmediateRequestTimeout() {
+        return immediateRequestTimeout;
+    }
+
+    int getEventRecordingBufferCapacity() {
+        return eventRecordingBufferCapacity;
+    }
+
+    EventOverflowPolicy getEventOverflowPolicy() {
+        return eventOverflowPolicy;
+    }
+
+    int[] getRequestLaneWeights() {
+        return requestLaneWeights;
+    }
 }
@@ -0,0 +1,316 @@
+package ly.count.sdk.java.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import javax.annotation.Nonnull;
+import org.json.JSONException;
+
+/**
+ * Minimal streaming JSON reader for checks which don't need a JSON tree, like whether server acknowledged a request.
+ * Reads input once without building {@link org.json.JSONObject}, values are skipped and keys are compared
+ * char by char as they are read. Accepts the same lenient syntax as {@link org.json.JSONTokener}, like unquoted keys and values.
+ */
+final class JsonReader {
+    private static final int BUFFER_SIZE = 512;
+    private static final String DELIMITERS = ",:]}/\\\"[{;=#";
+
+    private final CharSequence text;
+    private final Reader reader;
+    private final char[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private int pushed = -2;
+
+    private JsonReader(CharSequence text, Reader reader) {
+        this.text = text;
+        this.reader = reader;
+        this.buffer = reader == null ? null : new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Checks whether JSON text is an object with the key at its top level
+     *
+     * @param json JSON text
+     * @param key key to look for
+     * @return true if text is an object which has the key, false if it's an object without the key or another JSON value
+     * @throws JSONException if text is not valid JSON
+     */
+    static boolean hasTopLevelKey(@Nonnull CharSequence json, @Nonnull String key) {
+        try {
+            return new JsonReader(json, null).hasTopLevelKey(key);
+        } catch (IOException e) {
+            // never thrown for in-memory text
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Same as {@link #hasTopLevelKey(CharSequence, String)}, reading JSON text from a reader
+     *
+     * @throws IOException if reader fails
+     */
+    static boolean hasTopLevelKey(@Nonnull Reader json, @Nonnull String key) throws IOException {
+        return new JsonReader(null, json).hasTopLevelKey(key);
+    }
+
+    private boolean hasTopLevelKey(String key) throws IOException {
+        int c = nextClean();
+        if (c == '[' || c == '"' || c == '\'' || (c != '{' && c != -1 && DELIMITERS.indexOf(c) < 0)) {
+            // other valid JSON values are not objects
+            back(c);
+            skipValue();
+            return false;
+        }
+        if (c != '{') {
+            throw error("A JSONObject text must begin with '{'");
+        }
+        if ((c = nextClean()) == '}') {
+            return false;
+        }
+        back(c);
+
+        boolean found = false;
+        while (true) {
+            c = nextClean();
+            boolean match;
+            if (c == '"' || c == '\'') {
+                match = matchString((char) c, key);
+            } else if (c == -1 || DELIMITERS.indexOf(c) >= 0) {
+                throw error("A JSONObject text must contain a key");
+            } else {
+                back(c);
+                match = matchToken(key);
+            }
+            if (nextClean() != ':') {
+                throw error("Expected a ':' after a key");
+            }
+            skipValue();
+            found |= match;
+
+            c = nextClean();
+            if (c == '}') {
+                return found;
+            }
+            if (c != ',' && c != ';') {
+                throw error("Expected a ',' or '}'");
+            }
+            if ((c = nextClean()) == '}') {
+                return found;
+            }
+            back(c);
+        }
+    }
+
+    private void skipValue() throws IOException {
+        int c = nextClean();
+        switch (c) {
+            case '"':
+            case '\'':
+                matchString((char) c, null);
+                return;
+            case '{':
+                skipObject();
+                return;
+            case '[':
+                skipArray();
+                return;
+            default:
+                back(c);
+                if (!skipToken()) {
+                    throw error("Missing value");
+                }
+        }
+    }
+
+    private void skipObject() throws IOException {
+        int c = nextClean();
+        if (c == '}') {
+            return;
+        }
+        back(c);
+        while (true) {
+            c = nextClean();
+            if (c == '"' || c == '\'') {
+                matchString((char) c, null);
+            } else if (c == -1 || DELIMITERS.indexOf(c) >= 0) {
+                throw error("A JSONObject text must contain a key");
+            } else {
+                back(c);
+                skipToken();
+            }
+            if (nextClean() != ':') {
+                throw error("Expected a ':' after a key");
+            }
+            skipValue();
+            c = nextClean();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',' && c != ';') {
+                throw error("Expected a ',' or '}'");
+            }
+            if ((c = nextClean()) == '}') {
+                return;
+            }
+            back(c);
+        }
+    }
+
+    private void skipArray() throws IOException {
+        int c = nextClean();
+        if (c == ']') {
+            return;
+        }
+        back(c);
+        while (true) {
+            c = nextClean();
+            if (c == ',') {
+                // missing element is null
+                back(c);
+            } else {
+                back(c);
+                skipValue();
+            }
+            c = nextClean();
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw error("Expected a ',' or ']'");
+            }
+            if ((c = nextClean()) == ']') {
+                return;
+            }
+            back(c);
+        }
+    }
+
+    /**
+     * Reads the rest of a quoted string, comparing it to the key
+     *
+     * @param key key to compare with, null to only skip the string
+     * @return true if string equals the key
+     */
+    private boolean matchString(char quote, String key) throws IOException {
+        boolean match = key != null;
+        int index = 0;
+        while (true) {
+            int c = read();
+            if (c == -1 || c == '\n' || c == '\r') {
+                throw error("Unterminated string");
+            }
+            if (c == quote) {
+                return match && index == key.length();
+            }
+            if (c == '\\') {
+                c = escape();
+            }
+            if (match && (index >= key.length() || key.charAt(index) != c)) {
+                match = false;
+            }
+            index++;
+        }
+    }
+
+    private int escape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw error("Illegal escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return value;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw error("Illegal escape");
+        }
+    }
+
+    /**
+     * Reads an unquoted key, comparing it to the key
+     */
+    private boolean matchToken(String key) throws IOException {
+        int index = 0;
+        boolean match = true;
+        int c;
+        while ((c = read()) >= ' ' && DELIMITERS.indexOf(c) < 0) {
+            if (match && (index >= key.length() || key.charAt(index) != c)) {
+                match = false;
+            }
+            index++;
+        }
+        back(c);
+        // unquoted tokens are trimmed
+        return match && index == key.length();
+    }
+
+    /**
+     * Skips an unquoted value like a number, boolean or null
+     *
+     * @return false if there is no value
+     */
+    private boolean skipToken() throws IOException {
+        int length = 0;
+        int c;
+        while ((c = read()) >= ' ' && DELIMITERS.indexOf(c) < 0) {
+            length++;
+        }
+        back(c);
+        return length > 0;
+    }
+
+    private int nextClean() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && c <= ' ');
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pushed != -2) {
+            int c = pushed;
+            pushed = -2;
+            return c;
+        }
+        if (text != null) {
+            return position < text.length() ? text.charAt(position++) : -1;
+        }
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void back(int c) {
+        pushed = c;
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at " + position);
+    }
+}
@@ -0,0 +1,211 @@
+package ly.count.sdk.java.internal;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Minimal streaming JSON writer producing the same text as {@code org.json}: strings are quoted
+ * and numbers are formatted the way {@code JSONObject.toString()} does it.
+ *
+ * Writes either plain JSON or url-encoded JSON straight into a {@link StringBuilder},
+ * so values like event batches can be written into request params without building JSON trees or intermediate strings.
+ * Url-encoded output is the plain one encoded token by token with {@link Utils#urlencodeTo(CharSequence, StringBuilder)}.
+ */
+final class JsonWriter {
+    /**
+     * Value which knows how to write itself
+     */
+    interface Value {
+        void write(@Nonnull JsonWriter writer);
+    }
+
+    private static final int MAX_DEPTH = 63;
+
+    private final StringBuilder out;
+    private final boolean urlencoded;
+    /**
+     * Plain JSON is written here, for url-encoded output it's a scratch buffer which is encoded into {@link #out}
+     * after each token, so surrogate pairs, which never span tokens, are encoded whole
+     */
+    private final StringBuilder plain;
+
+    /**
+     * Bit per nesting level, set while no value was written on that level yet
+     */
+    private long empty = 0;
+    private int depth = 0;
+    private boolean afterName = false;
+
+    /**
+     * @param out builder to write to
+     * @param urlencoded whether to url-encode the output
+     */
+    JsonWriter(@Nonnull StringBuilder out, boolean urlencoded) {
+        this.out = out;
+        this.urlencoded = urlencoded;
+        this.plain = urlencoded ? new StringBuilder() : out;
+    }
+
+    JsonWriter beginObject() {
+        return open('{');
+    }
+
+    JsonWriter endObject() {
+        return close('}');
+    }
+
+    JsonWriter beginArray() {
+        return open('[');
+    }
+
+    JsonWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Writes name of the next object member
+     */
+    JsonWriter name(@Nonnull String name) {
+        separator();
+        quote(name);
+        plain.append(':');
+        afterName = true;
+        return flush();
+    }
+
+    JsonWriter value(String value) {
+        separator();
+        if (value == null) {
+            plain.append("null");
+        } else {
+            quote(value);
+        }
+        return flush();
+    }
+
+    JsonWriter value(long value) {
+        separator();
+        plain.append(value);
+        return flush();
+    }
+
+    JsonWriter value(boolean value) {
+        separator();
+        plain.append(value);
+        return flush();
+    }
+
+    /**
+     * Writes a number the way {@code JSONObject.numberToString} formats it: trailing zeros of decimals are dropped
+     */
+    JsonWriter value(@Nonnull Number value) {
+        separator();
+        String string = value.toString();
+        int end = string.length();
+        if (string.indexOf('.') > 0 && string.indexOf('e') < 0 && string.indexOf('E') < 0) {
+            while (string.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (string.charAt(end - 1) == '.') {
+                end--;
+            }
+        }
+        plain.append(string, 0, end);
+        return flush();
+    }
+
+    /**
+     * Writes an already serialized JSON value as is
+     */
+    JsonWriter raw(@Nonnull CharSequence json) {
+        separator();
+        plain.append(json);
+        return flush();
+    }
+
+    private JsonWriter open(char bracket) {
+        separator();
+        plain.append(bracket);
+        if (++depth > MAX_DEPTH) {
+            throw new IllegalStateException("JSON nesting is too deep");
+        }
+        empty |= 1L << depth;
+        return flush();
+    }
+
+    private JsonWriter close(char bracket) {
+        empty &= ~(1L << depth);
+        depth--;
+        plain.append(bracket);
+        return flush();
+    }
+
+    private void separator() {
+        if (afterName) {
+            afterName = false;
+        } else if ((empty & (1L << depth)) != 0) {
+            empty &= ~(1L << depth);
+        } else if (depth > 0) {
+            plain.append(',');
+        }
+    }
+
+    /**
+     * Same escaping as {@code JSONObject.quote}
+     */
+    private void quote(String string) {
+        plain.append('"');
+        char previous = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    plain.append('\\').append(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        plain.append('\\');
+                    }
+                    plain.append(c);
+                    break;
+                case '\b':
+                    plain.append("\\b");
+                    break;
+                case '\t':
+                    plain.append("\\t");
+                    break;
+                case '\n':
+                    plain.append("\\n");
+                    break;
+                case '\f':
+                    plain.append("\\f");
+                    break;
+                case '\r':
+                    plain.append("\\r");
+                    break;
+                default:
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        plain.append("\\u");
+                        for (int shift = 12; shift >= 0; shift -= 4) {
+                            plain.append(Character.forDigit((c >> shift) & 0x0F, 16));
+                        }
+                    } else {
+                        plain.append(c);
+                    }
+            }
+            previous = c;
+        }
+        plain.append('"');
+    }
+
+    /**
+     * Url-encodes the token written to {@link #plain} into {@link #out}
+     */
+    private JsonWriter flush() {
+        if (urlencoded) {
+            Utils.urlencodeTo(plain, out);
+            plain.setLength(0);
+        }
+        return this;
+    }
+}
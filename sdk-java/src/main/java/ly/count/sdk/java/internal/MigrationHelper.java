@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
@@ -41,6 +42,7 @@ public class MigrationHelper {
         // add migrations below
         migrations.add(this::migration_DeleteConfigFile_01);
         migrations.add(this::migration_UserImplFile_02);
+        migrations.add(this::migration_SessionFile_03);
         latestMigrationVersion = migrations.size();
     }
 
@@ -156,6 +158,73 @@ public class MigrationHelper {
         return true;
     }
 
+    /**
+     * Converts session files written with Java object serialization into the compact format of {@link SessionImpl#store(Log)}.
+     * Session files which cannot be read are deleted
+     *
+     * @param migrationParams parameters to pass to migrations
+     * @return true if the migration was successful, false otherwise
+     */
+    protected boolean migration_SessionFile_03(final Map<String, Object> migrationParams) {
+        if (currentDataModelVersion >= 3) {
+            logger.d("[MigrationHelper] migration_SessionFile_03, Migration already applied");
+            return true;
+        }
+        logger.i("[MigrationHelper] migration_SessionFile_03, Converting session files migrating from 02 to 03");
+        currentDataModelVersion += 1;
+
+        File sdkPath = (File) migrationParams.get("sdk_path");
+        if (sdkPath == null) {
+            logger.d("[MigrationHelper] migration_SessionFile_03, No sdk path, returning");
+            return false;
+        }
+
+        //SDK_FOLDER/[CLY]_session_<id>
+        String sessionPrefix = SDKStorage.FILE_NAME_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + SessionImpl.getStoragePrefix() + SDKStorage.FILE_NAME_SEPARATOR;
+        File[] sessionFiles = sdkPath.listFiles((dir, name) -> name.startsWith(sessionPrefix));
+        if (sessionFiles == null) {
+            return true;
+        }
+
+        for (File sessionFile : sessionFiles) {
+            try {
+                byte[] data = Files.readAllBytes(sessionFile.toPath());
+                if (data.length < 2 || data[0] != (byte) 0xAC || data[1] != (byte) 0xED) { // not a java serialization stream
+                    continue;
+                }
+                Files.write(sessionFile.toPath(), convertLegacySession(data));
+            } catch (Exception e) {
+                logger.e("[MigrationHelper] migration_SessionFile_03, Cannot convert session file " + sessionFile.getName() + ", " + e);
+                deleteFileIfExist(sessionFile, "migration_SessionFile_03, Cannot delete session file ");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads session serialized with {@link ObjectOutputStream} by previous SDK versions and encodes it in the current format
+     *
+     * @param data legacy session data
+     * @return session data in current format
+     * @throws IOException if legacy data cannot be read
+     */
+    private byte[] convertLegacySession(byte[] data) throws IOException {
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            long id = stream.readLong();
+            long began = stream.readLong();
+            long updated = stream.readLong();
+            long ended = stream.readLong();
+            int count = stream.readInt();
+            List<String> events = new ArrayList<>(Math.max(count, 0));
+            for (int i = 0; i < count; i++) {
+                events.add(stream.readUTF());
+            }
+            String params = stream.readUTF();
+            int consents = stream.readInt();
+            return SessionImpl.encode(id, began, updated, ended, events, params, consents);
+        }
+    }
+
     /**
      * Deletes the file if it exists, logs the error if it cannot be deleted
      *
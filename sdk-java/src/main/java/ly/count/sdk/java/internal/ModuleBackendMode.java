@@ -316,10 +316,11 @@ public class ModuleBackendMode extends ModuleBase {
             L.d("[BackendMode] addRequestToRequestQ");
             if (internalConfig.getRequestQueueMaxSize() == SDKCore.instance.requestQueueMemory.size()) {
                 L.d("[BackendMode] addRequestToRequestQ: In Memory request queue is full, dropping oldest request: " + request.params.toString());
-                SDKCore.instance.requestQueueMemory.remove();
+                SDKCore.instance.requestLanesMemory.remove(SDKCore.instance.requestQueueMemory.remove().storageId());
             }
 
             SDKCore.instance.requestQueueMemory.add(request);
+            SDKCore.instance.requestLanesMemory.add(request.storageId(), request.params);
             SDKCore.instance.networking.check(internalConfig);
         }
     }
@@ -1,5 +1,7 @@
 package ly.count.sdk.java.internal;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import ly.count.sdk.java.Countly;
@@ -13,16 +15,23 @@ public class ModuleEvents extends ModuleBase {
     ViewIdProvider viewIdProvider = null;
     IdGenerator idGenerator = null;
     String previousEventId = null;
+    /**
+     * Hands recorded events off to the recorder thread, null when events are recorded on caller threads
+     */
+    EventHandoff eventHandoff = null;
 
     @Override
     public void init(InternalConfig config) {
         super.init(config);
         L.d("[ModuleEvents] init: config = " + config);
         eventQueue = new EventQueue(L, config.getEventsBufferSize());
-        eventQueue.restoreFromDisk();
+        eventQueue.restoreFromDiskAsync();
         eventsInterface = new Events();
 
         idGenerator = config.eventIdGenerator;
+        if (config.getEventRecordingBufferCapacity() > 0) {
+            eventHandoff = new EventHandoff(config.getEventRecordingBufferCapacity(), config.getEventOverflowPolicy(), this::queueEvent, L);
+        }
     }
 
     @Override
@@ -36,6 +45,13 @@ public class ModuleEvents extends ModuleBase {
         addEventsToRequestQ(null);
     }
 
+    /**
+     * @return number of events dropped because event recording buffer was full
+     */
+    long getDroppedEventCount() {
+        return eventHandoff == null ? 0 : eventHandoff.getDroppedCount();
+    }
+
     @Override
     public Boolean onRequest(Request request) {
         return true;
@@ -69,17 +85,29 @@ public class ModuleEvents extends ModuleBase {
     @Override
     public void stop(InternalConfig config, final boolean clear) {
         super.stop(config, clear);
+        if (eventHandoff != null) {
+            eventHandoff.close();
+        }
         if (clear) {
             eventQueue.clear();
             timedEvents.clear();
         }
     }
 
-    private synchronized void addEventsToRequestQ(String deviceId) {
-        L.d("[ModuleEvents] addEventsToRequestQ");
+    private void addEventsToRequestQ(String deviceId) {
+        if (eventHandoff != null) {
+            // events recorded so far go with this batch
+            eventHandoff.flush();
+        }
+        drainEventsToRequestQ(deviceId);
+    }
+
+    private synchronized void drainEventsToRequestQ(String deviceId) {
+        L.d("[ModuleEvents] drainEventsToRequestQ");
 
-        if (eventQueue.getEQ().isEmpty()) {
-            L.d("[ModuleEvents] addEventsToRequestQ, eventQueueMemoryCache is empty, skipping");
+        List<Object> events = eventQueue.drainEvents();
+        if (events.isEmpty()) {
+            L.d("[ModuleEvents] drainEventsToRequestQ, eventQueueMemoryCache is empty, skipping");
             return;
         }
 
@@ -87,10 +115,9 @@ public class ModuleEvents extends ModuleBase {
         if (deviceId != null) {
             request.params.add("device_id", deviceId);
         }
-        request.params.arr("events").put(eventQueue.getEQ()).add();
+        request.params.arr("events").put(events).add();
         request.own(ModuleEvents.class);
 
-        eventQueue.clear();
         ModuleRequests.pushAsync(internalConfig, request);
     }
 
@@ -109,37 +136,49 @@ public class ModuleEvents extends ModuleBase {
 
         Utils.removeInvalidDataFromSegments(segmentation, L);
 
-        if (internalConfig.isAutoSendUserProperties() && internalConfig.sdk.userProfile() != null) {
-            internalConfig.sdk.module(ModuleUserProfile.class).saveInternal();
-        }
-
-        String eventId, pvid = null, cvid = null;
-        if (Utils.isEmptyOrNull(eventIdOverride)) {
-            L.d("[ModuleEvents] recordEventInternal, Generating new event id because it was null or empty");
-            eventId = idGenerator.generateId();
-        } else {
-            eventId = eventIdOverride;
-        }
-
+        String pvid = null, cvid = null;
         if (key.equals(ModuleViews.KEY_VIEW_EVENT)) {
             pvid = viewIdProvider.getPreviousViewId();
         } else {
             cvid = viewIdProvider.getCurrentViewId();
         }
 
-        String previousEventIdToSend = this.previousEventId;
-        if (key.equals(FeedbackWidgetType.nps.eventKey) || key.equals(FeedbackWidgetType.survey.eventKey) || key.equals(ModuleViews.KEY_VIEW_EVENT) || key.equals(FeedbackWidgetType.rating.eventKey)) {
-            previousEventIdToSend = null;
-        } else {
-            this.previousEventId = eventId;
+        if (eventHandoff != null && segmentation != null) {
+            // caller may change its map before the recorder thread persists the event
+            segmentation = new HashMap<>(segmentation);
         }
 
-        addEventToQueue(new EventImpl(key, count, sum, dur, segmentation, L, eventId, pvid, cvid, previousEventIdToSend));
+        EventImpl event = new EventImpl(key, count, sum, dur, segmentation, L, eventIdOverride, pvid, cvid, null);
+        if (eventHandoff == null || !eventHandoff.offer(event)) {
+            queueEvent(event);
+        }
     }
 
-    private void addEventToQueue(EventImpl event) {
-        L.d("[ModuleEvents] addEventToQueue");
-        eventQueue.addEvent(event);
+    /**
+     * Assigns event id and previous event id, then adds event to the queue.
+     * Called by the recorder thread or, when events are recorded on caller threads, by the caller.
+     */
+    private void queueEvent(EventImpl event) {
+        if (internalConfig.isAutoSendUserProperties() && internalConfig.sdk.userProfile() != null) {
+            internalConfig.sdk.module(ModuleUserProfile.class).saveInternal();
+        }
+
+        synchronized (this) {
+            if (Utils.isEmptyOrNull(event.id)) {
+                L.d("[ModuleEvents] queueEvent, Generating new event id because it was null or empty");
+                event.id = idGenerator.generateId();
+            }
+
+            String key = event.key;
+            if (!key.equals(FeedbackWidgetType.nps.eventKey) && !key.equals(FeedbackWidgetType.survey.eventKey) && !key.equals(ModuleViews.KEY_VIEW_EVENT) && !key.equals(FeedbackWidgetType.rating.eventKey)) {
+                event.peid = this.previousEventId;
+                this.previousEventId = event.id;
+            }
+
+            L.d("[ModuleEvents] queueEvent, Adding event to queue");
+            eventQueue.enqueue(event);
+        }
+        eventQueue.appendToJournal();
         checkEventQueueToSend(false);
     }
 
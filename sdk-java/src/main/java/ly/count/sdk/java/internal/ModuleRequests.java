@@ -1,6 +1,5 @@
 package ly.count.sdk.java.internal;
 
-import java.util.Map;
 import java.util.concurrent.Future;
 
 /**
@@ -137,8 +136,7 @@ public class ModuleRequests extends ModuleBase {
     }
 
     static void addRequiredParametersToParams(InternalConfig config, Params params) {
-        Map<String, String> map = params.map();
-        if (map.isEmpty() || (map.size() == 1 && map.containsKey(Params.PARAM_DEVICE_ID))) {
+        if (params.isEmptyExcept(Params.PARAM_DEVICE_ID)) {
             //if nothing was in the request, no need to add these mandatory fields
             return;
         }
@@ -1,5 +1,6 @@
 package ly.count.sdk.java.internal;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -15,6 +16,7 @@ public class ModuleUserProfile extends ModuleBase {
     static final String CUSTOM_KEY = "custom";
     boolean isSynced = true;
     static final String PICTURE_BYTES = "[CLY]_picture_bytes";
+    static final String PICTURE_FILE = "[CLY]_picture_file";
     UserProfile userProfileInterface;
     private final Map<String, Object> sets;
     private final List<OpParams> ops;
@@ -114,8 +116,13 @@ public class ModuleUserProfile extends ModuleBase {
                         internalConfig.sdk.user().picture = null;
                     } else if (value instanceof byte[]) {
                         internalConfig.sdk.user().picture = (byte[]) value;
-                        //set a special value to indicate that the picture information is already stored in memory
-                        params.add(PICTURE_BYTES, Utils.Base64.encode((byte[]) value));
+                        //picture is stored in a side file which is streamed when request is sent and deleted afterwards
+                        File pictureFile = internalConfig.sdk.sdkStorage.storePicture(internalConfig, (byte[]) value);
+                        if (pictureFile != null) {
+                            params.add(PICTURE_FILE, pictureFile.getAbsolutePath());
+                        } else {
+                            params.add(PICTURE_BYTES, Utils.Base64.encode((byte[]) value));
+                        }
                     }
                     break;
                 case PredefinedUserPropertyKeys.PICTURE_PATH:
@@ -214,7 +221,7 @@ public class ModuleUserProfile extends ModuleBase {
         final JSONObject json = new JSONObject();
         perform(json, params);
 
-        if (!json.isEmpty() || params.has(PICTURE_BYTES) || params.has(PredefinedUserPropertyKeys.PICTURE_PATH)) {
+        if (!json.isEmpty() || params.has(PICTURE_FILE) || params.has(PICTURE_BYTES) || params.has(PredefinedUserPropertyKeys.PICTURE_PATH)) {
             params.add("user_details", json.toString());
         }
 
@@ -0,0 +1,217 @@
+package ly.count.sdk.java.internal;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import ly.count.sdk.java.Config;
+
+/**
+ * Retry state of server endpoints: exponential backoff with full jitter after failed requests, circuit breaker which opens
+ * after consecutive server errors or connection failures, and {@code Retry-After} handling.
+ * {@link Transport} reports outcome of every call, {@link DefaultNetworking} asks for {@link #delay(String)}
+ * before sending and schedules next attempt when it has to wait, so that new requests don't cause immediate retries.
+ * See {@link Config#setNetworkRetryBackoff(int, int)} and {@link Config#setNetworkCircuitBreaker(int, int)}.
+ */
+class NetworkRetry {
+    static final String DEFAULT_ENDPOINT = "/i?";
+
+    private static final int MAX_SHIFT = 30;
+
+    private final long baseDelay;
+    private final long maxDelay;
+    private final int threshold;
+    private final long openTime;
+    private final Log L;
+
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+    private final AtomicLong failures = new AtomicLong();
+
+    private static final class Endpoint {
+        Config.CircuitState state = Config.CircuitState.CLOSED;
+        /**
+         * Consecutive failures of any kind, exponent of backoff
+         */
+        int failures;
+        /**
+         * Consecutive server errors and connection failures, opens circuit when it reaches threshold
+         */
+        int serverFailures;
+        /**
+         * Time in nanoseconds before which no requests are sent, meaningful while {@link #waiting} is set
+         */
+        long retryAt;
+        boolean waiting;
+        boolean probing;
+    }
+
+    NetworkRetry(long baseDelay, long maxDelay, int threshold, long openTime, @Nonnull Log L) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.threshold = threshold;
+        this.openTime = openTime;
+        this.L = L;
+    }
+
+    NetworkRetry(@Nonnull InternalConfig config) {
+        this(config.getNetworkRetryBaseDelay(), config.getNetworkRetryMaxDelay(), config.getNetworkCircuitBreakerThreshold(),
+            config.getNetworkCircuitBreakerOpenTime(), config.getLogger());
+    }
+
+    /**
+     * @return endpoint the request is sent to
+     */
+    static String endpointOf(@Nonnull Request request) {
+        String endpoint = request.params.get(Request.ENDPOINT);
+        return endpoint == null ? DEFAULT_ENDPOINT : endpoint;
+    }
+
+    /**
+     * Checks whether a request can be sent to the endpoint now, moves open circuit to half-open once open time passes
+     *
+     * @return 0 if request can be sent now, milliseconds to wait otherwise,
+     * -1 if a probe request of half-open circuit is in flight
+     */
+    synchronized long delay(@Nonnull String endpoint) {
+        Endpoint e = endpoints.get(endpoint);
+        if (e == null) {
+            return 0;
+        }
+        if (e.waiting) {
+            long wait = e.retryAt - System.nanoTime();
+            if (wait > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+            e.waiting = false;
+            if (e.state == Config.CircuitState.OPEN) {
+                L.d("[NetworkRetry] delay, Circuit of endpoint [" + endpoint + "] is half-open");
+                e.state = Config.CircuitState.HALF_OPEN;
+            }
+        }
+        return e.state == Config.CircuitState.HALF_OPEN && e.probing ? -1 : 0;
+    }
+
+    /**
+     * Reports a request to the endpoint is being sent, request sent while circuit is half-open becomes the probe
+     */
+    synchronized void started(@Nonnull String endpoint) {
+        Endpoint e = endpoints.get(endpoint);
+        if (e != null && e.state == Config.CircuitState.HALF_OPEN) {
+            e.probing = true;
+        }
+    }
+
+    /**
+     * Reports server response to a request
+     *
+     * @param accepted whether server accepted the request
+     * @param code HTTP status code
+     * @param retryAfter value of {@code Retry-After} header, null if there is none
+     */
+    synchronized void onResponse(@Nonnull String endpoint, boolean accepted, int code, String retryAfter) {
+        if (accepted) {
+            Endpoint e = endpoints.remove(endpoint);
+            if (e != null && e.state != Config.CircuitState.CLOSED) {
+                L.i("[NetworkRetry] onResponse, Circuit of endpoint [" + endpoint + "] is closed");
+            }
+            return;
+        }
+        failed(endpoint, code >= 500, parseRetryAfter(retryAfter));
+    }
+
+    /**
+     * Reports a request which didn't get any response, for example because server is unreachable
+     */
+    synchronized void onError(@Nonnull String endpoint) {
+        failed(endpoint, true, -1);
+    }
+
+    /**
+     * @return state of circuit breakers of endpoints requests were sent to, endpoints which never failed are not listed
+     */
+    synchronized Map<String, Config.CircuitState> states() {
+        Map<String, Config.CircuitState> states = new HashMap<>();
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            states.put(entry.getKey(), entry.getValue().state);
+        }
+        return states;
+    }
+
+    /**
+     * @return number of failed requests since creation
+     */
+    long failureCount() {
+        return failures.get();
+    }
+
+    private void failed(String endpoint, boolean serverFailure, long retryAfter) {
+        failures.incrementAndGet();
+        Endpoint e = endpoints.get(endpoint);
+        if (e == null) {
+            e = new Endpoint();
+            endpoints.put(endpoint, e);
+        }
+        e.failures++;
+        e.serverFailures = serverFailure ? e.serverFailures + 1 : 0;
+        e.probing = false;
+
+        // Retry-After is honored only along with backoff, so retry timing doesn't change while backoff is disabled
+        long wait = baseDelay > 0 ? Math.max(backoff(e.failures), retryAfter) : 0;
+        if (serverFailure && threshold > 0 && (e.state == Config.CircuitState.HALF_OPEN || e.serverFailures >= threshold)) {
+            if (e.state != Config.CircuitState.OPEN) {
+                L.w("[NetworkRetry] failed, Circuit of endpoint [" + endpoint + "] is open after [" + e.serverFailures + "] consecutive failures");
+            }
+            e.state = Config.CircuitState.OPEN;
+            wait = Math.max(openTime, retryAfter);
+        } else if (e.state == Config.CircuitState.HALF_OPEN) {
+            // server responded to the probe, even if it rejected the request
+            e.state = Config.CircuitState.CLOSED;
+        }
+
+        L.d("[NetworkRetry] failed, Request to endpoint [" + endpoint + "] failed [" + e.failures + "] times in a row, retrying in [" + wait + "] ms");
+        e.waiting = wait > 0 || e.state == Config.CircuitState.OPEN;
+        e.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+    }
+
+    /**
+     * Full jitter: random delay between 0 and exponentially growing cap
+     */
+    private long backoff(int attempt) {
+        if (baseDelay <= 0) {
+            return 0;
+        }
+        long cap = maxDelay;
+        int shift = Math.min(attempt - 1, MAX_SHIFT);
+        if (baseDelay <= (maxDelay >> shift)) {
+            cap = baseDelay << shift;
+        }
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Parses {@code Retry-After} header value, either a number of seconds or an HTTP date
+     *
+     * @return delay in milliseconds, -1 if there is no valid value
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
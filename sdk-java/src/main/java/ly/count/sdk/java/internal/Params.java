@@ -1,23 +1,176 @@
 package ly.count.sdk.java.internal;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
- * Object for application/x-www-form-urlencoded string building and manipulation
+ * Object for application/x-www-form-urlencoded string building and manipulation.
+ *
+ * Params are kept as a list of pairs in insertion order with an index of pairs by key, so lookups don't parse the string.
+ * Values added with {@link #add(String, Object)} are kept as is and url-encoded only once, when the string is rendered,
+ * strings passed to {@link #Params(String)} and {@link #add(String)} are kept as they are and decoded on first lookup.
+ * {@link #toString()} is always exactly what the previous string based implementation produced.
+ *
+ * All methods are synchronized on the Params object: pairs, their index and lazily decoded values are shared state,
+ * and the same params can be read by networking while they are still being built on another thread.
  */
 
 public class Params {
     static final String PARAM_DEVICE_ID = "device_id";
     static final String PARAM_OLD_DEVICE_ID = "old_device_id";
 
-    private StringBuilder params;
+    /**
+     * Single "key=value" pair or a bare segment without "=" (key is null then)
+     */
+    private static final class Pair {
+        final String key;
+        /**
+         * Whether value was added as is, otherwise pair was parsed from a string and value is decoded lazily
+         */
+        final boolean raw;
+        String value;
+        String encoded;
+        /**
+         * JSON value written straight into rendered string, value is serialized only when it's looked up
+         */
+        JsonWriter.Value json;
+        boolean decoded;
+        /**
+         * Next pair with the same key
+         */
+        Pair same = null;
+        /**
+         * Offset of the pair in rendered string, valid only for rendered pairs
+         */
+        int start = 0;
+
+        Pair(String key, String value) {
+            this(key, value, false);
+        }
+
+        Pair(String key, String value, boolean encoded) {
+            this.key = key;
+            this.raw = !encoded;
+            if (encoded) {
+                this.encoded = value;
+            } else {
+                this.value = value;
+                this.decoded = true;
+            }
+        }
+
+        Pair(String key, JsonWriter.Value json) {
+            this.key = key;
+            this.raw = true;
+            this.json = json;
+        }
+
+        Pair(String segment) {
+            int eq = segment.indexOf('=');
+            this.key = eq < 0 ? null : segment.substring(0, eq);
+            this.raw = false;
+            this.encoded = eq < 0 ? segment : segment.substring(eq + 1);
+        }
+
+        Pair(Pair other) {
+            this.key = other.key;
+            this.raw = other.raw;
+            this.value = other.value;
+            this.encoded = other.encoded;
+            this.json = other.json;
+            this.decoded = other.decoded;
+        }
+
+        /**
+         * Whether the pair has a value visible to {@link Params#get(String)}, {@link Params#remove(String)} and {@link Params#map()},
+         * pairs with empty values are only visible to {@link Params#has(String)}
+         */
+        boolean hasValue() {
+            if (key == null) {
+                return false;
+            }
+            if (json != null) {
+                return true;
+            }
+            return raw ? !value.isEmpty() : !encoded.isEmpty() && encoded.indexOf('=') < 0;
+        }
+
+        String value() {
+            if (!decoded && json != null) {
+                StringBuilder out = new StringBuilder();
+                json.write(new JsonWriter(out, false));
+                value = out.toString();
+                decoded = true;
+            } else if (!decoded) {
+                value = Utils.urldecode(encoded);
+                decoded = true;
+            }
+            return value;
+        }
+
+        void write(ParamsEncoder encoder) {
+            if (key == null) {
+                encoder.utf8(encoded);
+                return;
+            }
+            encoder.utf8(key).ascii('=');
+            if (json != null) {
+                StringBuilder out = new StringBuilder();
+                json.write(new JsonWriter(out, true));
+                encoder.utf8(out);
+            } else if (encoded != null) {
+                encoder.utf8(encoded);
+            } else {
+                encoder.urlencoded(value);
+            }
+        }
+
+        void render(StringBuilder out) {
+            if (key == null) {
+                out.append(encoded);
+                return;
+            }
+            out.append(key).append('=');
+            if (json != null) {
+                json.write(new JsonWriter(out, true));
+            } else if (encoded != null) {
+                out.append(encoded);
+            } else {
+                Utils.urlencodeTo(value, out);
+            }
+        }
+    }
+
+    /**
+     * Receives pairs the way they are kept, see {@link #forEachPair(PairConsumer)}
+     */
+    interface PairConsumer {
+        /**
+         * @param key key, null for a bare segment without "="
+         * @param value value as it was added, url-encoded value if it was parsed from a string, whole segment for bare ones
+         * @param encoded whether value is url-encoded
+         */
+        void accept(String key, String value, boolean encoded);
+    }
+
+    private final List<Pair> pairs = new ArrayList<>();
+    private final Map<String, Pair> index = new HashMap<>();
+
+    /**
+     * Rendered string of the first {@link #renderedCount} pairs, appended to as pairs are added.
+     * Reads fill it in, so it and {@link #string} are only accessed while holding the lock of this object,
+     * params read by several threads at once are never torn.
+     */
+    private final StringBuilder rendered = new StringBuilder();
+    private int renderedCount = 0;
+    private String string = null;
 
     Log L;
 
@@ -52,7 +205,7 @@ public class Params {
 
     public static final class Arr {
         private final String key;
-        private final Collection<String> json;
+        private final Collection<Object> json;
         private final Params params;
 
         final Log L;
@@ -65,38 +218,49 @@ public class Params {
         }
 
         public Arr put(JSONable value) {
-            json.add(value.toJSON(L));
+            json.add(value instanceof EventImpl && ((EventImpl) value).isStreamable() ? value : value.toJSON(L));
             return this;
         }
 
         public Arr put(Collection collection) {
             for (Object value : collection)
                 if (value instanceof JSONable) {
-                    json.add(((JSONable) value).toJSON(L));
+                    put((JSONable) value);
                 } else if (value instanceof String) {
-                    json.add((String) value);
+                    json.add(value);
                 }
             return this;
         }
 
+        /**
+         * Adds the array to params, events are written straight into the url-encoded params string
+         *
+         * @return params
+         */
         public Params add() {
-            if (json.size() > 0) {
-                params.add(key, "[" + Utils.join(json, ",") + "]");
-            } else {
-                params.add(key, "[]");
-            }
+            final List<Object> items = new ArrayList<>(json);
+            params.addJson(key, writer -> {
+                writer.beginArray();
+                for (Object item : items) {
+                    if (item instanceof EventImpl) {
+                        ((EventImpl) item).toJSON(writer);
+                    } else {
+                        writer.raw((String) item);
+                    }
+                }
+                writer.endArray();
+            });
             return params;
         }
     }
 
     public Params(Object... objects) {
-        params = new StringBuilder();
         if (objects != null && objects.length == 1 && objects[0] instanceof Object[]) {
             addObjects((Object[]) objects[0]);
         } else if (objects != null && objects.length == 1 && objects[0] instanceof Params) {
-            params.append(objects[0]);
+            add((Params) objects[0]);
         } else if (objects != null && objects.length == 1 && objects[0] instanceof String) {
-            params.append(objects[0]);
+            add((String) objects[0]);
         } else {
             addObjects(objects);
         }
@@ -108,14 +272,15 @@ public class Params {
      * @param params string representation of the Params object
      */
     public Params(String params) {
-        this.params = new StringBuilder(params);
+        if (params.length() > 0) {
+            add(params);
+        }
     }
 
     /**
      * Constructor
      */
     public Params() {
-        this.params = new StringBuilder();
     }
 
     /**
@@ -124,7 +289,7 @@ public class Params {
      * @param objects key/value pairs
      * @return this Params object
      */
-    public Params add(Object... objects) {
+    public synchronized Params add(Object... objects) {
         return addObjects(objects);
     }
 
@@ -135,14 +300,22 @@ public class Params {
      * @param value value
      * @return this Params object
      */
-    public Params add(final String key, final Object value) {
-        if (params.length() > 0) {
-            params.append('&');
-        }
-        params.append(key).append('=');
-        if (value != null) {
-            params.append(Utils.urlencode(value.toString(), L));
-        }
+    public synchronized Params add(final String key, final Object value) {
+        append(new Pair(String.valueOf(key), value == null ? "" : value.toString()));
+        return this;
+    }
+
+    /**
+     * Adds a JSON value which is written url-encoded straight into params string, without intermediate JSON strings.
+     * Value is written right away and again only if params have to be re-rendered after removal of a preceding pair.
+     *
+     * @param key key
+     * @param json value to write
+     * @return this Params object
+     */
+    synchronized Params addJson(final String key, final JsonWriter.Value json) {
+        append(new Pair(String.valueOf(key), json));
+        render();
         return this;
     }
 
@@ -153,13 +326,24 @@ public class Params {
      * @return this Params object
      */
     public Params add(final Params params) {
-        if (params == null || params.length() == 0) {
+        if (params == null) {
             return this;
         }
-        if (this.params.length() > 0) {
-            this.params.append('&');
+        // pairs are copied under the lock of added params only, so adding params to each other concurrently can't deadlock
+        List<Pair> copies = new ArrayList<>();
+        synchronized (params) {
+            if (params.length() == 0) {
+                return this;
+            }
+            for (Pair pair : params.pairs) {
+                copies.add(new Pair(pair));
+            }
+        }
+        synchronized (this) {
+            for (Pair pair : copies) {
+                append(pair);
+            }
         }
-        this.params.append(params);
         return this;
     }
 
@@ -169,9 +353,24 @@ public class Params {
      * @param string to add
      * @return this Params object
      */
-    public Params add(final String string) {
-        if (params != null) {
-            this.params.append(string);
+    public synchronized Params add(final String string) {
+        String[] segments = String.valueOf(string).split("&", -1);
+        int from = 0;
+        if (!pairs.isEmpty()) {
+            // string is appended as is, so its first segment continues the last pair
+            if (!segments[0].isEmpty()) {
+                int last = pairs.size() - 1;
+                StringBuilder merged = new StringBuilder();
+                pairs.get(last).render(merged);
+                removeAt(last);
+                append(new Pair(merged.append(segments[0]).toString()));
+            }
+            from = 1;
+        } else if (segments.length == 1 && segments[0].isEmpty()) {
+            return this;
+        }
+        for (int i = from; i < segments.length; i++) {
+            append(new Pair(segments[i]));
         }
         return this;
     }
@@ -202,25 +401,33 @@ public class Params {
      * @param key to remove
      * @return value of the provided key, null if not found
      */
-    public String remove(final String key) {
-        String query = params.toString();
-        String[] pairs = query.split("&");
+    public synchronized String remove(final String key) {
         String result = null;
-        StringBuilder newParams = new StringBuilder();
+        boolean removed = false;
+        for (Pair pair = index.get(key); pair != null; pair = pair.same) {
+            if (pair.hasValue()) {
+                result = pair.value();
+                removed = true;
+            }
+        }
 
-        for (String pair : pairs) {
-            String[] comps = pair.split("=");
-            if (comps.length == 2 && comps[0].equals(key)) {
-                result = Utils.urldecode(comps[1]);
-            } else {
-                if (newParams.length() > 0) {
-                    newParams.append('&');
+        if (removed) {
+            int from = -1;
+            for (int i = 0; i < pairs.size() && from < 0; i++) {
+                Pair pair = pairs.get(i);
+                if (key.equals(pair.key) && pair.hasValue()) {
+                    from = i;
                 }
-                newParams.append(pair);
             }
+            truncate(from);
+            pairs.removeIf(pair -> key.equals(pair.key) && pair.hasValue());
+            relink(key);
         }
 
-        params = newParams;
+        // empty trailing segments never survived removal
+        while (!pairs.isEmpty() && pairs.get(pairs.size() - 1).key == null && pairs.get(pairs.size() - 1).encoded.isEmpty()) {
+            removeAt(pairs.size() - 1);
+        }
         return result;
     }
 
@@ -229,13 +436,11 @@ public class Params {
      *
      * @return map of the Params object
      */
-    public Map<String, String> map() {
-        Map<String, String> map = new ConcurrentHashMap<>();
-        List<String> pairs = new ArrayList<>(Arrays.asList(params.toString().split("&")));
-        for (String pair : pairs) {
-            String[] comps = pair.split("=");
-            if (comps.length == 2) {
-                map.put(comps[0], Utils.urldecode(comps[1]));
+    public synchronized Map<String, String> map() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (Pair pair : pairs) {
+            if (pair.hasValue() && pair.value() != null) {
+                map.put(pair.key, pair.value());
             }
         }
         return map;
@@ -247,15 +452,10 @@ public class Params {
      * @param key to get value for
      * @return value of the provided key, null if not found
      */
-    public String get(final String key) {
-        if (!has(key)) {
-            return null;
-        }
-        String[] pairs = params.toString().split("&");
-        for (String pair : pairs) {
-            String comps[] = pair.split("=");
-            if (comps.length == 2 && comps[0].equals(key)) {
-                return Utils.urldecode(comps[1]);
+    public synchronized String get(final String key) {
+        for (Pair pair = index.get(key); pair != null; pair = pair.same) {
+            if (pair.hasValue()) {
+                return pair.value();
             }
         }
         return null;
@@ -267,8 +467,83 @@ public class Params {
      * @param key to check for
      * @return true if the Params object contains the provided key, false otherwise
      */
-    public boolean has(final String key) {
-        return params.indexOf("&" + key + "=") != -1 || params.indexOf(key + "=") == 0;
+    public synchronized boolean has(final String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Whether there are no values in the Params object other than the value of the provided key,
+     * same as checking {@link #map()} without building it
+     *
+     * @param key to ignore
+     * @return true if there are no other values
+     */
+    synchronized boolean isEmptyExcept(final String key) {
+        for (Pair pair : pairs) {
+            if (pair.hasValue() && pair.value() != null && !pair.key.equals(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calls the action for each pair with a non-empty value in insertion order, with decoded values
+     *
+     * @param action to call with key and value
+     */
+    synchronized void forEach(final BiConsumer<String, String> action) {
+        for (Pair pair : pairs) {
+            if (pair.hasValue() && pair.value() != null) {
+                action.accept(pair.key, pair.value());
+            }
+        }
+    }
+
+    /**
+     * Calls the action for each pair including bare segments and empty values in insertion order,
+     * values are passed as they are kept, without encoding or decoding them. JSON values are passed serialized.
+     * Passing the same arguments to {@link #addPair(String, String, boolean)} rebuilds the same params.
+     *
+     * @param action to call for each pair
+     */
+    synchronized void forEachPair(final PairConsumer action) {
+        for (Pair pair : pairs) {
+            if (pair.raw) {
+                action.accept(pair.key, pair.value(), false);
+            } else {
+                action.accept(pair.key, pair.encoded, true);
+            }
+        }
+    }
+
+    /**
+     * Adds a pair as it was passed to {@link #forEachPair(PairConsumer)}
+     *
+     * @param key key, null for a bare segment
+     * @param value value, url-encoded if {@code encoded} is true
+     * @param encoded whether value is url-encoded
+     * @return this Params object
+     */
+    synchronized Params addPair(final String key, final String value, final boolean encoded) {
+        append(new Pair(key, value, encoded || key == null));
+        return this;
+    }
+
+    /**
+     * Writes the string representation of the Params object as UTF-8 bytes, pairs which are not rendered yet
+     * are url-encoded straight into the encoder
+     *
+     * @param encoder to write to
+     */
+    synchronized void writeTo(final ParamsEncoder encoder) {
+        encoder.utf8(rendered);
+        for (int i = renderedCount; i < pairs.size(); i++) {
+            if (i > 0) {
+                encoder.ascii('&');
+            }
+            pairs.get(i).write(encoder);
+        }
     }
 
     private Params addObjects(Object[] objects) {
@@ -282,20 +557,91 @@ public class Params {
         return this;
     }
 
+    private void append(Pair pair) {
+        pairs.add(pair);
+        string = null;
+        if (pair.key != null) {
+            Pair first = index.putIfAbsent(pair.key, pair);
+            if (first != null) {
+                while (first.same != null) {
+                    first = first.same;
+                }
+                first.same = pair;
+            }
+        }
+    }
+
+    private void removeAt(int position) {
+        truncate(position);
+        Pair pair = pairs.remove(position);
+        if (pair.key != null) {
+            relink(pair.key);
+        }
+    }
+
+    /**
+     * Rebuilds index chain of a key after its pairs were removed
+     */
+    private void relink(String key) {
+        index.remove(key);
+        Pair last = null;
+        for (Pair pair : pairs) {
+            if (key.equals(pair.key)) {
+                pair.same = null;
+                if (last == null) {
+                    index.put(key, pair);
+                } else {
+                    last.same = pair;
+                }
+                last = pair;
+            }
+        }
+    }
+
+    /**
+     * Drops rendered string starting from the pair at the given position
+     */
+    private synchronized void truncate(int position) {
+        string = null;
+        if (position >= 0 && position < renderedCount) {
+            rendered.setLength(position == 0 ? 0 : pairs.get(position).start - 1);
+            renderedCount = position;
+        }
+    }
+
+    /**
+     * Renders pairs added since the last call, url-encoding their values straight into the rendered string
+     */
+    private synchronized StringBuilder render() {
+        for (; renderedCount < pairs.size(); renderedCount++) {
+            if (renderedCount > 0) {
+                rendered.append('&');
+            }
+            Pair pair = pairs.get(renderedCount);
+            pair.start = rendered.length();
+            pair.render(rendered);
+        }
+        return rendered;
+    }
+
     /**
      * Returns the length of the Params object
      *
      * @return length of the Params object
      */
-    public int length() {
-        return params.length();
+    public synchronized int length() {
+        return render().length();
     }
 
     /**
      * Clears the Params object
      */
-    public void clear() {
-        params = new StringBuilder();
+    public synchronized void clear() {
+        pairs.clear();
+        index.clear();
+        rendered.setLength(0);
+        renderedCount = 0;
+        string = null;
     }
 
     /**
@@ -304,8 +650,11 @@ public class Params {
      * @return string representation of the Params object
      */
     @Override
-    public String toString() {
-        return params.toString();
+    public synchronized String toString() {
+        if (string == null) {
+            string = render().toString();
+        }
+        return string;
     }
 
     /**
@@ -315,7 +664,7 @@ public class Params {
      */
     @Override
     public int hashCode() {
-        return params.hashCode();
+        return toString().hashCode();
     }
 
     /**
@@ -331,6 +680,6 @@ public class Params {
         }
         Params p = (Params) obj;
 
-        return p.params.toString().equals(params.toString());
+        return p.toString().equals(toString());
     }
 }
@@ -0,0 +1,153 @@
+package ly.count.sdk.java.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Writes request bodies as UTF-8 bytes into a pooled buffer and calculates parameter tampering checksum
+ * over the same bytes, so a body and its checksum come out of a single pass without intermediate strings.
+ *
+ * Encoders are thread-confined: {@link #get()} returns the encoder of the calling thread with an empty buffer,
+ * and the buffer and digest are reused by the next request sent from that thread.
+ */
+final class ParamsEncoder {
+    static final String DIGEST = "SHA-256";
+
+    private static final int INITIAL_SIZE = 4 * 1024;
+    /**
+     * Buffers grown larger than this by a big request are not kept for the next one
+     */
+    private static final int MAX_POOLED_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<ParamsEncoder> ENCODERS = ThreadLocal.withInitial(ParamsEncoder::new);
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int length = 0;
+    private MessageDigest digest = null;
+    /**
+     * Unpaired surrogates are replaced with '?' like {@link String#getBytes(java.nio.charset.Charset)} does
+     */
+    private final CharsetEncoder charsetEncoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    /**
+     * Url-encoded string before it's copied into the buffer
+     */
+    private StringBuilder encoded = new StringBuilder();
+
+    private ParamsEncoder() {
+    }
+
+    /**
+     * @return encoder of the calling thread with an empty buffer
+     */
+    static ParamsEncoder get() {
+        ParamsEncoder encoder = ENCODERS.get();
+        if (encoder.buffer.length > MAX_POOLED_SIZE) {
+            encoder.buffer = new byte[INITIAL_SIZE];
+        }
+        if (encoder.encoded.capacity() > MAX_POOLED_SIZE) {
+            encoder.encoded = new StringBuilder();
+        }
+        encoder.length = 0;
+        return encoder;
+    }
+
+    /**
+     * Appends an ASCII character
+     */
+    ParamsEncoder ascii(char c) {
+        ensure(1);
+        buffer[length++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Appends UTF-8 bytes of a string as is
+     */
+    ParamsEncoder utf8(@Nonnull CharSequence string) {
+        int size = string.length();
+        ensure(size);
+        int i = 0;
+        // ASCII prefix fits into the space ensured above
+        for (char c; i < size && (c = string.charAt(i)) < 0x80; i++) {
+            buffer[length++] = (byte) c;
+        }
+        if (i < size) {
+            CharBuffer chars = CharBuffer.wrap(string, i, size);
+            // a char takes at most 3 bytes, so encoding never overflows
+            ensure(chars.remaining() * 3);
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, length, buffer.length - length);
+            charsetEncoder.reset();
+            charsetEncoder.encode(chars, bytes, true);
+            charsetEncoder.flush(bytes);
+            length = bytes.position();
+        }
+        return this;
+    }
+
+    /**
+     * Appends a string percent-encoded with {@link Utils#urlencodeTo(CharSequence, StringBuilder)},
+     * so that bodies and checksums use the same encoding as the rest of the SDK
+     */
+    ParamsEncoder urlencoded(@Nonnull CharSequence string) {
+        encoded.setLength(0);
+        Utils.urlencodeTo(string, encoded);
+        int size = encoded.length();
+        ensure(size);
+        for (int i = 0; i < size; i++) {
+            buffer[length++] = (byte) encoded.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Calculates checksum of the bytes written so far followed by the salt, buffer is left unchanged
+     *
+     * @param salt parameter tampering protection salt
+     * @param L logger
+     * @return lowercase hex of the digest, null if digest is not available
+     */
+    String checksum(@Nonnull String salt, Log L) {
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(DIGEST);
+            } catch (NoSuchAlgorithmException e) {
+                if (L != null) {
+                    L.e("[ParamsEncoder] checksum, Cannot calculate checksum " + e);
+                }
+                return null;
+            }
+        }
+        int end = length;
+        utf8(salt);
+        digest.reset();
+        digest.update(buffer, 0, length);
+        length = end;
+        return Utils.hex(digest.digest());
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return copy of the bytes written
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+        }
+    }
+}
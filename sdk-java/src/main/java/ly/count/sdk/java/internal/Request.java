@@ -1,9 +1,7 @@
 package ly.count.sdk.java.internal;
 
-import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.nio.charset.Charset;
-import java.util.Map;
 
 /**
  * Class which encapsulates request logic and manipulation: building, status of sending, etc.
@@ -12,10 +10,11 @@ import java.util.Map;
 public class Request implements Storable {
     public static final String MODULE = "module";
     public static final String ENDPOINT = "endpoint";
+    public static final String PRIORITY = "priority";
     private Long id;
 
     /**
-     * This string is written to request file to ensure it can be fully read from other end of queue.
+     * This string was written to request file by previous SDK versions to ensure it can be fully read from other end of queue.
      */
     private static final String EOR = "\n[CLY][CLY][CLY]";
 
@@ -42,6 +41,18 @@ public class Request implements Storable {
         return this;
     }
 
+    /**
+     * Sets send priority lane of the request instead of deriving it from owner and params
+     *
+     * @param lane one of {@link RequestLanes} lanes, like {@link RequestLanes#LANE_CRASH}
+     * @return this request
+     */
+    public Request priority(int lane) {
+        this.params.remove(PRIORITY);
+        this.params.add(PRIORITY, lane);
+        return this;
+    }
+
     @SuppressWarnings("unchecked")
     public Class<? extends ModuleBase> owner() {
         String name = this.params.get(MODULE);
@@ -60,8 +71,7 @@ public class Request implements Storable {
     }
 
     boolean isEmpty() {
-        Map<String, String> map = this.params.map();
-        return map.isEmpty() || (map.size() == 1 && map.containsKey(Params.PARAM_DEVICE_ID));
+        return params.isEmptyExcept(Params.PARAM_DEVICE_ID);
     }
 
     boolean isGettable(URL serverUrl) {
@@ -115,17 +125,28 @@ public class Request implements Storable {
         return "request";
     }
 
+    /**
+     * Serializes params with {@link RequestCodec}
+     */
     @Override
     public byte[] store(Log L) {
-        try {
-            return (params.toString() + EOR).getBytes(Utils.UTF8);
-        } catch (UnsupportedEncodingException e) {
-            return null;
-        }
+        return RequestCodec.encode(params);
     }
 
+    /**
+     * Restores params from {@link RequestCodec} record or from legacy text format terminated with {@link #EOR}
+     */
     @Override
     public boolean restore(byte[] data, Log L) {
+        if (RequestCodec.isBinary(data)) {
+            Params decoded = RequestCodec.decode(data, L);
+            if (decoded == null) {
+                return false;
+            }
+            params = decoded;
+            return true;
+        }
+
         String str = new String(data, Charset.forName(Utils.UTF8));
         if (str.endsWith(EOR)) {
             params = new Params(str.substring(0, str.length() - EOR.length()));
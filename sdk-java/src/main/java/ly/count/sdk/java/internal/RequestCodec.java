@@ -0,0 +1,170 @@
+package ly.count.sdk.java.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+
+/**
+ * Versioned binary record format for persisted {@link Request} params.
+ * Params are stored as key / value pairs the way {@link Params} keeps them, each prefixed with its varint length:
+ * values added to params are stored as is, which is considerably smaller for JSON values like events,
+ * values parsed from a params string are stored url-encoded. Nothing is encoded or decoded in either direction,
+ * values are url-encoded only once, when params string is rendered.
+ *
+ * Record layout: marker (1 byte, always 0), version (1 byte), pair count (varint),
+ * pairs (kind (1 byte), key length (varint), key, value length (varint), value), CRC32 of all preceding bytes (4 bytes).
+ */
+final class RequestCodec {
+    static final byte MARKER = 0;
+    static final byte VERSION = 1;
+
+    private static final byte KIND_RAW = 0;
+    private static final byte KIND_ENCODED = 1;
+    private static final byte KIND_BARE = 2;
+
+    private RequestCodec() {
+    }
+
+    /**
+     * Whether data is written by {@link #encode(Params)}, as opposed to legacy text format
+     */
+    static boolean isBinary(@Nonnull byte[] data) {
+        return data.length > 0 && data[0] == MARKER;
+    }
+
+    /**
+     * Encodes params into binary record
+     *
+     * @param params params to encode
+     * @return binary record
+     */
+    static @Nonnull byte[] encode(@Nonnull Params params) {
+        ByteArrayOutputStream pairs = new ByteArrayOutputStream(params.length() + 16);
+        int[] count = { 0 };
+        params.forEachPair((key, value, encoded) -> {
+            if (key == null) {
+                pairs.write(KIND_BARE);
+                writeString(pairs, value);
+                writeString(pairs, "");
+            } else {
+                pairs.write(encoded ? KIND_ENCODED : KIND_RAW);
+                writeString(pairs, key);
+                writeString(pairs, value);
+            }
+            count[0]++;
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pairs.size() + 16);
+        out.write(MARKER);
+        out.write(VERSION);
+        writeVarint(out, count[0]);
+        out.write(pairs.toByteArray(), 0, pairs.size());
+
+        CRC32 crc = new CRC32();
+        byte[] body = out.toByteArray();
+        crc.update(body, 0, body.length);
+        return ByteBuffer.allocate(body.length + 4).put(body).putInt((int) crc.getValue()).array();
+    }
+
+    /**
+     * Decodes binary record into params
+     *
+     * @param data binary record
+     * @param L logger
+     * @return params or null if data is corrupted or of unsupported version
+     */
+    static Params decode(@Nonnull byte[] data, Log L) {
+        if (data.length < 2 + 1 + 4 || data[0] != MARKER) {
+            return null;
+        }
+        if (data[1] != VERSION) {
+            if (L != null) {
+                L.w("[RequestCodec] decode, Unsupported version [" + data[1] + "]");
+            }
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int bodyLength = data.length - 4;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, bodyLength);
+        if ((int) crc.getValue() != buffer.getInt(bodyLength)) {
+            if (L != null) {
+                L.w("[RequestCodec] decode, Checksum mismatch");
+            }
+            return null;
+        }
+        buffer.limit(bodyLength);
+        buffer.position(2);
+
+        try {
+            int count = readVarint(buffer);
+            Params params = new Params();
+            for (int i = 0; i < count; i++) {
+                byte kind = buffer.get();
+                String key = readString(buffer);
+                String value = readString(buffer);
+                switch (kind) {
+                    case KIND_RAW:
+                        params.addPair(key, value, false);
+                        break;
+                    case KIND_ENCODED:
+                        params.addPair(key, value, true);
+                        break;
+                    case KIND_BARE:
+                        params.addPair(null, key, true);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return buffer.hasRemaining() ? null : params;
+        } catch (RuntimeException e) {
+            if (L != null) {
+                L.w("[RequestCodec] decode, Malformed record " + e);
+            }
+            return null;
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalStateException("String length " + length + " exceeds record");
+        }
+        String string = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalStateException("Negative varint");
+                }
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+}
@@ -0,0 +1,391 @@
+package ly.count.sdk.java.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+import ly.count.sdk.java.Config;
+
+/**
+ * Priority lanes of a request queue, used by {@link IStorageForRequestQueue#getNextRequest(Set)} to decide
+ * which request is sent next. Each request belongs to a lane set with {@link Request#priority(int)} when it's built,
+ * or derived from its owner and params otherwise: crashes, session requests, other requests and event batches.
+ * Lanes are served with stride scheduling, a lane with weight {@code w} gets {@code w} turns for each turn of a lane with weight 1,
+ * weights are set with {@link Config#setRequestLaneWeights(int, int, int, int)}. So higher lanes go first while lower ones are never starved.
+ * Requests of a lane are sent in queue order, which is the order of request ids.
+ *
+ * Reordering keeps per-device session ordering: a request never overtakes an earlier session begin / end request of its device,
+ * a session begin / end request never overtakes earlier requests of its device, and device id change requests
+ * are never overtaken and never overtake anything.
+ *
+ * Lanes are kept up to date with {@link #add(Long, Params)}, {@link #remove(Long)} and {@link #invalidate(Long)}.
+ * Requests restored from the queue itself through {@link Source}, on start or after a request was removed from it directly,
+ * are classified lazily in id order, {@link #CLASSIFY_BATCH} requests at a time, and nothing after an unclassified request is picked.
+ * Requests which can't be read are dropped from the queue.
+ */
+class RequestLanes {
+    static final int LANE_CRASH = 0;
+    static final int LANE_SESSION = 1;
+    static final int LANE_DEFAULT = 2;
+    static final int LANE_EVENTS = 3;
+    static final int LANES = 4;
+
+    private static final String[] BARRIER_PARAMS = { "begin_session", "end_session", Params.PARAM_OLD_DEVICE_ID };
+    private static final String[] SESSION_PARAMS = { "begin_session", "end_session", "session_duration", "consent", Params.PARAM_OLD_DEVICE_ID };
+    private static final String EVENTS = "events";
+    private static final String CRASH = "crash";
+    private static final int CLASSIFY_BATCH = 64;
+
+    /**
+     * Queue which lanes are built for
+     */
+    interface Source {
+        /**
+         * @return ids of all requests in queue order
+         */
+        List<Long> ids();
+
+        /**
+         * @return params of a request, null if there is no such request
+         */
+        Params params(Long id);
+
+        boolean contains(Long id);
+
+        /**
+         * Removes a request which can't be read
+         *
+         * @return true if the request was removed
+         */
+        boolean drop(Long id);
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final Long id;
+        final int lane;
+        final String device;
+        final boolean barrier;
+        final boolean global;
+
+        Entry(Long id, Params params) {
+            this.id = id;
+            this.lane = laneOf(params);
+            String device = params.get(Params.PARAM_DEVICE_ID);
+            this.device = device == null ? "" : device;
+            this.global = params.has(Params.PARAM_OLD_DEVICE_ID);
+            this.barrier = global || isBarrier(params);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return id.compareTo(other.id);
+        }
+    }
+
+    private final Source source;
+    private final long[] strides = new long[LANES];
+    private final Log L;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> queue = new TreeSet<>();
+    private final List<NavigableSet<Entry>> lanes = new ArrayList<>(LANES);
+    private final Map<String, NavigableSet<Entry>> devices = new HashMap<>();
+    private final Map<String, NavigableSet<Entry>> barriers = new HashMap<>();
+    private final NavigableSet<Entry> globals = new TreeSet<>();
+
+    /**
+     * Virtual time of each lane and of the scheduler, a lane is served when its virtual time is the lowest one
+     */
+    private final long[] passes = new long[LANES];
+    private long virtual = 0;
+    /**
+     * Requests already accounted for, so picking the same request again doesn't cost its lane another turn
+     */
+    private final Set<Long> charged = new HashSet<>();
+    /**
+     * Requests of the queue which are not classified yet
+     */
+    private final NavigableSet<Long> pending = new TreeSet<>();
+    /**
+     * Requests which can't be read nor dropped, they are never read again
+     */
+    private final Set<Long> unreadable = new HashSet<>();
+    /**
+     * Whether the queue has to be listed again before picking a request
+     */
+    private boolean stale = true;
+
+    RequestLanes(@Nonnull InternalConfig config, @Nonnull Source source, @Nonnull Log L) {
+        this.source = source;
+        this.L = L;
+        int[] weights = config.getRequestLaneWeights();
+        long stride = 1;
+        for (int weight : weights) {
+            stride *= weight;
+        }
+        for (int lane = 0; lane < LANES; lane++) {
+            strides[lane] = stride / weights[lane];
+            lanes.add(new TreeSet<>());
+        }
+    }
+
+    /**
+     * Lane of a request, set explicitly with {@link Request#priority(int)} or derived from its owner and params
+     */
+    static int laneOf(@Nonnull Params params) {
+        String priority = params.get(Request.PRIORITY);
+        if (priority != null) {
+            try {
+                int lane = Integer.parseInt(priority);
+                if (lane >= 0 && lane < LANES) {
+                    return lane;
+                }
+            } catch (NumberFormatException ignored) {
+                // derived below
+            }
+        }
+
+        String owner = params.get(Request.MODULE);
+        if (ModuleCrashes.class.getName().equals(owner) || params.has(CRASH)) {
+            return LANE_CRASH;
+        }
+        for (String key : SESSION_PARAMS) {
+            if (params.has(key)) {
+                return LANE_SESSION;
+            }
+        }
+        if (ModuleEvents.class.getName().equals(owner) || params.has(EVENTS)) {
+            return LANE_EVENTS;
+        }
+        return LANE_DEFAULT;
+    }
+
+    /**
+     * Whether a request can only be sent after all requests before it and before all requests after it,
+     * like session begin / end and device id change requests
+     */
+    static boolean isBarrier(@Nonnull Params params) {
+        for (String key : BARRIER_PARAMS) {
+            if (params.has(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a request to its lane, replacing previous data of a request with the same id
+     *
+     * @param id id of the request
+     * @param params params of the request
+     */
+    synchronized void add(@Nonnull Long id, @Nonnull Params params) {
+        remove(id);
+        Entry entry = new Entry(id, params);
+        entries.put(id, entry);
+        queue.add(entry);
+        lanes.get(entry.lane).add(entry);
+        devices.computeIfAbsent(entry.device, d -> new TreeSet<>()).add(entry);
+        if (entry.global) {
+            globals.add(entry);
+        } else if (entry.barrier) {
+            barriers.computeIfAbsent(entry.device, d -> new TreeSet<>()).add(entry);
+        }
+    }
+
+    synchronized void remove(@Nonnull Long id) {
+        Entry entry = entries.remove(id);
+        charged.remove(id);
+        pending.remove(id);
+        unreadable.remove(id);
+        if (entry == null) {
+            return;
+        }
+        queue.remove(entry);
+        lanes.get(entry.lane).remove(entry);
+        removeFrom(devices, entry);
+        removeFrom(barriers, entry);
+        globals.remove(entry);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        queue.clear();
+        lanes.forEach(Set::clear);
+        devices.clear();
+        barriers.clear();
+        globals.clear();
+        charged.clear();
+        pending.clear();
+        unreadable.clear();
+        stale = true;
+    }
+
+    /**
+     * Forgets the lane of a request which data was rewritten in the queue, the lane is derived again when it's needed
+     *
+     * @param id id of the request
+     */
+    synchronized void invalidate(@Nonnull Long id) {
+        remove(id);
+        pending.add(id);
+    }
+
+    /**
+     * @return number of requests known to lanes, including ones which are not classified yet
+     */
+    synchronized int size() {
+        return entries.size() + pending.size();
+    }
+
+    /**
+     * Picks the request to send next
+     *
+     * @param reserved ids of requests which are being sent and must be skipped
+     * @return id of the request, null if there are no requests which can be sent now
+     */
+    synchronized Long next(@Nonnull Set<Long> reserved) {
+        if (stale) {
+            synchronize();
+        }
+        classify();
+
+        while (true) {
+            Long bound = pending.isEmpty() ? null : pending.first();
+            int best = -1;
+            Entry candidate = null;
+            for (int lane = 0; lane < LANES; lane++) {
+                if (best >= 0 && pass(lane) >= pass(best)) {
+                    continue;
+                }
+                Entry entry = first(lane, reserved, bound);
+                if (entry != null) {
+                    best = lane;
+                    candidate = entry;
+                }
+            }
+            if (candidate == null) {
+                if (bound == null) {
+                    return null;
+                }
+                classify();
+                continue;
+            }
+            if (!source.contains(candidate.id)) {
+                // removed from the queue behind our back, other requests could have been added instead
+                remove(candidate.id);
+                synchronize();
+                continue;
+            }
+            if (charged.add(candidate.id)) {
+                virtual = pass(best);
+                passes[best] = virtual + strides[best];
+            }
+            return candidate.id;
+        }
+    }
+
+    /**
+     * @return number of requests in each lane
+     */
+    synchronized int[] laneSizes() {
+        int[] sizes = new int[LANES];
+        for (int lane = 0; lane < LANES; lane++) {
+            sizes[lane] = lanes.get(lane).size();
+        }
+        return sizes;
+    }
+
+    /**
+     * Virtual time of a lane, a lane which was idle doesn't get turns for the time it was idle
+     */
+    private long pass(int lane) {
+        return Math.max(passes[lane], virtual);
+    }
+
+    /**
+     * @param bound id of the first request which is not classified yet, null if all requests are classified
+     * @return first request of a lane which can be sent now
+     */
+    private Entry first(int lane, Set<Long> reserved, Long bound) {
+        Entry global = globals.isEmpty() ? null : globals.first();
+        for (Entry entry : lanes.get(lane)) {
+            if (bound != null && entry.id > bound) {
+                // unclassified request could be a barrier
+                return null;
+            }
+            if (global != null && entry.compareTo(global) > 0) {
+                // nothing overtakes device id change
+                return null;
+            }
+            if (reserved.contains(entry.id)) {
+                continue;
+            }
+            if (entry.global) {
+                return entry == queue.first() ? entry : null;
+            }
+            NavigableSet<Entry> deviceBarriers = barriers.get(entry.device);
+            if (deviceBarriers != null && deviceBarriers.first().compareTo(entry) < 0) {
+                continue;
+            }
+            if (entry.barrier && devices.get(entry.device).first() != entry) {
+                continue;
+            }
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Lists the queue again, forgets requests removed from it and marks unknown ones for classification
+     */
+    private void synchronize() {
+        stale = false;
+        List<Long> ids = source.ids();
+        Set<Long> present = new HashSet<>(ids);
+        for (Long id : new ArrayList<>(entries.keySet())) {
+            if (!present.contains(id)) {
+                remove(id);
+            }
+        }
+        pending.retainAll(present);
+        unreadable.retainAll(present);
+        for (Long id : ids) {
+            if (!entries.containsKey(id) && !unreadable.contains(id)) {
+                pending.add(id);
+            }
+        }
+        L.d("[RequestLanes] synchronize, [" + pending.size() + "] requests to classify, lanes " + Arrays.toString(laneSizes()));
+    }
+
+    /**
+     * Classifies next batch of requests which are not classified yet, dropping ones which can't be read
+     */
+    private void classify() {
+        for (int i = 0; i < CLASSIFY_BATCH && !pending.isEmpty(); i++) {
+            Long id = pending.pollFirst();
+            Params params = source.params(id);
+            if (params != null) {
+                add(id, params);
+            } else if (source.contains(id)) {
+                L.w("[RequestLanes] classify, Dropping request [" + id + "] which can't be read");
+                if (!source.drop(id)) {
+                    unreadable.add(id);
+                }
+            }
+        }
+    }
+
+    private static void removeFrom(Map<String, NavigableSet<Entry>> map, Entry entry) {
+        NavigableSet<Entry> set = map.get(entry.device);
+        if (set != null && set.remove(entry) && set.isEmpty()) {
+            map.remove(entry.device);
+        }
+    }
+}
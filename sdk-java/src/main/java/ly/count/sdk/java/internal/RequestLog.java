@@ -0,0 +1,545 @@
+package ly.count.sdk.java.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+
+/**
+ * Append-only segmented log which backs the persistent request queue.
+ * Every {@link Request} is appended as a single record to the active segment file
+ * ({@code [CLY]_rlog_<n>}), segments roll once they reach {@link #SEGMENT_MAX_BYTES}.
+ * Removing a request appends an acknowledgement record to the segment holding it,
+ * segments without live records are deleted and sparse ones are compacted into the active segment.
+ * An in-memory index keeps record locations ordered by request id, so queue head lookups,
+ * listing and counting never touch the storage directory.
+ * Writes are left in OS page cache until {@link #sync()} forces segments written since the previous call.
+ *
+ * Record layout: type (1 byte), id (8 bytes), payload length (4 bytes), CRC32 of payload (4 bytes), payload.
+ */
+class RequestLog {
+    static final String SEGMENT_PREFIX = "rlog";
+    static final int SEGMENT_MAX_BYTES = 1024 * 1024;
+
+    private static final byte TYPE_RECORD = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final int HEADER_SIZE = 1 + 8 + 4 + 4;
+
+    private final File directory;
+    private final Log L;
+
+    private final TreeMap<Long, Location> index = new TreeMap<>();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Set<Segment> dirty = new HashSet<>();
+    private Segment active = null;
+    private FileChannel activeChannel = null;
+    private long bytes = 0;
+
+    private static final class Segment {
+        final long number;
+        final File file;
+        final Set<Long> ids = new HashSet<>();
+        long size;
+        long liveBytes;
+
+        Segment(long number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+    }
+
+    private static final class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        Location(Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    RequestLog(@Nonnull File directory, @Nonnull Log L) {
+        this.directory = directory;
+        this.L = L;
+    }
+
+    /**
+     * Replays existing segments into memory and imports legacy one-file-per-request files.
+     * This is the only place where storage directory is scanned.
+     */
+    synchronized void open() {
+        replayAll(true);
+        importLegacyFiles();
+        L.d("[RequestLog] open, Opened request log with [" + index.size() + "] requests in [" + segments.size() + "] segments");
+    }
+
+    /**
+     * Appends data for a request. When a request with the same id exists, it's replaced.
+     *
+     * @param id request id
+     * @param data serialized request
+     * @return true if data is written, false otherwise
+     */
+    synchronized boolean append(@Nonnull Long id, @Nonnull byte[] data) {
+        if (index.containsKey(id) && !remove(id)) {
+            return false;
+        }
+        try {
+            ensureActiveSegment();
+            long offset = active.size;
+            writeRecord(activeChannel, offset, TYPE_RECORD, id, data);
+            active.size += HEADER_SIZE + data.length;
+            dirty.add(active);
+            track(active, id, offset, data.length);
+
+            if (active.size >= SEGMENT_MAX_BYTES) {
+                sealActiveSegment();
+            }
+            return true;
+        } catch (IOException e) {
+            L.e("[RequestLog] append, Cannot write request [" + id + "], " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads data of a stored request
+     *
+     * @param id request id
+     * @return data or null if no such request
+     */
+    synchronized byte[] read(@Nonnull Long id) {
+        Location location = index.get(id);
+        if (location == null) {
+            return null;
+        }
+        try {
+            return readPayload(location);
+        } catch (IOException e) {
+            L.e("[RequestLog] read, Cannot read request [" + id + "], " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Acknowledges a request, so it's not returned anymore and its space can be reclaimed
+     *
+     * @param id request id
+     * @return true if request existed and is removed, false otherwise
+     */
+    synchronized boolean remove(@Nonnull Long id) {
+        Location location = index.get(id);
+        if (location == null) {
+            return false;
+        }
+        Segment segment = location.segment;
+        try {
+            if (segment == active) {
+                writeRecord(activeChannel, segment.size, TYPE_ACK, id, new byte[0]);
+            } else {
+                try (FileChannel channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.WRITE)) {
+                    writeRecord(channel, segment.size, TYPE_ACK, id, new byte[0]);
+                }
+            }
+            segment.size += HEADER_SIZE;
+            dirty.add(segment);
+        } catch (IOException e) {
+            L.e("[RequestLog] remove, Cannot acknowledge request [" + id + "], " + e);
+            return false;
+        }
+
+        untrack(id);
+        compact(segment);
+        return true;
+    }
+
+    /**
+     * Replaces data of a request and removes another one in a single step, so the two are never stored together.
+     * If the other request can't be removed, previous data of the replaced request is written back.
+     *
+     * @param id id of the request to replace
+     * @param data new data of the request
+     * @param removed id of the request to remove
+     * @return true if the request is replaced and the other one is removed, false if nothing changed
+     */
+    synchronized boolean replace(@Nonnull Long id, @Nonnull byte[] data, @Nonnull Long removed) {
+        if (!index.containsKey(removed)) {
+            return false;
+        }
+        byte[] previous = read(id);
+        if (previous == null || !append(id, data)) {
+            return false;
+        }
+        if (remove(removed)) {
+            return true;
+        }
+        if (!append(id, previous)) {
+            L.e("[RequestLog] replace, Cannot restore request [" + id + "] after failed removal of request [" + removed + "]");
+        }
+        return false;
+    }
+
+    /**
+     * @param slice 0 to return all ids, 1..N to return first N ids ascending, -1..-N to return last N ids descending
+     * @return list of stored request ids
+     */
+    synchronized List<Long> ids(int slice) {
+        int max = slice == 0 ? Integer.MAX_VALUE : Math.abs(slice);
+        Iterator<Long> iterator = slice >= 0 ? index.keySet().iterator() : index.descendingKeySet().iterator();
+        List<Long> list = new ArrayList<>(Math.min(max, index.size()));
+        while (iterator.hasNext() && list.size() < max) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return total length of data of all stored requests
+     */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @param id request id
+     * @return length of stored data of a request, 0 if no such request
+     */
+    synchronized int length(@Nonnull Long id) {
+        Location location = index.get(id);
+        return location == null ? 0 : location.length;
+    }
+
+    /**
+     * Deletes all segments and forgets all stored requests
+     */
+    synchronized void clear() {
+        closeActiveChannel();
+        for (Segment segment : segments.values()) {
+            deleteSegmentFile(segment);
+        }
+        segments.clear();
+        dirty.clear();
+        index.clear();
+        bytes = 0;
+        active = null;
+    }
+
+    /**
+     * Forces segments written since previous call to disk
+     *
+     * @return true if all of them are forced, false otherwise
+     */
+    synchronized boolean sync() {
+        boolean forced = true;
+        for (Segment segment : dirty) {
+            try {
+                if (segment == active && activeChannel != null) {
+                    activeChannel.force(false);
+                } else if (segment.file.exists()) {
+                    try (FileChannel channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.WRITE)) {
+                        channel.force(false);
+                    }
+                }
+            } catch (IOException e) {
+                L.e("[RequestLog] sync, Cannot force segment [" + segment.number + "], " + e);
+                forced = false;
+            }
+        }
+        dirty.clear();
+        return forced;
+    }
+
+    synchronized void close() {
+        closeActiveChannel();
+        active = null;
+    }
+
+    /**
+     * Reads all live records of a log stored in the given directory without modifying anything.
+     *
+     * @param directory to read from
+     * @param L logger
+     * @return map of request id to data, ordered by id
+     */
+    static Map<Long, byte[]> snapshot(@Nonnull File directory, @Nonnull Log L) {
+        RequestLog log = new RequestLog(directory, L);
+        Map<Long, byte[]> result = new TreeMap<>();
+        synchronized (log) {
+            log.replayAll(false);
+            for (Long id : log.index.keySet()) {
+                result.put(id, log.read(id));
+            }
+        }
+        return result;
+    }
+
+    private void track(Segment segment, Long id, long offset, int length) {
+        index.put(id, new Location(segment, offset, length));
+        segment.ids.add(id);
+        segment.liveBytes += HEADER_SIZE + length;
+        bytes += length;
+    }
+
+    private void untrack(Long id) {
+        Location location = index.remove(id);
+        if (location != null) {
+            location.segment.ids.remove(id);
+            location.segment.liveBytes -= HEADER_SIZE + location.length;
+            bytes -= location.length;
+        }
+    }
+
+    /**
+     * Deletes segment without live records, moves live records of a sparse sealed segment into the active one
+     */
+    private void compact(Segment segment) {
+        if (segment.ids.isEmpty()) {
+            if (segment == active) {
+                closeActiveChannel();
+                active = null;
+            }
+            segments.remove(segment.number);
+            deleteSegmentFile(segment);
+            return;
+        }
+
+        if (segment == active || segment.liveBytes * 4 > segment.size) {
+            return;
+        }
+
+        L.d("[RequestLog] compact, Moving [" + segment.ids.size() + "] live requests out of segment [" + segment.number + "]");
+        for (Long id : new ArrayList<>(segment.ids)) {
+            byte[] data = read(id);
+            if (data == null) {
+                return;
+            }
+            try {
+                ensureActiveSegment();
+                long offset = active.size;
+                writeRecord(activeChannel, offset, TYPE_RECORD, id, data);
+                active.size += HEADER_SIZE + data.length;
+                dirty.add(active);
+                untrack(id);
+                track(active, id, offset, data.length);
+            } catch (IOException e) {
+                L.e("[RequestLog] compact, Cannot move request [" + id + "], " + e);
+                return;
+            }
+        }
+        segments.remove(segment.number);
+        deleteSegmentFile(segment);
+    }
+
+    private void ensureActiveSegment() throws IOException {
+        if (active != null) {
+            return;
+        }
+        long number = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        active = new Segment(number, segmentFile(number));
+        segments.put(number, active);
+        activeChannel = FileChannel.open(active.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active.size = activeChannel.size();
+    }
+
+    private void sealActiveSegment() {
+        closeActiveChannel();
+        active = null;
+    }
+
+    private void closeActiveChannel() {
+        if (activeChannel != null) {
+            try {
+                activeChannel.close();
+            } catch (IOException e) {
+                L.w("[RequestLog] closeActiveChannel, Couldn't close segment channel " + e);
+            }
+            activeChannel = null;
+        }
+    }
+
+    private void deleteSegmentFile(Segment segment) {
+        dirty.remove(segment);
+        try {
+            Files.deleteIfExists(segment.file.toPath());
+        } catch (IOException e) {
+            L.w("[RequestLog] deleteSegmentFile, Couldn't delete segment [" + segment.number + "], " + e);
+        }
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, SDKStorage.FILE_NAME_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + SEGMENT_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + number);
+    }
+
+    private static void writeRecord(FileChannel channel, long position, byte type, long id, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        buffer.put(type).putLong(id).putInt(data.length).putInt((int) crc.getValue()).put(data);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private byte[] readPayload(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        long position = location.offset + HEADER_SIZE;
+        if (location.segment == active && activeChannel != null) {
+            readFully(activeChannel, buffer, position);
+        } else {
+            try (FileChannel channel = FileChannel.open(location.segment.file.toPath(), StandardOpenOption.READ)) {
+                readFully(channel, buffer, position);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            position += read;
+        }
+    }
+
+    private void replayAll(boolean repair) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        String segmentPrefix = SDKStorage.FILE_NAME_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + SEGMENT_PREFIX + SDKStorage.FILE_NAME_SEPARATOR;
+        for (File file : files) {
+            if (file.isFile() && file.getName().startsWith(segmentPrefix)) {
+                try {
+                    long number = Long.parseLong(file.getName().substring(segmentPrefix.length()));
+                    segments.put(number, new Segment(number, file));
+                } catch (NumberFormatException e) {
+                    L.w("[RequestLog] replayAll, Wrong segment file name: " + file.getName());
+                }
+            }
+        }
+
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            replay(segment, repair);
+        }
+
+        if (repair) {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment.ids.isEmpty()) {
+                    segments.remove(segment.number);
+                    deleteSegmentFile(segment);
+                }
+            }
+        }
+    }
+
+    private void replay(Segment segment, boolean repair) {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(segment.file.toPath());
+        } catch (IOException e) {
+            L.e("[RequestLog] replay, Cannot read segment [" + segment.number + "], " + e);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long valid = 0;
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int offset = buffer.position();
+            byte type = buffer.get();
+            long id = buffer.getLong();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if ((type != TYPE_RECORD && type != TYPE_ACK) || length < 0 || length > buffer.remaining()) {
+                break;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+
+            if (type == TYPE_RECORD) {
+                // later copy of the same request wins, earlier one can be left by interrupted compaction
+                untrack(id);
+                track(segment, id, offset, length);
+            } else {
+                untrack(id);
+            }
+            valid = buffer.position();
+        }
+        segment.size = valid;
+
+        if (valid < data.length) {
+            L.w("[RequestLog] replay, Segment [" + segment.number + "] has [" + (data.length - valid) + "] bytes of incomplete data");
+            if (repair) {
+                try (FileChannel channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                } catch (IOException e) {
+                    L.e("[RequestLog] replay, Cannot truncate segment [" + segment.number + "], " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves requests stored by previous SDK versions as separate files into the log
+     */
+    private void importLegacyFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        String prefix = Request.getStoragePrefix() + SDKStorage.FILE_NAME_SEPARATOR;
+        String alternativePrefix = SDKStorage.FILE_NAME_PREFIX + SDKStorage.FILE_NAME_SEPARATOR + prefix;
+        TreeMap<Long, File> legacy = new TreeMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && (name.startsWith(prefix) || name.startsWith(alternativePrefix))) {
+                try {
+                    legacy.put(Long.parseLong(name.substring(name.startsWith(prefix) ? prefix.length() : alternativePrefix.length())), file);
+                } catch (NumberFormatException e) {
+                    L.w("[RequestLog] importLegacyFiles, Wrong file name: " + name);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, File> entry : legacy.entrySet()) {
+            try {
+                if (append(entry.getKey(), Files.readAllBytes(entry.getValue().toPath()))) {
+                    Files.delete(entry.getValue().toPath());
+                }
+            } catch (IOException e) {
+                L.e("[RequestLog] importLegacyFiles, Cannot import request file " + entry.getValue().getName() + " " + e);
+            }
+        }
+
+        if (!legacy.isEmpty()) {
+            L.i("[RequestLog] importLegacyFiles, Imported [" + legacy.size() + "] request files");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ly.count.sdk.java.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+/**
+ * Enforces cooldowns between requests without blocking sending threads.
+ * Each request class has a bucket of slots, one per request allowed in flight: a request takes a slot when it's sent
+ * and the slot is refilled only after the cooldown of its class passes since the request completed.
+ * Device id change and push token requests use {@link InternalConfig#getNetworkImportantRequestCooldown()},
+ * other requests use {@link InternalConfig#getNetworkRequestCooldown()}, so cooldown of one class doesn't hold back the other one.
+ * {@link DefaultNetworking} asks for a slot before sending and uses {@link #delay(int)} to schedule the next attempt.
+ * Cooldown is charged per request, so a bulk call of n requests holds its slot for n cooldowns.
+ */
+class RequestPacer {
+    static final int CLASS_DEFAULT = 0;
+    static final int CLASS_IMPORTANT = 1;
+
+    private static final long BUSY = Long.MAX_VALUE;
+
+    private final long[] cooldownNanos;
+    /**
+     * Time in nanoseconds when each slot of each class becomes available, {@link #BUSY} while its request is in flight
+     */
+    private final long[][] slots;
+
+    RequestPacer(long cooldownMs, long importantCooldownMs, int slotsPerClass) {
+        cooldownNanos = new long[] { TimeUnit.MILLISECONDS.toNanos(cooldownMs), TimeUnit.MILLISECONDS.toNanos(importantCooldownMs) };
+        slots = new long[2][Math.max(1, slotsPerClass)];
+        long now = System.nanoTime();
+        for (long[] bucket : slots) {
+            Arrays.fill(bucket, now);
+        }
+    }
+
+    RequestPacer(@Nonnull InternalConfig config) {
+        this(config.getNetworkRequestCooldown(), config.getNetworkImportantRequestCooldown(), config.getNetworkMaxRequestsInFlight());
+    }
+
+    static int classOf(@Nonnull Request request) {
+        return request.params.has(Params.PARAM_OLD_DEVICE_ID) || request.params.has("token_session") ? CLASS_IMPORTANT : CLASS_DEFAULT;
+    }
+
+    /**
+     * Takes a slot for a request of the class if one is available
+     *
+     * @return slot to pass to {@link #release(int, int)} once request completes, -1 if no slot is available yet
+     */
+    synchronized int acquire(int requestClass) {
+        long now = System.nanoTime();
+        long[] bucket = slots[requestClass];
+        for (int slot = 0; slot < bucket.length; slot++) {
+            if (bucket[slot] != BUSY && bucket[slot] - now <= 0) {
+                bucket[slot] = BUSY;
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns slot taken with {@link #acquire(int)}, it becomes available after the cooldown of its class
+     */
+    synchronized void release(int requestClass, int slot) {
+        release(requestClass, slot, 1);
+    }
+
+    /**
+     * Returns slot taken with {@link #acquire(int)} for a call which sent several requests, like a bulk call,
+     * it becomes available after the cooldown of its class is charged for each of them
+     */
+    synchronized void release(int requestClass, int slot, int requests) {
+        slots[requestClass][slot] = System.nanoTime() + cooldownNanos[requestClass] * Math.max(1, requests);
+    }
+
+    /**
+     * @return milliseconds until a slot of the class becomes available, 0 if one is available now,
+     * -1 if all slots are taken by requests in flight
+     */
+    synchronized long delay(int requestClass) {
+        long now = System.nanoTime();
+        long earliest = BUSY;
+        for (long availableAt : slots[requestClass]) {
+            if (availableAt != BUSY && (earliest == BUSY || availableAt - earliest < 0)) {
+                earliest = availableAt;
+            }
+        }
+        if (earliest == BUSY) {
+            return -1;
+        }
+        long delay = earliest - now;
+        return delay <= 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay));
+    }
+}
@@ -0,0 +1,265 @@
+package ly.count.sdk.java.internal;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import ly.count.sdk.java.Config;
+
+/**
+ * Storage budget of the persistent request queue, set with {@link Config#setRequestStorageLimits(int, long)}.
+ * {@link SDKStorage} asks for admission before writing each request, and stored requests are evicted
+ * according to {@link Config.RequestEvictionPolicy} until the new one fits. Requests reserved for sending are never
+ * evicted or rewritten, since networking would send and acknowledge a copy read before the change.
+ * Request count and size come from {@link RequestLog} accounting, so enforcing limits never scans storage directory.
+ * Priorities of stored requests are computed on first eviction which needs them and cached afterwards.
+ */
+class RequestQuota {
+    static final int PRIORITY_EVENTS = 0;
+    static final int PRIORITY_DEFAULT = 1;
+    static final int PRIORITY_ESSENTIAL = 2;
+
+    private static final String EVENTS = "events";
+
+    private final RequestLog log;
+    private final int maxCount;
+    private final long maxBytes;
+    private final Config.RequestEvictionPolicy policy;
+    private final boolean compress;
+    private final Log L;
+
+    private final Map<Long, Integer> priorities = new HashMap<>();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    RequestQuota(@Nonnull RequestLog log, @Nonnull InternalConfig config, @Nonnull Log L) {
+        this.log = log;
+        this.maxCount = config.getRequestStorageMaxCount();
+        this.maxBytes = config.getRequestStorageMaxBytes();
+        this.policy = config.getRequestEvictionPolicy();
+        this.compress = config.isStorageCompressionEnabled();
+        this.L = L;
+    }
+
+    boolean isLimited() {
+        return maxCount > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Evicts stored requests until a new request fits into the limits
+     *
+     * @param id id of the new request
+     * @param length length of data of the new request
+     * @param reserved ids of requests reserved for sending, which must not be touched
+     * @return true if request can be written, false if it doesn't fit even into empty queue
+     */
+    synchronized boolean admit(@Nonnull Long id, int length, @Nonnull Set<Long> reserved) {
+        if (!isLimited()) {
+            return true;
+        }
+        if (maxBytes > 0 && length > maxBytes) {
+            L.w("[RequestQuota] admit, Request [" + id + "] of [" + length + "] bytes exceeds storage limit of [" + maxBytes + "] bytes, dropping it");
+            evicted.incrementAndGet();
+            return false;
+        }
+
+        while (exceeds(id, length)) {
+            if (!evict(id, reserved)) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets cached data of a removed request
+     */
+    synchronized void forget(@Nonnull Long id) {
+        priorities.remove(id);
+    }
+
+    synchronized void clear() {
+        priorities.clear();
+    }
+
+    /**
+     * @return number of requests dropped to stay within the limits
+     */
+    long evictedCount() {
+        return evicted.get();
+    }
+
+    /**
+     * @return number of requests merged into other requests to stay within the limits
+     */
+    long coalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Priority of a request for {@link Config.RequestEvictionPolicy#DROP_LOWEST_PRIORITY}, derived from its {@link RequestLanes} lane:
+     * crashes and session requests are essential, event batches go first
+     */
+    static int priority(@Nonnull Params params) {
+        switch (RequestLanes.laneOf(params)) {
+            case RequestLanes.LANE_CRASH:
+            case RequestLanes.LANE_SESSION:
+                return PRIORITY_ESSENTIAL;
+            case RequestLanes.LANE_EVENTS:
+                return PRIORITY_EVENTS;
+            default:
+                return PRIORITY_DEFAULT;
+        }
+    }
+
+    private boolean exceeds(Long id, int length) {
+        int replaced = log.length(id);
+        int count = log.size() + (replaced > 0 ? 0 : 1);
+        long bytes = log.bytes() - replaced + length;
+        return (maxCount > 0 && count > maxCount) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * Evicts a single request, never the one being admitted or a reserved one
+     *
+     * @return false if there is nothing to evict
+     */
+    private boolean evict(Long incoming, Set<Long> reserved) {
+        List<Long> ids = log.ids(0);
+        ids.remove(incoming);
+        ids.removeAll(reserved);
+        if (ids.isEmpty()) {
+            return false;
+        }
+
+        switch (policy) {
+            case COALESCE_EVENTS:
+                if (coalesce(ids)) {
+                    return true;
+                }
+                return drop(ids.get(0));
+            case DROP_LOWEST_PRIORITY:
+                return drop(lowestPriority(ids));
+            case DROP_OLDEST:
+            default:
+                return drop(ids.get(0));
+        }
+    }
+
+    private boolean drop(Long id) {
+        if (!log.remove(id)) {
+            return false;
+        }
+        priorities.remove(id);
+        evicted.incrementAndGet();
+        L.d("[RequestQuota] drop, Evicted request [" + id + "] with policy [" + policy + "]");
+        return true;
+    }
+
+    /**
+     * @return oldest request of the lowest priority
+     */
+    private Long lowestPriority(List<Long> ids) {
+        Long lowest = null;
+        int lowestPriority = Integer.MAX_VALUE;
+        for (Long id : ids) {
+            int priority = priorityOf(id);
+            if (priority < lowestPriority) {
+                lowest = id;
+                lowestPriority = priority;
+                if (priority == PRIORITY_EVENTS) {
+                    break;
+                }
+            }
+        }
+        return lowest;
+    }
+
+    private int priorityOf(Long id) {
+        Integer priority = priorities.get(id);
+        if (priority == null) {
+            Request request = restore(id);
+            // unreadable requests won't be sent anyway
+            priority = request == null ? PRIORITY_EVENTS : priority(request.params);
+            priorities.put(id, priority);
+        }
+        return priority;
+    }
+
+    /**
+     * Merges events of the two oldest compatible event requests into the older one
+     *
+     * @param ids ids of requests which are not reserved
+     * @return true if requests were merged
+     */
+    private boolean coalesce(List<Long> ids) {
+        Request first = null;
+        for (Long id : ids) {
+            if (priorityOf(id) != PRIORITY_EVENTS) {
+                continue;
+            }
+            Request request = restore(id);
+            if (request == null || !request.params.has(EVENTS)) {
+                continue;
+            }
+            if (first == null) {
+                first = request;
+            } else if (compatible(first.params, request.params)) {
+                return merge(first, request);
+            }
+        }
+        return false;
+    }
+
+    private static boolean compatible(Params a, Params b) {
+        return Utils.isEqual(a.get(Params.PARAM_DEVICE_ID), b.get(Params.PARAM_DEVICE_ID))
+            && Utils.isEqual(a.get("app_key"), b.get("app_key"));
+    }
+
+    private boolean merge(Request into, Request from) {
+        String a = into.params.get(EVENTS);
+        String b = from.params.get(EVENTS);
+        if (!isArray(a) || !isArray(b)) {
+            return false;
+        }
+
+        String merged;
+        if (a.length() == 2) {
+            merged = b;
+        } else if (b.length() == 2) {
+            merged = a;
+        } else {
+            merged = a.substring(0, a.length() - 1) + ',' + b.substring(1);
+        }
+        into.params.remove(EVENTS);
+        into.params.add(EVENTS, merged);
+
+        byte[] data = into.store(L);
+        if (compress) {
+            data = StorageCompression.pack(data);
+        }
+        if (!log.replace(into.storageId(), data, from.storageId())) {
+            return false;
+        }
+        priorities.remove(from.storageId());
+        coalesced.incrementAndGet();
+        L.d("[RequestQuota] merge, Merged events of request [" + from.storageId() + "] into request [" + into.storageId() + "]");
+        return true;
+    }
+
+    private static boolean isArray(String json) {
+        return json != null && json.length() >= 2 && json.charAt(0) == '[' && json.charAt(json.length() - 1) == ']';
+    }
+
+    private Request restore(Long id) {
+        byte[] data = log.read(id);
+        if (data == null) {
+            return null;
+        }
+        data = StorageCompression.unpack(data, L);
+        Request request = new Request(id);
+        return data != null && request.restore(data, L) ? request : null;
+    }
+}
@@ -2,9 +2,11 @@ package ly.count.sdk.java.internal;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nonnull;
@@ -19,6 +21,10 @@ public class SDKCore {
     public InternalConfig config;
     protected Networking networking;
     protected Queue<Request> requestQueueMemory = null;
+    /**
+     * Send priority lanes of {@link #requestQueueMemory}, guarded by {@link #lockBRQStorage} as well
+     */
+    protected RequestLanes requestLanesMemory = null;
     protected final Object lockBRQStorage = new Object();
     private CountlyTimer countlyTimer;
 
@@ -417,6 +423,34 @@ public class SDKCore {
         setDeviceIdFromStorageIfExist(config);
 
         requestQueueMemory = new ArrayDeque<>(config.getRequestQueueMaxSize());
+        requestLanesMemory = new RequestLanes(config, new RequestLanes.Source() {
+            @Override
+            public List<Long> ids() {
+                List<Long> ids = new ArrayList<>(requestQueueMemory.size());
+                for (Request request : requestQueueMemory) {
+                    ids.add(request.storageId());
+                }
+                return ids;
+            }
+
+            @Override
+            public Params params(Long id) {
+                Request request = memoryRequest(id);
+                return request == null ? null : request.params;
+            }
+
+            @Override
+            public boolean contains(Long id) {
+                return memoryRequest(id) != null;
+            }
+
+            @Override
+            public boolean drop(Long id) {
+                synchronized (lockBRQStorage) {
+                    return requestQueueMemory.removeIf(request -> request.storageId().equals(id));
+                }
+            }
+        }, L);
 
         if (config.viewIdGenerator == null) {
             config.viewIdGenerator = Utils::safeRandomVal;
@@ -466,23 +500,26 @@ public class SDKCore {
                 //Backend mode is enabled, we will use memory only request queue.
                 networking.init(config, new IStorageForRequestQueue() {
                     @Override
-                    public Request getNextRequest() {
+                    public Request getNextRequest(Set<Long> reserved) {
                         synchronized (SDKCore.instance.lockBRQStorage) {
-                            if (requestQueueMemory.isEmpty()) {
-                                return null;
-                            }
-
-                            return requestQueueMemory.element();
+                            Long id = requestLanesMemory.next(reserved);
+                            return id == null ? null : memoryRequest(id);
                         }
                     }
 
                     @Override
                     public Boolean removeRequest(Request request) {
                         synchronized (SDKCore.instance.lockBRQStorage) {
+                            requestLanesMemory.remove(request.storageId());
                             return requestQueueMemory.remove(request);
                         }
                     }
 
+                    @Override
+                    public void releaseRequest(Request request) {
+                        // memory queue has no eviction, nothing is reserved
+                    }
+
                     @Override
                     public Integer remaningRequests() {
                         synchronized (SDKCore.instance.lockBRQStorage) {
@@ -494,8 +531,21 @@ public class SDKCore {
                 // Backend mode isn't enabled, we use persistent file storage.
                 networking.init(config, new IStorageForRequestQueue() {
                     @Override
-                    public Request getNextRequest() {
-                        return Storage.readOne(config, new Request(0L), true);
+                    public Request getNextRequest(Set<Long> reserved) {
+                        Long id = sdkStorage.reserveNextRequest(reserved);
+                        if (id == null) {
+                            return null;
+                        }
+                        Request request = Storage.read(config, new Request(id));
+                        if (request == null) {
+                            sdkStorage.releaseRequest(id);
+                        }
+                        return request;
+                    }
+
+                    @Override
+                    public void releaseRequest(Request request) {
+                        sdkStorage.releaseRequest(request.storageId());
                     }
 
                     @Override
@@ -505,7 +555,7 @@ public class SDKCore {
 
                     @Override
                     public Integer remaningRequests() {
-                        return Storage.list(config, Request.getStoragePrefix()).size() - 1;
+                        return sdkStorage.storableCount(config, Request.getStoragePrefix()) - 1;
                     }
                 });
             }
@@ -517,6 +567,20 @@ public class SDKCore {
         initFinished(config);
     }
 
+    /**
+     * @return request of the memory request queue with the given id, null if there is none
+     */
+    private Request memoryRequest(Long id) {
+        synchronized (lockBRQStorage) {
+            for (Request request : requestQueueMemory) {
+                if (request.storageId().equals(id)) {
+                    return request;
+                }
+            }
+            return null;
+        }
+    }
+
     private void checkNetworking(InternalConfig config) {
         if (networking != null) {
             networking.check(config);
@@ -778,4 +842,31 @@ public class SDKCore {
         }
         return module.locationInterface;
     }
+
+    public long getEvictedRequestCount() {
+        return sdkStorage.getEvictedRequestCount();
+    }
+
+    public long getCoalescedRequestCount() {
+        return sdkStorage.getCoalescedRequestCount();
+    }
+
+    public long getDroppedEventCount() {
+        ModuleEvents module = module(ModuleEvents.class);
+        return module == null ? 0 : module.getDroppedEventCount();
+    }
+
+    public Map<String, Config.CircuitState> getNetworkCircuitStates() {
+        if (networking == null || networking.getTransport() == null) {
+            return new HashMap<>();
+        }
+        return networking.getTransport().getRetry().states();
+    }
+
+    public long getNetworkFailureCount() {
+        if (networking == null || networking.getTransport() == null) {
+            return 0;
+        }
+        return networking.getTransport().getRetry().failureCount();
+    }
 }
@@ -1,19 +1,20 @@
 package ly.count.sdk.java.internal;
 
-import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.channels.FileLock;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.Predicate;
 import org.json.JSONObject;
 
@@ -27,6 +28,8 @@ public class SDKStorage implements StorageProvider {
     protected static final String FILE_NAME_SEPARATOR = "_";
     protected static final String EVENT_QUEUE_FILE_NAME = "event_queue";
     protected static final String JSON_FILE_NAME = "countly_store.json";
+    protected static final String PICTURE_FILE_NAME = "picture";
+    protected static final String PICTURE_FILE_EXTENSION = ".bin";
 
     //key names
     protected static final String key_device_id = "did";
@@ -35,6 +38,21 @@ public class SDKStorage implements StorageProvider {
     protected static final String key_migration_version = "dv";
 
     private JsonFileStorage jsonFileStorage;
+    private RequestLog requestLog;
+    private RequestQuota requestQuota;
+    private RequestLanes requestLanes;
+    private EventJournal eventJournal;
+    private GroupCommit groupCommit;
+    /**
+     * Ids of requests picked for sending, {@link RequestQuota} never evicts or rewrites them
+     */
+    private final Set<Long> reservedRequests = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Sorted ids of stored {@link Storable}s per storage prefix, built once in {@link #init(InternalConfig)}
+     * and kept up to date on write, remove and purge, so listing doesn't need to scan storage directory
+     */
+    private final Map<String, NavigableSet<Long>> storableIndex = new ConcurrentHashMap<>();
 
     protected SDKStorage() {
 
@@ -44,6 +62,38 @@ public class SDKStorage implements StorageProvider {
         this.L = config.getLogger();
         this.config = config;
         jsonFileStorage = new JsonFileStorage(createFileFullPathWithPrefix(config, JSON_FILE_NAME), L);
+        requestLog = new RequestLog(config.getSdkStorageRootDirectory(), L);
+        requestLog.open();
+        requestQuota = new RequestQuota(requestLog, config, L);
+        requestLanes = new RequestLanes(config, new RequestLanes.Source() {
+            @Override
+            public List<Long> ids() {
+                return requestLog.ids(0);
+            }
+
+            @Override
+            public Params params(Long id) {
+                byte[] data = StorageCompression.unpack(requestLog.read(id), L);
+                Request request = new Request(id);
+                return data != null && request.restore(data, L) ? request.params : null;
+            }
+
+            @Override
+            public boolean contains(Long id) {
+                return requestLog.length(id) > 0;
+            }
+
+            @Override
+            public boolean drop(Long id) {
+                return storableRemove(config, new Request(id));
+            }
+        }, L);
+        eventJournal = new EventJournal(config.getSdkStorageRootDirectory(), config.isStorageCompressionEnabled(), L);
+        groupCommit = new GroupCommit(config, () -> {
+            requestLog.sync();
+            eventJournal.sync();
+        }, L);
+        buildStorableIndex(config);
         Storage.init();
         return this;
     }
@@ -55,13 +105,13 @@ public class SDKStorage implements StorageProvider {
             jsonFileStorage.clearAndSave();
         }
         jsonFileStorage = null;
+        storableIndex.clear();
+        groupCommit.stop();
+        requestLog.close();
+        eventJournal.close();
         Storage.stop();
     }
 
-    private static String getName(Storable storable) {
-        return getName(storable.storagePrefix(), storable.storageId().toString());
-    }
-
     private static String getName(String... names) {
         if (names == null || names.length == 0 || Utils.isEmptyOrNull(names[0])) {
             return FILE_NAME_PREFIX;
@@ -77,15 +127,52 @@ public class SDKStorage implements StorageProvider {
         }
     }
 
-    private static String extractName(String filename, String prefix) {
-        if (filename.indexOf(prefix) == 0) {
-            return filename.substring(prefix.length());
-        } else {
-            return null;
+    /**
+     * Whether storables with this prefix are kept in {@link RequestLog} instead of separate files
+     */
+    private boolean isLogged(String prefix) {
+        return requestLog != null && Request.getStoragePrefix().equals(prefix);
+    }
+
+    /**
+     * Scans storage directory and builds {@link #storableIndex} from names of storable files
+     */
+    private void buildStorableIndex(InternalConfig config) {
+        storableIndex.clear();
+        String countlyPrefix = FILE_NAME_PREFIX + FILE_NAME_SEPARATOR;
+        for (String file : getCountlyFileList(config)) {
+            int separator = file.lastIndexOf(FILE_NAME_SEPARATOR);
+            if (separator <= countlyPrefix.length()) {
+                continue;
+            }
+            try {
+                long id = Long.parseLong(file.substring(separator + 1));
+                indexOf(file.substring(countlyPrefix.length(), separator)).add(id);
+            } catch (NumberFormatException ignored) {
+                // not a storable file
+            }
         }
+        L.d("[SDKStorage] buildStorableIndex, Indexed storables for prefixes " + storableIndex.keySet());
+    }
+
+    private NavigableSet<Long> indexOf(String prefix) {
+        return storableIndex.computeIfAbsent(prefix, p -> new ConcurrentSkipListSet<>());
     }
 
     public int storablePurge(InternalConfig config, String prefix) {
+        if (prefix == null ? requestLog != null : isLogged(prefix)) {
+            requestLog.clear();
+            requestQuota.clear();
+            requestLanes.clear();
+        }
+        if (prefix == null) {
+            if (eventJournal != null) {
+                eventJournal.clear();
+            }
+            storableIndex.clear();
+        } else {
+            storableIndex.remove(prefix);
+        }
         prefix = getName(prefix) + FILE_NAME_SEPARATOR;
 
         L.i("[SDKStorage] Purging storage for prefix " + prefix);
@@ -104,7 +191,63 @@ public class SDKStorage implements StorageProvider {
         return deleted;
     }
 
+    /**
+     * Writes data of a storable and commits it according to {@link ly.count.sdk.java.Config.DurabilityMode}
+     */
     public Boolean storableWrite(ly.count.sdk.java.internal.InternalConfig config, String prefix, Long id, byte[] data) {
+        boolean written = write(config, prefix, id, data);
+        if (written && isLogged(prefix)) {
+            groupCommit.written(1);
+            // lane of the request is restored from written data when it's needed
+            requestLanes.invalidate(id);
+        }
+        return written;
+    }
+
+    public <T extends Storable> Boolean storableWrite(ly.count.sdk.java.internal.InternalConfig config, T storable) {
+        boolean written = storableWrite(config, storable.storagePrefix(), storable.storageId(), storable.store(L));
+        if (written) {
+            addToLane(storable);
+        }
+        return written;
+    }
+
+    /**
+     * Writes a batch of storables and commits all of them at once according to {@link ly.count.sdk.java.Config.DurabilityMode},
+     * so that {@link ly.count.sdk.java.Config.DurabilityMode#SYNC} costs a single force per batch
+     *
+     * @param config configuration
+     * @param storables storables to write, in order
+     * @return write results in the same order
+     */
+    public List<Boolean> storableWriteAll(InternalConfig config, List<? extends Storable> storables) {
+        List<Boolean> results = new ArrayList<>(storables.size());
+        int logged = 0;
+        for (Storable storable : storables) {
+            boolean written = write(config, storable.storagePrefix(), storable.storageId(), storable.store(L));
+            if (written && isLogged(storable.storagePrefix())) {
+                logged++;
+                addToLane(storable);
+            }
+            results.add(written);
+        }
+        groupCommit.written(logged);
+        return results;
+    }
+
+    /**
+     * Writes data to {@link RequestLog} or to a separate file, files are forced right away
+     * unless durability mode is {@link ly.count.sdk.java.Config.DurabilityMode#NONE}
+     */
+    private boolean write(InternalConfig config, String prefix, Long id, byte[] data) {
+        if (config.isStorageCompressionEnabled()) {
+            data = StorageCompression.pack(data);
+        }
+        if (isLogged(prefix)) {
+            synchronized (requestQuota) {
+                return requestQuota.admit(id, data.length, reservedRequests) && requestLog.append(id, data);
+            }
+        }
         String filename = getName(prefix, id.toString());
 
         FileOutputStream stream = null;
@@ -116,7 +259,11 @@ public class SDKStorage implements StorageProvider {
                 return false;
             }
             stream.write(data);
+            if (groupCommit.isForcing()) {
+                stream.getChannel().force(false);
+            }
             stream.close();
+            indexOf(prefix).add(id);
             return true;
         } catch (IOException e) {
             L.w("[SDKStorage] Cannot write data to " + filename + " " + e);
@@ -139,10 +286,6 @@ public class SDKStorage implements StorageProvider {
         return false;
     }
 
-    public <T extends Storable> Boolean storableWrite(ly.count.sdk.java.internal.InternalConfig config, T storable) {
-        return storableWrite(config, storable.storagePrefix(), storable.storageId(), storable.store(L));
-    }
-
     private String createFileFullPath(ly.count.sdk.java.internal.InternalConfig config, String filename) {
         String directoryPath = config.getSdkStorageRootDirectory().getAbsolutePath();
         return directoryPath + File.separator + filename;
@@ -203,12 +346,21 @@ public class SDKStorage implements StorageProvider {
         return null;
     }
 
+    /**
+     * Reads data of a storable, decompressing it if it was stored compressed
+     */
     public byte[] storableReadBytes(InternalConfig config, String prefix, Long id) {
-        return storableReadBytes(config, getName(prefix, id.toString()));
+        byte[] data;
+        if (isLogged(prefix)) {
+            data = requestLog.read(id);
+        } else {
+            data = storableReadBytes(config, getName(prefix, id.toString()));
+        }
+        return StorageCompression.unpack(data, L);
     }
 
     public <T extends Storable> Boolean storableRead(InternalConfig config, T storable) {
-        byte[] data = storableReadBytes(config, getName(storable));
+        byte[] data = storableReadBytes(config, storable.storagePrefix(), storable.storageId());
         if (data == null) {
             return null;
         } else {
@@ -219,7 +371,7 @@ public class SDKStorage implements StorageProvider {
     public <T extends Storable> Map.Entry<Long, byte[]> storableReadBytesOneOf(InternalConfig config, T storable, boolean asc) {
         List<Long> list = storableList(config, storable.storagePrefix(), asc ? 1 : -1);
         if (list.size() > 0) {
-            return new AbstractMap.SimpleEntry<>(list.get(0), storableReadBytes(config, getName(storable.storagePrefix(), list.get(0).toString())));
+            return new AbstractMap.SimpleEntry<>(list.get(0), storableReadBytes(config, storable.storagePrefix(), list.get(0)));
         }
         return null;
     }
@@ -230,7 +382,23 @@ public class SDKStorage implements StorageProvider {
     }
 
     public <T extends Storable> Boolean storableRemove(InternalConfig config, T storable) {
-        return deleteFile(config, getName(storable.storagePrefix(), storable.storageId().toString()));
+        if (isLogged(storable.storagePrefix())) {
+            requestQuota.forget(storable.storageId());
+            reservedRequests.remove(storable.storageId());
+            requestLanes.remove(storable.storageId());
+            boolean removed = requestLog.remove(storable.storageId());
+            if (removed) {
+                // acknowledgement is committed like request records, otherwise a sent request is replayed after a crash
+                groupCommit.written(1);
+            }
+            return removed;
+        }
+        boolean deleted = deleteFile(config, getName(storable.storagePrefix(), storable.storageId().toString()));
+        NavigableSet<Long> ids = storableIndex.get(storable.storagePrefix());
+        if (ids != null) {
+            ids.remove(storable.storageId());
+        }
+        return deleted;
     }
 
     public <T extends Storable> Boolean storablePop(InternalConfig config, T storable) {
@@ -273,70 +441,162 @@ public class SDKStorage implements StorageProvider {
         if (Utils.isEmptyOrNull(prefix)) {
             L.e("[SDKStorage] Cannot get list of ids without prefix");
         }
-        prefix = prefix + FILE_NAME_SEPARATOR;
-
-        String alternativePrefix = FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + prefix;
-
+        if (isLogged(prefix)) {
+            return requestLog.ids(slice);
+        }
+        NavigableSet<Long> ids = storableIndex.get(prefix);
         List<Long> list = new ArrayList<>();
-
-        String[] files = getFileList(config);
-        Arrays.sort(files);
+        if (ids == null) {
+            return list;
+        }
 
         int max = slice == 0 ? Integer.MAX_VALUE : Math.abs(slice);
-        for (int i = 0; i < files.length; i++) {
-            int idx = slice >= 0 ? i : files.length - 1 - i;
-            String file = files[idx];
-            if (file.startsWith(prefix) || file.startsWith(alternativePrefix)) {
-                try {
-                    String name = extractName(file, file.startsWith(prefix) ? prefix : alternativePrefix);
-                    if (name != null) {
-                        list.add(Long.parseLong(name));
-                    }
-                } catch (NumberFormatException nfe) {
-                    L.e("[SDKStorage] Wrong file name: " + file + " / " + prefix);
-                }
-                if (list.size() >= max) {
-                    break;
-                }
+        for (Long id : slice >= 0 ? ids : ids.descendingSet()) {
+            if (list.size() >= max) {
+                break;
             }
+            list.add(id);
         }
         return list;
     }
 
-    protected void storeEventQueue(String eventQueue) {
-        L.d("[SDKStorage] Writing EQ to json file");
+    /**
+     * Picks the request to send next from the persistent request queue according to {@link RequestLanes}
+     *
+     * @param reserved ids of requests which are being sent and must be skipped
+     * @return id of the request, null if there are no requests which can be sent now
+     */
+    Long nextRequestId(Set<Long> reserved) {
+        // lanes drop unreadable requests, which takes quota lock, so it's taken first like everywhere else
+        synchronized (requestQuota) {
+            return requestLanes.next(reserved);
+        }
+    }
+
+    /**
+     * Picks the request to send next like {@link #nextRequestId(Set)} and reserves it, so that it's not evicted
+     * or rewritten by {@link RequestQuota} until it's removed or released with {@link #releaseRequest(Long)}
+     *
+     * @param skip ids of requests which are being sent and must be skipped
+     * @return id of the request, null if there are no requests which can be sent now
+     */
+    Long reserveNextRequest(Set<Long> skip) {
+        synchronized (requestQuota) {
+            Long id = nextRequestId(skip);
+            if (id != null) {
+                reservedRequests.add(id);
+            }
+            return id;
+        }
+    }
 
-        //write eventQueue that is consist of json objects of events and separated by ":::" delimiter
-        //to the config.getSdkStorageRootDirectory() folder named Storage.name(this) + ".events"
-        //if file already exists overwrite it
-        //if file doesn't exist create it
-        //if file can't be created or written, log the error
-        File file = createFileFullPathWithPrefix(config, EVENT_QUEUE_FILE_NAME);
+    /**
+     * Releases request reserved with {@link #reserveNextRequest(Set)} which wasn't removed
+     */
+    void releaseRequest(Long id) {
+        reservedRequests.remove(id);
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            // Write the eventQueue to the file
-            writer.write(eventQueue);
-            L.d("[SDKStorage] Wrote EQ to json file");
-        } catch (IOException e) {
-            // Handle the error if writing fails
-            L.e("[SDKStorage] Failed to write EQ to json file: " + e.toString());
+    /**
+     * @return number of queued requests in each send priority lane
+     */
+    int[] requestLaneSizes() {
+        return requestLanes.laneSizes();
+    }
+
+    private void addToLane(Storable storable) {
+        if (storable instanceof Request && isLogged(storable.storagePrefix())) {
+            requestLanes.add(storable.storageId(), ((Request) storable).params);
+        }
+    }
+
+    /**
+     * Number of stored storables with given prefix
+     *
+     * @param config configuration
+     * @param prefix storage prefix
+     * @return number of storables
+     */
+    public int storableCount(InternalConfig config, String prefix) {
+        if (isLogged(prefix)) {
+            return requestLog.size();
         }
+        NavigableSet<Long> ids = storableIndex.get(prefix);
+        return ids == null ? 0 : ids.size();
     }
 
-    protected String readEventQueue() {
-        L.d("[SDKStorage] Getting event queue");
-        File file = createFileFullPathWithPrefix(config, EVENT_QUEUE_FILE_NAME);
+    /**
+     * @return number of requests dropped from the request queue to stay within storage limits
+     */
+    public long getEvictedRequestCount() {
+        return requestQuota == null ? 0 : requestQuota.evictedCount();
+    }
 
-        String eventQueue = "";
+    /**
+     * @return number of event requests merged into other requests to stay within storage limits
+     */
+    public long getCoalescedRequestCount() {
+        return requestQuota == null ? 0 : requestQuota.coalescedCount();
+    }
 
-        try {
-            eventQueue = Utils.readFileContent(file, L);
+    /**
+     * @return number of times written requests and events were forced to disk
+     */
+    long getStorageForceCount() {
+        return groupCommit == null ? 0 : groupCommit.forceCount();
+    }
+
+    /**
+     * Writes user picture into a side file, so that requests only reference it instead of keeping picture data
+     *
+     * @param data picture data
+     * @return picture file or null if it couldn't be written
+     */
+    protected File storePicture(InternalConfig config, byte[] data) {
+        File file = createFileFullPathWithPrefix(config, PICTURE_FILE_NAME + FILE_NAME_SEPARATOR + TimeUtils.uniqueTimestampMs() + PICTURE_FILE_EXTENSION);
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            stream.write(data);
+            if (groupCommit.isForcing()) {
+                stream.getFD().sync();
+            }
+            return file;
         } catch (IOException e) {
-            // Handle the error if reading fails
-            L.e("[SDKStorage] Failed to read EQ from json file: " + e);
+            L.e("[SDKStorage] storePicture, Cannot write picture " + e);
+            if (!file.delete()) {
+                L.v("[SDKStorage] storePicture, Nothing to clean up");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Appends a single serialized event to the event journal
+     *
+     * @param eventJson serialized event
+     */
+    protected void appendEventQueue(String eventJson) {
+        if (eventJournal.append(eventJson)) {
+            groupCommit.written(1);
         }
+    }
+
+    /**
+     * Removes all events from the event journal
+     */
+    protected void clearEventQueue() {
+        L.d("[SDKStorage] Clearing event journal");
+        eventJournal.truncate();
+    }
 
-        return eventQueue;
+    /**
+     * Opens a reader of serialized events in the event journal in the order they were recorded.
+     * Events appended after this call are not returned by the reader.
+     *
+     * @return reader of serialized events, must be closed
+     */
+    protected EventJournal.Replay openEventReplay() {
+        L.d("[SDKStorage] Opening event queue replay");
+        return eventJournal.openReplay();
     }
 
     @Override
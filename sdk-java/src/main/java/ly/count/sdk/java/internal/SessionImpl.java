@@ -3,8 +3,9 @@ package ly.count.sdk.java.internal;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +29,12 @@ import ly.count.sdk.java.View;
 
 public class SessionImpl implements Session, Storable, EventImpl.EventRecorder {
 
+    /**
+     * Marks session data written by {@link #store(Log)}, "CLYS" in ASCII
+     */
+    static final int STORAGE_MAGIC = 0x434C5953;
+    static final byte STORAGE_VERSION = 1;
+
     protected Log L = null;
     /**
      * {@link System#nanoTime()} of time when {@link Session} object is created.
@@ -503,58 +510,32 @@ public class SessionImpl implements Session, Storable, EventImpl.EventRecorder {
         return "session";
     }
 
+    /**
+     * Serializes session with {@link #encode(long, Long, Long, Long, List, String, int)}
+     */
     public byte[] store(Log L) {
-        ByteArrayOutputStream bytes = null;
-        ObjectOutputStream stream = null;
+        List<String> eventsJson = new ArrayList<>(events.size());
+        for (Event event : events) {
+            eventsJson.add(event.toString());
+        }
         try {
-            bytes = new ByteArrayOutputStream();
-            stream = new ObjectOutputStream(bytes);
-            stream.writeLong(id);
-            stream.writeLong(began == null ? 0 : began);
-            stream.writeLong(updated == null ? 0 : updated);
-            stream.writeLong(ended == null ? 0 : ended);
-            stream.writeInt(events.size());
-            for (Event event : events) {
-                stream.writeUTF(event.toString());
-            }
-            stream.writeUTF(params.toString());
-            stream.writeInt(consents);
-            stream.close();
-            return bytes.toByteArray();
+            return encode(id, began, updated, ended, eventsJson, params.toString(), consents);
         } catch (IOException e) {
             if (L != null) {
                 L.e("[SessionImpl] Cannot serialize session" + e);
             }
-        } finally {
-            if (stream != null) {
-                try {
-                    stream.close();
-                } catch (IOException e) {
-                    if (L != null) {
-                        L.e("[SessionImpl] Cannot happen" + e);
-                    }
-                }
-            }
-            if (bytes != null) {
-                try {
-                    bytes.close();
-                } catch (IOException e) {
-                    if (L != null) {
-                        L.e("[SessionImpl] Cannot happen" + e);
-                    }
-                }
-            }
         }
         return null;
     }
 
     public boolean restore(byte[] data, Log L) {
-        ByteArrayInputStream bytes = null;
-        ObjectInputStream stream = null;
-
-        try {
-            bytes = new ByteArrayInputStream(data);
-            stream = new ObjectInputStream(bytes);
+        try (DataInputStream stream = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (stream.readInt() != STORAGE_MAGIC || stream.readByte() != STORAGE_VERSION) {
+                if (L != null) {
+                    L.e("[SessionImpl] Unsupported session data format");
+                }
+                return false;
+            }
             if (id != stream.readLong()) {
                 if (L != null) {
                     L.e("[SessionImpl] Wrong file for session deserialization");
@@ -570,13 +551,13 @@ public class SessionImpl implements Session, Storable, EventImpl.EventRecorder {
 
             int count = stream.readInt();
             for (int i = 0; i < count; i++) {
-                Event event = EventImpl.fromJSON(stream.readUTF(), null, L);
+                Event event = EventImpl.fromJSON(readString(stream), null, L);
                 if (event != null) {
                     events.add(event);
                 }
             }
 
-            params.add(stream.readUTF());
+            params.add(readString(stream));
             consents = stream.readInt();
 
             return true;
@@ -584,30 +565,53 @@ public class SessionImpl implements Session, Storable, EventImpl.EventRecorder {
             if (L != null) {
                 L.e("[SessionImpl] Cannot deserialize session" + e);
             }
-        } finally {
-            if (stream != null) {
-                try {
-                    stream.close();
-                } catch (IOException e) {
-                    if (L != null) {
-                        L.e("[SessionImpl] Cannot happen" + e);
-                    }
-                }
-            }
-            if (bytes != null) {
-                try {
-                    bytes.close();
-                } catch (IOException e) {
-                    if (L != null) {
-                        L.e("[SessionImpl] Cannot happen" + e);
-                    }
-                }
-            }
         }
 
         return false;
     }
 
+    /**
+     * Encodes session data in storage format: magic (4 bytes), version (1 byte), id, began, updated, ended (8 bytes each,
+     * 0 for null), events count (4 bytes), events and params as length-prefixed UTF-8 strings, consents (4 bytes)
+     *
+     * @return encoded session
+     * @throws IOException if cannot be written, not expected for in-memory stream
+     */
+    static byte[] encode(long id, Long began, Long updated, Long ended, List<String> events, String params, int consents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + params.length() + events.size() * 128);
+        try (DataOutputStream stream = new DataOutputStream(bytes)) {
+            stream.writeInt(STORAGE_MAGIC);
+            stream.writeByte(STORAGE_VERSION);
+            stream.writeLong(id);
+            stream.writeLong(began == null ? 0 : began);
+            stream.writeLong(updated == null ? 0 : updated);
+            stream.writeLong(ended == null ? 0 : ended);
+            stream.writeInt(events.size());
+            for (String event : events) {
+                writeString(stream, event);
+            }
+            writeString(stream, params);
+            stream.writeInt(consents);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream stream, String string) throws IOException {
+        byte[] data = string.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(data.length);
+        stream.write(data);
+    }
+
+    private static String readString(DataInputStream stream) throws IOException {
+        int length = stream.readInt();
+        if (length < 0 || length > stream.available()) {
+            throw new IOException("Wrong string length " + length);
+        }
+        byte[] data = new byte[length];
+        stream.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
     SessionImpl setPushOnChange(boolean pushOnChange) {
         this.pushOnChange = pushOnChange;
         return this;
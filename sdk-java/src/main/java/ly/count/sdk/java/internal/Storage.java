@@ -1,22 +1,176 @@
 package ly.count.sdk.java.internal;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Storing and retrieving data from internal storage of SDK.
- * Thread safety is based on single thread of execution - only one thread
- * works with storage at a particular time thanks to {@link Tasks}.
+ * Storage work is striped across a small pool of single thread {@link Tasks}: all operations
+ * with storables of the same prefix run on the same stripe in order they were scheduled,
+ * while requests, sessions and crashes don't wait for each other.
+ * Consecutive pushes are coalesced into a single {@link Batch} written and committed at once,
+ * a batch is closed for new pushes as soon as any other task is scheduled on its stripe after it, so ordering is preserved.
  */
 
 public class Storage {
 
-    private static Tasks tasks;
+    private static volatile Stripe[] stripes;
+    private static final Map<String, Stripe> prefixStripes = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextStripe = new AtomicInteger();
+
+    /**
+     * Single thread of storage work along with its open push batch
+     */
+    private static final class Stripe {
+        private final Tasks tasks;
+        private Batch openBatch = null;
+
+        Stripe(String name) {
+            tasks = new Tasks(name, null);
+        }
+
+        /**
+         * Schedules a task other than a push, closing current push batch
+         */
+        synchronized <T> Future<T> run(Tasks.Task<T> task, Tasks.Callback<T> callback) {
+            openBatch = null;
+            return tasks.run(task, callback);
+        }
+
+        <T> Future<T> run(Tasks.Task<T> task) {
+            return run(task, null);
+        }
+
+        synchronized Future<Boolean> push(InternalConfig config, Storable storable, Tasks.Callback<Boolean> callback) {
+            if (openBatch == null || openBatch.started) {
+                openBatch = new Batch(this, config);
+                tasks.run(openBatch);
+            }
+            return openBatch.add(storable, callback);
+        }
+    }
+
+    /**
+     * Storables pushed one after another, written with {@link SDKStorage#storableWriteAll(InternalConfig, List)}.
+     * Repeated pushes of the same storable within a batch are written once.
+     */
+    private static final class Batch extends Tasks.Task<Boolean> {
+        private final Stripe stripe;
+        private final InternalConfig config;
+        private final List<Storable> storables = new ArrayList<>();
+        private final List<List<Entry>> entries = new ArrayList<>();
+        private final Map<String, Integer> positions = new HashMap<>();
+        private boolean started = false;
+
+        private static final class Entry {
+            final CompletableFuture<Boolean> future = new CompletableFuture<>();
+            final Tasks.Callback<Boolean> callback;
+
+            Entry(Tasks.Callback<Boolean> callback) {
+                this.callback = callback;
+            }
+        }
+
+        Batch(Stripe stripe, InternalConfig config) {
+            super(Tasks.ID_STRICT);
+            this.stripe = stripe;
+            this.config = config;
+        }
+
+        /**
+         * Must be called while holding {@link #stripe} lock
+         */
+        Future<Boolean> add(Storable storable, Tasks.Callback<Boolean> callback) {
+            Entry entry = new Entry(callback);
+            Integer position = positions.get(name(storable));
+            if (position == null) {
+                positions.put(name(storable), storables.size());
+                storables.add(storable);
+                entries.add(new ArrayList<>());
+                position = storables.size() - 1;
+            } else {
+                storables.set(position, storable);
+            }
+            entries.get(position).add(entry);
+            return entry.future;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            synchronized (stripe) {
+                started = true;
+                if (stripe.openBatch == this) {
+                    stripe.openBatch = null;
+                }
+            }
+
+            List<Boolean> results = null;
+            try {
+                results = config.sdk.sdkStorage.storableWriteAll(config, storables);
+            } finally {
+                if (results == null) {
+                    // nothing is known to be written, waiters are failed instead of waiting forever
+                    for (int i = 0; i < storables.size(); i++) {
+                        complete(i, Boolean.FALSE);
+                    }
+                }
+            }
+
+            if (storables.size() > 1) {
+                config.getLogger().v("[Storage] Batch, Wrote [" + storables.size() + "] storables at once");
+            }
+            boolean all = true;
+            for (int i = 0; i < storables.size(); i++) {
+                Boolean result = results.get(i);
+                all &= result;
+                complete(i, result);
+            }
+            return all;
+        }
+
+        /**
+         * Calls callbacks and completes futures of all pushes of the storable at the position
+         */
+        private void complete(int position, Boolean result) {
+            for (Entry entry : entries.get(position)) {
+                try {
+                    if (entry.callback != null) {
+                        entry.callback.call(result);
+                    }
+                    entry.future.complete(result);
+                } catch (Exception e) {
+                    entry.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
 
     static void init() {
-        tasks = new Tasks("storage", null);
+        int count = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe("storage-" + i);
+        }
+        prefixStripes.clear();
+    }
+
+    /**
+     * Stripes are assigned to prefixes round robin on first use, so the first few prefixes never share a thread
+     */
+    private static Stripe stripe(String prefix) {
+        Stripe[] current = stripes;
+        return prefixStripes.computeIfAbsent(prefix, p -> current[Math.floorMod(nextStripe.getAndIncrement(), current.length)]);
+    }
+
+    private static Stripe stripe(Storable storable) {
+        return stripe(storable.storagePrefix());
     }
 
     public static String name(Storable storable) {
@@ -52,12 +206,7 @@ public class Storage {
      */
     public static Future<Boolean> pushAsync(InternalConfig config, final Storable storable, Tasks.Callback<Boolean> callback) {
         config.getLogger().d("[Storage] pushAsync: " + name(storable) + " " + storable.toString());
-        return tasks.run(new Tasks.Task<Boolean>(storable.storageId()) {
-            @Override
-            public Boolean call() throws Exception {
-                return config.sdk.sdkStorage.storableWrite(config, storable);
-            }
-        }, callback);
+        return stripe(storable).push(config, storable, callback);
     }
 
     /**
@@ -98,7 +247,7 @@ public class Storage {
      * @return Future<Boolean> object which resolves to true if storable is removed, false otherwise
      */
     public static <T extends Storable> Future<Boolean> removeAsync(final InternalConfig config, final T storable, Tasks.Callback<Boolean> callback) {
-        return tasks.run(new Tasks.Task<Boolean>(Tasks.ID_STRICT) {
+        return stripe(storable).run(new Tasks.Task<Boolean>(Tasks.ID_STRICT) {
             @Override
             public Boolean call() throws Exception {
                 return config.sdk.sdkStorage.storableRemove(config, storable);
@@ -132,7 +281,7 @@ public class Storage {
      * @return Future<Storable> object which resolves as object passed as param when restoring succeeded, null otherwise
      */
     public static <T extends Storable> Future<T> popAsync(final InternalConfig config, final T storable) {
-        return tasks.run(new Tasks.Task<T>(-storable.storageId()) {
+        return stripe(storable).run(new Tasks.Task<T>(-storable.storageId()) {
             @Override
             public T call() throws Exception {
                 Boolean result = config.sdk.sdkStorage.storablePop(config, storable);
@@ -146,7 +295,9 @@ public class Storage {
     }
 
     /**
-     * Transform existing {@link Storable}s one-by-one replacing data if needed
+     * Transform existing {@link Storable}s one-by-one replacing data if needed.
+     * Each storable is transformed in a separate task scheduled once the previous one is done,
+     * so other operations with the same prefix don't wait for the whole transformation.
      *
      * @param config to configure
      * @param prefix Object to reinitialize
@@ -154,30 +305,33 @@ public class Storage {
      */
     static <T extends Storable> boolean transform(final InternalConfig config, final String prefix, final Transformer transformer) {
         config.getLogger().d("[Storage] readAll " + prefix);
+        List<Long> ids = list(config, prefix);
+        if (ids == null) {
+            return false;
+        }
+
+        Stripe stripe = stripe(prefix);
+        boolean success = true;
         try {
-            return tasks.run(new Tasks.Task<Boolean>(Tasks.ID_STRICT) {
-                @Override
-                public Boolean call() throws Exception {
-                    boolean success = true;
-                    List<Long> ids = config.sdk.sdkStorage.storableList(config, prefix, 0);
-                    for (Long id : ids) {
-                        byte data[] = config.sdk.sdkStorage.storableReadBytes(config, prefix, id);
-                        if (data != null) {
-                            byte transformed[] = transformer.doTheJob(id, data);
-                            if (transformed != null) {
-                                if (!config.sdk.sdkStorage.storableWrite(config, prefix, id, transformed)) {
-                                    success = false;
-                                    config.getLogger().e("[Storage] Couldn't write transformed data for " + id);
-                                }
-                            }
-                        } else {
-                            success = false;
-                            config.getLogger().e("[Storage] Couldn't read data to transform from " + id);
+            for (final Long storableId : ids) {
+                success &= stripe.run(new Tasks.Task<Boolean>(Tasks.ID_STRICT) {
+                    @Override
+                    public Boolean call() throws Exception {
+                        byte data[] = config.sdk.sdkStorage.storableReadBytes(config, prefix, storableId);
+                        if (data == null) {
+                            config.getLogger().e("[Storage] Couldn't read data to transform from " + storableId);
+                            return false;
                         }
+                        byte transformed[] = transformer.doTheJob(storableId, data);
+                        if (transformed != null && !config.sdk.sdkStorage.storableWrite(config, prefix, storableId, transformed)) {
+                            config.getLogger().e("[Storage] Couldn't write transformed data for " + storableId);
+                            return false;
+                        }
+                        return true;
                     }
-                    return success;
-                }
-            }).get();
+                }).get();
+            }
+            return success;
         } catch (InterruptedException | ExecutionException e) {
             config.getLogger().e("[Storage] Interrupted while reading all " + prefix + " " + e);
         }
@@ -223,7 +377,7 @@ public class Storage {
      * @return Future<Storable> object which resolves as object passed as param when reading succeeded, null otherwise
      */
     public static <T extends Storable> Future<T> readAsync(final InternalConfig config, final T storable, final Tasks.Callback<T> callback) {
-        return tasks.run(new Tasks.Task<T>(-storable.storageId()) {
+        return stripe(storable).run(new Tasks.Task<T>(-storable.storageId()) {
             @Override
             public T call() throws Exception {
                 Boolean done = config.sdk.sdkStorage.storableRead(config, storable);
@@ -270,7 +424,7 @@ public class Storage {
      * @return Future<Storable> object which resolves as object passed as param when reading succeeded, null otherwise
      */
     public static <T extends Storable> Future<T> readOneAsync(final InternalConfig config, final T storable, final boolean asc) {
-        return tasks.run(new Tasks.Task<T>(-storable.storageId()) {
+        return stripe(storable).run(new Tasks.Task<T>(-storable.storageId()) {
             @Override
             public T call() throws Exception {
                 Map.Entry<Long, byte[]> data = config.sdk.sdkStorage.storableReadBytesOneOf(config, storable, asc);
@@ -332,7 +486,7 @@ public class Storage {
      * @return Future<List < Long>> object which resolves as list of storable ids, not null
      */
     public static Future<List<Long>> listAsync(final InternalConfig config, final String prefix, final int slice) {
-        return tasks.run(new Tasks.Task<List<Long>>(Tasks.ID_STRICT) {
+        return stripe(prefix).run(new Tasks.Task<List<Long>>(Tasks.ID_STRICT) {
             @Override
             public List<Long> call() throws Exception {
                 List<Long> list = config.sdk.sdkStorage.storableList(config, prefix, slice);
@@ -342,20 +496,34 @@ public class Storage {
         });
     }
 
+    /**
+     * Waits until all storage tasks scheduled before this call are complete
+     */
     public static void await(Log L) {
+        Stripe[] current = stripes;
+        if (current == null) {
+            // not initialized or already stopped, there is nothing to wait for
+            return;
+        }
         if (L != null) {
             L.d("[Storage] Waiting for storage tasks to complete");
         }
-        try {
-            tasks.run(new Tasks.Task<Boolean>(Tasks.ID_STRICT) {
+        List<Future<Boolean>> barriers = new ArrayList<>(current.length);
+        for (Stripe stripe : current) {
+            barriers.add(stripe.run(new Tasks.Task<Boolean>(Tasks.ID_STRICT) {
                 @Override
                 public Boolean call() throws Exception {
-                    if (L != null) {
-                        L.d("[Storage] Waiting for storage tasks to complete DONE");
-                    }
                     return null;
                 }
-            }).get();
+            }));
+        }
+        try {
+            for (Future<Boolean> barrier : barriers) {
+                barrier.get();
+            }
+            if (L != null) {
+                L.d("[Storage] Waiting for storage tasks to complete DONE");
+            }
         } catch (InterruptedException | ExecutionException e) {
             if (L != null) {
                 L.e("[Storage] Interrupted while waiting " + e);
@@ -364,8 +532,12 @@ public class Storage {
     }
 
     public static void stop() {
-        if (tasks != null) {
-            tasks.shutdown();
+        Stripe[] current = stripes;
+        stripes = null;
+        if (current != null) {
+            for (Stripe stripe : current) {
+                stripe.tasks.shutdown();
+            }
         }
     }
 }
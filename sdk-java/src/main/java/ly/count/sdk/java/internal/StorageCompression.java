@@ -0,0 +1,116 @@
+package ly.count.sdk.java.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of persisted payloads, enabled with {@link ly.count.sdk.java.Config#enableStorageCompression()}.
+ * Compressed payloads start with {@link #HEADER} followed by format version, payloads without it are stored as is,
+ * so compressed and plain data written before compression was enabled (or after it was disabled) can coexist.
+ * A preset dictionary of common Countly keys lets even single small events compress well.
+ */
+final class StorageCompression {
+    /**
+     * First byte of compressed payloads. It never starts plain payloads: it is invalid in UTF-8
+     * and differs from headers of binary request and session formats.
+     */
+    static final byte HEADER = (byte) 0xFF;
+    static final byte VERSION = 1;
+
+    /**
+     * Preset dictionary, deflate prefers matches at the end of it, so most frequent substrings go last
+     */
+    static final byte[] DICTIONARY = ("metrics_os_os_version_device_resolution_app_version_locale"
+        + "user_detailsconsentlocationcrashbegin_session=1session_duration=end_session=1"
+        + "\"_name\":\"\",\"visit\":\"1\",\"start\":\"1\",\"segment\":\"[CLY]_view\"[CLY]_action"
+        + "checksum256=&rr=&av=&tz=&sdk_name=java-native&sdk_version="
+        + "\"pvid\":\"\",\"cvid\":\"\",\"peid\":\"\",\"id\":\"\",\"sum\":,\"dur\":"
+        + "\"segmentation\":{\"timestamp\":,\"hour\":,\"dow\":,\"count\":1,\"key\":\""
+        + "&events=[{\"key\":\"&device_id=&app_key=&timestamp=&hour=&dow=").getBytes(StandardCharsets.UTF_8);
+
+    private StorageCompression() {
+    }
+
+    /**
+     * Compresses payload and prepends header
+     *
+     * @param data payload
+     * @return compressed payload
+     */
+    static byte[] pack(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            out.write(HEADER);
+            out.write(VERSION);
+            byte[] buffer = new byte[Math.min(Math.max(data.length, 64), 8192)];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses payload if it's compressed, otherwise returns it as is
+     *
+     * @param data payload
+     * @param L logger
+     * @return plain payload or null if data is corrupted
+     */
+    static byte[] unpack(byte[] data, Log L) {
+        if (!isPacked(data)) {
+            return data;
+        }
+        if (data.length < 2 || data[1] != VERSION) {
+            if (L != null) {
+                L.w("[StorageCompression] unpack, Unsupported compressed payload version");
+            }
+            return null;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 2, data.length - 2);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new DataFormatException("Truncated payload");
+                    }
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException | IllegalArgumentException e) {
+            if (L != null) {
+                L.w("[StorageCompression] unpack, Cannot decompress payload " + e);
+            }
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static boolean isPacked(byte[] data) {
+        return data != null && data.length > 0 && data[0] == HEADER;
+    }
+}
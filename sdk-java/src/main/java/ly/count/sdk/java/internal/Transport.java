@@ -1,19 +1,19 @@
 package ly.count.sdk.java.internal;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.security.KeyFactory;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
@@ -26,16 +26,18 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
-import javax.net.ssl.HttpsURLConnection;
+import java.util.zip.GZIPOutputStream;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 import ly.count.sdk.java.PredefinedUserPropertyKeys;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
@@ -43,8 +45,9 @@ import org.json.JSONObject;
  * Contract:
  * <ul>
  *     <li>Instantiated once.</li>
- *     <li>Doesn't have any queues, sends one request at a time (guaranteed to have maximum one {@link #send(Request)} unresolved call at a time).</li>
+ *     <li>Doesn't have any queues, sends requests it's given, several {@link #send(Request)} calls can be unresolved at a time.</li>
  *     <li>Returns a {@link Future} which resolves to either success or a failure.</li>
+ *     <li>Makes HTTP calls with {@link HttpEngine} which keeps connections alive between calls.</li>
  *     <li>Doesn't do any storage or configuration-related operations, doesn't call modules, etc.</li>
  * </ul>
  */
@@ -53,9 +56,15 @@ import org.json.JSONObject;
 
 public class Transport implements X509TrustManager {
     private Log L = null;
-    private static final String PARAMETER_TAMPERING_DIGEST = "SHA-256";
     private static final String CHECKSUM = "checksum256";
+    static final String ENDPOINT_BULK = "/i/bulk?";
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    private static final int RESPONSE_BUFFER_SIZE = 4096;
+    private static final String RETRY_AFTER = "Retry-After";
     private InternalConfig config;
+    private NetworkRetry retry;
+    private HttpEngine engine;
+    private ImmediateRequests immediateRequests;
 
     private SSLContext sslContext;          // ssl context to use if pinning is enabled
     private List<byte[]> keyPins = null;    // list of parsed key pins
@@ -83,45 +92,37 @@ public class Transport implements X509TrustManager {
         L = config.getLogger();
         L.i("[network] Server: " + config.getServerURL());
         this.config = config;
+        this.retry = new NetworkRetry(config);
 
         try {
             setPins(config.getPublicKeyPins(), config.getCertificatePins());
         } catch (CertificateException e) {
             throw new IllegalArgumentException(e);
         }
+        this.engine = HttpEngine.create(config, sslContext, L);
+        this.immediateRequests = new ImmediateRequests(config, L);
     }
 
     /**
-     * For testing purposes
+     * Stops executing immediate requests
      */
-    public HttpURLConnection openConnection(String url, String params, boolean usingGET) throws IOException {
-        URL u;
-        if (usingGET) {
-            u = new URL(url + params);
-        } else {
-            u = new URL(url);
+    void stop() {
+        if (immediateRequests != null) {
+            immediateRequests.stop();
         }
-
-        HttpURLConnection connection = (HttpURLConnection) u.openConnection();
-
-        connection.setUseCaches(false);
-        connection.setDoInput(true);
-        connection.setDoOutput(!usingGET);
-        connection.setRequestMethod(usingGET ? "GET" : "POST");
-
-        return connection;
     }
 
     /**
-     * Open connection for particular request: choose GET or POST, choose multipart or urlencoded if POST,
-     * set SSL context, calculate and add checksum, load and send user picture if needed.
+     * Prepare call for particular request: choose GET or POST, choose multipart or urlencoded if POST,
+     * calculate and add checksum, stream user picture if needed.
      *
      * @param request request to send
-     * @return connection, not {@link HttpURLConnection} yet
-     * @throws IOException from {@link HttpURLConnection} in case of error
+     * @param postOnly true to send request with POST even if it fits into GET
+     * @return call to pass to {@link HttpEngine#execute(HttpEngine.Call)}
      */
-    HttpURLConnection connection(final Request request) throws IOException {
+    HttpEngine.Call call(final Request request, boolean postOnly) {
         String endpoint = request.params.remove(Request.ENDPOINT);
+        request.params.remove(Request.PRIORITY);
 
         if (!request.params.has("device_id") && config.getDeviceId() != null) {
             //fallback if request does not have any device id
@@ -133,170 +134,220 @@ public class Transport implements X509TrustManager {
         }
 
         String path = config.getServerURL().toString() + endpoint;
-        byte[] maybePictureData = getPictureDataFromRequest(request);
-        boolean usingGET = !config.isHTTPPostForced() && request.isGettable(config.getServerURL()) && maybePictureData == null;
+        Picture picture = getPictureFromRequest(request);
+        boolean usingGET = !postOnly && !config.isHTTPPostForced() && request.isGettable(config.getServerURL()) && picture == null;
 
         if (usingGET && config.getParameterTamperingProtectionSalt() != null) {
-            request.params.add(CHECKSUM, Utils.digestHex(PARAMETER_TAMPERING_DIGEST, request.params + config.getParameterTamperingProtectionSalt(), L));
+            ParamsEncoder encoder = ParamsEncoder.get();
+            request.params.writeTo(encoder);
+            request.params.add(CHECKSUM, encoder.checksum(config.getParameterTamperingProtectionSalt(), L));
         }
 
-        HttpURLConnection connection = openConnection(path, request.params.toString(), usingGET);
-        connection.setConnectTimeout(1000 * config.getNetworkConnectionTimeout());
-        connection.setReadTimeout(1000 * config.getNetworkReadTimeout());
-
-        if (connection instanceof HttpsURLConnection && sslContext != null) {
-            HttpsURLConnection https = (HttpsURLConnection) connection;
-            https.setSSLSocketFactory(sslContext.getSocketFactory());
+        HttpEngine.Call call;
+        if (usingGET) {
+            call = new HttpEngine.Call(path + request.params, null);
+        } else if (picture != null) {
+            String boundary = Long.toHexString(System.currentTimeMillis());
+            call = new HttpEngine.Call(path, output -> writeMultipart(output, boundary, request, picture));
+            call.header("Content-Type", "multipart/form-data; boundary=" + boundary);
+            call.streaming = true;
+        } else {
+            //picture data is "null". If it was sent, we send "null" to server to clear the image there
+            //we send a normal request in HTTP POST
+            //body and checksum are written in a single pass into the pooled buffer of this thread
+            ParamsEncoder encoder = ParamsEncoder.get();
+            request.params.writeTo(encoder);
+            if (config.getParameterTamperingProtectionSalt() != null) {
+                String checksum = encoder.checksum(config.getParameterTamperingProtectionSalt(), L);
+                request.params.add(CHECKSUM, checksum);
+                if (encoder.length() > 0) {
+                    encoder.ascii('&');
+                }
+                encoder.utf8(CHECKSUM).ascii('=');
+                if (checksum != null) {
+                    encoder.utf8(checksum);
+                }
+            }
+            final byte[] body = encoder.toByteArray();
+            final boolean compress = config.isNetworkCompressionEnabled() && body.length >= config.getNetworkCompressionMinBytes();
+            call = new HttpEngine.Call(path, output -> {
+                if (compress) {
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(output, GZIP_BUFFER_SIZE)) {
+                        gzip.write(body);
+                    }
+                } else {
+                    output.write(body);
+                }
+            });
+            call.header("Content-Type", "application/x-www-form-urlencoded");
+            if (compress) {
+                call.header("Content-Encoding", "gzip");
+            }
         }
+        call.connectTimeout = 1000 * config.getNetworkConnectionTimeout();
+        call.readTimeout = 1000 * config.getNetworkReadTimeout();
 
         if (config.getCustomNetworkRequestHeaders() != null) {
             //if there are custom header values, add them
-            L.v("[Transport] connection, Adding [" + config.getCustomNetworkRequestHeaders() + "] custom header fields");
+            L.v("[Transport] call, Adding [" + config.getCustomNetworkRequestHeaders() + "] custom header fields");
             for (Map.Entry<String, String> entry : config.getCustomNetworkRequestHeaders().entrySet()) {
                 String key = entry.getKey();
                 String value = entry.getValue();
                 if (key != null && value != null && !key.isEmpty()) {
-                    connection.addRequestProperty(key, value);
+                    call.header(key, value);
                 }
             }
         }
 
-        if (!usingGET) {
-            OutputStream output = null;
-            PrintWriter writer = null;
-            try {
-                if (maybePictureData != null) {
-                    String boundary = Long.toHexString(System.currentTimeMillis());
-
-                    connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-
-                    output = connection.getOutputStream();
-                    writer = new PrintWriter(new OutputStreamWriter(output, Utils.UTF8), true);
-
-                    addMultipart(output, writer, boundary, "image/jpeg", "binaryFile", "image", maybePictureData);
+        return call;
+    }
 
-                    StringBuilder salting = new StringBuilder();
-                    Map<String, String> map = request.params.map();
-                    for (String key : map.keySet()) {
-                        String value = Utils.urldecode(map.get(key));
-                        salting.append(key).append('=').append(value).append('&');
-                        addMultipart(output, writer, boundary, "text/plain", key, value, null);
-                    }
+    /**
+     * Sends request and waits for response headers, see {@link #call(Request, boolean)}
+     *
+     * @param request request to send
+     * @return response, must be closed to reuse its connection
+     * @throws IOException in case of network error
+     */
+    HttpEngine.Response execute(final Request request) throws IOException {
+        return execute(request, false);
+    }
 
-                    if (config.getParameterTamperingProtectionSalt() != null) {
-                        addMultipart(output, writer, boundary, "text/plain", CHECKSUM, Utils.digestHex(PARAMETER_TAMPERING_DIGEST, salting.substring(0, salting.length() - 1) + config.getParameterTamperingProtectionSalt(), L), null);
-                    }
+    HttpEngine.Response execute(final Request request, boolean postOnly) throws IOException {
+        return engine.execute(call(request, postOnly));
+    }
 
-                    writer.append("--").append(boundary).append("--").append(Utils.CRLF).flush();
-                } else {
-                    //picture data is "null". If it was sent, we send "null" to server to clear the image there
-                    //we send a normal request in HTTP POST
-                    if (config.getParameterTamperingProtectionSalt() != null) {
-                        request.params.add(CHECKSUM, Utils.digestHex(PARAMETER_TAMPERING_DIGEST, request.params + config.getParameterTamperingProtectionSalt(), L));
-                    }
-                    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    private void writeMultipart(OutputStream output, String boundary, Request request, Picture picture) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, Utils.UTF8), true);
 
-                    output = connection.getOutputStream();
-                    writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
+        addMultipart(output, writer, boundary, "image/jpeg", "binaryFile", "image", picture);
 
-                    writer.write(request.params.toString());
-                    writer.flush();
-                }
-            } finally {
-                if (writer != null) {
-                    try {
-                        writer.close();
-                    } catch (Throwable ignored) {
-                    }
-                }
-                if (output != null) {
-                    try {
-                        output.close();
-                    } catch (Throwable ignored) {
-                    }
-                }
+        //checksum is calculated over decoded "key=value" pairs
+        ParamsEncoder salting = ParamsEncoder.get();
+        request.params.forEach((key, value) -> {
+            if (salting.length() > 0) {
+                salting.ascii('&');
+            }
+            salting.utf8(key).ascii('=').utf8(value);
+            addMultipartText(writer, boundary, key, value);
+        });
+
+        if (config.getParameterTamperingProtectionSalt() != null) {
+            String checksum = salting.checksum(config.getParameterTamperingProtectionSalt(), L);
+            if (checksum != null) {
+                addMultipartText(writer, boundary, CHECKSUM, checksum);
             }
         }
 
-        return connection;
+        writer.append("--").append(boundary).append("--").append(Utils.CRLF).flush();
     }
 
-    void addMultipart(OutputStream output, PrintWriter writer, final String boundary, final String contentType, final String name, final String value, final byte[] file) throws IOException {
-        writer.append("--").append(boundary).append(Utils.CRLF);
+    void addMultipart(OutputStream output, PrintWriter writer, final String boundary, final String contentType, final String name, final String value, final Picture file) throws IOException {
         if (file != null) {
+            writer.append("--").append(boundary).append(Utils.CRLF);
             writer.append("Content-Disposition: form-data; name=\"").append(name).append("\"; filename=\"").append(value).append("\"").append(Utils.CRLF);
             writer.append("Content-Type: ").append(contentType).append(Utils.CRLF);
             writer.append(Utils.CRLF).flush();
-            output.write(file);
+            file.writeTo(output);
             output.flush();
             writer.append(Utils.CRLF).flush();
         } else {
-            writer.append("Content-Disposition: form-data; name=\"").append(name).append("\"").append(Utils.CRLF);
-            writer.append(Utils.CRLF).append(value).append(Utils.CRLF).flush();
+            addMultipartText(writer, boundary, name, value);
+        }
+    }
+
+    private void addMultipartText(PrintWriter writer, final String boundary, final String name, final String value) {
+        writer.append("--").append(boundary).append(Utils.CRLF);
+        writer.append("Content-Disposition: form-data; name=\"").append(name).append("\"").append(Utils.CRLF);
+        writer.append(Utils.CRLF).append(value).append(Utils.CRLF).flush();
+    }
+
+    /**
+     * User picture to upload with a request: a file streamed from disk
+     * or data kept inline by requests stored by previous SDK versions
+     */
+    static final class Picture {
+        final File file;
+        final byte[] data;
+
+        Picture(File file) {
+            this.file = file;
+            this.data = null;
+        }
+
+        Picture(byte[] data) {
+            this.file = null;
+            this.data = data;
+        }
+
+        void writeTo(OutputStream output) throws IOException {
+            if (data != null) {
+                output.write(data);
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(output);
+                long size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    long transferred = channel.transferTo(position, size - position, target);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    position += transferred;
+                }
+            }
         }
     }
 
     /**
-     * Returns valid picture information
-     * If we have the bytes, give them
-     * Otherwise load them from disk
+     * Returns picture to upload with the request and removes picture params from it.
+     * Picture files are streamed when the request is written, data is never loaded into memory as a whole.
      *
-     * @param request picture path or base64 encoded byte array
-     * @return picture data
+     * @param request request with local picture path, picture side file or base64 encoded picture data
+     * @return picture or null if request has no picture or it can't be read
      */
-    byte[] getPictureDataFromRequest(Request request) {
+    Picture getPictureFromRequest(Request request) {
         String maybeLocalPath = request.params.remove(PredefinedUserPropertyKeys.PICTURE_PATH);
+        String maybePictureFile = request.params.remove(ModuleUserProfile.PICTURE_FILE);
         String maybePictureData = request.params.remove(ModuleUserProfile.PICTURE_BYTES);
 
-        byte[] data = null;
-
-        //first check for pure bytes
+        //first check for bytes of requests stored by previous SDK versions
         if (!Utils.isEmptyOrNull(maybePictureData)) {
-            data = Utils.Base64.decode(maybePictureData, L);
-        } else if (!Utils.isEmptyOrNull(maybeLocalPath)) {
-            //if no bytes, check for local path
-            File file = new File(maybeLocalPath);
-            try {
-                data = Files.readAllBytes(file.toPath());
-            } catch (IOException e) {
-                L.e("[Transport] getPictureDataFromRequest, Error while reading picture, wont send from path:[ " + maybeLocalPath + "], " + e);
-            }
+            byte[] data = Utils.Base64.decode(maybePictureData, L);
+            return data == null ? null : new Picture(data);
         }
 
-        return data;
+        String path = Utils.isEmptyOrNull(maybePictureFile) ? maybeLocalPath : maybePictureFile;
+        if (Utils.isEmptyOrNull(path)) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isFile() || !file.canRead()) {
+            L.e("[Transport] getPictureFromRequest, Error while reading picture, wont send from path:[ " + path + "]");
+            return null;
+        }
+        return new Picture(file);
     }
 
-    String response(HttpURLConnection connection) {
-        BufferedReader reader = null;
+    /**
+     * Reads response body as a whole
+     *
+     * @return response body or null if it cannot be read
+     */
+    String response(HttpEngine.Response response) {
         try {
-            InputStream responseInputStream;
-
-            try {
-                //assume there will be no error
-                responseInputStream = connection.getInputStream();
-            } catch (Exception ex) {
-                //in case of exception, assume there was a error in the request
-                //and change streams
-                responseInputStream = connection.getErrorStream();
+            InputStream body = response.body();
+            ByteArrayOutputStream total = new ByteArrayOutputStream();
+            byte[] buffer = new byte[RESPONSE_BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                total.write(buffer, 0, read);
             }
-
-            reader = new BufferedReader(new InputStreamReader(responseInputStream));
-            StringBuilder total = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                total.append(line).append('\n');
-            }
-            return total.toString();
+            return new String(total.toByteArray(), StandardCharsets.UTF_8);
         } catch (IOException e) {
             L.w("[network] Error while reading server response " + e);
             return null;
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException ignored) {
-                }
-            }
         }
     }
 
@@ -310,50 +361,99 @@ public class Transport implements X509TrustManager {
             public Boolean send() {
                 L.i("[network] [send] Sending request: " + request);
 
-                HttpURLConnection connection = null;
-                try {
-                    Class requestOwner = request.owner();
-                    request.params.remove(Request.MODULE);
-
-                    connection = connection(request);
-                    connection.connect();
-
-                    int code = connection.getResponseCode();
+                final String endpoint = NetworkRetry.endpointOf(request);
+                Class requestOwner = request.owner();
+                request.params.remove(Request.MODULE);
+                try (HttpEngine.Response connection = execute(request)) {
+                    int code = connection.code();
 
                     String response = response(connection);
 
-                    try {
-                        if (request.params.has(Params.PARAM_OLD_DEVICE_ID) || request.params.has("token_session")) {
-                            if (config.getNetworkImportantRequestCooldown() > 0) {
-                                Thread.sleep(config.getNetworkImportantRequestCooldown());
-                            }
-                        } else {
-                            if (config.getNetworkRequestCooldown() > 0) {
-                                Thread.sleep(config.getNetworkRequestCooldown());
-                            }
-                        }
-                    } catch (InterruptedException ie) {
-                        L.w("[network] Interrupted while waiting for did change request cooldown " + ie);
-                    }
-
                     SDKCore.instance.onRequestCompleted(request, response, code, requestOwner);
 
-                    return processResponse(code, response, request.storageId());
+                    boolean result = processResponse(code, response, request.storageId());
+                    retry.onResponse(endpoint, result, code, connection.header(RETRY_AFTER));
+                    return result;
                 } catch (IOException e) {
                     L.w("[network] Error while sending request " + request + " " + e);
+                    retry.onError(endpoint);
                     return false;
                 } catch (Exception e) {
                     L.e("[network] Unexpected error while sending request " + request + " " + e);
                     return false;
-                } finally {
-                    if (connection != null) {
-                        connection.disconnect();
-                    }
                 }
             }
         };
     }
 
+    /**
+     * Sends requests in a single {@value #ENDPOINT_BULK} call as a {@code requests} array, in the order they are given.
+     * Requests themselves are not modified.
+     *
+     * @param requests requests to send, all of them to the default endpoint
+     * @return true if server accepted the requests, false if it rejected them,
+     * null if no response was received, for example if server is unreachable
+     */
+    Boolean sendBulk(final List<Request> requests) {
+        L.i("[network] [sendBulk] Sending [" + requests.size() + "] requests in bulk");
+
+        JSONArray array = new JSONArray();
+        for (Request request : requests) {
+            // all pairs, empty values included, the same way a single request sends them
+            Map<String, String> params = new LinkedHashMap<>();
+            request.params.forEachPair((key, value, encoded) -> {
+                if (key != null) {
+                    String decoded = encoded ? Utils.urldecode(value) : value;
+                    if (decoded != null) {
+                        params.put(key, decoded);
+                    }
+                }
+            });
+            params.remove(Request.MODULE);
+            params.remove(Request.ENDPOINT);
+            params.remove(Request.PRIORITY);
+            if (!params.containsKey(Params.PARAM_DEVICE_ID) && config.getDeviceId() != null) {
+                params.put(Params.PARAM_DEVICE_ID, config.getDeviceId().id);
+            }
+            array.put(new JSONObject(params));
+        }
+        Request bulk = new Request("app_key", config.getServerAppKey(), "requests", array.toString()).endpoint(ENDPOINT_BULK);
+
+        try (HttpEngine.Response connection = execute(bulk, true)) {
+            int code = connection.code();
+            String response = response(connection);
+
+            for (Request request : requests) {
+                SDKCore.instance.onRequestCompleted(request, response, code, request.owner());
+            }
+
+            boolean result = processResponse(code, response, bulk.storageId());
+            retry.onResponse(ENDPOINT_BULK, result, code, connection.header(RETRY_AFTER));
+            return result;
+        } catch (IOException e) {
+            L.w("[network] Error while sending bulk request " + e);
+            retry.onError(ENDPOINT_BULK);
+            return null;
+        } catch (Exception e) {
+            L.e("[network] Unexpected error while sending bulk request " + e);
+            return false;
+        }
+    }
+
+    /**
+     * @return retry state of endpoints requests are sent to
+     */
+    NetworkRetry getRetry() {
+        return retry;
+    }
+
+    /**
+     * @return executor of immediate requests sent through this transport
+     */
+    ImmediateRequests getImmediateRequests() {
+        return immediateRequests;
+    }
+
     Boolean processResponse(int code, String response, Long requestId) {
         L.i("[network] [processResponse] Code [" + code + "] response [" + response + "] for request[" + requestId + "]");
 
@@ -363,8 +463,8 @@ public class Transport implements X509TrustManager {
         }
 
         try {
-            JSONObject jsonObject = new JSONObject(response);
-            if (code >= 200 && code < 300 && jsonObject.has("result")) {
+            // only checking the key, so the response is scanned without building a JSON tree
+            if (JsonReader.hasTopLevelKey(response, "result") && code >= 200 && code < 300) {
                 L.d("[network] Success");
                 return true;
             } else {
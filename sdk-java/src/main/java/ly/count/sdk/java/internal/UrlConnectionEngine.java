@@ -0,0 +1,111 @@
+package ly.count.sdk.java.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * {@link HttpEngine} on top of {@link HttpURLConnection}.
+ * Connections are never disconnected explicitly: response bodies are drained and closed,
+ * so that JDK keep-alive cache can reuse the underlying socket for the next call to the same server.
+ * The same {@link SSLSocketFactory} is used for all calls since keep-alive cache doesn't reuse sockets across factories.
+ */
+class UrlConnectionEngine implements HttpEngine {
+    private final SSLSocketFactory socketFactory;
+
+    UrlConnectionEngine(@Nullable SSLContext sslContext) {
+        this.socketFactory = sslContext == null ? null : sslContext.getSocketFactory();
+    }
+
+    @Override
+    public Response execute(@Nonnull Call call) throws IOException {
+        HttpURLConnection connection = open(call);
+        try {
+            if (call.isPost()) {
+                if (call.streaming) {
+                    connection.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+                }
+                try (OutputStream output = connection.getOutputStream()) {
+                    call.body.writeTo(output);
+                }
+            }
+            return new UrlConnectionResponse(connection, connection.getResponseCode());
+        } catch (IOException | RuntimeException e) {
+            // connection state is unknown, it must not be reused
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    HttpURLConnection open(Call call) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(call.url).openConnection();
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+        connection.setDoOutput(call.isPost());
+        connection.setRequestMethod(call.isPost() ? "POST" : "GET");
+        connection.setConnectTimeout(call.connectTimeout);
+        connection.setReadTimeout(call.readTimeout);
+        if (connection instanceof HttpsURLConnection && socketFactory != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory);
+        }
+        for (Map.Entry<String, String> header : call.headers.entrySet()) {
+            connection.addRequestProperty(header.getKey(), header.getValue());
+        }
+        return connection;
+    }
+
+    private static final class UrlConnectionResponse implements Response {
+        private final HttpURLConnection connection;
+        private final int code;
+        private InputStream body;
+
+        UrlConnectionResponse(HttpURLConnection connection, int code) {
+            this.connection = connection;
+            this.code = code;
+        }
+
+        @Override
+        public int code() {
+            return code;
+        }
+
+        @Override
+        public String header(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream body() throws IOException {
+            if (body == null) {
+                try {
+                    body = connection.getInputStream();
+                } catch (IOException e) {
+                    // error responses come in error stream
+                    body = connection.getErrorStream();
+                }
+                if (body == null) {
+                    body = new ByteArrayInputStream(new byte[0]);
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            try {
+                HttpEngine.drain(body());
+            } catch (IOException e) {
+                connection.disconnect();
+            }
+        }
+    }
+}
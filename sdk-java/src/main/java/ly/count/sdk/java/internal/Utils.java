@@ -159,7 +159,50 @@ public class Utils {
      * @return url-encoded {@code str}
      */
     public static String urlencode(final String str, Log L) {
-        return urlencode(str, L, UTF8);
+        StringBuilder out = new StringBuilder(str.length() + 16);
+        urlencodeTo(str, out);
+        return out.toString();
+    }
+
+    /**
+     * Url-encodes {@code str} straight into {@code out}, producing the same result as {@link URLEncoder} with UTF-8
+     * without intermediate strings or byte arrays
+     *
+     * @param str string to encode
+     * @param out builder to append encoded string to
+     */
+    static void urlencodeTo(final CharSequence str, final StringBuilder out) {
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_') {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                appendEscaped(out, c);
+            } else if (c < 0x800) {
+                appendEscaped(out, 0xC0 | (c >> 6));
+                appendEscaped(out, 0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                appendEscaped(out, 0xE0 | (c >> 12));
+                appendEscaped(out, 0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                appendEscaped(out, 0xF0 | (codePoint >> 18));
+                appendEscaped(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (codePoint & 0x3F));
+            } else {
+                // unpaired surrogate, replaced with '?' like String.getBytes does
+                appendEscaped(out, '?');
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder out, int b) {
+        out.append('%').append(BASE_16[(b >> 4) & 0x0F]).append(BASE_16[b & 0x0F]);
     }
 
     /**
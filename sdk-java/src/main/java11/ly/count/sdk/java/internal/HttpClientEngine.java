@@ -0,0 +1,210 @@
+package ly.count.sdk.java.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+
+/**
+ * {@link HttpEngine} on top of {@code java.net.http.HttpClient}, picked automatically on Java 11+.
+ * A single client is shared by all calls: it keeps connections alive and multiplexes concurrent calls
+ * over a single HTTP/2 connection when server supports it.
+ * Streaming bodies are piped to the client while they are written, other bodies are sent as a byte array.
+ *
+ * Behaves like {@link UrlConnectionEngine} where the client allows it:
+ * <ul>
+ *     <li>read timeout bounds waiting for the whole response once the request is sent, responses are read into memory</li>
+ *     <li>redirects are followed within the same protocol only, POST is redirected as GET except for 307,
+ *     streaming calls are not redirected since their body can't be sent again</li>
+ *     <li>restricted headers like {@code Host} or {@code Connection} are ignored</li>
+ * </ul>
+ */
+class HttpClientEngine implements HttpEngine {
+    /**
+     * Same as default of {@code http.maxRedirects} of {@link java.net.HttpURLConnection}
+     */
+    private static final int MAX_REDIRECTS = 20;
+    /**
+     * Headers {@link java.net.HttpURLConnection} ignores and {@link HttpRequest.Builder#header(String, String)} rejects
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+        "access-control-request-headers", "access-control-request-method", "connection", "content-length", "content-transfer-encoding",
+        "expect", "host", "keep-alive", "origin", "trailer", "transfer-encoding", "upgrade", "via"));
+
+    private final HttpClient client;
+
+    HttpClientEngine(@Nonnull InternalConfig config, @Nullable SSLContext sslContext) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(Math.max(1, config.getNetworkConnectionTimeout())))
+            .followRedirects(HttpClient.Redirect.NEVER);
+        if (sslContext != null) {
+            builder.sslContext(sslContext);
+        }
+        client = builder.build();
+    }
+
+    @Override
+    public Response execute(@Nonnull Call call) throws IOException {
+        try {
+            if (call.isPost() && call.streaming) {
+                return stream(request(call, URI.create(call.url)), call.body, call.readTimeout);
+            }
+
+            byte[] body = null;
+            if (call.isPost()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                call.body.writeTo(out);
+                body = out.toByteArray();
+            }
+            URI uri = URI.create(call.url);
+            for (int redirects = 0; ; redirects++) {
+                HttpRequest.Builder builder = request(call, uri);
+                HttpRequest request = body == null ? builder.GET().build() : builder.POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+                HttpResponse<byte[]> response = await(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()), call.readTimeout);
+                URI location = redirects < MAX_REDIRECTS ? redirect(uri, response) : null;
+                if (location == null) {
+                    return new ClientResponse(response);
+                }
+                if (response.statusCode() != 307) {
+                    body = null;
+                }
+                uri = location;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static HttpRequest.Builder request(Call call, URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if ("http".equalsIgnoreCase(uri.getScheme())) {
+            // HTTP/2 is negotiated over TLS, cleartext upgrade attempts only add overhead with most servers
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        for (Map.Entry<String, String> header : call.headers.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getKey(), header.getValue());
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * @return location to follow, null if response is not a redirect {@link java.net.HttpURLConnection} would follow
+     */
+    private static URI redirect(URI uri, HttpResponse<?> response) {
+        int code = response.statusCode();
+        if (code < 300 || code > 307 || code == 304 || code == 305 || code == 306) {
+            return null;
+        }
+        String location = response.headers().firstValue("Location").orElse(null);
+        if (location == null) {
+            return null;
+        }
+        URI target;
+        try {
+            target = uri.resolve(location);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return uri.getScheme().equalsIgnoreCase(target.getScheme()) ? target : null;
+    }
+
+    private Response stream(HttpRequest.Builder builder, Body body, int readTimeout) throws IOException, InterruptedException {
+        PipedInputStream input = new PipedInputStream(STREAMING_CHUNK_SIZE);
+        PipedOutputStream output = new PipedOutputStream(input);
+        HttpRequest request = builder.POST(HttpRequest.BodyPublishers.ofInputStream(() -> input)).build();
+
+        CompletableFuture<HttpResponse<byte[]>> future = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        // unblocks writing if client stops reading the body, for example when connection fails
+        future.whenComplete((response, error) -> {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        });
+        try (OutputStream out = output) {
+            body.writeTo(out);
+        } catch (IOException e) {
+            // body wasn't sent completely, whatever the server responded to it
+            future.cancel(true);
+            throw e;
+        }
+
+        return new ClientResponse(await(future, readTimeout));
+    }
+
+    /**
+     * Waits for the response like {@link java.net.HttpURLConnection} waits for it with a read timeout
+     */
+    private static HttpResponse<byte[]> await(CompletableFuture<HttpResponse<byte[]>> future, int readTimeout) throws IOException, InterruptedException {
+        try {
+            return readTimeout > 0 ? future.get(readTimeout, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new SocketTimeoutException("Read timed out");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static final class ClientResponse implements Response {
+        private final HttpResponse<byte[]> response;
+        private InputStream body;
+
+        ClientResponse(HttpResponse<byte[]> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int code() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String header(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream body() {
+            if (body == null) {
+                body = new ByteArrayInputStream(response.body() == null ? new byte[0] : response.body());
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            // body is read completely, connection is already free for the next call
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package ly.count.sdk.java.internal;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import ly.count.sdk.java.Config;
+import ly.count.sdk.java.Countly;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class DefaultNetworkingTests {
+
+    private static final Pattern MARKER = Pattern.compile("test_n=(\\d+)");
+
+    private HttpServer server;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> concurrency = Collections.synchronizedList(new ArrayList<>());
+    private final List<List<Integer>> bulks = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> bulkTimes = Collections.synchronizedList(new ArrayList<>());
+    private final List<JSONObject> bulkRequests = Collections.synchronizedList(new ArrayList<>());
+    private volatile int rejectMarker = -1;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger failNext = new AtomicInteger();
+    private volatile String retryAfter = null;
+
+    @Before
+    public void beforeTest() throws Exception {
+        TestUtils.createCleanTestState();
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            int now = active.incrementAndGet();
+            maxActive.accumulateAndGet(now, Math::max);
+            String query = exchange.getRequestURI().getRawQuery() + "&" + body(exchange.getRequestBody());
+            int code = 200;
+            hits.incrementAndGet();
+            if (failNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                code = 503;
+                if (retryAfter != null) {
+                    exchange.getResponseHeaders().add("Retry-After", retryAfter);
+                }
+            } else if (exchange.getRequestURI().getPath().equals("/i/bulk")) {
+                List<Integer> markers = bulkMarkers(query);
+                bulks.add(markers);
+                bulkTimes.add(System.currentTimeMillis());
+                if (markers.contains(rejectMarker)) {
+                    code = 400;
+                } else {
+                    received.addAll(markers);
+                }
+            } else {
+                Matcher matcher = MARKER.matcher(query);
+                if (matcher.find()) {
+                    int marker = Integer.parseInt(matcher.group(1));
+                    if (marker == rejectMarker) {
+                        code = 400;
+                    } else {
+                        received.add(marker);
+                        concurrency.add(now);
+                    }
+                }
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            byte[] response = (code == 200 ? "{\"result\":\"Success\"}" : "{\"result\":\"Bad request\"}").getBytes(StandardCharsets.UTF_8);
+            active.decrementAndGet();
+            exchange.sendResponseHeaders(code, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void afterTest() {
+        Countly.instance().halt();
+        server.stop(0);
+    }
+
+    /**
+     * "isBarrier" with session, device id change and event requests
+     * Only session begin / end and device id change requests should be barriers
+     */
+    @Test
+    public void isBarrier() {
+        Assert.assertTrue(DefaultNetworking.isBarrier(new Request("begin_session", 1)));
+        Assert.assertTrue(DefaultNetworking.isBarrier(new Request("end_session", 1)));
+        Assert.assertTrue(DefaultNetworking.isBarrier(new Request(Params.PARAM_OLD_DEVICE_ID, "old")));
+        Assert.assertFalse(DefaultNetworking.isBarrier(new Request("events", "[]")));
+        Assert.assertFalse(DefaultNetworking.isBarrier(new Request("session_duration", 60)));
+    }
+
+    /**
+     * "check" with a backlog of event requests and a session request in the middle, 4 requests in flight allowed
+     * Event requests should be sent concurrently, session request should be sent alone after all requests before it,
+     * every request should be sent exactly once
+     */
+    @Test
+    public void check_inFlightWindow() throws Exception {
+        InternalConfig config = init(config().setNetworkMaxRequestsInFlight(4));
+        for (int i = 0; i < 9; i++) {
+            Request request = i == 4 ? new Request("begin_session", 1, "test_n", i) : new Request("events", "[]", "test_n", i);
+            Assert.assertTrue(Storage.push(config, request));
+        }
+
+        send(config);
+        awaitSent(9);
+
+        Assert.assertEquals(9, received.size());
+        Assert.assertEquals(9, received.stream().distinct().count());
+        Assert.assertTrue(maxActive.get() > 1);
+        Assert.assertTrue(maxActive.get() <= 4);
+
+        int barrier = received.indexOf(4);
+        Assert.assertEquals(4, barrier);
+        Assert.assertEquals(1, (int) concurrency.get(barrier));
+        for (int i = 0; i < barrier; i++) {
+            Assert.assertTrue(received.get(i) < 4);
+        }
+        Assert.assertEquals(0, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+    }
+
+    /**
+     * "check" with a backlog of requests and default config
+     * Requests should be sent one by one in queue order
+     */
+    @Test
+    public void check_default() throws Exception {
+        InternalConfig config = init(config());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", i)));
+        }
+
+        send(config);
+        awaitSent(4);
+
+        Assert.assertEquals(1, maxActive.get());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), received);
+    }
+
+    /**
+     * "check" with a backlog of event requests, bulk of up to 4 requests allowed
+     * Requests should be sent in bulk calls in queue order and removed from the queue
+     */
+    @Test
+    public void check_bulk() throws Exception {
+        InternalConfig config = init(config().setNetworkBulkRequests(4, 0));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", i)));
+        }
+
+        send(config);
+        awaitSent(10);
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6, 7), Arrays.asList(8, 9)), bulks);
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), received);
+        Assert.assertEquals(0, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+    }
+
+    /**
+     * "check" with bulk requests having empty values
+     * Bulk entries should have the same params single requests are sent with, empty values included,
+     * SDK service params should not be sent
+     */
+    @Test
+    public void check_bulk_emptyValues() throws Exception {
+        InternalConfig config = init(config().setNetworkBulkRequests(4, 0));
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", i, "empty", "")));
+        }
+
+        send(config);
+        awaitSent(2);
+
+        Assert.assertEquals(2, bulkRequests.size());
+        for (JSONObject request : bulkRequests) {
+            Assert.assertEquals("", request.getString("empty"));
+            Assert.assertEquals("[]", request.getString("events"));
+            Assert.assertFalse(request.has(Request.MODULE));
+        }
+    }
+
+    /**
+     * "check" with bulk limited by size and a session request in the middle
+     * Bulk calls should fit into the size limit, session request should be sent separately
+     */
+    @Test
+    public void check_bulk_bytesAndBarrier() throws Exception {
+        InternalConfig config = init(config().setNetworkBulkRequests(10, new Request("events", "[]", "test_n", 0).params.length() * 2));
+        for (int i = 0; i < 6; i++) {
+            Request request = i == 3 ? new Request("begin_session", 1, "test_n", i) : new Request("events", "[]", "test_n", i);
+            Assert.assertTrue(Storage.push(config, request));
+        }
+
+        send(config);
+        awaitSent(6);
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(4, 5)), bulks);
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), received);
+    }
+
+    /**
+     * "check" with a bulk call server rejects because of one of the requests
+     * Bulk should be split until the rejected request is sent alone, requests before it should be sent and removed,
+     * rejected request and requests after it should stay in the queue
+     */
+    @Test
+    public void check_bulk_split() throws Exception {
+        rejectMarker = 2;
+        InternalConfig config = init(config().setNetworkBulkRequests(4, 0));
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", i)));
+        }
+
+        send(config);
+        awaitSent(2);
+        // split calls are picked again after the rejected call completes, rejected request is sent alone last
+        for (int i = 0; i < 500 && (hits.get() < 4 || SDKCore.instance.networking.isSending()); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(4, hits.get());
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(0, 1), Arrays.asList(2, 3)), bulks);
+        Assert.assertEquals(Arrays.asList(0, 1), received);
+        Assert.assertEquals(2, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+    }
+
+    /**
+     * "check" with a bulk call which fails with "Retry-After" while backoff is enabled
+     * Split calls should wait for backoff of the bulk endpoint instead of being sent right away
+     */
+    @Test
+    public void check_bulk_splitBackoff() throws Exception {
+        failNext.set(1);
+        retryAfter = "1";
+        InternalConfig config = init(config().setNetworkBulkRequests(4, 0).setNetworkRetryBackoff(1, 1));
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", i)));
+        }
+
+        long start = System.currentTimeMillis();
+        send(config);
+        awaitSent(4);
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3)), bulks);
+        Assert.assertTrue(bulkTimes.get(0) - start >= 1000);
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), received);
+    }
+
+    /**
+     * "check" with a backlog of requests sent in bulk and request cooldown
+     * Cooldown should be charged for each request of a bulk call, not once per call
+     */
+    @Test
+    public void check_bulk_cooldown() throws Exception {
+        InternalConfig config = init(config().setNetworkBulkRequests(4, 0).setNetworkRequestCooldown(150));
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", i)));
+        }
+
+        send(config);
+        awaitSent(8);
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6, 7)), bulks);
+        Assert.assertTrue(bulkTimes.get(1) - bulkTimes.get(0) >= 4 * 150);
+    }
+
+    /**
+     * "check" with a backlog of requests and request cooldown
+     * Requests should be sent no sooner than cooldown after the previous one, each request should be removed
+     * from the queue right after it's sent without waiting for the cooldown
+     */
+    @Test
+    public void check_cooldown() throws Exception {
+        InternalConfig config = init(config().setNetworkRequestCooldown(400));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", i)));
+        }
+
+        long start = System.currentTimeMillis();
+        send(config);
+        for (int i = 0; i < 100 && received.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(150);
+        Assert.assertEquals(Collections.singletonList(0), received);
+        Assert.assertEquals(2, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+        Assert.assertFalse(SDKCore.instance.networking.isSending());
+
+        awaitSent(3);
+        Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 800);
+    }
+
+    /**
+     * "check" with a push token request followed by event requests and default important request cooldown
+     * Event requests should wait only for the default cooldown
+     */
+    @Test
+    public void check_cooldown_importantClass() throws Exception {
+        InternalConfig config = init(config().setNetworkRequestCooldown(50));
+        Assert.assertTrue(Storage.push(config, new Request("token_session", 1, "test_n", 0)));
+        Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", 1)));
+        Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", 2)));
+
+        long start = System.currentTimeMillis();
+        send(config);
+        awaitSent(3);
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2), received);
+        Assert.assertTrue(System.currentTimeMillis() - start < config.getNetworkImportantRequestCooldown());
+    }
+
+    /**
+     * "check" called repeatedly while server fails with 503, then recovers
+     * Failed request should be retried with backoff instead of on every check, circuit should open after
+     * 3 failures and stop requests until a probe succeeds, after which request should be sent and circuit closed
+     */
+    @Test
+    public void check_backoff_circuitBreaker() throws Exception {
+        failNext.set(Integer.MAX_VALUE);
+        InternalConfig config = init(config().setNetworkRetryBackoff(50, 200).setNetworkCircuitBreaker(3, 1000));
+        Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", 0)));
+
+        send(config);
+        for (int i = 0; i < 300 && hits.get() < 3; i++) {
+            SDKCore.instance.networking.check(config);
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(3, hits.get());
+        Thread.sleep(200);
+        Assert.assertEquals(Config.CircuitState.OPEN, Countly.instance().getNetworkCircuitStates().get(NetworkRetry.DEFAULT_ENDPOINT));
+
+        for (int i = 0; i < 30; i++) {
+            SDKCore.instance.networking.check(config);
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(3, hits.get());
+        Assert.assertEquals(3, Countly.instance().getNetworkFailureCount());
+
+        failNext.set(0);
+        awaitSent(1);
+        Assert.assertEquals(Collections.singletonList(0), received);
+        Assert.assertEquals(4, hits.get());
+        Assert.assertTrue(Countly.instance().getNetworkCircuitStates().isEmpty());
+        Assert.assertEquals(0, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+    }
+
+    /**
+     * "check" called repeatedly after server responded with 503 and "Retry-After" header
+     * Request should be retried automatically, only after the time server asked for
+     */
+    @Test
+    public void check_retryAfter() throws Exception {
+        failNext.set(1);
+        retryAfter = "1";
+        InternalConfig config = init(config().setNetworkRetryBackoff(10, 10).setNetworkCircuitBreaker(0, 1000));
+        Assert.assertTrue(Storage.push(config, new Request("events", "[]", "test_n", 0)));
+
+        long start = System.currentTimeMillis();
+        send(config);
+        for (int i = 0; i < 300 && received.isEmpty(); i++) {
+            SDKCore.instance.networking.check(config);
+            Thread.sleep(10);
+        }
+        awaitSent(1);
+
+        Assert.assertEquals(Collections.singletonList(0), received);
+        Assert.assertEquals(2, hits.get());
+        Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && (received.size() < count || SDKCore.instance.networking.isSending()); i++) {
+            Thread.sleep(10);
+        }
+        Storage.await(mock(Log.class));
+    }
+
+    /**
+     * Initializes SDK with networking stopped, so that requests pushed afterwards are picked all at once by {@link #send(InternalConfig)}
+     */
+    private InternalConfig init(Config config) {
+        Countly.instance().init(config);
+        SDKCore.instance.networking.stop(SDKCore.instance.config);
+        return SDKCore.instance.config;
+    }
+
+    private void send(InternalConfig config) {
+        DefaultNetworking networking = new DefaultNetworking();
+        networking.init(config, ((DefaultNetworking) SDKCore.instance.networking).storageForRequestQueue);
+        SDKCore.instance.networking = networking;
+        networking.check(config);
+    }
+
+    private Config config() {
+        return new Config("http://localhost:" + server.getAddress().getPort(), TestUtils.SERVER_APP_KEY, TestUtils.getTestSDirectory())
+            .setDeviceIdStrategy(Config.DeviceIdStrategy.UUID)
+            .setNetworkRequestCooldown(0)
+            .setNetworkRetryBackoff(0, 0);
+    }
+
+    private List<Integer> bulkMarkers(String query) throws IOException {
+        List<Integer> markers = new ArrayList<>();
+        for (String pair : query.split("&")) {
+            if (pair.startsWith("requests=")) {
+                JSONArray requests = new JSONArray(URLDecoder.decode(pair.substring("requests=".length()), "UTF-8"));
+                for (int i = 0; i < requests.length(); i++) {
+                    bulkRequests.add(requests.getJSONObject(i));
+                    markers.add(requests.getJSONObject(i).getInt("test_n"));
+                }
+            }
+        }
+        return markers;
+    }
+
+    private static String body(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,177 @@
+package ly.count.sdk.java.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import ly.count.sdk.java.Config;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class EventHandoffTests {
+    private final Log L = mock(Log.class);
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch running = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private EventHandoff handoff;
+
+    @After
+    public void stop() {
+        release.countDown();
+        if (handoff != null) {
+            handoff.close();
+        }
+    }
+
+    /**
+     * "offer" of events from a single thread and "flush"
+     * Handler should receive all events in order on the recorder thread by the time "flush" returns
+     */
+    @Test
+    public void offer_order() {
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        handoff = new EventHandoff(8, Config.EventOverflowPolicy.BLOCK, event -> {
+            threads.add(Thread.currentThread());
+            handled.add(event.key);
+        }, L);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(handoff.offer(event(i)));
+        }
+        handoff.flush();
+
+        Assert.assertEquals(keys(0, 100), handled);
+        Assert.assertNotEquals(Thread.currentThread(), threads.get(0));
+        Assert.assertEquals("event-recorder", threads.get(0).getName());
+    }
+
+    /**
+     * "offer" into a full ring with "DROP" policy
+     * Events which don't fit should be dropped and counted, others should be handled
+     */
+    @Test
+    public void offer_drop() throws InterruptedException {
+        fill(Config.EventOverflowPolicy.DROP);
+        Assert.assertTrue(handoff.offer(event(5)));
+        Assert.assertTrue(handoff.offer(event(6)));
+        Assert.assertEquals(2, handoff.getDroppedCount());
+
+        release.countDown();
+        handoff.flush();
+        Assert.assertEquals(keys(0, 5), handled);
+    }
+
+    /**
+     * "offer" into a full ring with "SPILL" policy
+     * Events should go to the spill queue and be handled after the ring, nothing should be lost
+     */
+    @Test
+    public void offer_spill() throws InterruptedException {
+        fill(Config.EventOverflowPolicy.SPILL);
+        Assert.assertTrue(handoff.offer(event(5)));
+        Assert.assertTrue(handoff.offer(event(6)));
+        Assert.assertEquals(2, handoff.getSpilledCount());
+        Assert.assertEquals(0, handoff.getDroppedCount());
+
+        release.countDown();
+        handoff.flush();
+        Assert.assertEquals(keys(0, 7), handled);
+    }
+
+    /**
+     * "offer" into a full ring with "BLOCK" policy
+     * Caller should wait until the recorder thread frees a slot, nothing should be lost
+     */
+    @Test
+    public void offer_block() throws InterruptedException {
+        fill(Config.EventOverflowPolicy.BLOCK);
+        Thread producer = new Thread(() -> {
+            handoff.offer(event(5));
+            handoff.offer(event(6));
+        });
+        producer.start();
+        producer.join(200);
+        Assert.assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+        handoff.flush();
+        Assert.assertEquals(keys(0, 7), handled);
+    }
+
+    /**
+     * "close" with events waiting in the ring, then "offer"
+     * Waiting events should be handled before "close" returns, later events should be left to the caller
+     */
+    @Test
+    public void close() throws InterruptedException {
+        fill(Config.EventOverflowPolicy.BLOCK);
+        release.countDown();
+        handoff.close();
+
+        Assert.assertEquals(keys(0, 5), handled);
+        Assert.assertFalse(handoff.offer(event(5)));
+        handoff.flush();
+    }
+
+    /**
+     * "flush" called by the handler and a handler failing on an event
+     * Flush should return right away and the failure should not stop the recorder thread
+     */
+    @Test
+    public void flush_fromHandler() {
+        handoff = new EventHandoff(4, Config.EventOverflowPolicy.BLOCK, event -> {
+            handoff.flush();
+            if (event.key.equals("1")) {
+                throw new IllegalStateException("failing");
+            }
+            handled.add(event.key);
+        }, L);
+        for (int i = 0; i < 3; i++) {
+            handoff.offer(event(i));
+        }
+        handoff.flush();
+        Assert.assertEquals(Arrays.asList("0", "2"), handled);
+    }
+
+    /**
+     * Creates handoff with ring of 4 events, recorder thread held in the handler by the first event and the ring filled with 4 more
+     */
+    private void fill(Config.EventOverflowPolicy policy) throws InterruptedException {
+        handoff = new EventHandoff(4, policy, event -> {
+            running.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            handled.add(event.key);
+        }, L);
+        Assert.assertTrue(handoff.offer(event(0)));
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 5; i++) {
+            Assert.assertTrue(handoff.offer(event(i)));
+        }
+        Assert.assertEquals(0, handoff.getDroppedCount());
+        Assert.assertEquals(0, handoff.getSpilledCount());
+    }
+
+    private EventImpl event(int i) {
+        return new EventImpl(String.valueOf(i), 1, null, null, null, L, null, null, null, null);
+    }
+
+    private static List<String> keys(int from, int to) {
+        List<String> keys = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            keys.add(String.valueOf(i));
+        }
+        return keys;
+    }
+}
@@ -1,8 +1,11 @@
 package ly.count.sdk.java.internal;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import org.json.JSONObject;
 import org.junit.Assert;
@@ -280,4 +283,143 @@ public class EventImplTests {
         Assert.assertEquals(new Double(46.0), event.sum);
         Assert.assertEquals("37656387", event.getSegment("donated_amount"));
     }
+
+    /**
+     * "toJSON" of events with all kinds of fields, segmentation sizes and string contents
+     * Streamed JSON should be the same as the one built with "JSONObject"
+     */
+    @Test
+    public void toJSON_sameAsJSONObject() {
+        Random random = new Random(42);
+        String[] strings = { "", "a", "ç ü", "日本語", "\uD83D\uDE00", "\"quoted\" \\ </script>", "\u0000\u001f\b\t\n\f\r", "\u0085\u00a0\u2028\u20ac", "k=v&x" };
+        for (int i = 0; i < 500; i++) {
+            EventImpl event = new EventImpl(e -> {
+            }, "key " + strings[random.nextInt(strings.length)] + i, L);
+            event.count = random.nextInt(1000) + 1;
+            event.sum = random.nextBoolean() ? null : random.nextDouble() * Math.pow(10, random.nextInt(30) - 10);
+            event.duration = random.nextBoolean() ? null : (double) random.nextInt(100);
+            event.id = random.nextBoolean() ? null : "id" + i;
+            event.pvid = random.nextBoolean() ? null : strings[random.nextInt(strings.length)];
+            event.cvid = random.nextBoolean() ? null : "cvid";
+            event.peid = random.nextBoolean() ? null : "peid";
+            if (random.nextInt(4) > 0) {
+                event.segmentation = new HashMap<>();
+                int size = random.nextInt(20);
+                for (int j = 0; j < size; j++) {
+                    Object[] values = { strings[random.nextInt(strings.length)], random.nextInt(), random.nextLong(), random.nextBoolean(), random.nextDouble() * 1000, random.nextFloat(), 1.0e25, -0.0 };
+                    event.segmentation.put("segment " + strings[random.nextInt(strings.length)] + j, values[random.nextInt(values.length)]);
+                }
+            }
+
+            Assert.assertTrue(event.isStreamable());
+            Assert.assertEquals(toJSONObject(event).toString(), event.toJSON(L));
+        }
+    }
+
+    /**
+     * "toJSON" of events with every combination of optional fields and segmentation sizes around map resize thresholds
+     * Streamed JSON and its url-encoded form should be the same as the one built with "JSONObject",
+     * so a change in field order of "org.json" or the JDK fails here
+     */
+    @Test
+    public void toJSON_allFieldCombinations() {
+        int[] segmentationSizes = { 0, 1, 2, 12, 13, 24, 25, 100 };
+        for (int fields = 0; fields < 1 << 7; fields++) {
+            for (int size : (fields & 1) == 0 ? new int[] { -1 } : segmentationSizes) {
+                EventImpl event = new EventImpl(e -> {
+                }, "key " + fields, L);
+                if (size >= 0) {
+                    event.segmentation = new HashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        event.segmentation.put("s" + i * 31, i % 3 == 0 ? "v " + i : i % 3 == 1 ? (Object) i : (Object) (i + 0.5));
+                    }
+                }
+                event.sum = (fields & 2) == 0 ? null : 2.5;
+                event.duration = (fields & 4) == 0 ? null : 10.0;
+                event.id = (fields & 8) == 0 ? null : "id";
+                event.pvid = (fields & 16) == 0 ? null : "pvid";
+                event.cvid = (fields & 32) == 0 ? null : "cvid";
+                event.peid = (fields & 64) == 0 ? null : "peid \uD83D\uDE00";
+
+                String expected = toJSONObject(event).toString();
+                Assert.assertEquals(expected, event.toJSON(L));
+                StringBuilder encoded = new StringBuilder();
+                event.toJSON(new JsonWriter(encoded, true));
+                Assert.assertEquals(Utils.urlencode(expected, L), encoded.toString());
+            }
+        }
+    }
+
+    /**
+     * "toJSON" of an event with non-finite sum and of an event with unsupported segmentation value
+     * Should fall back to "JSONObject"
+     */
+    @Test
+    public void toJSON_notStreamable() {
+        EventImpl event = new EventImpl("nan", 1, Double.NaN, null, new HashMap<>(), L, null, null, null, null);
+        Assert.assertFalse(event.isStreamable());
+        Assert.assertFalse(event.toJSON(L).contains("sum"));
+
+        Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("big", new BigDecimal("1.50"));
+        event = new EventImpl("big", 1, null, null, segmentation, L, null, null, null, null);
+        Assert.assertFalse(event.isStreamable());
+        Assert.assertEquals(toJSONObject(event).toString(), event.toJSON(L));
+    }
+
+    /**
+     * "Params.Arr" with events and serialized events
+     * Events should be written into params string url-encoded, same as encoding joined JSON strings
+     */
+    @Test
+    public void paramsArr_sameAsJoinedStrings() {
+        Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("a", "b&c=d ü");
+        segmentation.put("n", 1.5);
+        EventImpl first = new EventImpl("first", 2, 3.0, null, segmentation, L, "id", null, null, null);
+        EventImpl second = new EventImpl("second \uD83D\uDE00", 1, null, 10.0, new HashMap<>(), L, null, "pvid", null, null);
+        String serialized = "{\"key\":\"restored\",\"count\":1}";
+
+        Params params = new Params("device_id", "d");
+        params.arr("events").put(Arrays.asList(serialized, first, second)).add();
+
+        String json = "[" + serialized + "," + toJSONObject(first) + "," + toJSONObject(second) + "]";
+        Assert.assertEquals("device_id=d&events=" + Utils.urlencode(json, null), params.toString());
+        Assert.assertEquals(json, params.get("events"));
+        Assert.assertEquals("events=%5B%5D", new Params().arr("events").put(new ArrayList<>()).add().toString());
+    }
+
+    /**
+     * Builds JSON of an event the way "toJSON" did before streaming
+     */
+    static JSONObject toJSONObject(EventImpl event) {
+        JSONObject json = new JSONObject();
+        json.put(EventImpl.KEY_KEY, event.key);
+        json.put(EventImpl.COUNT_KEY, event.count);
+        json.put(EventImpl.TIMESTAMP_KEY, event.timestamp);
+        json.put(EventImpl.HOUR, event.hour);
+        json.put(EventImpl.DAY_OF_WEEK, event.dow);
+        if (event.segmentation != null) {
+            json.put(EventImpl.SEGMENTATION_KEY, new JSONObject(event.segmentation));
+        }
+        if (event.sum != null) {
+            json.put(EventImpl.SUM_KEY, event.sum);
+        }
+        if (event.duration != null) {
+            json.put(EventImpl.DUR_KEY, event.duration);
+        }
+        if (event.id != null) {
+            json.put(EventImpl.ID_KEY, event.id);
+        }
+        if (event.pvid != null) {
+            json.put(EventImpl.PV_ID_KEY, event.pvid);
+        }
+        if (event.cvid != null) {
+            json.put(EventImpl.CV_ID_KEY, event.cvid);
+        }
+        if (event.peid != null) {
+            json.put(EventImpl.PE_ID_KEY, event.peid);
+        }
+        return json;
+    }
 }
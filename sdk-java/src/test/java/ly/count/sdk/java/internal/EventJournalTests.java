@@ -0,0 +1,117 @@
+package ly.count.sdk.java.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static ly.count.sdk.java.internal.SDKStorage.EVENT_QUEUE_FILE_NAME;
+import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_PREFIX;
+import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_SEPARATOR;
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class EventJournalTests {
+
+    private EventJournal journal;
+
+    @Before
+    public void beforeTest() {
+        TestUtils.createCleanTestState();
+        journal = new EventJournal(TestUtils.getTestSDirectory(), false, mock(Log.class));
+    }
+
+    @After
+    public void afterTest() {
+        journal.clear();
+    }
+
+    /**
+     * "append" and "replay" events
+     * Replayed events should be in the order they were appended
+     */
+    @Test
+    public void append_replay() {
+        Assert.assertTrue(journal.append("{\"key\":\"a\"}"));
+        Assert.assertTrue(journal.append("{\"key\":\"b\"}"));
+        Assert.assertTrue(journal.append("{\"key\":\"ç\"}"));
+
+        Assert.assertEquals(Arrays.asList("{\"key\":\"a\"}", "{\"key\":\"b\"}", "{\"key\":\"ç\"}"), journal.replay());
+        Assert.assertEquals(journal.replay(), EventJournal.snapshot(TestUtils.getTestSDirectory(), mock(Log.class)));
+    }
+
+    /**
+     * "truncate" the journal and append after it
+     * Only events appended after truncation should be replayed
+     */
+    @Test
+    public void truncate() {
+        journal.append("{\"key\":\"a\"}");
+        journal.append("{\"key\":\"b\"}");
+        journal.truncate();
+        Assert.assertEquals(Collections.emptyList(), journal.replay());
+
+        journal.append("{\"key\":\"c\"}");
+        Assert.assertEquals(Collections.singletonList("{\"key\":\"c\"}"), journal.replay());
+    }
+
+    /**
+     * "replay" a journal which has an incomplete record at the end
+     * Complete records should be replayed, incomplete one should be truncated
+     */
+    @Test
+    public void replay_tornWrite() throws IOException {
+        journal.append("{\"key\":\"a\"}");
+        journal.append("{\"key\":\"b\"}");
+        journal.close();
+
+        File file = new File(TestUtils.getTestSDirectory(), FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + EventJournal.JOURNAL_FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        Assert.assertEquals(Collections.singletonList("{\"key\":\"a\"}"), journal.replay());
+        journal.append("{\"key\":\"c\"}");
+        Assert.assertEquals(Arrays.asList("{\"key\":\"a\"}", "{\"key\":\"c\"}"), journal.replay());
+    }
+
+    /**
+     * "openReplay" and "append" while replay is in progress
+     * Replay should return only events appended before it was opened, later events should stay in the journal
+     */
+    @Test
+    public void openReplay_appendDuringReplay() {
+        journal.append("{\"key\":\"a\"}");
+        journal.append("{\"key\":\"b\"}");
+
+        try (EventJournal.Replay replay = journal.openReplay()) {
+            Assert.assertEquals("{\"key\":\"a\"}", replay.next());
+            journal.append("{\"key\":\"c\"}");
+            Assert.assertEquals("{\"key\":\"b\"}", replay.next());
+            Assert.assertNull(replay.next());
+        }
+        Assert.assertEquals(Arrays.asList("{\"key\":\"a\"}", "{\"key\":\"b\"}", "{\"key\":\"c\"}"), journal.replay());
+    }
+
+    /**
+     * "replay" with an event queue file written by previous SDK versions
+     * Events should be imported into the journal and legacy file should be deleted
+     */
+    @Test
+    public void replay_importLegacyFile() throws IOException {
+        File legacy = new File(TestUtils.getTestSDirectory(), FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + EVENT_QUEUE_FILE_NAME);
+        Files.write(legacy.toPath(), ("{\"key\":\"a\"}" + EventQueue.DELIMITER + "{\"key\":\"b\"}").getBytes());
+
+        Assert.assertEquals(Arrays.asList("{\"key\":\"a\"}", "{\"key\":\"b\"}"), journal.replay());
+        Assert.assertFalse(legacy.exists());
+        Assert.assertEquals(Arrays.asList("{\"key\":\"a\"}", "{\"key\":\"b\"}"), journal.replay());
+    }
+}
@@ -4,7 +4,6 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import ly.count.sdk.java.Config;
@@ -19,11 +18,7 @@ import static ly.count.sdk.java.internal.SDKStorage.EVENT_QUEUE_FILE_NAME;
 import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_PREFIX;
 import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_SEPARATOR;
 import static ly.count.sdk.java.internal.TestUtils.validateEvent;
-import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.spy;
-import static org.mockito.Mockito.verify;
 
 @RunWith(JUnit4.class)
 public class EventQueueTests {
@@ -72,6 +67,59 @@ public class EventQueueTests {
         TestUtils.validateEQSize(0, eventQueue);
     }
 
+    /**
+     * Queue events without writing them to the journal, then drain the queue
+     * "enqueue" function should add event only to memory, "appendToJournal" should write it afterward
+     * events drained before being appended should not be written to the journal
+     */
+    @Test
+    public void enqueue() {
+        init(TestUtils.getConfigEvents(5));
+
+        eventQueue.enqueue(createEvent("test-enqueue-1", null, 1, null, null));
+        Assert.assertEquals(1, eventQueue.eqSize());
+        Assert.assertEquals(0, TestUtils.getCurrentEQ().size());
+
+        eventQueue.appendToJournal();
+        validateEventInQueue("test-enqueue-1", null, 1, null, null, 1, 0, eventQueue, L);
+
+        eventQueue.enqueue(createEvent("test-enqueue-2", null, 1, null, null));
+        Assert.assertEquals(2, eventQueue.drain().size());
+        eventQueue.appendToJournal();
+        TestUtils.validateEQSize(0, eventQueue);
+    }
+
+    /**
+     * Add events from several threads at once
+     * "addEvent" function should append events to the journal outside of the queue lock
+     * journal should contain all events in the same order as memory
+     */
+    @Test
+    public void addEvent_concurrent() throws InterruptedException {
+        init(TestUtils.getConfigEvents(1000));
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    eventQueue.addEvent(createEvent("test-concurrent-" + thread + "-" + i, null, 1, null, null));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<EventImpl> journal = TestUtils.getCurrentEQ();
+        Assert.assertEquals(200, journal.size());
+        Assert.assertEquals(200, eventQueue.eqSize());
+        for (int i = 0; i < journal.size(); i++) {
+            Assert.assertEquals(eventQueue.eventQueueMemoryCache.get(i).key, journal.get(i).key);
+        }
+    }
+
     /**
      * Write in memory events to storage
      * "writeEventQueueToStorage" function should write events from memory to storage
@@ -90,63 +138,38 @@ public class EventQueueTests {
 
     /**
      * Write empty in memory events
-     * "writeEventQueueToStorage" function should not call "joinEvents"
-     * joinEvents should not be called
+     * "writeEventQueueToStorage" function should not write anything
+     * event journal should stay empty
      */
     @Test
     public void writeEventQueueToStorage_emptyCache() {
-        eventQueue = spy(EventQueue.class);
-        eventQueue.L = mock(Log.class);
-        eventQueue.eventQueueMemoryCache = new ArrayList<>();
-
-        eventQueue.writeEventQueueToStorage();
-        verify(eventQueue, never()).joinEvents(anyCollection());
-    }
-
-    /**
-     * Join events with delimiter
-     * "joinEvents" function should join events
-     * joinEvents should return expected String
-     */
-    @Test
-    public void joinEvents() {
         init(TestUtils.getConfigEvents(2));
 
-        List<EventImpl> list = new ArrayList<>();
-        list.add(createEvent("test-joinEvents-1", null, 1, null, null));
-        list.add(createEvent("test-joinEvents-2", null, 1, null, null));
-
-        String result = eventQueue.joinEvents(list);
-
-        String expected = list.stream().map(event -> event.toJSON(L)).reduce((a, b) -> a + EventQueue.DELIMITER + b).orElse("");
-        Assert.assertEquals(expected, result);
+        eventQueue.writeEventQueueToStorage();
+        TestUtils.validateEQSize(0, eventQueue);
     }
 
     /**
-     * Join events with empty collection
-     * "joinEvents" function should join events
-     * joinEvents should return expected String
+     * Drain events from the queue
+     * "drain" function should return queued events in order and empty the queue
+     * both memory and journal should be empty afterward
      */
     @Test
-    public void joinEvents_emptyCollection() {
-        init(TestUtils.getConfigEvents(2));
+    public void drain() {
+        init(TestUtils.getConfigEvents(5));
 
-        List<EventImpl> list = new ArrayList<>();
-
-        String result = eventQueue.joinEvents(list);
-        Assert.assertEquals("", result);
-    }
+        eventQueue.addEvent(createEvent("test-drain-1", null, 1, null, null));
+        eventQueue.addEvent(createEvent("test-drain-2", null, 1, null, null));
+        TestUtils.validateEQSize(2, eventQueue);
 
-    /**
-     * Join events with delimiter null collection
-     * "joinEvents" function should not work
-     * joinEvents should throw NullPointerException
-     */
-    @Test(expected = NullPointerException.class)
-    public void joinEvents_nullCollection() {
-        init(TestUtils.getConfigEvents(2));
+        List<String> drained = eventQueue.drain();
+        Assert.assertEquals(2, drained.size());
+        validateEvent(EventImpl.fromJSON(drained.get(0), null, L), "test-drain-1", null, 1, null, null);
+        validateEvent(EventImpl.fromJSON(drained.get(1), null, L), "test-drain-2", null, 1, null, null);
+        TestUtils.validateEQSize(0, eventQueue);
 
-        eventQueue.joinEvents(null);
+        eventQueue.addEvent(createEvent("test-drain-3", null, 1, null, null));
+        validateEventInQueue("test-drain-3", null, 1, null, null, 1, 0, eventQueue, L);
     }
 
     /**
@@ -181,8 +204,8 @@ public class EventQueueTests {
 
         eventQueue.restoreFromDisk();
         TestUtils.validateEQSize(2, eventQueue);
-        validateEvent(eventQueue.eventQueueMemoryCache.get(0), "test-joinEvents-1", null, 1, null, null, "id", "pvid", "cvid", "peid");
-        validateEvent(eventQueue.eventQueueMemoryCache.get(1), "test-joinEvents-2", null, 1, null, null, null, null, null, null);
+        validateEvent(eventQueue.getEQ().get(0), "test-joinEvents-1", null, 1, null, null, "id", "pvid", "cvid", "peid");
+        validateEvent(eventQueue.getEQ().get(1), "test-joinEvents-2", null, 1, null, null, null, null, null, null);
     }
 
     /**
@@ -231,7 +254,56 @@ public class EventQueueTests {
 
         eventQueue.restoreFromDisk();
         TestUtils.validateEQSize(1, eventQueue);
-        validateEvent(eventQueue.eventQueueMemoryCache.get(0), "test-joinEvents-1", null, 1, null, null);
+        validateEvent(eventQueue.getEQ().get(0), "test-joinEvents-1", null, 1, null, null);
+    }
+
+    /**
+     * Restore events from storage in background and add events meanwhile
+     * "restoreFromDiskAsync" function should keep restored events before the added ones
+     * drained events and journal should be in the order events were recorded
+     */
+    @Test
+    public void restoreFromDiskAsync_ordering() throws IOException {
+        init(TestUtils.getConfigEvents(10));
+
+        writeToEventQueue("{\"count\":1,\"key\":\"test-restored-1\",\"timestamp\":1695887006657}:::{\"count\":1,\"key\":\"test-restored-2\",\"timestamp\":1695887006647}", false);
+
+        eventQueue.restoreFromDiskAsync();
+        eventQueue.addEvent(createEvent("test-added", null, 1, null, null));
+
+        List<EventImpl> queued = eventQueue.getEQ();
+        Assert.assertEquals(3, queued.size());
+        Assert.assertEquals(3, eventQueue.eqSize());
+        Assert.assertEquals("test-restored-1", queued.get(0).key);
+        Assert.assertEquals("test-restored-2", queued.get(1).key);
+        Assert.assertEquals("test-added", queued.get(2).key);
+        TestUtils.validateEventInEQ("test-restored-1", null, 1, null, null, 0, 3);
+        TestUtils.validateEventInEQ("test-added", null, 1, null, null, 2, 3);
+
+        List<String> drained = eventQueue.drain();
+        Assert.assertEquals(3, drained.size());
+        Assert.assertEquals("test-added", EventImpl.fromJSON(drained.get(2), null, L).key);
+        TestUtils.validateEQSize(0, eventQueue);
+    }
+
+    /**
+     * Restore corrupted events from storage in background and add events meanwhile
+     * "restoreFromDiskAsync" function should drop corrupted events and keep the added ones
+     * journal should contain only valid events in the order they were recorded
+     */
+    @Test
+    public void restoreFromDiskAsync_corruptedData() throws IOException {
+        init(TestUtils.getConfigEvents(10));
+
+        writeToEventQueue("{\"count\":1,\"key\":\"test-restored-1\"}:::{\"count\":1,\"keya\":\"test-restored-2\"}:::garbage", false);
+
+        eventQueue.restoreFromDiskAsync();
+        eventQueue.addEvent(createEvent("test-added", null, 1, null, null));
+
+        Assert.assertEquals(2, eventQueue.getEQ().size());
+        TestUtils.validateEQSize(2, eventQueue);
+        TestUtils.validateEventInEQ("test-restored-1", null, 1, null, null, 0, 2);
+        TestUtils.validateEventInEQ("test-added", null, 1, null, null, 1, 2);
     }
 
     static void writeToEventQueue(String fileContent, boolean delete) throws IOException {
@@ -0,0 +1,188 @@
+package ly.count.sdk.java.internal;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class EventReaderTests {
+    private final Log L = mock(Log.class);
+
+    private static final String[] STRINGS = { "", "a", "\u00e7 \u00fc", "\u65e5\u672c", "\ud83d\ude00", "\"quoted\" \\ </script>", "\u0001\u001f\b\t\n\f\r", "\u0085\u2028", "k=v&x" };
+
+    /**
+     * "parse" of events serialized with "toJSON", with all kinds of fields and segmentation values
+     * Should read the same event as "JSONObject" based deserialization
+     */
+    @Test
+    public void parse_sameAsJSONObject() {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            String json = randomEvent(random, i).toJSON(L);
+
+            Assert.assertNotNull(json, EventReader.parse(json));
+            assertSame(fromJSONObject(json), EventImpl.fromJSON(json, null, L));
+        }
+    }
+
+    /**
+     * "parse" of strings with escapes, numbers in all notations and whitespace
+     * Values should be of the same types "org.json" produces
+     */
+    @Test
+    public void parse_values() {
+        String json = " {\"key\" : \"a\\u00e7\\n\\/\\'\", \"count\":2,\"sum\":1e2,\"dur\":-0,\"timestamp\":1700000000000,\"hour\":\t5,\"dow\":1,\n"
+            + "\"segmentation\":{\"d\":-0.0,\"e\":1E-2,\"i\":-5,\"l\":12345678901,\"b\":false,\"s\":\"\"},\"id\":null,\"pvid\":\"p\"}\n";
+        EventImpl event = EventReader.parse(json).create(e -> {
+        }, L);
+
+        Assert.assertEquals("a\u00e7\n/'", event.key);
+        Assert.assertEquals(2, event.count);
+        Assert.assertEquals(100.0, event.sum, 0);
+        Assert.assertEquals(Double.valueOf(-0.0), event.duration);
+        Assert.assertEquals(1700000000000L, event.timestamp);
+        Assert.assertEquals(5, event.hour);
+        Assert.assertEquals(1, event.dow);
+        Assert.assertNull(event.id);
+        Assert.assertEquals("p", event.pvid);
+        Assert.assertNull(event.cvid);
+
+        Assert.assertEquals(-0.0, event.segmentation.get("d"));
+        Assert.assertEquals(new BigDecimal("1E-2"), event.segmentation.get("e"));
+        Assert.assertEquals(-5, event.segmentation.get("i"));
+        Assert.assertEquals(12345678901L, event.segmentation.get("l"));
+        Assert.assertEquals(false, event.segmentation.get("b"));
+        Assert.assertEquals("", event.segmentation.get("s"));
+        Assert.assertEquals(6, event.segmentation.size());
+    }
+
+    /**
+     * "parse" of JSON which is not in the shape events are written in
+     * Should return null, "fromJSON" should fall back to "JSONObject" and give the same result as before
+     */
+    @Test
+    public void parse_fallback() {
+        String[] jsons = {
+            "{\"key\":\"a\",\"other\":1}",
+            "{\"key\":\"a\",\"segmentation\":{\"n\":{\"x\":1},\"s\":\"v\"}}",
+            "{\"key\":\"a\",\"segmentation\":{\"n\":null}}",
+            "{\"key\":\"a\",\"segmentation\":{\"n\":123456789012345678901}}",
+            "{\"key\":\"a\",\"count\":1.5,\"hour\":\"3\"}",
+            "{'key':'a'}",
+            "{key:a}",
+            "{\"key\":\"a\"}x",
+            "{\"key\":1}",
+            "{\"count\":1}",
+            "{\"key\":\"a\\x\"}",
+            "{\"key\":\"a\",\"sum\":01}",
+            "{\"key\":\"a\",\"segmentation\":{\"b\":TRUE}}",
+            "[]",
+            "",
+        };
+        for (String json : jsons) {
+            Assert.assertNull(json, EventReader.parse(json));
+            assertSame(fromJSONObject(json), EventImpl.fromJSON(json, null, L));
+        }
+        // org.json rejects duplicate keys
+        Assert.assertNull(EventReader.parse("{\"key\":\"a\",\"key\":\"b\"}"));
+        Assert.assertNull(EventReader.parse("{\"key\":\"a\",\"segmentation\":{\"s\":1,\"s\":2}}"));
+        Assert.assertEquals("v", EventImpl.fromJSON(jsons[1], null, L).segmentation.get("s"));
+        Assert.assertEquals(1, EventImpl.fromJSON(jsons[1], null, L).segmentation.size());
+    }
+
+    private EventImpl randomEvent(Random random, int i) {
+        EventImpl event = new EventImpl(e -> {
+        }, "key " + STRINGS[random.nextInt(STRINGS.length)] + i, L);
+        event.count = random.nextInt(1000) + 1;
+        event.sum = random.nextBoolean() ? null : random.nextDouble() * Math.pow(10, random.nextInt(30) - 10);
+        event.duration = random.nextBoolean() ? null : (double) random.nextInt(100);
+        event.id = random.nextBoolean() ? null : "id" + i;
+        event.pvid = random.nextBoolean() ? null : STRINGS[random.nextInt(STRINGS.length)];
+        event.cvid = random.nextBoolean() ? null : "cvid";
+        event.peid = random.nextBoolean() ? null : "peid";
+        if (random.nextInt(4) > 0) {
+            event.segmentation = new HashMap<>();
+            int size = random.nextInt(20);
+            for (int j = 0; j < size; j++) {
+                Object[] values = { STRINGS[random.nextInt(STRINGS.length)], random.nextInt(), random.nextLong(), random.nextBoolean(), random.nextDouble() * 1000, random.nextFloat(), 1.0e25 };
+                event.segmentation.put("segment " + STRINGS[random.nextInt(STRINGS.length)] + j, values[random.nextInt(values.length)]);
+            }
+        }
+        return event;
+    }
+
+    private static void assertSame(EventImpl expected, EventImpl actual) {
+        if (expected == null) {
+            Assert.assertNull(actual);
+            return;
+        }
+        Assert.assertEquals(expected.key, actual.key);
+        Assert.assertEquals(expected.count, actual.count);
+        Assert.assertEquals(expected.sum, actual.sum);
+        Assert.assertEquals(expected.duration, actual.duration);
+        Assert.assertEquals(expected.timestamp, actual.timestamp);
+        Assert.assertEquals(expected.hour, actual.hour);
+        Assert.assertEquals(expected.dow, actual.dow);
+        Assert.assertEquals(expected.id, actual.id);
+        Assert.assertEquals(expected.pvid, actual.pvid);
+        Assert.assertEquals(expected.cvid, actual.cvid);
+        Assert.assertEquals(expected.peid, actual.peid);
+        Assert.assertEquals(expected.segmentation, actual.segmentation);
+        if (expected.segmentation != null) {
+            for (Map.Entry<String, Object> entry : expected.segmentation.entrySet()) {
+                Assert.assertEquals(entry.getValue().getClass(), actual.segmentation.get(entry.getKey()).getClass());
+            }
+        }
+    }
+
+    /**
+     * Deserializes event the way "fromJSON" did before the reader
+     */
+    private EventImpl fromJSONObject(String jsonString) {
+        try {
+            JSONObject json = new JSONObject(jsonString);
+            if (!json.has(EventImpl.KEY_KEY) || json.isNull(EventImpl.KEY_KEY)) {
+                return null;
+            }
+            EventImpl event = new EventImpl(e -> {
+            }, json.getString(EventImpl.KEY_KEY), L);
+            event.count = json.optInt(EventImpl.COUNT_KEY, 1);
+            if (json.has(EventImpl.SUM_KEY) && !json.isNull(EventImpl.SUM_KEY)) {
+                event.sum = json.optDouble(EventImpl.SUM_KEY, 0);
+            }
+            if (json.has(EventImpl.DUR_KEY) && !json.isNull(EventImpl.DUR_KEY)) {
+                event.duration = json.optDouble(EventImpl.DUR_KEY, 0);
+            }
+            event.timestamp = json.optLong(EventImpl.TIMESTAMP_KEY);
+            event.hour = json.optInt(EventImpl.HOUR);
+            event.dow = json.optInt(EventImpl.DAY_OF_WEEK);
+            event.id = json.isNull(EventImpl.ID_KEY) ? null : json.getString(EventImpl.ID_KEY);
+            event.pvid = json.isNull(EventImpl.PV_ID_KEY) ? null : json.getString(EventImpl.PV_ID_KEY);
+            event.cvid = json.isNull(EventImpl.CV_ID_KEY) ? null : json.getString(EventImpl.CV_ID_KEY);
+            event.peid = json.isNull(EventImpl.PE_ID_KEY) ? null : json.getString(EventImpl.PE_ID_KEY);
+            if (!json.isNull(EventImpl.SEGMENTATION_KEY)) {
+                JSONObject segm = json.getJSONObject(EventImpl.SEGMENTATION_KEY);
+                event.segmentation = new HashMap<>(segm.length());
+                Iterator<String> keys = segm.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    if (!segm.isNull(key) && Utils.isValidDataType(segm.get(key))) {
+                        event.segmentation.put(key, segm.get(key));
+                    }
+                }
+            }
+            return event;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
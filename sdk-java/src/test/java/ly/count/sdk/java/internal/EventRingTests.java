@@ -0,0 +1,115 @@
+package ly.count.sdk.java.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EventRingTests {
+
+    /**
+     * "offer" and "poll" on a single thread over several laps
+     * Capacity should be rounded up to a power of two, items should come out in order and "offer" should fail when full
+     */
+    @Test
+    public void offer_poll() {
+        EventRing<Integer> ring = new EventRing<>(5);
+        Assert.assertEquals(8, ring.capacity());
+        Assert.assertTrue(ring.isEmpty());
+        Assert.assertNull(ring.poll());
+
+        int next = 0;
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 8; i++) {
+                Assert.assertTrue(ring.offer(lap * 8 + i));
+            }
+            Assert.assertFalse(ring.offer(-1));
+            Assert.assertFalse(ring.isEmpty());
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(Integer.valueOf(next++), ring.poll());
+            }
+            Assert.assertNull(ring.poll());
+            Assert.assertTrue(ring.isEmpty());
+        }
+        Assert.assertEquals(24, ring.added());
+    }
+
+    /**
+     * "EventRing" with invalid capacity
+     * Should throw
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_invalid() {
+        new EventRing<>(0);
+    }
+
+    /**
+     * Several producers offering into a small ring while a consumer polls
+     * Every item should be taken exactly once and items of each producer should come out in the order they were offered
+     */
+    @Test
+    public void offer_multipleProducers() throws InterruptedException {
+        EventRing<long[]> ring = new EventRing<>(16);
+        int producers = 4;
+        int items = 50_000;
+        long[] last = new long[producers];
+        Arrays.fill(last, -1);
+
+        run(producers, items, item -> {
+            while (!ring.offer(item)) {
+                Thread.yield();
+            }
+        }, () -> {
+            long[] item = ring.poll();
+            if (item != null) {
+                Assert.assertEquals(last[(int) item[0]] + 1, item[1]);
+                last[(int) item[0]] = item[1];
+            }
+            return item != null;
+        });
+
+        for (long taken : last) {
+            Assert.assertEquals(items - 1, taken);
+        }
+        Assert.assertTrue(ring.isEmpty());
+    }
+
+    /**
+     * Starts producers offering {@code items} items each as {producer, index} pairs and polls on the calling thread until all are taken
+     */
+    private static void run(int producers, int items, Consumer<long[]> offer, Supplier<Boolean> poll) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < items; i++) {
+                    offer.accept(new long[] { producer, i });
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+        long taken = 0;
+        while (taken < (long) producers * items) {
+            if (poll.get()) {
+                taken++;
+            } else {
+                Thread.yield();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ly.count.sdk.java.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import ly.count.sdk.java.Config;
+import ly.count.sdk.java.Countly;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class GroupCommitTests {
+
+    private final AtomicInteger forced = new AtomicInteger();
+
+    @Before
+    public void beforeTest() {
+        TestUtils.createCleanTestState();
+        forced.set(0);
+    }
+
+    @After
+    public void stop() {
+        Countly.instance().halt();
+    }
+
+    /**
+     * "written" in default "NONE" mode
+     * Records should never be forced
+     */
+    @Test
+    public void written_none() {
+        GroupCommit commit = groupCommit(TestUtils.getBaseConfig());
+        commit.written(100);
+        commit.stop();
+
+        Assert.assertFalse(commit.isForcing());
+        Assert.assertEquals(0, forced.get());
+    }
+
+    /**
+     * "written" in "SYNC" mode
+     * Every write should be forced right away
+     */
+    @Test
+    public void written_sync() {
+        GroupCommit commit = groupCommit(TestUtils.getBaseConfig().setStorageDurability(Config.DurabilityMode.SYNC));
+        commit.written(1);
+        commit.written(3);
+
+        Assert.assertEquals(2, forced.get());
+        Assert.assertEquals(2, commit.forceCount());
+        commit.stop();
+        Assert.assertEquals(2, forced.get());
+    }
+
+    /**
+     * "written" in "BATCHED" mode with record limit
+     * Records should be forced once per group of "maxRecords" and on stop
+     */
+    @Test
+    public void written_batched_maxRecords() {
+        GroupCommit commit = groupCommit(TestUtils.getBaseConfig().setStorageDurability(Config.DurabilityMode.BATCHED).setStorageGroupCommit(3, 60_000));
+        commit.written(1);
+        commit.written(1);
+        Assert.assertEquals(0, forced.get());
+        commit.written(1);
+        Assert.assertEquals(1, forced.get());
+        commit.written(1);
+        Assert.assertEquals(1, forced.get());
+
+        commit.stop();
+        Assert.assertEquals(2, forced.get());
+    }
+
+    /**
+     * "written" in "BATCHED" mode with interval
+     * Records should be forced once after the interval passes
+     */
+    @Test
+    public void written_batched_interval() throws InterruptedException {
+        GroupCommit commit = groupCommit(TestUtils.getBaseConfig().setStorageDurability(Config.DurabilityMode.BATCHED).setStorageGroupCommit(1000, 50));
+        commit.written(1);
+        commit.written(1);
+        Assert.assertEquals(0, forced.get());
+
+        Thread.sleep(300);
+        Assert.assertEquals(1, forced.get());
+        commit.stop();
+        Assert.assertEquals(1, forced.get());
+    }
+
+    /**
+     * "pushAsync" of several requests while storage thread is busy in "SYNC" mode
+     * Requests should be written as a single batch with a single force
+     */
+    @Test
+    public void pushAsync_batch() throws Exception {
+        Countly.instance().init(TestUtils.getBaseConfig().setStorageDurability(Config.DurabilityMode.SYNC));
+        InternalConfig config = SDKCore.instance.config;
+        Storage.await(mock(Log.class));
+        long forces = SDKCore.instance.sdkStorage.getStorageForceCount();
+        int count = SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix());
+
+        CountDownLatch release = new CountDownLatch(1);
+        Storage.readAsync(config, new Request(12_345L), request -> release.await());
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(Storage.pushAsync(config, new Request("a", i)));
+        }
+        release.countDown();
+        for (Future<Boolean> future : futures) {
+            Assert.assertTrue(future.get());
+        }
+
+        Assert.assertEquals(count + 5, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+        Assert.assertEquals(forces + 1, SDKCore.instance.sdkStorage.getStorageForceCount());
+    }
+
+    /**
+     * "storableRemove" of a request in "SYNC" mode
+     * Acknowledgement of the removed request should be forced right away
+     */
+    @Test
+    public void storableRemove_sync() throws Exception {
+        Countly.instance().init(TestUtils.getBaseConfig().setStorageDurability(Config.DurabilityMode.SYNC));
+        InternalConfig config = SDKCore.instance.config;
+        Storage.await(mock(Log.class));
+        Request request = new Request("a", 1);
+        Assert.assertTrue(Storage.push(config, request));
+        long forces = SDKCore.instance.sdkStorage.getStorageForceCount();
+
+        Assert.assertTrue(SDKCore.instance.sdkStorage.storableRemove(config, request));
+        Assert.assertEquals(forces + 1, SDKCore.instance.sdkStorage.getStorageForceCount());
+    }
+
+    private GroupCommit groupCommit(Config config) {
+        return new GroupCommit(new InternalConfig(config), forced::incrementAndGet, mock(Log.class));
+    }
+}
@@ -0,0 +1,348 @@
+package ly.count.sdk.java.internal;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import ly.count.sdk.java.Config;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class HttpEngineTests {
+
+    private static final int CALLS = 20;
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void beforeTest() {
+        TestUtils.createCleanTestState();
+    }
+
+    @After
+    public void afterTest() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * "create" on the running Java version
+     * HttpClient engine should be picked on Java 11+, HttpURLConnection engine otherwise
+     */
+    @Test
+    public void create() {
+        boolean httpClient;
+        try {
+            Class.forName("java.net.http.HttpClient");
+            httpClient = true;
+        } catch (ClassNotFoundException e) {
+            httpClient = false;
+        }
+        HttpEngine engine = HttpEngine.create(config("http://localhost"), null, mock(Log.class));
+        Assert.assertEquals(httpClient ? "HttpClientEngine" : "UrlConnectionEngine", engine.getClass().getSimpleName());
+    }
+
+    /**
+     * "execute" of consecutive GET and POST calls, including error responses, with both engines
+     * All calls should reuse a single connection, server should receive bodies and responses should be read
+     */
+    @Test
+    public void execute_keepAlive() throws Exception {
+        start(HttpServer.create(new InetSocketAddress(0), 0));
+        String url = "http://localhost:" + server.getAddress().getPort();
+        for (HttpEngine engine : engines(url, null)) {
+            clientPorts.clear();
+            bodies.clear();
+            for (int i = 0; i < CALLS; i++) {
+                boolean post = i % 2 == 0;
+                HttpEngine.Call call = post ? new HttpEngine.Call(url + "/i?n=" + i, output -> output.write("body".getBytes(StandardCharsets.UTF_8))) : new HttpEngine.Call(url + "/i?n=" + i, null);
+                try (HttpEngine.Response response = engine.execute(call)) {
+                    Assert.assertEquals(i % 5 == 0 ? 400 : 200, response.code());
+                    Assert.assertEquals(String.valueOf(i), response.header("X-N"));
+                    Assert.assertEquals("{\"n\":" + i + "}", read(response.body()));
+                }
+            }
+
+            Assert.assertEquals(engine.getClass().getSimpleName(), 1, clientPorts.size());
+            Assert.assertEquals(CALLS, bodies.size());
+            Assert.assertEquals("body", bodies.get(0));
+            Assert.assertEquals("", bodies.get(1));
+        }
+    }
+
+    /**
+     * "execute" with a streaming body larger than a chunk, with both engines
+     * Server should receive the whole body
+     */
+    @Test
+    public void execute_streaming() throws Exception {
+        start(HttpServer.create(new InetSocketAddress(0), 0));
+        String url = "http://localhost:" + server.getAddress().getPort();
+        byte[] data = new byte[HttpEngine.STREAMING_CHUNK_SIZE * 3 + 17];
+        Arrays.fill(data, (byte) 'a');
+        for (HttpEngine engine : engines(url, null)) {
+            bodies.clear();
+            HttpEngine.Call call = new HttpEngine.Call(url + "/i", output -> output.write(data));
+            call.streaming = true;
+            try (HttpEngine.Response response = engine.execute(call)) {
+                Assert.assertEquals(200, response.code());
+            }
+            Assert.assertEquals(engine.getClass().getSimpleName(), data.length, bodies.get(0).length());
+        }
+    }
+
+    /**
+     * "execute" of POST and GET calls redirected within the same protocol and to another protocol, with both engines
+     * Redirect within the same protocol should be followed with GET, redirect to HTTPS should not be followed
+     */
+    @Test
+    public void execute_redirect() throws Exception {
+        start(HttpServer.create(new InetSocketAddress(0), 0));
+        String url = "http://localhost:" + server.getAddress().getPort();
+        server.createContext("/same", exchange -> {
+            read(exchange.getRequestBody());
+            exchange.getResponseHeaders().add("Location", "/i?n=1");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/https", exchange -> {
+            read(exchange.getRequestBody());
+            exchange.getResponseHeaders().add("Location", "https://localhost:" + server.getAddress().getPort() + "/i?n=1");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        for (HttpEngine engine : engines(url, null)) {
+            bodies.clear();
+            try (HttpEngine.Response response = engine.execute(new HttpEngine.Call(url + "/same", output -> output.write('a')))) {
+                Assert.assertEquals(engine.getClass().getSimpleName(), 200, response.code());
+                Assert.assertEquals("{\"n\":1}", read(response.body()));
+            }
+            Assert.assertEquals(engine.getClass().getSimpleName(), Collections.singletonList(""), bodies);
+            try (HttpEngine.Response response = engine.execute(new HttpEngine.Call(url + "/https", null))) {
+                Assert.assertEquals(engine.getClass().getSimpleName(), 302, response.code());
+            }
+        }
+    }
+
+    /**
+     * "execute" with headers "HttpURLConnection" doesn't allow to set, with both engines
+     * Restricted headers should be ignored, other headers should be sent
+     */
+    @Test
+    public void execute_restrictedHeaders() throws Exception {
+        start(HttpServer.create(new InetSocketAddress(0), 0));
+        String url = "http://localhost:" + server.getAddress().getPort();
+        List<String> hosts = Collections.synchronizedList(new ArrayList<>());
+        List<String> custom = Collections.synchronizedList(new ArrayList<>());
+        server.createContext("/headers", exchange -> {
+            hosts.add(exchange.getRequestHeaders().getFirst("Host"));
+            custom.add(exchange.getRequestHeaders().getFirst("X-Custom"));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        for (HttpEngine engine : engines(url, null)) {
+            HttpEngine.Call call = new HttpEngine.Call(url + "/headers", null);
+            call.headers.put("Host", "example.com");
+            call.headers.put("Connection", "close");
+            call.headers.put("X-Custom", "value");
+            try (HttpEngine.Response response = engine.execute(call)) {
+                Assert.assertEquals(engine.getClass().getSimpleName(), 200, response.code());
+            }
+        }
+        Assert.assertEquals(Arrays.asList("value", "value"), custom);
+        for (String host : hosts) {
+            Assert.assertEquals("localhost:" + server.getAddress().getPort(), host);
+        }
+    }
+
+    /**
+     * "execute" with a server which doesn't respond within read timeout, with both engines
+     * Call should fail with a timeout
+     */
+    @Test
+    public void execute_readTimeout() throws Exception {
+        HttpServer slow = HttpServer.create(new InetSocketAddress(0), 0);
+        slow.setExecutor(Executors.newCachedThreadPool());
+        start(slow);
+        String url = "http://localhost:" + server.getAddress().getPort();
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        for (HttpEngine engine : engines(url, null)) {
+            HttpEngine.Call call = new HttpEngine.Call(url + "/slow", null);
+            call.readTimeout = 200;
+            try (HttpEngine.Response response = engine.execute(call)) {
+                Assert.fail(engine.getClass().getSimpleName() + " " + response.code());
+            } catch (SocketTimeoutException ignored) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * "execute" over HTTPS with an SSL context like the one {@link Transport} creates for certificate pinning, with both engines
+     * Trust manager of the context should validate server certificate, rejected certificate should fail the call
+     */
+    @Test
+    public void execute_sslContext() throws Exception {
+        KeyStore keyStore = keyStore();
+        Assume.assumeNotNull(keyStore);
+
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(keyStore, "password".toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keys.getKeyManagers(), null, null);
+        HttpsServer https = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        https.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        start(https);
+        String url = "https://localhost:" + server.getAddress().getPort();
+
+        AtomicInteger checked = new AtomicInteger();
+        for (boolean trusted : new boolean[] { true, false }) {
+            for (int index = 0; index < 2; index++) {
+                // separate contexts, so that the second engine doesn't resume TLS session of the first one without validation
+                SSLContext pinning = SSLContext.getInstance("TLS");
+                pinning.init(null, new TrustManager[] { new PinningTrustManager(checked, trusted) }, null);
+                HttpEngine engine = engines(url, pinning).get(index);
+                int before = checked.get();
+                try (HttpEngine.Response response = engine.execute(new HttpEngine.Call(url + "/i?n=1", null))) {
+                    Assert.assertTrue(trusted);
+                    Assert.assertEquals(200, response.code());
+                } catch (IOException e) {
+                    Assert.assertFalse(engine.getClass().getSimpleName() + " " + e, trusted);
+                }
+                Assert.assertTrue(engine.getClass().getSimpleName(), checked.get() > before);
+            }
+        }
+    }
+
+    private void start(HttpServer server) {
+        this.server = server;
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            bodies.add(read(exchange.getRequestBody()));
+            String query = exchange.getRequestURI().getQuery();
+            String n = query == null ? "0" : query.substring("n=".length());
+            byte[] response = ("{\"n\":" + n + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("X-N", n);
+            // every fifth call of keep-alive test fails, error responses should not break connection reuse
+            exchange.sendResponseHeaders(query != null && Integer.parseInt(n) % 5 == 0 ? 400 : 200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.start();
+    }
+
+    private static List<HttpEngine> engines(String url, SSLContext sslContext) {
+        return Arrays.asList(new UrlConnectionEngine(sslContext), HttpEngine.create(config(url), sslContext, mock(Log.class)));
+    }
+
+    private static InternalConfig config(String url) {
+        InternalConfig config = new InternalConfig(new Config(url, TestUtils.SERVER_APP_KEY, TestUtils.getTestSDirectory()));
+        config.setLogger(mock(Log.class));
+        return config;
+    }
+
+    /**
+     * Generates a self-signed certificate for localhost with keytool of the running JVM
+     *
+     * @return key store or null if keytool is not available
+     */
+    private static KeyStore keyStore() throws Exception {
+        File keytool = new File(System.getProperty("java.home"), "bin" + File.separator + "keytool");
+        if (!keytool.exists() && !new File(keytool.getPath() + ".exe").exists()) {
+            return null;
+        }
+        File file = new File(TestUtils.getTestSDirectory(), "engine-test.p12");
+        Process process = new ProcessBuilder(keytool.getPath(), "-genkeypair", "-alias", "test", "-keyalg", "RSA", "-keysize", "2048",
+            "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "2", "-storetype", "PKCS12",
+            "-keystore", file.getPath(), "-storepass", "password", "-keypass", "password")
+            .redirectErrorStream(true).start();
+        read(process.getInputStream());
+        if (process.waitFor() != 0) {
+            return null;
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(file)) {
+            keyStore.load(in, "password".toCharArray());
+        }
+        return keyStore;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static final class PinningTrustManager implements X509TrustManager {
+        private final AtomicInteger checked;
+        private final boolean trusted;
+
+        PinningTrustManager(AtomicInteger checked, boolean trusted) {
+            this.checked = checked;
+            this.trusted = trusted;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            checked.incrementAndGet();
+            if (!trusted) {
+                throw new CertificateException("Neither certificate nor public key passed pinning validation");
+            }
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package ly.count.sdk.java.internal;
 
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import ly.count.sdk.java.Config;
 import ly.count.sdk.java.Countly;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Assert;
@@ -81,4 +88,109 @@ public class ImmediateRequestTest {
         Thread.sleep(2000); // wait for background thread to finish
         Assert.assertEquals(6, reqValidator.get()); // check if callback was called and response is null
     }
+
+    /**
+     * Immediate request maker "doWork" function with responses of a local server
+     * JSON object should be returned as is, JSON array should be wrapped into "jsonArray" key,
+     * other values and unsuccessful codes should return null
+     *
+     * @throws Exception if server cannot be started or thread is interrupted
+     */
+    @Test
+    public void doWork_responses() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        AtomicReference<String> body = new AtomicReference<>();
+        AtomicInteger code = new AtomicInteger(200);
+        server.createContext("/", exchange -> {
+            byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code.get(), bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        try {
+            Countly.instance().init(new Config("http://localhost:" + server.getAddress().getPort(), TestUtils.SERVER_APP_KEY, TestUtils.getTestSDirectory())
+                .setDeviceIdStrategy(Config.DeviceIdStrategy.UUID));
+
+            body.set(" {\"result\":\"Success\",\"name\":\"\u00e9\"}");
+            JSONObject object = immediateRequest();
+            Assert.assertEquals("Success", object.getString("result"));
+            Assert.assertEquals("\u00e9", object.getString("name"));
+
+            body.set("\n[{\"a\":1},2]");
+            JSONArray array = immediateRequest().getJSONArray("jsonArray");
+            Assert.assertEquals(2, array.length());
+            Assert.assertEquals(1, array.getJSONObject(0).getInt("a"));
+
+            body.set("\"text\"");
+            Assert.assertNull(immediateRequest());
+
+            body.set("{\"result\":\"Error\"}");
+            code.set(500);
+            Assert.assertNull(immediateRequest());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Immediate request maker "doWork" function called several times with the same request while it's in flight
+     * Server should receive a single request and all callbacks should receive its response
+     *
+     * @throws Exception if server cannot be started or thread is interrupted
+     */
+    @Test
+    public void doWork_coalesce() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        AtomicInteger hits = new AtomicInteger();
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ignored) {
+            }
+            byte[] bytes = "{\"result\":\"Success\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        try {
+            Countly.instance().init(new Config("http://localhost:" + server.getAddress().getPort(), TestUtils.SERVER_APP_KEY, TestUtils.getTestSDirectory())
+                .setDeviceIdStrategy(Config.DeviceIdStrategy.UUID));
+
+            int count = 3;
+            CountDownLatch done = new CountDownLatch(count);
+            AtomicInteger successes = new AtomicInteger();
+            for (int i = 0; i < count; i++) {
+                String requestData = ModuleRequests.prepareRequiredParamsAsString(SDKCore.instance.config, "method", "feedback");
+                new ImmediateRequestMaker().doWork(requestData, "/o/sdk?", SDKCore.instance.networking.getTransport(), false, true,
+                    result -> {
+                        if (result != null && "Success".equals(result.optString("result"))) {
+                            successes.incrementAndGet();
+                        }
+                        done.countDown();
+                    }, L);
+            }
+
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(count, successes.get());
+            Assert.assertEquals(1, hits.get());
+            Assert.assertEquals(count - 1, SDKCore.instance.networking.getTransport().getImmediateRequests().coalescedCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private JSONObject immediateRequest() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<JSONObject> response = new AtomicReference<>();
+        new ImmediateRequestMaker().doWork("method=test", "/o?", SDKCore.instance.networking.getTransport(), false, true,
+            result -> {
+                response.set(result);
+                done.countDown();
+            }, L);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        return response.get();
+    }
 }
@@ -0,0 +1,172 @@
+package ly.count.sdk.java.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import ly.count.sdk.java.Config;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class ImmediateRequestsTests {
+
+    private ImmediateRequests requests;
+
+    @After
+    public void stop() {
+        if (requests != null) {
+            requests.stop();
+        }
+    }
+
+    /**
+     * "key" of requests which differ only in time params
+     * Keys should be equal, keys of requests with other params or endpoint should differ
+     */
+    @Test
+    public void key() {
+        String key = ImmediateRequests.key("/o/sdk?", "method=feedback&timestamp=1&tz=60&hour=1&dow=1&device_id=a");
+        Assert.assertEquals(key, ImmediateRequests.key("/o/sdk?", "method=feedback&timestamp=2&tz=60&hour=2&dow=3&device_id=a"));
+        Assert.assertNotEquals(key, ImmediateRequests.key("/o/sdk?", "method=feedback&timestamp=1&tz=60&hour=1&dow=1&device_id=b"));
+        Assert.assertNotEquals(key, ImmediateRequests.key("/o?", "method=feedback&timestamp=1&tz=60&hour=1&dow=1&device_id=a"));
+    }
+
+    /**
+     * "submit" of identical requests while the first one is in flight
+     * Requests should share one future and the call should be made once,
+     * a request submitted after the first one completed should make a new call
+     */
+    @Test
+    public void submit_coalesce() throws Exception {
+        requests = requests(TestUtils.getBaseConfig());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        JSONObject response = new JSONObject().put("result", "Success");
+
+        CompletableFuture<JSONObject> first = requests.submit("a", 0, () -> {
+            calls.incrementAndGet();
+            await(release);
+            return response;
+        });
+        CompletableFuture<JSONObject> second = requests.submit("a", 0, () -> {
+            calls.incrementAndGet();
+            return null;
+        });
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, requests.coalescedCount());
+        Assert.assertEquals(1, requests.inFlightCount());
+
+        release.countDown();
+        Assert.assertSame(response, first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, calls.get());
+
+        CompletableFuture<JSONObject> third = requests.submit("a", 0, () -> {
+            calls.incrementAndGet();
+            return response;
+        });
+        Assert.assertNotSame(first, third);
+        Assert.assertSame(response, third.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, calls.get());
+    }
+
+    /**
+     * "submit" of a delayed request with a single thread
+     * Delay should not hold the thread, a request submitted later should complete first
+     */
+    @Test
+    public void submit_delay() throws Exception {
+        requests = requests(TestUtils.getBaseConfig().setImmediateRequestExecutor(1, 1));
+        long start = System.nanoTime();
+        CompletableFuture<JSONObject> delayed = requests.submit("a", 300, () -> new JSONObject().put("key", "a"));
+        CompletableFuture<JSONObject> immediate = requests.submit("b", 0, () -> new JSONObject().put("key", "b"));
+
+        Assert.assertEquals("b", immediate.get(5, TimeUnit.SECONDS).getString("key"));
+        Assert.assertFalse(delayed.isDone());
+        Assert.assertEquals("a", delayed.get(5, TimeUnit.SECONDS).getString("key"));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+    }
+
+    /**
+     * "submit" of a request which doesn't complete in time
+     * Future should complete with null once timeout passes and the call should be interrupted
+     */
+    @Test
+    public void submit_timeout() throws Exception {
+        requests = requests(TestUtils.getBaseConfig().setImmediateRequestTimeout(200));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<JSONObject> future = requests.submit("a", 0, () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return new JSONObject();
+        });
+
+        Assert.assertNull(future.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, requests.inFlightCount());
+    }
+
+    /**
+     * "submit" of more requests than threads and queue can take
+     * Requests above the limit should complete with null right away, others should complete normally
+     */
+    @Test
+    public void submit_bounded() throws Exception {
+        requests = requests(TestUtils.getBaseConfig().setImmediateRequestExecutor(1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<JSONObject> first = requests.submit("a", 0, () -> {
+            running.countDown();
+            await(release);
+            return new JSONObject();
+        });
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<JSONObject> queued = requests.submit("b", 0, JSONObject::new);
+        CompletableFuture<JSONObject> rejected = requests.submit("c", 0, JSONObject::new);
+
+        Assert.assertTrue(rejected.isDone());
+        Assert.assertNull(rejected.get());
+        release.countDown();
+        Assert.assertNotNull(first.get(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * "stop" with a request in flight
+     * Request should complete with null, requests submitted afterwards should complete with null right away
+     */
+    @Test
+    public void stop_inFlight() throws Exception {
+        requests = requests(TestUtils.getBaseConfig());
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<JSONObject> future = requests.submit("a", 0, () -> {
+            await(release);
+            return new JSONObject();
+        });
+
+        requests.stop();
+        Assert.assertNull(future.get(5, TimeUnit.SECONDS));
+        Assert.assertNull(requests.submit("b", 0, JSONObject::new).get(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    private static ImmediateRequests requests(Config config) {
+        return new ImmediateRequests(new InternalConfig(config), mock(Log.class));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ly.count.sdk.java.internal;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class JsonReaderTests {
+
+    /**
+     * "hasTopLevelKey" with objects which have the key
+     * Should return true regardless of key position, value type and whitespace
+     */
+    @Test
+    public void hasTopLevelKey() {
+        Assert.assertTrue(JsonReader.hasTopLevelKey("{\"result\":\"Success\"}", "result"));
+        Assert.assertTrue(JsonReader.hasTopLevelKey(" {\n \"a\" : [1, {\"b\": null}], \"result\" : { \"c\": \"}\" } }\n", "result"));
+        Assert.assertTrue(JsonReader.hasTopLevelKey("{\"a\":true,\"result\":-1.5e3}", "result"));
+        Assert.assertTrue(JsonReader.hasTopLevelKey("{\"res\\u0075lt\":\"ok\"}", "result"));
+        Assert.assertTrue(JsonReader.hasTopLevelKey("{result:ok}", "result"));
+        Assert.assertTrue(JsonReader.hasTopLevelKey("{'result':'ok',}", "result"));
+    }
+
+    /**
+     * "hasTopLevelKey" with JSON values which don't have the key at top level
+     * Should return false
+     */
+    @Test
+    public void hasTopLevelKey_missing() {
+        Assert.assertFalse(JsonReader.hasTopLevelKey("{}", "result"));
+        Assert.assertFalse(JsonReader.hasTopLevelKey("{\"a\":{\"result\":1}}", "result"));
+        Assert.assertFalse(JsonReader.hasTopLevelKey("{\"a\":\"result\"}", "result"));
+        Assert.assertFalse(JsonReader.hasTopLevelKey("{\"results\":1,\"resul\":2}", "result"));
+        Assert.assertFalse(JsonReader.hasTopLevelKey("[{\"result\":1}]", "result"));
+        Assert.assertFalse(JsonReader.hasTopLevelKey("\"result\"", "result"));
+        Assert.assertFalse(JsonReader.hasTopLevelKey("123", "result"));
+    }
+
+    /**
+     * "hasTopLevelKey" with malformed JSON
+     * Should throw JSONException
+     */
+    @Test
+    public void hasTopLevelKey_malformed() {
+        String[] malformed = { "", "   ", "{{{{", "{invalid json", "{\"result\":", "{\"result\" 1}", "{\"result\":1", "{\"result\":\"ok}", "{\"result\":1 \"a\":2}", "{\"a\":[1,2}",
+            "{\"a\\x\":1}", "}" };
+        for (String json : malformed) {
+            try {
+                JsonReader.hasTopLevelKey(json, "result");
+                Assert.fail("Expected exception for [" + json + "]");
+            } catch (JSONException ignored) {
+            }
+        }
+    }
+
+    /**
+     * "hasTopLevelKey" reading from a reader, with the key placed after more than a buffer of other content
+     * Should return true
+     */
+    @Test
+    public void hasTopLevelKey_reader() throws IOException {
+        StringBuilder json = new StringBuilder("{\"a\":\"");
+        for (int i = 0; i < 2000; i++) {
+            json.append('x');
+        }
+        json.append("\",\"result\":\"Success\"}");
+
+        Assert.assertTrue(JsonReader.hasTopLevelKey(new StringReader(json.toString()), "result"));
+        Assert.assertFalse(JsonReader.hasTopLevelKey(new StringReader(json.toString()), "other"));
+    }
+
+    /**
+     * "hasTopLevelKey" on typical server responses, compared to building a JSONObject
+     * Should agree with JSONObject for top level keys and ignore keys of nested objects
+     */
+    @Test
+    public void hasTopLevelKey_matchesJSONObject() {
+        String[] responses = {
+            "{\"result\":\"Success\",\"info\":{\"count\":12,\"ids\":[1,2,3,4,5]}}",
+            "{\"info\":{\"result\":\"x\"},\"ids\":[{\"result\":1}]}",
+            "{\"a\":\"result\",\"b\":[\"result\"],\"result\":null}",
+            "{}"
+        };
+        String[] keys = { "result", "info", "count", "ids", "a" };
+        for (String response : responses) {
+            JSONObject object = new JSONObject(response);
+            for (String key : keys) {
+                Assert.assertEquals(response + " " + key, object.has(key), JsonReader.hasTopLevelKey(response, key));
+            }
+        }
+    }
+}
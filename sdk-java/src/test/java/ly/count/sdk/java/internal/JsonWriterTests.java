@@ -0,0 +1,100 @@
+package ly.count.sdk.java.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class JsonWriterTests {
+    private final Log L = mock(Log.class);
+
+    private static final String[] STRINGS = { "", "plain", "\"\\/</a>", "\b\t\n\f\r\u0001\u001f", "\u007f\u0080\u009f\u00a0", "\u2000\u2028\u20ff\u2100", "\u00e7 \u00fc \u65e5\u672c", "\uD83D\uDE00", "a\uD83Db", "\uDE00" };
+
+    /**
+     * "value" of strings with characters org.json escapes, plain and url-encoded
+     * Plain output should be the same as "JSONObject.quote", url-encoded the same as "Utils.urlencode" of it
+     */
+    @Test
+    public void value_string() {
+        for (String string : STRINGS) {
+            Assert.assertEquals(JSONObject.quote(string), write(false, w -> w.value(string)));
+            Assert.assertEquals(Utils.urlencode(JSONObject.quote(string), null), write(true, w -> w.value(string)));
+        }
+        Assert.assertEquals("null", write(false, w -> w.value((String) null)));
+    }
+
+    /**
+     * "value" of numbers with trailing zeros, exponents and special values
+     * Should be formatted as "JSONObject.numberToString"
+     */
+    @Test
+    public void value_number() {
+        Number[] numbers = { 0, -1, Long.MAX_VALUE, 1.0, 1.50, -0.0, 100.0, 0.1f, 1.0e25, 1.5e-7, 123456789.125 };
+        for (Number number : numbers) {
+            Assert.assertEquals(JSONObject.numberToString(number), write(false, w -> w.value(number)));
+        }
+    }
+
+    /**
+     * Nested objects and arrays with names, raw values and empty containers
+     * Separators should be placed as in "JSONObject.toString"
+     */
+    @Test
+    public void nested() {
+        String json = write(false, w -> w.beginObject()
+            .name("a").beginArray().value(1).value(true).beginObject().endObject().beginArray().endArray().endArray()
+            .name("b").raw("{\"c\":null}")
+            .name("d").value("e")
+            .endObject());
+        Assert.assertEquals("{\"a\":[1,true,{},[]],\"b\":{\"c\":null},\"d\":\"e\"}", json);
+        Assert.assertEquals(Utils.urlencode(json, null), write(true, w -> w.beginObject()
+            .name("a").beginArray().value(1).value(true).beginObject().endObject().beginArray().endArray().endArray()
+            .name("b").raw("{\"c\":null}")
+            .name("d").value("e")
+            .endObject()));
+    }
+
+    /**
+     * Events request param streamed with "Params.Arr"
+     * Should be the same as serializing events to strings, joining and url-encoding them
+     */
+    @Test
+    public void events_streamed() {
+        List<EventImpl> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, Object> segmentation = new HashMap<>();
+            segmentation.put("name", "\u00e7 \u00fc " + i);
+            segmentation.put("number", i);
+            segmentation.put("decimal", i * 1.5);
+            events.add(new EventImpl("event " + i, 1, 2.5, null, segmentation, L, "id" + i, null, null, null));
+        }
+
+        Assert.assertEquals(legacy(events), streamed(events));
+    }
+
+    private String legacy(List<EventImpl> events) {
+        StringBuilder json = new StringBuilder("[");
+        for (EventImpl event : events) {
+            json.append(json.length() == 1 ? "" : ",").append(EventImplTests.toJSONObject(event));
+        }
+        return new Params("events", json.append(']').toString()).toString();
+    }
+
+    private static String streamed(List<EventImpl> events) {
+        return new Params().arr("events").put(events).add().toString();
+    }
+
+    private static String write(boolean urlencoded, JsonWriter.Value value) {
+        StringBuilder out = new StringBuilder();
+        value.write(new JsonWriter(out, urlencoded));
+        return out.toString();
+    }
+}
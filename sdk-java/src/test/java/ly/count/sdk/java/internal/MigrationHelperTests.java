@@ -1,9 +1,13 @@
 package ly.count.sdk.java.internal;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -21,7 +25,7 @@ import static org.mockito.Mockito.spy;
 
 @RunWith(JUnit4.class)
 public class MigrationHelperTests {
-    final int expectedLatestSchemaVersion = 2;
+    final int expectedLatestSchemaVersion = 3;
 
     //example config file contains old type of data
     //has 'SDK_GENERATED' device id type and id value of 'CLY_0c54e5e7-eb86-4c17-81f0-4d7910d8ab0es'
@@ -341,6 +345,76 @@ public class MigrationHelperTests {
         Assert.assertEquals(0, TestUtils.getCurrentRQ().length); // no events to send
     }
 
+    /**
+     * "migration_SessionFile_03" with sessions stored by previous SDK versions
+     * Upgrading from 2 to 3, one legacy session file, one session file in current format and one corrupted legacy session file
+     * Legacy session should be converted and restorable, current one should stay as is and corrupted one should be deleted
+     */
+    @Test
+    public void applyMigrations_2to3_sessionFiles() throws IOException {
+        setDataVersionInConfigFile(2); // set previous data version
+        initStorage();
+
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(legacy)) {
+            stream.writeLong(1L);
+            stream.writeLong(100L);
+            stream.writeLong(200L);
+            stream.writeLong(0L);
+            stream.writeInt(1);
+            stream.writeUTF("{\"key\":\"legacy\",\"count\":1,\"timestamp\":1695887006647,\"hour\":10,\"dow\":4}");
+            stream.writeUTF("a=b");
+            stream.writeInt(0);
+        }
+        File legacyFile = TestUtils.createFile("session_1");
+        Files.write(legacyFile.toPath(), legacy.toByteArray());
+
+        byte[] current = SessionImpl.encode(2L, 100L, null, null, new ArrayList<>(), "", 0);
+        File currentFile = TestUtils.createFile("session_2");
+        Files.write(currentFile.toPath(), current);
+
+        File corruptedFile = TestUtils.createFile("session_3");
+        Files.write(corruptedFile.toPath(), Arrays.copyOf(legacy.toByteArray(), 20));
+
+        Map<String, Object> migrationParams = new ConcurrentHashMap<>();
+        migrationParams.put("sdk_path", TestUtils.getTestSDirectory());
+
+        MigrationHelper migrationHelper = new MigrationHelper(mock(Log.class));
+        migrationHelper.setupMigrations(storageProvider);
+        Assert.assertEquals(2, migrationHelper.currentDataModelVersion);
+        Assert.assertTrue(migrationHelper.migration_SessionFile_03(migrationParams));
+        Assert.assertEquals(3, migrationHelper.currentDataModelVersion);
+
+        InternalConfig config = new InternalConfig(TestUtils.getBaseConfig());
+        config.setLogger(mock(Log.class));
+        SessionImpl session = new SessionImpl(config, 1L);
+        Assert.assertTrue(session.restore(Files.readAllBytes(legacyFile.toPath()), config.getLogger()));
+        Assert.assertEquals(Long.valueOf(100L), session.began);
+        Assert.assertEquals(Long.valueOf(200L), session.updated);
+        Assert.assertNull(session.ended);
+        Assert.assertEquals("a=b", session.params.toString());
+        Assert.assertEquals(1, session.events.size());
+
+        Assert.assertArrayEquals(current, Files.readAllBytes(currentFile.toPath()));
+        Assert.assertFalse(corruptedFile.exists());
+    }
+
+    /**
+     * "migration_SessionFile_03" with null sdk path
+     * Upgrading from 2 to 3, empty storage
+     * Data version must be 3 and migration should fail because sdk path is null
+     */
+    @Test
+    public void applyMigrations_2to3_nullMigrationParams() throws IOException {
+        setDataVersionInConfigFile(2); // set previous data version
+        initStorage();
+
+        MigrationHelper migrationHelper = new MigrationHelper(mock(Log.class));
+        migrationHelper.setupMigrations(storageProvider);
+        Assert.assertFalse(migrationHelper.migration_SessionFile_03(new ConcurrentHashMap<>()));
+        Assert.assertEquals(3, migrationHelper.currentDataModelVersion);
+    }
+
     void setDataVersionInConfigFile(final int targetDataVersion) throws IOException {
         //prepare storage in case we need to
         TestUtils.checkSdkStorageRootDirectoryExist(TestUtils.getTestSDirectory());
@@ -1,8 +1,10 @@
 package ly.count.sdk.java.internal;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import ly.count.sdk.java.Config;
 import ly.count.sdk.java.Countly;
@@ -104,6 +106,68 @@ public class ModuleEventsTests {
         validateEvent(eventsInRequest.get(2), eKeys[0], null, 1, 45.9, 32.0, "_CLY_", null, "", null);
     }
 
+    /**
+     * Recording events from several threads with event recording buffer
+     * Events should be recorded by the recorder thread with unique ids chained in queue order,
+     * segmentation changed by the caller after recording should not affect the recorded event
+     */
+    @Test
+    public void recordEvent_recordingBuffer() throws InterruptedException {
+        init(TestUtils.getConfigEvents(1000).setEventRecordingBuffer(16, Config.EventOverflowPolicy.BLOCK));
+        Assert.assertNotNull(moduleEvents.eventHandoff);
+
+        Map<String, Object> segmentation = new ConcurrentHashMap<>();
+        segmentation.put("name", "Johny");
+        Countly.instance().events().recordEvent(eKeys[0], segmentation, 1, 45.9, 32.0);
+        segmentation.put("name", "changed");
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    Countly.instance().events().recordEvent(eKeys[1]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        moduleEvents.eventHandoff.flush();
+
+        List<EventImpl> events = TestUtils.getCurrentEQ();
+        Assert.assertEquals(201, events.size());
+        Assert.assertEquals("Johny", events.get(0).segmentation.get("name"));
+        Assert.assertNull(events.get(0).peid);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertTrue(ids.add(events.get(i).id));
+            if (i > 0) {
+                Assert.assertEquals(events.get(i - 1).id, events.get(i).peid);
+            }
+        }
+    }
+
+    /**
+     * Recording events with event recording buffer until event queue size to send is reached
+     * Recorder thread should move events to a request
+     */
+    @Test
+    public void recordEvent_recordingBufferQueueSizeOver() {
+        init(TestUtils.getConfigEvents(2).setEventRecordingBuffer(4, Config.EventOverflowPolicy.SPILL));
+
+        Countly.instance().events().recordEvent(eKeys[0], null, 1, 45.9, 32.0);
+        Countly.instance().events().recordEvent(eKeys[1], null, 1, 45.9, 32.0);
+        moduleEvents.eventHandoff.flush();
+
+        TestUtils.validateEQSize(0, moduleEvents.eventQueue);
+        Assert.assertEquals(1, TestUtils.getCurrentRQ().length);
+        List<EventImpl> eventsInRequest = TestUtils.readEventsFromRequest();
+        validateEvent(eventsInRequest.get(0), eKeys[0], null, 1, 45.9, 32.0, "_CLY_", null, "", null);
+        validateEvent(eventsInRequest.get(1), eKeys[1], null, 1, 45.9, 32.0, "_CLY_", null, "", eventsInRequest.get(0).id);
+        Assert.assertEquals(0, Countly.instance().getDroppedEventCount());
+    }
+
     /**
      * Recording an event with negative count
      * "recordEvent" function should not create an event with given key and negative count
@@ -0,0 +1,164 @@
+package ly.count.sdk.java.internal;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import ly.count.sdk.java.Config;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class NetworkRetryTests {
+
+    private static final String ENDPOINT = NetworkRetry.DEFAULT_ENDPOINT;
+
+    /**
+     * "delay" after consecutive rejected requests
+     * Delay should be random and never exceed exponentially growing cap limited by maximum delay
+     */
+    @Test
+    public void delay_fullJitter() {
+        for (int attempt = 1; attempt <= 8; attempt++) {
+            long cap = Math.min(1000, 10L << (attempt - 1));
+            for (int i = 0; i < 20; i++) {
+                NetworkRetry retry = retry(10, 1000, 0, 1000);
+                for (int f = 0; f < attempt; f++) {
+                    retry.onResponse(ENDPOINT, false, 400, null);
+                }
+                long delay = retry.delay(ENDPOINT);
+                Assert.assertTrue(delay >= 0 && delay <= cap);
+            }
+        }
+    }
+
+    /**
+     * "delay" of an endpoint after its request succeeded and of other endpoints
+     * Success should reset backoff, failures of one endpoint should not delay others
+     */
+    @Test
+    public void delay_perEndpoint() {
+        NetworkRetry retry = retry(10_000, 10_000, 0, 1000);
+        retry.onResponse(ENDPOINT, false, 400, "5");
+        Assert.assertTrue(retry.delay(ENDPOINT) > 4_000);
+        Assert.assertEquals(0, retry.delay("/o/sdk?"));
+        Assert.assertEquals(1, retry.failureCount());
+
+        retry.onResponse(ENDPOINT, true, 200, null);
+        Assert.assertEquals(0, retry.delay(ENDPOINT));
+        Assert.assertTrue(retry.states().isEmpty());
+    }
+
+    /**
+     * "delay" with disabled backoff
+     * Requests should be allowed right after a failure
+     */
+    @Test
+    public void delay_disabled() {
+        NetworkRetry retry = retry(0, 0, 0, 1000);
+        retry.onError(ENDPOINT);
+        retry.onResponse(ENDPOINT, false, 500, null);
+        Assert.assertEquals(0, retry.delay(ENDPOINT));
+        Assert.assertEquals(Config.CircuitState.CLOSED, retry.states().get(ENDPOINT));
+    }
+
+    /**
+     * "onResponse" with "Retry-After" header
+     * Requests should not be sent before the time server asked for, even with shorter backoff
+     */
+    @Test
+    public void onResponse_retryAfter() {
+        NetworkRetry retry = retry(1, 1, 0, 1000);
+        retry.onResponse(ENDPOINT, false, 429, "3");
+        long delay = retry.delay(ENDPOINT);
+        Assert.assertTrue(delay > 2_000 && delay <= 3_000);
+    }
+
+    /**
+     * "onResponse" with "Retry-After" header and default config
+     * Backoff and circuit breaker should be disabled by default and "Retry-After" should be ignored then
+     */
+    @Test
+    public void onResponse_retryAfterDefault() {
+        NetworkRetry retry = new NetworkRetry(TestUtils.getInternalConfigWithLogger(TestUtils.getBaseConfig()));
+        retry.onResponse(ENDPOINT, false, 503, "3");
+        retry.onError(ENDPOINT);
+        Assert.assertEquals(0, retry.delay(ENDPOINT));
+        Assert.assertEquals(Config.CircuitState.CLOSED, retry.states().get(ENDPOINT));
+    }
+
+    /**
+     * "parseRetryAfter" with seconds, HTTP date and invalid values
+     * Seconds and dates should be converted to delay in milliseconds, invalid values should be ignored
+     */
+    @Test
+    public void parseRetryAfter() {
+        Assert.assertEquals(120_000, NetworkRetry.parseRetryAfter("120"));
+        Assert.assertEquals(0, NetworkRetry.parseRetryAfter("-5"));
+        Assert.assertEquals(-1, NetworkRetry.parseRetryAfter(null));
+        Assert.assertEquals(-1, NetworkRetry.parseRetryAfter(""));
+        Assert.assertEquals(-1, NetworkRetry.parseRetryAfter("soon"));
+
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60));
+        long delay = NetworkRetry.parseRetryAfter(date);
+        Assert.assertTrue(delay > 55_000 && delay <= 60_000);
+        Assert.assertEquals(0, NetworkRetry.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    /**
+     * "onError" and "onResponse" with server errors up to the threshold
+     * Circuit should open only after threshold of consecutive server errors and connection failures,
+     * rejected requests should reset the count
+     */
+    @Test
+    public void circuit_opensAfterThreshold() {
+        NetworkRetry retry = retry(0, 0, 3, 10_000);
+        retry.onError(ENDPOINT);
+        retry.onResponse(ENDPOINT, false, 503, null);
+        retry.onResponse(ENDPOINT, false, 400, null);
+        retry.onError(ENDPOINT);
+        retry.onResponse(ENDPOINT, false, 502, null);
+        Assert.assertEquals(Config.CircuitState.CLOSED, retry.states().get(ENDPOINT));
+        Assert.assertEquals(0, retry.delay(ENDPOINT));
+
+        retry.onError(ENDPOINT);
+        Assert.assertEquals(Config.CircuitState.OPEN, retry.states().get(ENDPOINT));
+        Assert.assertTrue(retry.delay(ENDPOINT) > 9_000);
+    }
+
+    /**
+     * "delay" of an open circuit after open time passes
+     * Circuit should become half-open and let a single probe through, failed probe should open it again,
+     * successful probe should close it
+     */
+    @Test
+    public void circuit_halfOpenProbe() throws InterruptedException {
+        NetworkRetry retry = retry(0, 0, 1, 50);
+        retry.onError(ENDPOINT);
+        Assert.assertEquals(Config.CircuitState.OPEN, retry.states().get(ENDPOINT));
+
+        Thread.sleep(60);
+        Assert.assertEquals(0, retry.delay(ENDPOINT));
+        Assert.assertEquals(Config.CircuitState.HALF_OPEN, retry.states().get(ENDPOINT));
+        retry.started(ENDPOINT);
+        Assert.assertEquals(-1, retry.delay(ENDPOINT));
+
+        retry.onResponse(ENDPOINT, false, 500, null);
+        Assert.assertEquals(Config.CircuitState.OPEN, retry.states().get(ENDPOINT));
+        Assert.assertTrue(retry.delay(ENDPOINT) > 0);
+
+        Thread.sleep(60);
+        Assert.assertEquals(0, retry.delay(ENDPOINT));
+        retry.started(ENDPOINT);
+        retry.onResponse(ENDPOINT, true, 200, null);
+        Assert.assertNull(retry.states().get(ENDPOINT));
+        Assert.assertEquals(0, retry.delay(ENDPOINT));
+    }
+
+    private static NetworkRetry retry(long baseDelay, long maxDelay, int threshold, long openTime) {
+        return new NetworkRetry(baseDelay, maxDelay, threshold, openTime, mock(Log.class));
+    }
+}
@@ -0,0 +1,117 @@
+package ly.count.sdk.java.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ParamsEncoderTests {
+
+    private static final String[] STRINGS = { "", "TheQuickBrownFox1234567890.-*_", "~!@ #$%^&()_+{ }:\"|[]\\|,./<>?", "ç ü ß", "日本語", "\uD83D\uDE00", "a\uD83Db", "\uDE00", "\u007F\u0080\u07FF\u0800\uFFFF" };
+
+    /**
+     * "utf8" and "urlencoded" with symbols, non-ASCII characters, surrogate pairs and unpaired surrogates
+     * Should write the same bytes as "String.getBytes" and "Utils.urlencode"
+     */
+    @Test
+    public void utf8_urlencoded() {
+        for (String string : STRINGS) {
+            Assert.assertArrayEquals(string.getBytes(StandardCharsets.UTF_8), ParamsEncoder.get().utf8(string).toByteArray());
+            Assert.assertArrayEquals(Utils.urlencode(string, null).getBytes(StandardCharsets.UTF_8), ParamsEncoder.get().urlencoded(string).toByteArray());
+        }
+    }
+
+    /**
+     * "utf8" of a string larger than the pooled buffer with multibyte characters
+     * Buffer should grow as needed
+     */
+    @Test
+    public void utf8_grow() {
+        StringBuilder string = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            string.append("ü日\uD83D\uDE00a");
+        }
+        Assert.assertArrayEquals(string.toString().getBytes(StandardCharsets.UTF_8), ParamsEncoder.get().utf8(string).toByteArray());
+    }
+
+    /**
+     * "checksum" of written params
+     * Should be the same as "Utils.digestHex" of params string with salt and leave written bytes unchanged
+     */
+    @Test
+    public void checksum() {
+        Params params = new Params("events", "[{\"key\":\"ç ü\"}]", "device_id", "a b");
+        ParamsEncoder encoder = ParamsEncoder.get();
+        params.writeTo(encoder);
+
+        Assert.assertEquals(Utils.digestHex("SHA-256", params + "salt", null), encoder.checksum("salt", null));
+        Assert.assertEquals(Utils.digestHex("SHA-256", params + "salt", null), encoder.checksum("salt", null));
+        Assert.assertEquals(params.toString(), new String(encoder.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * "writeTo" of params partially rendered, with pairs added after rendering
+     * Should write the same bytes as "toString"
+     */
+    @Test
+    public void writeTo_partiallyRendered() {
+        Params params = new Params("a=%7B&bare");
+        params.add("b", "ç ü");
+        Assert.assertEquals("a=%7B&bare&b=%C3%A7+%C3%BC".length(), params.length());
+        params.add("c", "{}", "d", null);
+
+        ParamsEncoder encoder = ParamsEncoder.get();
+        params.writeTo(encoder);
+        Assert.assertEquals("a=%7B&bare&b=%C3%A7+%C3%BC&c=%7B%7D&d=", new String(encoder.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertEquals(params.toString(), new String(encoder.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * "get" on the same and on another thread
+     * Same thread should reuse its encoder with an empty buffer, another thread should get its own one
+     */
+    @Test
+    public void get_threadConfined() throws InterruptedException {
+        ParamsEncoder encoder = ParamsEncoder.get().utf8("abc");
+        Assert.assertSame(encoder, ParamsEncoder.get());
+        Assert.assertEquals(0, encoder.length());
+
+        AtomicReference<ParamsEncoder> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> other.set(ParamsEncoder.get()));
+        thread.start();
+        thread.join();
+        Assert.assertNotNull(other.get());
+        Assert.assertNotSame(encoder, other.get());
+    }
+
+    /**
+     * Request body and checksum written with "ParamsEncoder" for a typical events request, twice with the same pooled encoder
+     * Should write the same bytes as string concatenation, "Utils.digestHex" and "getBytes"
+     */
+    @Test
+    public void bodyAndChecksum() {
+        StringBuilder events = new StringBuilder("[");
+        for (int i = 0; i < 20; i++) {
+            events.append(i == 0 ? "" : ",").append("{\"key\":\"event ").append(i).append("\",\"count\":1,\"segmentation\":{\"a\":\"\u00e7 \u00fc\"}}");
+        }
+        Params params = new Params("app_key", "key", "device_id", "device", "events", events.append(']').toString());
+
+        Assert.assertArrayEquals(legacy(params), encoded(params));
+        Assert.assertArrayEquals(legacy(params), encoded(params));
+    }
+
+    private static byte[] legacy(Params params) {
+        String checksum = Utils.digestHex("SHA-256", params + "salt", null);
+        return (params + "&checksum256=" + checksum).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encoded(Params params) {
+        ParamsEncoder encoder = ParamsEncoder.get();
+        params.writeTo(encoder);
+        String checksum = encoder.checksum("salt", null);
+        return encoder.ascii('&').utf8("checksum256").ascii('=').utf8(checksum).toByteArray();
+    }
+}
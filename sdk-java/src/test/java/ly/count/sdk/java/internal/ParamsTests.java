@@ -1,5 +1,12 @@
 package ly.count.sdk.java.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -112,4 +119,168 @@ public class ParamsTests {
         Assert.assertEquals(combined.length(), params.length());
         Assert.assertEquals(combined, params.toString());
     }
-}
\ No newline at end of file
+
+    /**
+     * "get", "has" and "remove" with a parsed string containing duplicate, empty and encoded values
+     * Should behave as string lookups did: empty values are only visible to "has", "get" returns the first value,
+     * "remove" removes all values and returns the last one
+     */
+    @Test
+    public void lookup_parsed() {
+        Params params = new Params("a=1&b=&c=%7B%7D&a=2&bare");
+
+        Assert.assertTrue(params.has("b"));
+        Assert.assertNull(params.get("b"));
+        Assert.assertNull(params.remove("b"));
+        Assert.assertEquals("1", params.get("a"));
+        Assert.assertEquals("{}", params.get("c"));
+        Assert.assertFalse(params.has("bare"));
+        Assert.assertFalse(params.has("d"));
+
+        Assert.assertEquals("2", params.remove("a"));
+        Assert.assertFalse(params.has("a"));
+        Assert.assertEquals("b=&c=%7B%7D&bare", params.toString());
+        Assert.assertEquals("b=&c=%7B%7D&bare".length(), params.length());
+    }
+
+    /**
+     * "add" of values needing encoding and "remove" of a pair in the middle
+     * Values should be encoded as by "Utils.urlencode" and the string should stay consistent after removal
+     */
+    @Test
+    public void add_encoded() {
+        String value = "[{\"key\":\"ç ü\",\"segmentation\":{\"a\":\"b&c=d\"}}]";
+        Params params = new Params("events", value, "rr", 1, "empty", null);
+        String encoded = "events=" + Utils.urlencode(value, null);
+
+        Assert.assertEquals(encoded + "&rr=1&empty=", params.toString());
+        Assert.assertEquals(value, params.get("events"));
+        Assert.assertEquals(params, new Params(params.toString()));
+
+        Assert.assertEquals("1", params.remove("rr"));
+        params.add("rr", 2);
+        Assert.assertEquals(encoded + "&empty=&rr=2", params.toString());
+        Assert.assertEquals("2", params.get("rr"));
+    }
+
+    /**
+     * "add" of a raw string
+     * String should be appended as is, continuing the last pair
+     */
+    @Test
+    public void add_string() {
+        Params params = new Params().add("k", "v");
+        params.add("x&y=%7B");
+
+        Assert.assertEquals("k=vx&y=%7B", params.toString());
+        Assert.assertEquals("vx", params.get("k"));
+        Assert.assertEquals("{", params.get("y"));
+
+        params.add("&bare");
+        Assert.assertEquals("k=vx&y=%7B&bare", params.toString());
+    }
+
+    /**
+     * "remove" with empty trailing segments
+     * Empty trailing segments should be dropped as before
+     */
+    @Test
+    public void remove_trailing() {
+        Params params = new Params("a=1&b=2&&");
+
+        Assert.assertNull(params.remove("c"));
+        Assert.assertEquals("a=1&b=2", params.toString());
+        Assert.assertEquals("2", params.remove("b"));
+        Assert.assertEquals("a=1", params.toString());
+        params.add("c", 3);
+        Assert.assertEquals("a=1&c=3", params.toString());
+    }
+
+    /**
+     * "map" and "isEmptyExcept" with duplicate and empty values
+     * Map should keep insertion order, skip empty values and keep the last duplicate
+     */
+    @Test
+    public void map() {
+        Params params = new Params("b=1&a=&c=%7B&b=2");
+
+        Assert.assertEquals(Arrays.asList("b", "c"), new ArrayList<>(params.map().keySet()));
+        Assert.assertEquals("2", params.map().get("b"));
+        Assert.assertEquals("{", params.map().get("c"));
+        Assert.assertFalse(params.isEmptyExcept("b"));
+        Assert.assertTrue(new Params("device_id=1&a=").isEmptyExcept("device_id"));
+        Assert.assertTrue(new Params().isEmptyExcept("device_id"));
+    }
+
+    /**
+     * "toString" and "length" called by several threads at once on params which are not rendered yet
+     * Every thread should get the whole string
+     */
+    @Test
+    public void toString_concurrent() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            Params params = new Params();
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                params.add("k" + i, "v " + i);
+                expected.append(i == 0 ? "" : "&").append("k").append(i).append("=v+").append(i);
+            }
+
+            List<Callable<String>> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(i % 2 == 0 ? params::toString : () -> params.length() + "");
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(readers.size());
+            try {
+                for (Future<String> result : executor.invokeAll(readers)) {
+                    String value = result.get();
+                    Assert.assertTrue(value.equals(expected.toString()) || value.equals(expected.length() + ""));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            Assert.assertEquals(expected.toString(), params.toString());
+        }
+    }
+
+    /**
+     * "add", "get" and "remove" called by several threads at once, each on its own keys, while another thread reads the params
+     * No pair should be lost and every key should keep its own value
+     */
+    @Test
+    public void add_concurrent() throws Exception {
+        Params params = new Params("a=%7B&bare");
+        List<Callable<String>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            writers.add(() -> {
+                for (int i = 0; i < 500; i++) {
+                    params.add("t" + thread + "k" + i, "v " + i);
+                    params.add("t" + thread + "tmp", "x");
+                    Assert.assertEquals("v " + i, params.get("t" + thread + "k" + i));
+                    Assert.assertEquals("x", params.remove("t" + thread + "tmp"));
+                    params.map();
+                    params.toString();
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(writers.size());
+        try {
+            for (Future<String> result : executor.invokeAll(writers)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals("{", params.get("a"));
+        for (int t = 0; t < 4; t++) {
+            Assert.assertFalse(params.has("t" + t + "tmp"));
+            for (int i = 0; i < 500; i++) {
+                Assert.assertEquals("v " + i, params.get("t" + t + "k" + i));
+            }
+        }
+        Assert.assertEquals(2 + 4 * 500, params.toString().split("&").length);
+    }
+}
@@ -0,0 +1,320 @@
+package ly.count.sdk.java.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import ly.count.sdk.java.Config;
+import ly.count.sdk.java.Countly;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class RequestLanesTests {
+
+    private final Map<Long, Params> queue = new TreeMap<>();
+    private final List<Long> reads = new ArrayList<>();
+
+    @After
+    public void stop() {
+        Countly.instance().halt();
+    }
+
+    /**
+     * "laneOf" with explicit priority, owner module and params
+     * Explicit priority should win, crashes, session requests, event batches and other requests should get their lanes
+     */
+    @Test
+    public void laneOf() {
+        Assert.assertEquals(RequestLanes.LANE_CRASH, RequestLanes.laneOf(new Params("crash", "{}")));
+        Assert.assertEquals(RequestLanes.LANE_SESSION, RequestLanes.laneOf(new Params("begin_session", 1)));
+        Assert.assertEquals(RequestLanes.LANE_SESSION, RequestLanes.laneOf(new Params("session_duration", 60, "events", "[]")));
+        Assert.assertEquals(RequestLanes.LANE_SESSION, RequestLanes.laneOf(new Params(Params.PARAM_OLD_DEVICE_ID, "a")));
+        Assert.assertEquals(RequestLanes.LANE_EVENTS, RequestLanes.laneOf(new Params("events", "[]")));
+        Assert.assertEquals(RequestLanes.LANE_EVENTS, RequestLanes.laneOf(new Request("a", 1).own(ModuleEvents.class).params));
+        Assert.assertEquals(RequestLanes.LANE_DEFAULT, RequestLanes.laneOf(new Params("user_details", "{}")));
+        Assert.assertEquals(RequestLanes.LANE_CRASH, RequestLanes.laneOf(new Request("events", "[]").priority(RequestLanes.LANE_CRASH).params));
+        Assert.assertEquals(RequestLanes.LANE_EVENTS, RequestLanes.laneOf(new Params("events", "[]", Request.PRIORITY, "x")));
+    }
+
+    /**
+     * "next" with a backlog of event batches and a crash queued after them
+     * Crash should be picked first
+     */
+    @Test
+    public void next_priority() {
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+        for (long id = 1; id <= 20; id++) {
+            add(lanes, id, "events", "[]");
+        }
+        add(lanes, 21L, "crash", "{}");
+
+        Assert.assertEquals(Long.valueOf(21), lanes.next(Collections.emptySet()));
+    }
+
+    /**
+     * "next" with backlogs in all lanes
+     * Lanes should get turns in proportion to their weights, so the lowest one isn't starved
+     */
+    @Test
+    public void next_weights() {
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+        long id = 1;
+        for (int i = 0; i < 30; i++) {
+            add(lanes, id++, "events", "[]");
+            add(lanes, id++, "user_details", "{}");
+            add(lanes, id++, "crash", "{}");
+        }
+
+        int[] picked = new int[RequestLanes.LANES];
+        for (int i = 0; i < 30; i++) {
+            Long next = lanes.next(Collections.emptySet());
+            picked[RequestLanes.laneOf(queue.get(next))]++;
+            queue.remove(next);
+            lanes.remove(next);
+        }
+        Assert.assertArrayEquals(new int[] { 21, 0, 6, 3 }, picked);
+    }
+
+    /**
+     * "next" with custom weights set to equal values
+     * Lanes should take turns
+     */
+    @Test
+    public void next_equalWeights() {
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig().setRequestLaneWeights(1, 1, 1, 1));
+        add(lanes, 1L, "events", "[]");
+        add(lanes, 2L, "events", "[]");
+        add(lanes, 3L, "crash", "{}");
+        add(lanes, 4L, "crash", "{}");
+
+        Assert.assertEquals(Arrays.asList(3L, 1L, 4L, 2L), sendAll(lanes));
+    }
+
+    /**
+     * "next" with requests of two devices and session begin / end requests
+     * Requests should not overtake session requests of their device and session requests should not overtake
+     * earlier requests of their device, requests of another device can overtake them
+     */
+    @Test
+    public void next_sessionOrdering() {
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+        add(lanes, 1L, "events", "[]", Params.PARAM_DEVICE_ID, "a");
+        add(lanes, 2L, "begin_session", 1, Params.PARAM_DEVICE_ID, "a");
+        add(lanes, 3L, "crash", "{}", Params.PARAM_DEVICE_ID, "a");
+        add(lanes, 4L, "events", "[]", Params.PARAM_DEVICE_ID, "b");
+        add(lanes, 5L, "crash", "{}", Params.PARAM_DEVICE_ID, "b");
+        add(lanes, 6L, "end_session", 1, Params.PARAM_DEVICE_ID, "a");
+
+        List<Long> order = sendAll(lanes);
+        Assert.assertEquals(Long.valueOf(5), order.get(0));
+        Assert.assertTrue(order.indexOf(1L) < order.indexOf(2L));
+        Assert.assertTrue(order.indexOf(2L) < order.indexOf(3L));
+        Assert.assertTrue(order.indexOf(3L) < order.indexOf(6L));
+    }
+
+    /**
+     * "next" with a device id change request in the queue
+     * Nothing should overtake it and it should not overtake anything
+     */
+    @Test
+    public void next_deviceIdChange() {
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+        add(lanes, 1L, "events", "[]", Params.PARAM_DEVICE_ID, "a");
+        add(lanes, 2L, "user_details", "{}", Params.PARAM_DEVICE_ID, "b");
+        add(lanes, 3L, Params.PARAM_OLD_DEVICE_ID, "a", Params.PARAM_DEVICE_ID, "c");
+        add(lanes, 4L, "crash", "{}", Params.PARAM_DEVICE_ID, "c");
+        add(lanes, 5L, "crash", "{}", Params.PARAM_DEVICE_ID, "b");
+
+        Assert.assertEquals(Arrays.asList(2L, 1L, 3L, 4L, 5L), sendAll(lanes));
+    }
+
+    /**
+     * "next" with requests in flight
+     * Reserved requests should be skipped, a session request should wait while an earlier request of its device is in flight
+     */
+    @Test
+    public void next_reserved() {
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+        add(lanes, 1L, "events", "[]");
+        add(lanes, 2L, "events", "[]");
+        add(lanes, 3L, "end_session", 1);
+
+        Set<Long> reserved = new HashSet<>(Collections.singletonList(1L));
+        Assert.assertEquals(Long.valueOf(2), lanes.next(reserved));
+        reserved.add(2L);
+        Assert.assertNull(lanes.next(reserved));
+
+        queue.remove(1L);
+        lanes.remove(1L);
+        queue.remove(2L);
+        lanes.remove(2L);
+        Assert.assertEquals(Long.valueOf(3), lanes.next(Collections.emptySet()));
+    }
+
+    /**
+     * "next" after requests were added to and removed from the queue directly
+     * Lanes should be synchronized with the queue
+     */
+    @Test
+    public void next_synchronize() {
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+        add(lanes, 1L, "events", "[]");
+        add(lanes, 2L, "events", "[]");
+        queue.remove(1L);
+        queue.put(3L, new Params("crash", "{}"));
+
+        Assert.assertEquals(Long.valueOf(3), lanes.next(Collections.emptySet()));
+        Assert.assertEquals(2, lanes.size());
+        Assert.assertArrayEquals(new int[] { 1, 0, 0, 1 }, lanes.laneSizes());
+    }
+
+    /**
+     * "next" with a request which can't be read in the queue
+     * Unreadable request should be dropped from the queue after a single read, following requests should be picked
+     */
+    @Test
+    public void next_unreadable() {
+        queue.put(1L, null);
+        queue.put(2L, new Params("events", "[]"));
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+
+        Assert.assertEquals(Long.valueOf(2), lanes.next(Collections.emptySet()));
+        Assert.assertEquals(Long.valueOf(2), lanes.next(Collections.emptySet()));
+        Assert.assertFalse(queue.containsKey(1L));
+        Assert.assertEquals(Arrays.asList(1L, 2L), reads);
+        Assert.assertEquals(1, lanes.size());
+    }
+
+    /**
+     * "next" with more queued requests than classified at once, an earlier request of a device is a session request
+     * Requests should be classified in batches and session ordering should be kept across batches
+     */
+    @Test
+    public void next_classifyBatches() {
+        for (long id = 1; id <= 100; id++) {
+            queue.put(id, new Params("events", "[]", Params.PARAM_DEVICE_ID, "a"));
+        }
+        queue.put(101L, new Params("end_session", 1, Params.PARAM_DEVICE_ID, "a"));
+        queue.put(102L, new Params("crash", "{}", Params.PARAM_DEVICE_ID, "a"));
+        RequestLanes lanes = lanes(TestUtils.getBaseConfig());
+
+        Assert.assertEquals(Long.valueOf(1), lanes.next(Collections.emptySet()));
+        Assert.assertTrue(reads.size() < queue.size());
+        Set<Long> reserved = new HashSet<>();
+        for (long id = 1; id <= 100; id++) {
+            reserved.add(id);
+        }
+        Assert.assertNull(lanes.next(reserved));
+        Assert.assertEquals(queue.size(), reads.size());
+    }
+
+    /**
+     * "getNextRequest" of the persistent request queue with event requests followed by a crash request
+     * Crash request should be returned first, remaining requests should follow in queue order
+     */
+    @Test
+    public void getNextRequest_persistent() {
+        Countly.instance().init(TestUtils.getBaseConfig());
+        InternalConfig config = SDKCore.instance.config;
+        Storage.await(mock(Log.class));
+        List<Request> requests = new ArrayList<>();
+        for (long id = 101; id <= 103; id++) {
+            Request request = new Request(id);
+            request.params = new Params("events", "[]", Params.PARAM_DEVICE_ID, TestUtils.DEVICE_ID);
+            requests.add(request);
+        }
+        Request crash = new Request(104L);
+        crash.params = new Params("crash", "{}", Params.PARAM_DEVICE_ID, TestUtils.DEVICE_ID);
+        requests.add(crash);
+        Assert.assertTrue(SDKCore.instance.sdkStorage.storableWriteAll(config, requests).stream().allMatch(Boolean::booleanValue));
+
+        Assert.assertEquals(Long.valueOf(104), SDKCore.instance.sdkStorage.nextRequestId(Collections.emptySet()));
+        Assert.assertTrue(Storage.remove(config, crash));
+        Long next = SDKCore.instance.sdkStorage.nextRequestId(Collections.emptySet());
+        Assert.assertEquals(SDKCore.instance.sdkStorage.storableList(config, Request.getStoragePrefix(), 1).get(0), next);
+    }
+
+    /**
+     * "getNextRequest" of backend mode memory request queue with requests of several devices followed by a crash
+     * Crash should be picked first
+     */
+    @Test
+    public void getNextRequest_backendMode() {
+        Countly.instance().init(TestUtils.getBaseConfig().enableBackendMode());
+        ModuleBackendMode.BackendMode backendMode = ((ModuleBackendMode) Countly.instance().backendM().getModule()).new BackendMode();
+        Map<String, String> data = new TreeMap<>();
+        data.put("user_details", "{}");
+        backendMode.recordDirectRequest("a", data, 1L);
+        backendMode.recordDirectRequest("b", data, 2L);
+        backendMode.recordException("b", "message", "stacktrace", null, null, 3L);
+
+        Request first;
+        synchronized (SDKCore.instance.lockBRQStorage) {
+            Assert.assertEquals(3, SDKCore.instance.requestLanesMemory.size());
+            Long id = SDKCore.instance.requestLanesMemory.next(Collections.emptySet());
+            first = SDKCore.instance.requestQueueMemory.stream().filter(r -> r.storageId().equals(id)).findFirst().orElse(null);
+        }
+        Assert.assertNotNull(first);
+        Assert.assertTrue(first.params.has("crash"));
+    }
+
+    private RequestLanes lanes(Config config) {
+        return new RequestLanes(new InternalConfig(config), new RequestLanes.Source() {
+            @Override
+            public List<Long> ids() {
+                return new ArrayList<>(queue.keySet());
+            }
+
+            @Override
+            public Params params(Long id) {
+                reads.add(id);
+                return queue.get(id);
+            }
+
+            @Override
+            public boolean contains(Long id) {
+                return queue.containsKey(id);
+            }
+
+            @Override
+            public boolean drop(Long id) {
+                return queue.remove(id) != null;
+            }
+        }, mock(Log.class));
+    }
+
+    private void add(RequestLanes lanes, Long id, Object... params) {
+        Params p = new Params(params);
+        queue.put(id, p);
+        lanes.add(id, p);
+    }
+
+    /**
+     * Picks next request and removes it from the queue as if it was sent
+     */
+    private Long send(RequestLanes lanes) {
+        Long id = lanes.next(Collections.emptySet());
+        Assert.assertNotNull(id);
+        queue.remove(id);
+        lanes.remove(id);
+        return id;
+    }
+
+    private List<Long> sendAll(RequestLanes lanes) {
+        List<Long> order = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            order.add(send(lanes));
+        }
+        return order;
+    }
+}
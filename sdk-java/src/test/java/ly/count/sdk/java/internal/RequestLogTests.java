@@ -0,0 +1,241 @@
+package ly.count.sdk.java.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_PREFIX;
+import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_SEPARATOR;
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class RequestLogTests {
+
+    private RequestLog requestLog;
+
+    @Before
+    public void beforeTest() {
+        TestUtils.createCleanTestState();
+        requestLog = new RequestLog(TestUtils.getTestSDirectory(), mock(Log.class));
+        requestLog.open();
+    }
+
+    @After
+    public void afterTest() {
+        requestLog.clear();
+    }
+
+    /**
+     * "replace" with an existing and a missing request to remove
+     * Data should be replaced and the other request removed together, nothing should change if the other request is missing
+     */
+    @Test
+    public void replace() {
+        Assert.assertTrue(requestLog.append(1L, bytes("a=1")));
+        Assert.assertTrue(requestLog.append(2L, bytes("b=2")));
+
+        Assert.assertFalse(requestLog.replace(1L, bytes("a=3"), 5L));
+        Assert.assertEquals("a=1", string(requestLog.read(1L)));
+        Assert.assertEquals(2, requestLog.size());
+
+        Assert.assertTrue(requestLog.replace(1L, bytes("a=1&b=2"), 2L));
+        Assert.assertEquals("a=1&b=2", string(requestLog.read(1L)));
+        Assert.assertNull(requestLog.read(2L));
+        Assert.assertEquals(1, reopen().size());
+    }
+
+    /**
+     * "append" and "read" with multiple requests
+     * Appended data should be readable by id and ids should be listed in ascending order
+     */
+    @Test
+    public void append_read() {
+        Assert.assertTrue(requestLog.append(3L, bytes("c=3")));
+        Assert.assertTrue(requestLog.append(1L, bytes("a=1")));
+        Assert.assertTrue(requestLog.append(2L, bytes("b=2")));
+
+        Assert.assertEquals(3, requestLog.size());
+        Assert.assertEquals("a=1", string(requestLog.read(1L)));
+        Assert.assertEquals("b=2", string(requestLog.read(2L)));
+        Assert.assertEquals("c=3", string(requestLog.read(3L)));
+        Assert.assertNull(requestLog.read(4L));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), requestLog.ids(0));
+    }
+
+    /**
+     * "ids" with slices
+     * Positive slice should return first N ids ascending, negative slice last N ids descending
+     */
+    @Test
+    public void ids_slice() {
+        for (long i = 1; i <= 5; i++) {
+            requestLog.append(i, bytes("r=" + i));
+        }
+
+        Assert.assertEquals(Arrays.asList(1L, 2L), requestLog.ids(2));
+        Assert.assertEquals(Arrays.asList(5L, 4L, 3L), requestLog.ids(-3));
+        Assert.assertEquals(5, requestLog.ids(10).size());
+    }
+
+    /**
+     * "append" with an existing id
+     * Data should be replaced and request count should not change
+     */
+    @Test
+    public void append_replace() {
+        requestLog.append(1L, bytes("a=1"));
+        requestLog.append(1L, bytes("a=2"));
+
+        Assert.assertEquals(1, requestLog.size());
+        Assert.assertEquals("a=2", string(requestLog.read(1L)));
+        Assert.assertEquals("a=2", string(reopen().read(1L)));
+    }
+
+    /**
+     * "remove" requests and reopen the log
+     * Removed requests should not be returned after replaying the log from disk
+     */
+    @Test
+    public void remove_reopen() {
+        for (long i = 1; i <= 4; i++) {
+            requestLog.append(i, bytes("r=" + i));
+        }
+        Assert.assertTrue(requestLog.remove(1L));
+        Assert.assertTrue(requestLog.remove(3L));
+        Assert.assertFalse(requestLog.remove(3L));
+
+        RequestLog reopened = reopen();
+        Assert.assertEquals(Arrays.asList(2L, 4L), reopened.ids(0));
+        Assert.assertEquals("r=4", string(reopened.read(4L)));
+    }
+
+    /**
+     * "remove" all requests
+     * Segment files without live requests should be deleted
+     */
+    @Test
+    public void remove_all_deletesSegments() {
+        for (long i = 1; i <= 3; i++) {
+            requestLog.append(i, bytes("r=" + i));
+        }
+        Assert.assertEquals(1, segmentFiles().length);
+
+        requestLog.ids(0).forEach(requestLog::remove);
+
+        Assert.assertEquals(0, requestLog.size());
+        Assert.assertEquals(0, segmentFiles().length);
+    }
+
+    /**
+     * "append" more data than a single segment can hold
+     * Log should roll to new segments, fully acknowledged segments should be deleted
+     * and remaining requests should survive reopening
+     */
+    @Test
+    public void append_rollSegments() {
+        byte[] payload = new byte[RequestLog.SEGMENT_MAX_BYTES / 4];
+        for (long i = 1; i <= 10; i++) {
+            payload[0] = (byte) i;
+            Assert.assertTrue(requestLog.append(i, payload));
+        }
+        Assert.assertTrue(segmentFiles().length > 1);
+
+        for (long i = 1; i <= 8; i++) {
+            requestLog.remove(i);
+        }
+        Assert.assertTrue(segmentFiles().length <= 2);
+
+        RequestLog reopened = reopen();
+        Assert.assertEquals(Arrays.asList(9L, 10L), reopened.ids(0));
+        Assert.assertEquals(9, reopened.read(9L)[0]);
+        Assert.assertEquals(10, reopened.read(10L)[0]);
+    }
+
+    /**
+     * "open" with a segment which has an incomplete record at the end
+     * Complete records should be restored, incomplete one should be dropped
+     */
+    @Test
+    public void open_tornWrite() throws IOException {
+        requestLog.append(1L, bytes("a=1"));
+        requestLog.append(2L, bytes("b=2"));
+        requestLog.close();
+
+        File segment = segmentFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        RequestLog reopened = reopen();
+        Assert.assertEquals(Arrays.asList(1L), reopened.ids(0));
+        Assert.assertTrue(reopened.append(3L, bytes("c=3")));
+        Assert.assertEquals(Arrays.asList(1L, 3L), reopen().ids(0));
+    }
+
+    /**
+     * "open" with request files written by previous SDK versions
+     * Files should be imported into the log in id order and deleted
+     */
+    @Test
+    public void open_importLegacyFiles() throws IOException {
+        requestLog.close();
+        File directory = TestUtils.getTestSDirectory();
+        Files.write(new File(directory, FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + "request_20").toPath(), bytes("b=2"));
+        Files.write(new File(directory, FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + "request_10").toPath(), bytes("a=1"));
+
+        RequestLog reopened = reopen();
+        Assert.assertEquals(Arrays.asList(10L, 20L), reopened.ids(0));
+        Assert.assertEquals("a=1", string(reopened.read(10L)));
+        File[] legacy = directory.listFiles((dir, name) -> name.startsWith(FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + "request_"));
+        Assert.assertNotNull(legacy);
+        Assert.assertEquals(0, legacy.length);
+    }
+
+    /**
+     * "snapshot" of a log
+     * Should return all live requests ordered by id
+     */
+    @Test
+    public void snapshot() {
+        requestLog.append(2L, bytes("b=2"));
+        requestLog.append(1L, bytes("a=1"));
+        requestLog.append(3L, bytes("c=3"));
+        requestLog.remove(2L);
+
+        Map<Long, byte[]> snapshot = RequestLog.snapshot(TestUtils.getTestSDirectory(), mock(Log.class));
+        List<Long> ids = Arrays.asList(snapshot.keySet().toArray(new Long[0]));
+        Assert.assertEquals(Arrays.asList(1L, 3L), ids);
+        Assert.assertEquals("c=3", string(snapshot.get(3L)));
+    }
+
+    private RequestLog reopen() {
+        requestLog.close();
+        requestLog = new RequestLog(TestUtils.getTestSDirectory(), mock(Log.class));
+        requestLog.open();
+        return requestLog;
+    }
+
+    private static File[] segmentFiles() {
+        File[] files = TestUtils.getTestSDirectory().listFiles((dir, name) -> name.startsWith(FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + RequestLog.SEGMENT_PREFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
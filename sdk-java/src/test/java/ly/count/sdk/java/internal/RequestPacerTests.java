@@ -0,0 +1,78 @@
+package ly.count.sdk.java.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RequestPacerTests {
+
+    /**
+     * "classOf" with device id change, push token and event requests
+     * Device id change and push token requests should be important, other requests should be default
+     */
+    @Test
+    public void classOf() {
+        Assert.assertEquals(RequestPacer.CLASS_IMPORTANT, RequestPacer.classOf(new Request(Params.PARAM_OLD_DEVICE_ID, "old")));
+        Assert.assertEquals(RequestPacer.CLASS_IMPORTANT, RequestPacer.classOf(new Request("token_session", 1)));
+        Assert.assertEquals(RequestPacer.CLASS_DEFAULT, RequestPacer.classOf(new Request("events", "[]")));
+    }
+
+    /**
+     * "acquire" and "release" with a single slot
+     * Slot should be unavailable while request is in flight and until cooldown passes after it completes
+     */
+    @Test
+    public void acquire_cooldown() throws InterruptedException {
+        RequestPacer pacer = new RequestPacer(200, 0, 1);
+        int slot = pacer.acquire(RequestPacer.CLASS_DEFAULT);
+        Assert.assertEquals(0, slot);
+        Assert.assertEquals(-1, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+        Assert.assertEquals(-1, pacer.delay(RequestPacer.CLASS_DEFAULT));
+
+        pacer.release(RequestPacer.CLASS_DEFAULT, slot);
+        Assert.assertEquals(-1, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+        long delay = pacer.delay(RequestPacer.CLASS_DEFAULT);
+        Assert.assertTrue(delay > 0 && delay <= 200);
+
+        Thread.sleep(delay + 10);
+        Assert.assertEquals(0, pacer.delay(RequestPacer.CLASS_DEFAULT));
+        Assert.assertEquals(0, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+    }
+
+    /**
+     * "acquire" of a class while the other class is cooling down
+     * Cooldown of one class should not hold back requests of the other class
+     */
+    @Test
+    public void acquire_classesIndependent() {
+        RequestPacer pacer = new RequestPacer(0, 10_000, 1);
+        pacer.release(RequestPacer.CLASS_IMPORTANT, pacer.acquire(RequestPacer.CLASS_IMPORTANT));
+        Assert.assertEquals(-1, pacer.acquire(RequestPacer.CLASS_IMPORTANT));
+        Assert.assertTrue(pacer.delay(RequestPacer.CLASS_IMPORTANT) > 9_000);
+
+        int slot = pacer.acquire(RequestPacer.CLASS_DEFAULT);
+        Assert.assertEquals(0, slot);
+        pacer.release(RequestPacer.CLASS_DEFAULT, slot);
+        Assert.assertEquals(0, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+    }
+
+    /**
+     * "acquire" with several slots
+     * Each slot should be taken once, delay should be counted from the slot which becomes available first
+     */
+    @Test
+    public void acquire_slots() {
+        RequestPacer pacer = new RequestPacer(10_000, 0, 3);
+        Assert.assertEquals(0, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+        Assert.assertEquals(1, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+        Assert.assertEquals(2, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+        Assert.assertEquals(-1, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+
+        pacer.release(RequestPacer.CLASS_DEFAULT, 1);
+        long delay = pacer.delay(RequestPacer.CLASS_DEFAULT);
+        Assert.assertTrue(delay > 9_000 && delay <= 10_000);
+        Assert.assertEquals(-1, pacer.acquire(RequestPacer.CLASS_DEFAULT));
+    }
+}
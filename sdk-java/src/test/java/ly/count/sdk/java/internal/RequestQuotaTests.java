@@ -0,0 +1,243 @@
+package ly.count.sdk.java.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import ly.count.sdk.java.Config;
+import ly.count.sdk.java.Countly;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class RequestQuotaTests {
+
+    private RequestLog requestLog;
+
+    @Before
+    public void beforeTest() {
+        TestUtils.createCleanTestState();
+        requestLog = new RequestLog(TestUtils.getTestSDirectory(), mock(Log.class));
+        requestLog.open();
+    }
+
+    @After
+    public void afterTest() {
+        requestLog.clear();
+        Countly.instance().halt();
+    }
+
+    /**
+     * "admit" with count limit and default policy
+     * Oldest requests should be evicted to keep the count within the limit
+     */
+    @Test
+    public void admit_dropOldest() {
+        RequestQuota quota = quota(TestUtils.getBaseConfig().setRequestStorageLimits(3, 0));
+        for (long i = 1; i <= 5; i++) {
+            write(quota, request(i, "a", "1"));
+        }
+
+        Assert.assertEquals(Arrays.asList(3L, 4L, 5L), requestLog.ids(0));
+        Assert.assertEquals(2, quota.evictedCount());
+        Assert.assertEquals(0, quota.coalescedCount());
+    }
+
+    /**
+     * "admit" with bytes limit
+     * Oldest requests should be evicted to keep stored bytes within the limit,
+     * request larger than the limit should not be admitted
+     */
+    @Test
+    public void admit_maxBytes() {
+        int length = request(1, "a", "1").store(null).length;
+        RequestQuota quota = quota(TestUtils.getBaseConfig().setRequestStorageLimits(0, length * 2));
+        for (long i = 1; i <= 4; i++) {
+            write(quota, request(i, "a", "1"));
+        }
+
+        Assert.assertEquals(Arrays.asList(3L, 4L), requestLog.ids(0));
+        Assert.assertTrue(requestLog.bytes() <= length * 2);
+        Assert.assertEquals(2, quota.evictedCount());
+
+        Assert.assertFalse(quota.admit(5L, length * 3, Collections.emptySet()));
+        Assert.assertEquals(Arrays.asList(3L, 4L), requestLog.ids(0));
+        Assert.assertEquals(3, quota.evictedCount());
+    }
+
+    /**
+     * "admit" with "DROP_LOWEST_PRIORITY" policy
+     * Event requests should be evicted first, then other requests, sessions should be evicted last
+     */
+    @Test
+    public void admit_dropLowestPriority() {
+        RequestQuota quota = quota(TestUtils.getBaseConfig().setRequestStorageLimits(4, 0).setRequestEvictionPolicy(Config.RequestEvictionPolicy.DROP_LOWEST_PRIORITY));
+        write(quota, request(1, "begin_session", "1"));
+        write(quota, request(2, "user_details", "{}"));
+        write(quota, eventRequest(3, "a"));
+        write(quota, eventRequest(4, "b"));
+
+        write(quota, request(5, "location", "1,2"));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 4L, 5L), requestLog.ids(0));
+
+        write(quota, request(6, "location", "3,4"));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 5L, 6L), requestLog.ids(0));
+
+        write(quota, request(7, "location", "5,6"));
+        Assert.assertEquals(Arrays.asList(1L, 5L, 6L, 7L), requestLog.ids(0));
+        Assert.assertEquals(3, quota.evictedCount());
+    }
+
+    /**
+     * "admit" with "COALESCE_EVENTS" policy while queue head is reserved for sending
+     * Event requests after the queue head should be merged, queue head should stay as is
+     */
+    @Test
+    public void admit_coalesceEvents() {
+        RequestQuota quota = quota(TestUtils.getBaseConfig().setRequestStorageLimits(3, 0).setRequestEvictionPolicy(Config.RequestEvictionPolicy.COALESCE_EVENTS));
+        Set<Long> reserved = Collections.singleton(1L);
+        write(quota, eventRequest(1, "a"), reserved);
+        write(quota, eventRequest(2, "b"), reserved);
+        write(quota, eventRequest(3, "c"), reserved);
+        write(quota, eventRequest(4, "d"), reserved);
+
+        Assert.assertEquals(Arrays.asList(1L, 2L, 4L), requestLog.ids(0));
+        Assert.assertEquals(1, quota.coalescedCount());
+        Assert.assertEquals(0, quota.evictedCount());
+
+        Request merged = new Request(2L);
+        Assert.assertTrue(merged.restore(requestLog.read(2L), mock(Log.class)));
+        JSONArray events = new JSONArray(merged.params.get("events"));
+        Assert.assertEquals(2, events.length());
+        Assert.assertEquals("b", events.getJSONObject(0).getString("key"));
+        Assert.assertEquals("c", events.getJSONObject(1).getString("key"));
+
+        Request head = new Request(1L);
+        Assert.assertTrue(head.restore(requestLog.read(1L), mock(Log.class)));
+        Assert.assertEquals(1, new JSONArray(head.params.get("events")).length());
+    }
+
+    /**
+     * "admit" with "COALESCE_EVENTS" policy while a request in the middle of the queue is reserved for sending
+     * Reserved request should stay as is, requests around it should be merged
+     */
+    @Test
+    public void admit_coalesceEvents_reservedNotHead() {
+        RequestQuota quota = quota(TestUtils.getBaseConfig().setRequestStorageLimits(3, 0).setRequestEvictionPolicy(Config.RequestEvictionPolicy.COALESCE_EVENTS));
+        Set<Long> reserved = Collections.singleton(2L);
+        write(quota, eventRequest(1, "a"), reserved);
+        write(quota, eventRequest(2, "b"), reserved);
+        write(quota, eventRequest(3, "c"), reserved);
+        write(quota, eventRequest(4, "d"), reserved);
+
+        Assert.assertEquals(Arrays.asList(1L, 2L, 4L), requestLog.ids(0));
+        Assert.assertEquals(1, quota.coalescedCount());
+
+        Request merged = new Request(1L);
+        Assert.assertTrue(merged.restore(requestLog.read(1L), mock(Log.class)));
+        Assert.assertEquals(2, new JSONArray(merged.params.get("events")).length());
+
+        Request sending = new Request(2L);
+        Assert.assertTrue(sending.restore(requestLog.read(2L), mock(Log.class)));
+        JSONArray events = new JSONArray(sending.params.get("events"));
+        Assert.assertEquals(1, events.length());
+        Assert.assertEquals("b", events.getJSONObject(0).getString("key"));
+    }
+
+    /**
+     * "admit" with default policy while queue head is reserved for sending
+     * Oldest request which is not reserved should be evicted
+     */
+    @Test
+    public void admit_dropOldest_reservedHead() {
+        RequestQuota quota = quota(TestUtils.getBaseConfig().setRequestStorageLimits(3, 0));
+        Set<Long> reserved = Collections.singleton(1L);
+        for (long i = 1; i <= 4; i++) {
+            write(quota, request(i, "a", "1"), reserved);
+        }
+
+        Assert.assertEquals(Arrays.asList(1L, 3L, 4L), requestLog.ids(0));
+        Assert.assertEquals(1, quota.evictedCount());
+    }
+
+    /**
+     * "admit" with "COALESCE_EVENTS" policy and nothing to merge
+     * Oldest requests should be evicted instead
+     */
+    @Test
+    public void admit_coalesceEvents_nothingToMerge() {
+        RequestQuota quota = quota(TestUtils.getBaseConfig().setRequestStorageLimits(2, 0).setRequestEvictionPolicy(Config.RequestEvictionPolicy.COALESCE_EVENTS));
+        write(quota, request(1, "begin_session", "1"));
+        write(quota, eventRequest(2, "a"));
+        write(quota, request(3, "end_session", "1"));
+
+        Assert.assertEquals(Arrays.asList(2L, 3L), requestLog.ids(0));
+        Assert.assertEquals(1, quota.evictedCount());
+        Assert.assertEquals(0, quota.coalescedCount());
+    }
+
+    /**
+     * "admit" without limits
+     * Nothing should be evicted
+     */
+    @Test
+    public void admit_unlimited() {
+        RequestQuota quota = quota(TestUtils.getBaseConfig());
+        for (long i = 1; i <= 5; i++) {
+            write(quota, request(i, "a", "1"));
+        }
+
+        Assert.assertFalse(quota.isLimited());
+        Assert.assertEquals(5, requestLog.size());
+        Assert.assertEquals(0, quota.evictedCount());
+    }
+
+    /**
+     * "getEvictedRequestCount" after writing more requests than the limit allows
+     * Evicted requests should be reported through the public API
+     */
+    @Test
+    public void getEvictedRequestCount() {
+        Countly.instance().init(TestUtils.getBaseConfig().setRequestStorageLimits(2, 0));
+        InternalConfig config = SDKCore.instance.config;
+        for (long i = 1; i <= 4; i++) {
+            Assert.assertTrue(SDKCore.instance.sdkStorage.storableWrite(config, request(i, "a", "1")));
+        }
+
+        Assert.assertEquals(2, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+        Assert.assertEquals(2, Countly.instance().getEvictedRequestCount());
+        Assert.assertEquals(0, Countly.instance().getCoalescedRequestCount());
+    }
+
+    private RequestQuota quota(Config config) {
+        return new RequestQuota(requestLog, new InternalConfig(config), mock(Log.class));
+    }
+
+    private void write(RequestQuota quota, Request request) {
+        write(quota, request, Collections.emptySet());
+    }
+
+    private void write(RequestQuota quota, Request request, Set<Long> reserved) {
+        byte[] data = request.store(null);
+        Assert.assertTrue(quota.admit(request.storageId(), data.length, reserved));
+        Assert.assertTrue(requestLog.append(request.storageId(), data));
+    }
+
+    private static Request request(long id, String key, String value) {
+        Request request = new Request(id);
+        request.params = new Params(Params.PARAM_DEVICE_ID, TestUtils.DEVICE_ID, key, value);
+        return request;
+    }
+
+    private static Request eventRequest(long id, String key) {
+        Request request = request(id, "events", "[{\"key\":\"" + key + "\",\"count\":1}]");
+        request.own(ModuleEvents.class);
+        return request;
+    }
+}
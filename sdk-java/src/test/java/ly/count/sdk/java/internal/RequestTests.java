@@ -64,13 +64,63 @@ public class RequestTests {
     }
 
     @Test
-    public void request_serialize() throws Exception {
+    public void request_serialize() {
         String paramVals = "a=1&b=2";
         Request request = new Request(paramVals);
 
-        String manualSerialization = paramVals + getEOR();
-        String serializationRes = new String(request.store(null));
-        Assert.assertEquals(manualSerialization, serializationRes);
+        byte[] serializationRes = request.store(null);
+        Assert.assertEquals(RequestCodec.MARKER, serializationRes[0]);
+        Assert.assertEquals(RequestCodec.VERSION, serializationRes[1]);
+        Assert.assertEquals(paramVals, RequestCodec.decode(serializationRes, null).toString());
+    }
+
+    /**
+     * "restore" with data written by previous SDK versions
+     * Request stored as text terminated with EOR should be restored
+     */
+    @Test
+    public void request_loadLegacy() throws Exception {
+        String paramVals = "a=1&b=%7B%22c%22%3A2%7D";
+        Request request = new Request();
+
+        Assert.assertTrue(request.restore((paramVals + getEOR()).getBytes(Utils.UTF8), null));
+        Assert.assertEquals(paramVals, request.params.toString());
+        Assert.assertEquals("{\"c\":2}", request.params.get("b"));
+    }
+
+    /**
+     * "store" and "restore" with encoded, non-canonically encoded and bare params
+     * Params string should be restored exactly, JSON values should take less space than legacy format
+     */
+    @Test
+    public void request_loadComplex() throws Exception {
+        Request request = new Request();
+        request.params.add("events", "[{\"key\":\"ç ü\",\"count\":1,\"segmentation\":{\"a\":\"b&c=d\"}}]");
+        request.params.add("&bare");
+        request.params.add("&x=%7b");
+        request.params.add("&empty=");
+
+        byte[] serializationRes = request.store(null);
+        Request requestNew = new Request();
+        Assert.assertTrue(requestNew.restore(serializationRes, null));
+        Assert.assertEquals(request.params.toString(), requestNew.params.toString());
+        Assert.assertEquals(request.params.get("events"), requestNew.params.get("events"));
+        Assert.assertEquals("{", requestNew.params.get("x"));
+        Assert.assertTrue(requestNew.params.has("empty"));
+        Assert.assertTrue(serializationRes.length < (request.params.toString() + getEOR()).getBytes(Utils.UTF8).length);
+    }
+
+    /**
+     * "restore" with a corrupted binary record
+     * Request should not be restored
+     */
+    @Test
+    public void request_loadCorrupted() {
+        byte[] serializationRes = new Request("a=1&b=2").store(null);
+        serializationRes[serializationRes.length / 2] ^= 0x5A;
+
+        Assert.assertFalse(new Request().restore(serializationRes, null));
+        Assert.assertFalse(new Request().restore(new byte[] { RequestCodec.MARKER, RequestCodec.VERSION }, null));
     }
 
     @Test
@@ -68,11 +68,9 @@ public class ScenarioInitRecoveryTests {
     }
 
     private void assertMinRequestFiles(int expectedMin) {
-        File testDir = TestUtils.getTestSDirectory();
-        File[] requestFiles = testDir.listFiles((dir, name) -> name.startsWith("[CLY]_request_"));
-        Assert.assertNotNull("Request file listing should not be null", requestFiles);
-        Assert.assertTrue("Expected at least " + expectedMin + " request file(s), found " + requestFiles.length,
-            requestFiles.length >= expectedMin);
+        int requests = TestUtils.getCurrentRQ().length;
+        Assert.assertTrue("Expected at least " + expectedMin + " stored request(s), found " + requests,
+            requests >= expectedMin);
     }
 
     private void withNullNetworking(Runnable action) {
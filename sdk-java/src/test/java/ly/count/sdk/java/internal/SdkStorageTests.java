@@ -120,4 +120,47 @@ public class SdkStorageTests {
         Assert.assertEquals("DEVELOPER_SUPPLIED", storageProvider.getDeviceIdType());
         Assert.assertEquals("DEVELOPER_SUPPLIED", TestUtils.readJsonFile(JSON_STORAGE).get("did_t"));
     }
+
+    /**
+     * "storableList" and "storableCount" with storable files existing before init
+     * SDKStorage is init with session files and a non storable file in the storage directory
+     * only session ids should be listed in expected order
+     */
+    @Test
+    public void storableList_existingFiles() {
+        TestUtils.writeToFile("session_30", "c");
+        TestUtils.writeToFile("session_10", "a");
+        TestUtils.writeToFile("session_20", "b");
+        TestUtils.writeToFile("session_abc", "garbage");
+        InternalConfig config = TestUtils.getInternalConfigWithLogger(TestUtils.getBaseConfig());
+        SDKStorage storageProvider = new SDKStorage().init(config);
+
+        Assert.assertEquals(Arrays.asList(10L, 20L, 30L), storageProvider.storableList(config, "session", 0));
+        Assert.assertEquals(Arrays.asList(10L, 20L), storageProvider.storableList(config, "session", 2));
+        Assert.assertEquals(Arrays.asList(30L, 20L), storageProvider.storableList(config, "session", -2));
+        Assert.assertEquals(3, storageProvider.storableCount(config, "session"));
+        Assert.assertEquals(0, storageProvider.storableCount(config, "crash"));
+        Assert.assertTrue(storageProvider.storableList(config, "crash", 0).isEmpty());
+    }
+
+    /**
+     * "storableWrite", "storableRemove" and "storablePurge" with sessions
+     * index of storable ids should follow every change
+     * listed ids should match stored sessions
+     */
+    @Test
+    public void storableList_writeRemovePurge() {
+        InternalConfig config = TestUtils.getInternalConfigWithLogger(TestUtils.getBaseConfig());
+        SDKStorage storageProvider = new SDKStorage().init(config);
+
+        Assert.assertTrue(storageProvider.storableWrite(config, "session", 2L, new byte[] { 1 }));
+        Assert.assertTrue(storageProvider.storableWrite(config, "session", 1L, new byte[] { 1 }));
+        Assert.assertEquals(Arrays.asList(1L, 2L), storageProvider.storableList(config, "session", 0));
+
+        Assert.assertTrue(storageProvider.storableRemove(config, new SessionImpl(config, 1L)));
+        Assert.assertEquals(Arrays.asList(2L), storageProvider.storableList(config, "session", 0));
+
+        storageProvider.storablePurge(config, "session");
+        Assert.assertEquals(0, storageProvider.storableCount(config, "session"));
+    }
 }
@@ -1,5 +1,6 @@
 package ly.count.sdk.java.internal;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.function.BiFunction;
@@ -736,6 +737,46 @@ public class SessionImplTests {
         return session;
     }
 
+    /**
+     * "store" and "restore"
+     * session with timestamps, params and an event larger than 64 KB is stored and restored
+     * restored session should be equal to the stored one
+     */
+    @Test
+    public void store_restore() {
+        SessionImpl session = createSessionImpl(12_345L);
+        session.began = 1L;
+        session.updated = 2L;
+        session.params.add("test", "value");
+        StringBuilder largeValue = new StringBuilder();
+        while (largeValue.length() < 70_000) {
+            largeValue.append("ç0123456789");
+        }
+        Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("large", largeValue.toString());
+        session.events.add(new EventImpl("key", 1, null, null, segmentation, session.L, null, null, null, null));
+
+        byte[] data = session.store(session.L);
+        Assert.assertNotNull(data);
+
+        SessionImpl restored = createSessionImpl(12_345L);
+        Assert.assertTrue(restored.restore(data, restored.L));
+        Assert.assertEquals(session, restored);
+        Assert.assertNull(restored.ended);
+        Assert.assertEquals(1, restored.events.size());
+        Assert.assertEquals(largeValue.toString(), ((EventImpl) restored.events.get(0)).segmentation.get("large"));
+    }
+
+    /**
+     * "restore" with data which is not in session storage format
+     * should return false
+     */
+    @Test
+    public void restore_wrongFormat() {
+        Assert.assertFalse(createSessionImpl(12_345L).restore(new byte[] { -84, -19, 0, 5, 1, 2, 3 }, null));
+        Assert.assertFalse(createSessionImpl(12_345L).restore(new byte[0], null));
+    }
+
     private SessionImpl validateUpdatedSession(SessionImpl session) {
         Assert.assertNotNull(session.began);
         Assert.assertNotNull(session.updated);
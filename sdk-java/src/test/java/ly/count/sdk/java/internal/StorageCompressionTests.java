@@ -0,0 +1,97 @@
+package ly.count.sdk.java.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import ly.count.sdk.java.Countly;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class StorageCompressionTests {
+
+    @Before
+    public void beforeTest() {
+        TestUtils.createCleanTestState();
+    }
+
+    @After
+    public void stop() {
+        Countly.instance().halt();
+    }
+
+    /**
+     * "pack" and "unpack" with a typical event request
+     * Unpacked data should be equal to the original, packed data should be much smaller
+     */
+    @Test
+    public void pack_unpack() {
+        StringBuilder events = new StringBuilder("app_key=COUNTLY_APP_KEY&device_id=some_device_id&timestamp=1695887006647&hour=10&dow=4&tz=180&sdk_name=java-native&sdk_version=24.1.5&events=[");
+        for (int i = 0; i < 20; i++) {
+            events.append(i == 0 ? "" : ",").append("{\"key\":\"purchase\",\"count\":1,\"sum\":9.99,\"segmentation\":{\"item\":\"item_").append(i).append("\"},\"timestamp\":169588700").append(6647 + i).append(",\"hour\":10,\"dow\":4}");
+        }
+        byte[] data = events.append("]").toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] packed = StorageCompression.pack(data);
+        Assert.assertTrue(StorageCompression.isPacked(packed));
+        Assert.assertEquals(StorageCompression.VERSION, packed[1]);
+        Assert.assertTrue("ratio " + data.length / (double) packed.length, packed.length * 5 < data.length);
+        Assert.assertArrayEquals(data, StorageCompression.unpack(packed, mock(Log.class)));
+    }
+
+    /**
+     * "pack" with a single small event
+     * Preset dictionary should make even a small payload smaller
+     */
+    @Test
+    public void pack_smallEvent() {
+        byte[] data = "{\"key\":\"test\",\"count\":1,\"timestamp\":1695887006647,\"hour\":10,\"dow\":4,\"segmentation\":{\"a\":\"b\"}}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] packed = StorageCompression.pack(data);
+        Assert.assertTrue(packed.length < data.length);
+        Assert.assertArrayEquals(data, StorageCompression.unpack(packed, mock(Log.class)));
+    }
+
+    /**
+     * "unpack" with plain and corrupted data
+     * Plain data should be returned as is, corrupted one should return null
+     */
+    @Test
+    public void unpack_plainAndCorrupted() {
+        byte[] plain = "a=1&b=2".getBytes(StandardCharsets.UTF_8);
+        Assert.assertSame(plain, StorageCompression.unpack(plain, mock(Log.class)));
+        Assert.assertNull(StorageCompression.unpack(null, mock(Log.class)));
+
+        byte[] packed = StorageCompression.pack(plain);
+        Assert.assertNull(StorageCompression.unpack(Arrays.copyOf(packed, packed.length - 2), mock(Log.class)));
+        Assert.assertNull(StorageCompression.unpack(new byte[] { StorageCompression.HEADER, 99, 1, 2 }, mock(Log.class)));
+    }
+
+    /**
+     * Recording events and sending them with storage compression enabled
+     * Events and requests should be stored compressed and be readable
+     */
+    @Test
+    public void enableStorageCompression_eventsAndRequests() {
+        Countly.instance().init(TestUtils.getConfigEvents(2).enableStorageCompression());
+
+        Countly.instance().events().recordEvent("compressed_1");
+        Assert.assertEquals(1, TestUtils.getCurrentEQ().size());
+        Assert.assertEquals("compressed_1", TestUtils.getCurrentEQ().get(0).key);
+
+        Countly.instance().events().recordEvent("compressed_2");
+        Assert.assertEquals(0, TestUtils.getCurrentEQ().size());
+        Storage.await(mock(Log.class)); // request is written asynchronously
+
+        Map<Long, byte[]> requests = RequestLog.snapshot(TestUtils.getTestSDirectory(), mock(Log.class));
+        Assert.assertEquals(1, requests.size());
+        Assert.assertTrue(StorageCompression.isPacked(requests.values().iterator().next()));
+        Assert.assertTrue(TestUtils.getCurrentRQ()[0].get("events").contains("compressed_2"));
+    }
+}
@@ -0,0 +1,208 @@
+package ly.count.sdk.java.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import ly.count.sdk.java.Countly;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(JUnit4.class)
+public class StorageContentionTests {
+
+    private static final int WRITERS_PER_PREFIX = 4;
+    private static final int WRITES_PER_WRITER = 100;
+
+    @Before
+    public void beforeTest() {
+        TestUtils.createCleanTestState();
+        Countly.instance().init(TestUtils.getBaseConfig());
+        Storage.await(mock(Log.class));
+    }
+
+    @After
+    public void stop() {
+        Countly.instance().halt();
+    }
+
+    /**
+     * "push" from concurrent session, crash and request writers
+     * All storables should be stored without failures
+     */
+    @Test
+    public void push_concurrentWriters() throws Exception {
+        InternalConfig config = SDKCore.instance.config;
+        String[] prefixes = { SessionImpl.getStoragePrefix(), CrashImpl.getStoragePrefix(), Request.getStoragePrefix() };
+        int requestsBefore = SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix());
+
+        CyclicBarrier gate = new CyclicBarrier(prefixes.length * WRITERS_PER_PREFIX + 1);
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> writers = new ArrayList<>();
+        for (int p = 0; p < prefixes.length; p++) {
+            for (int w = 0; w < WRITERS_PER_PREFIX; w++) {
+                final String prefix = prefixes[p];
+                final long base = (w + 1) * 1_000_000L;
+                writers.add(new Thread(() -> {
+                    try {
+                        gate.await();
+                        for (long i = 0; i < WRITES_PER_WRITER; i++) {
+                            if (!Storage.push(config, storable(prefix, base + i))) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }));
+            }
+        }
+        writers.forEach(Thread::start);
+
+        gate.await();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(WRITERS_PER_PREFIX * WRITES_PER_WRITER, Storage.list(config, SessionImpl.getStoragePrefix()).size());
+        Assert.assertEquals(WRITERS_PER_PREFIX * WRITES_PER_WRITER, Storage.list(config, CrashImpl.getStoragePrefix()).size());
+        Assert.assertEquals(requestsBefore + WRITERS_PER_PREFIX * WRITES_PER_WRITER, SDKCore.instance.sdkStorage.storableCount(config, Request.getStoragePrefix()));
+    }
+
+    /**
+     * "list" while a slow "transform" of the same prefix is running
+     * Listing should not wait for the whole transformation to complete
+     */
+    @Test
+    public void list_duringTransform() throws Exception {
+        InternalConfig config = SDKCore.instance.config;
+        String prefix = CrashImpl.getStoragePrefix();
+        for (long i = 1; i <= 20; i++) {
+            Assert.assertTrue(Storage.push(config, new TestStorable(prefix, i)));
+        }
+
+        AtomicInteger transformed = new AtomicInteger();
+        Thread transform = new Thread(() -> Storage.transform(config, prefix, (id, data) -> {
+            try {
+                Thread.sleep(25);
+            } catch (InterruptedException ignored) {
+            }
+            transformed.incrementAndGet();
+            return null;
+        }));
+        transform.start();
+        for (int i = 0; i < 1000 && transformed.get() == 0; i++) {
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(transformed.get() > 0);
+
+        Assert.assertEquals(20, Storage.list(config, prefix).size());
+        Assert.assertTrue(transformed.get() < 20);
+        transform.join();
+        Assert.assertEquals(20, transformed.get());
+    }
+
+    /**
+     * "await" with tasks running on several stripes
+     * Should return only after storables of all prefixes are written
+     */
+    @Test
+    public void await_allStripes() {
+        InternalConfig config = SDKCore.instance.config;
+        for (long i = 1; i <= 10; i++) {
+            Storage.pushAsync(config, new TestStorable(SessionImpl.getStoragePrefix(), i));
+            Storage.pushAsync(config, new TestStorable(CrashImpl.getStoragePrefix(), i));
+        }
+        Storage.await(mock(Log.class));
+
+        Assert.assertEquals(10, SDKCore.instance.sdkStorage.storableCount(config, SessionImpl.getStoragePrefix()));
+        Assert.assertEquals(10, SDKCore.instance.sdkStorage.storableCount(config, CrashImpl.getStoragePrefix()));
+    }
+
+    /**
+     * "push" of a storable which fails to be written with an exception
+     * Callback should be called with false and "push" should return false instead of waiting forever
+     */
+    @Test
+    public void push_writeFails() throws Exception {
+        InternalConfig config = SDKCore.instance.config;
+        List<Boolean> results = new ArrayList<>();
+        Storable failing = new TestStorable(SessionImpl.getStoragePrefix(), 1L) {
+            @Override
+            public byte[] store(Log L) {
+                throw new IllegalStateException("test");
+            }
+        };
+
+        Future<Boolean> future = Storage.pushAsync(config, failing, results::add);
+        Assert.assertEquals(Boolean.FALSE, future.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList(Boolean.FALSE), results);
+        Assert.assertFalse(Storage.push(config, failing));
+        Assert.assertTrue(Storage.push(config, new TestStorable(SessionImpl.getStoragePrefix(), 2L)));
+    }
+
+    /**
+     * "await" after storage is stopped
+     * Should return right away
+     */
+    @Test
+    public void await_stopped() {
+        Storage.stop();
+        Storage.await(mock(Log.class));
+    }
+
+    private static Storable storable(String prefix, long id) {
+        if (Request.getStoragePrefix().equals(prefix)) {
+            Request request = new Request("i", id);
+            request.setId(id);
+            return request;
+        }
+        return new TestStorable(prefix, id);
+    }
+
+    private static class TestStorable implements Storable {
+        private final String prefix;
+        private Long id;
+
+        TestStorable(String prefix, Long id) {
+            this.prefix = prefix;
+            this.id = id;
+        }
+
+        @Override
+        public Long storageId() {
+            return id;
+        }
+
+        @Override
+        public String storagePrefix() {
+            return prefix;
+        }
+
+        @Override
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        @Override
+        public byte[] store(Log L) {
+            return (prefix + id).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean restore(byte[] data, Log L) {
+            return true;
+        }
+    }
+}
@@ -6,11 +6,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
@@ -22,7 +19,6 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Assert;
 
-import static ly.count.sdk.java.internal.SDKStorage.EVENT_QUEUE_FILE_NAME;
 import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_PREFIX;
 import static ly.count.sdk.java.internal.SDKStorage.FILE_NAME_SEPARATOR;
 import static ly.count.sdk.java.internal.SDKStorage.JSON_FILE_NAME;
@@ -158,39 +154,37 @@ public class TestUtils {
             return new ConcurrentHashMap[0];
         }
 
-        //get all request files from target folder
-        File[] requestFiles = getRequestFiles(targetFolder);
+        //get all requests stored in the request log of target folder, ordered by id
+        Map<Long, byte[]> requests = RequestLog.snapshot(targetFolder, logger);
 
         //create array of request params
-        Map<String, String>[] resultMapArray = new ConcurrentHashMap[requestFiles.length];
-
-        for (int i = 0; i < requestFiles.length; i++) {
-            File file = requestFiles[i];
-            try {
-                //parse request params from file
-                Map<String, String> paramMap = parseRequestParams(file);
-                resultMapArray[i] = paramMap;
-            } catch (IOException e) {
-                Assert.fail("Failed to read request params from file reason: " + e.getMessage());
+        Map<String, String>[] resultMapArray = new ConcurrentHashMap[requests.size()];
+
+        int i = 0;
+        for (Map.Entry<Long, byte[]> entry : requests.entrySet()) {
+            //parse request params from stored data
+            Request request = new Request(entry.getKey());
+            byte[] data = StorageCompression.unpack(entry.getValue(), logger);
+            if (data == null || !request.restore(data, logger)) {
+                Assert.fail("Failed to read request params of request " + entry.getKey());
             }
+            resultMapArray[i++] = parseRequestParams(request);
         }
 
         return resultMapArray;
     }
 
     static void flushCurrentRQWithOldDeviceId(String oldDeviceId) {
-        Arrays.stream(getRequestFiles(getTestSDirectory())).forEach(file -> {
-            try {
-                if (file.exists() && file.isFile()) {
-                    String content = Utils.readFileContent(file, mock(Log.class));
-                    if (content.contains(oldDeviceId)) {
-                        Files.delete(file.toPath());
-                    }
-                }
-            } catch (IOException ignored) {
-                //do nothing
+        Storage.await(mock(Log.class));
+        InternalConfig config = SDKCore.instance.config;
+        SDKStorage storage = SDKCore.instance.sdkStorage;
+        for (Long id : storage.storableList(config, Request.getStoragePrefix(), 0)) {
+            Request request = new Request(id);
+            byte[] data = storage.storableReadBytes(config, Request.getStoragePrefix(), id);
+            if (data != null && request.restore(data, mock(Log.class)) && request.params.toString().contains(oldDeviceId)) {
+                storage.storableRemove(config, request);
             }
-        });
+        }
     }
 
     protected static List<EventImpl> getCurrentEQ() {
@@ -212,15 +206,7 @@ public class TestUtils {
             return events;
         }
 
-        File file = new File(targetFolder, FILE_NAME_PREFIX + FILE_NAME_SEPARATOR + EVENT_QUEUE_FILE_NAME);
-        String fileContent = "";
-        try {
-            fileContent = Utils.readFileContent(file, logger);
-        } catch (IOException e) {
-            Assert.fail("Failed to read event queue from file reason: " + e.getMessage());
-        }
-
-        Arrays.stream(fileContent.split(EventQueue.DELIMITER)).forEach(s -> {
+        EventJournal.snapshot(targetFolder, logger).forEach(s -> {
             final EventImpl event = EventImpl.fromJSON(s, (ev) -> {
             }, logger);
             if (event != null) {
@@ -243,50 +229,27 @@ public class TestUtils {
     }
 
     /**
-     * Get request files from target folder, sorted by last modified
-     *
-     * @param targetFolder folder where requests are stored
-     * @return array of request files sorted by last modified
-     */
-    private static File[] getRequestFiles(File targetFolder) {
-
-        File[] files = targetFolder.listFiles();
-        if (files == null) {
-            return new File[0];
-        }
-
-        //stream all files from target folder and filter only request files and sort them by last modified
-        return Stream.of(files)
-            .filter(file -> file.getName().startsWith("[CLY]_request_"))
-            .sorted(Comparator.comparing(file -> Long.parseLong(file.getName().split("_")[2])))
-            .toArray(File[]::new);
-    }
-
-    /**
-     * Parse request params from file. First line of file contains are urlencoded and
+     * Parse request params from restored request. Params are urlencoded and
      * separated by "&" symbol and key-value pairs are separated by "=" symbol (key=value).
      *
-     * @param file request file
+     * @param request restored request
      * @return map of request params
-     * @throws IOException if file cannot be read
      */
-    private static Map<String, String> parseRequestParams(File file) throws IOException {
-        try (Scanner scanner = new Scanner(file)) {
-            String firstLine = scanner.nextLine();
-            if (Utils.isEmptyOrNull(firstLine)) {
-                return new ConcurrentHashMap<>();
-            }
-
-            String[] params = firstLine.split("&");
+    private static Map<String, String> parseRequestParams(Request request) {
+        String paramsString = request.params.toString();
+        if (Utils.isEmptyOrNull(paramsString)) {
+            return new ConcurrentHashMap<>();
+        }
 
-            Map<String, String> paramMap = new ConcurrentHashMap<>();
-            for (String param : params) {
-                String[] pair = param.split("=");
-                paramMap.put(Utils.urldecode(pair[0]), pair.length == 1 ? "" : Utils.urldecode(pair[1]));
-            }
+        String[] params = paramsString.split("&");
 
-            return paramMap;
+        Map<String, String> paramMap = new ConcurrentHashMap<>();
+        for (String param : params) {
+            String[] pair = param.split("=");
+            paramMap.put(Utils.urldecode(pair[0]), pair.length == 1 ? "" : Utils.urldecode(pair[1]));
         }
+
+        return paramMap;
     }
 
     /**
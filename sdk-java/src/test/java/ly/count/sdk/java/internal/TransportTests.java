@@ -1,6 +1,18 @@
 package ly.count.sdk.java.internal;
 
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
 import ly.count.sdk.java.Config;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -8,10 +20,18 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import java.lang.reflect.Field;
 
+import static org.mockito.Mockito.mock;
+
 @RunWith(JUnit4.class)
 public class TransportTests {
 
     private Transport transport;
+    private HttpServer server;
+    private volatile String contentEncoding;
+    private volatile int receivedBytes;
+    private volatile String receivedBody;
+    private volatile String transferEncoding;
+    private volatile byte[] receivedRaw;
 
     @Before
     public void setUp() throws Exception {
@@ -22,6 +42,13 @@ public class TransportTests {
         logField.set(transport, L);
     }
 
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
     // ==================== processResponse tests ====================
 
     /**
@@ -135,4 +162,192 @@ public class TransportTests {
         Assert.assertFalse(transport.processResponse(199, "{\"result\":\"ok\"}", 3L));
         Assert.assertFalse(transport.processResponse(300, "{\"result\":\"ok\"}", 4L));
     }
+
+    // ==================== compression tests ====================
+
+    /**
+     * "execute" with network compression enabled and a large event batch
+     * Body should be sent gzipped with "Content-Encoding" header, decompress to request params
+     * and be several times smaller than the body sent without compression
+     */
+    @Test
+    public void execute_compressed() throws Exception {
+        String events = eventBatch(100);
+        Transport plain = transport(config());
+        Transport gzip = transport(config().enableNetworkCompression(1024));
+
+        Request request = new Request("events", events);
+        String params = request.params.toString();
+        Assert.assertEquals(200, send(gzip, new Request("events", events)));
+        Assert.assertEquals("gzip", contentEncoding);
+        Assert.assertEquals(params, receivedBody);
+        int compressedBytes = receivedBytes;
+
+        Assert.assertEquals(200, send(plain, new Request("events", events)));
+        Assert.assertNull(contentEncoding);
+        Assert.assertEquals(params, receivedBody);
+        int plainBytes = receivedBytes;
+        Assert.assertTrue(compressedBytes * 4 < plainBytes);
+    }
+
+    /**
+     * "execute" with network compression enabled and a body smaller than the threshold
+     * Body should be sent as is
+     */
+    @Test
+    public void execute_compressed_belowThreshold() throws Exception {
+        Transport gzip = transport(config().enableNetworkCompression(1024));
+
+        Request request = new Request("events", eventBatch(1));
+        String params = request.params.toString();
+        Assert.assertEquals(200, send(gzip, request));
+        Assert.assertNull(contentEncoding);
+        Assert.assertEquals(params, receivedBody);
+    }
+
+    /**
+     * "execute" with network compression and parameter tampering protection enabled
+     * Checksum should be calculated over uncompressed params
+     */
+    @Test
+    public void execute_compressed_checksum() throws Exception {
+        Transport gzip = transport(config().enableNetworkCompression(0).enableParameterTamperingProtection("salt"));
+
+        Request request = new Request("events", eventBatch(10));
+        String params = request.params.toString();
+        Assert.assertEquals(200, send(gzip, request));
+        Assert.assertEquals("gzip", contentEncoding);
+        Assert.assertEquals(params + "&checksum256=" + Utils.digestHex("SHA-256", params + "salt", null), receivedBody);
+    }
+
+    /**
+     * "execute" with a request which has send priority lane set explicitly
+     * Priority is internal to the SDK and should not be sent
+     */
+    @Test
+    public void execute_priority() throws Exception {
+        Transport plain = transport(config());
+
+        Request request = new Request("events", eventBatch(1));
+        String params = request.params.toString();
+        request.priority(RequestLanes.LANE_CRASH);
+        Assert.assertEquals(200, send(plain, request));
+        Assert.assertEquals(params, receivedBody);
+    }
+
+    // ==================== picture upload tests ====================
+
+    /**
+     * "execute" with a request referencing a picture file and parameter tampering protection enabled
+     * Picture should be streamed in chunked multipart body, picture params should not be sent,
+     * checksum should be calculated over the other params
+     */
+    @Test
+    public void execute_pictureFile() throws Exception {
+        Transport transport = transport(config().enableParameterTamperingProtection("salt"));
+        byte[] picture = new byte[200_000];
+        for (int i = 0; i < picture.length; i++) {
+            picture[i] = (byte) (i * 31);
+        }
+        File file = new File(TestUtils.getTestSDirectory(), "picture.bin");
+        Files.write(file.toPath(), picture);
+
+        Request request = new Request("user_details", "{}", ModuleUserProfile.PICTURE_FILE, file.getAbsolutePath());
+        Assert.assertEquals(200, send(transport, request));
+
+        Assert.assertEquals("chunked", transferEncoding);
+        String body = new String(receivedRaw, StandardCharsets.ISO_8859_1);
+        Assert.assertTrue(body.contains(new String(picture, StandardCharsets.ISO_8859_1)));
+        Assert.assertFalse(body.contains(ModuleUserProfile.PICTURE_FILE));
+        Assert.assertTrue(body.contains(Utils.digestHex("SHA-256", "user_details={}salt", null)));
+        Assert.assertTrue(file.exists());
+    }
+
+    /**
+     * "execute" with a request stored by previous SDK versions which keeps picture inline
+     * Picture should be decoded and sent in multipart body
+     */
+    @Test
+    public void execute_pictureBytes() throws Exception {
+        Transport transport = transport(config());
+        byte[] picture = new byte[] { 10, 13, 34, 12 };
+
+        Request request = new Request("user_details", "{}", ModuleUserProfile.PICTURE_BYTES, Utils.Base64.encode(picture));
+        Assert.assertEquals(200, send(transport, request));
+
+        String body = new String(receivedRaw, StandardCharsets.ISO_8859_1);
+        Assert.assertTrue(body.contains(new String(picture, StandardCharsets.ISO_8859_1)));
+        Assert.assertFalse(body.contains(ModuleUserProfile.PICTURE_BYTES));
+    }
+
+    /**
+     * "getPictureFromRequest" with a missing picture file
+     * No picture should be returned and picture params should be removed from the request
+     */
+    @Test
+    public void getPictureFromRequest_missingFile() throws Exception {
+        Transport transport = transport(config());
+        Request request = new Request("user_details", "{}", ModuleUserProfile.PICTURE_FILE, new File(TestUtils.getTestSDirectory(), "missing.bin").getAbsolutePath());
+
+        Assert.assertNull(transport.getPictureFromRequest(request));
+        Assert.assertFalse(request.params.has(ModuleUserProfile.PICTURE_FILE));
+    }
+
+    private Config config() throws IOException {
+        if (server == null) {
+            server = HttpServer.create(new InetSocketAddress(0), 0);
+            server.createContext("/", exchange -> {
+                contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-encoding");
+                byte[] raw = readAll(exchange.getRequestBody());
+                receivedRaw = raw;
+                receivedBytes = raw.length;
+                receivedBody = new String("gzip".equals(contentEncoding) ? readAll(new GZIPInputStream(new ByteArrayInputStream(raw))) : raw, StandardCharsets.UTF_8);
+                byte[] response = "{\"result\":\"Success\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(response);
+                }
+            });
+            server.start();
+        }
+        return new Config("http://localhost:" + server.getAddress().getPort(), TestUtils.SERVER_APP_KEY, TestUtils.getTestSDirectory())
+            .enableForcedHTTPPost();
+    }
+
+    private static Transport transport(Config config) {
+        InternalConfig internalConfig = new InternalConfig(config);
+        internalConfig.setLogger(mock(Log.class));
+        Transport transport = new Transport();
+        transport.init(internalConfig);
+        return transport;
+    }
+
+    private static int send(Transport transport, Request request) throws IOException {
+        try (HttpEngine.Response response = transport.execute(request)) {
+            return response.code();
+        }
+    }
+
+    private static String eventBatch(int count) {
+        StringBuilder events = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                events.append(',');
+            }
+            events.append("{\"key\":\"purchase\",\"count\":1,\"sum\":").append(i).append(",\"segmentation\":{\"item\":\"item-").append(i % 7)
+                .append("\",\"currency\":\"EUR\"},\"timestamp\":").append(1_700_000_000_000L + i).append(",\"hour\":10,\"dow\":2}");
+        }
+        return events.append(']').toString();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
 }
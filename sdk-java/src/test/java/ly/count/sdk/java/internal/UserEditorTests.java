@@ -1,6 +1,8 @@
 package ly.count.sdk.java.internal;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.BiFunction;
@@ -100,18 +102,20 @@ public class UserEditorTests {
      * "setPicture" with binary data,
      * Binary data is given to the method, session manually began and end to create a request
      * 'picturePath' in user should be null and picture should be defined binary data,
-     * 'picturePath' parameter in the user_details should be null and the request 'picturePath'
-     * parameter should equal to '[CLY]_USER_PROFILE_PICTURE'
+     * 'picturePath' parameter in the user_details should be null and the request should reference
+     * a picture file with the binary data instead of keeping it inline
      */
     @Test
-    public void setPicture_binaryData() {
+    public void setPicture_binaryData() throws IOException {
         Countly.instance().init(TestUtils.getBaseConfig());
         byte[] imgData = new byte[] { 10, 13, 34, 12 };
         //set profile picture url and commit it
         sessionHandler(() -> Countly.instance().user().edit().setPicture(imgData).commit());
         validatePictureAndPath(null, imgData);
         Countly.session().end();
-        validateUserDetailsRequestInRQ(TestUtils.map("user_details", "{}", ModuleUserProfile.PICTURE_BYTES, Utils.Base64.encode(imgData)));
+        String pictureFile = TestUtils.getCurrentRQ()[0].get(ModuleUserProfile.PICTURE_FILE);
+        Assert.assertArrayEquals(imgData, Files.readAllBytes(new File(pictureFile).toPath()));
+        validateUserDetailsRequestInRQ(TestUtils.map("user_details", "{}", ModuleUserProfile.PICTURE_FILE, pictureFile));
     }
 
     /**
@@ -225,6 +225,20 @@ public class UtilsTests {
         Assert.assertEquals(givenString, res);
     }
 
+    /**
+     * "urlencodeTo" with symbols, non-ASCII characters, surrogate pairs and unpaired surrogates
+     * Should append the same string as "urlencode"
+     */
+    @Test
+    public void urlencodeTo_sameAsUrlencode() {
+        String[] strings = { "", "TheQuickBrownFox1234567890.-*_", "~!@ #$%^&()_+{ }:\"|[]\\|,./<>?", "ç ü ß", "日本語", "\uD83D\uDE00", "a\uD83Db", "\uDE00", "\u007F\u0080\u07FF\u0800\uFFFF" };
+        for (String string : strings) {
+            StringBuilder out = new StringBuilder("x");
+            Utils.urlencodeTo(string, out);
+            Assert.assertEquals("x" + Utils.urlencode(string, null), out.toString());
+        }
+    }
+
     /**
      * "urlencode"
      * An invalid encoding is given to the function and a valid string given